@@ -0,0 +1,103 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.lang.reflect.*;
+
+import ee.ioc.cs.vsle.api.*;
+import ee.ioc.cs.vsle.ccl.*;
+
+/**
+ * Compares the cost of starting a generated program the way ProgramRunner
+ * used to (looking up ProgramContext setters and compute() by reflection on
+ * every run) with the bound path (MethodHandles cached per class and calls
+ * through IComputable), and with the reflective fallback of the bound path
+ * for classes that do not implement IComputable.
+ *
+ * Usage: ProgramInvocationBenchmark [iterations [rounds]]
+ */
+public class ProgramInvocationBenchmark {
+
+    // keeps the results of programs alive
+    static volatile long s_sink;
+
+    /**
+     * A generated program
+     */
+    public static class Program implements IComputable {
+
+        @Override
+        public void compute( Object... args ) {
+            s_sink += args.length;
+        }
+    }
+
+    /**
+     * A program without the interface, called through reflection
+     */
+    public static class UntypedProgram {
+
+        public void compute( Object... args ) {
+            s_sink += args.length;
+        }
+    }
+
+    private interface Path {
+        void run( Object program, Object[] args ) throws Exception;
+    }
+
+    private static final Path REFLECTIVE = new Path() {
+
+        @Override
+        public void run( Object program, Object[] args ) throws Exception {
+            Class<?> clas = program.getClass();
+            Class<?> pc = clas.getClassLoader().loadClass( CCL.PROGRAM_CONTEXT );
+            pc.getMethod( "setThread", Thread.class ).invoke( null, Thread.currentThread() );
+            pc.getMethod( "setRunnerId", long.class ).invoke( null, 1L );
+            Method method = clas.getMethod( "compute", Object[].class );
+            method.invoke( program, new Object[] { args } );
+        }
+    };
+
+    private static final Path BOUND = new Path() {
+
+        @Override
+        public void run( Object program, Object[] args ) throws Exception {
+            ProgramRunner.initProgramContext( 1L, program.getClass() );
+            ProgramRunner.invokeCompute( program, args );
+        }
+    };
+
+    public static void main( String[] args ) throws Exception {
+
+        int iterations = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+        Object[] programArgs = { 1, 2.0, "3" };
+        Program program = new Program();
+        UntypedProgram untyped = new UntypedProgram();
+
+        System.out.println( "iterations: " + iterations );
+        System.out.println( "round\treflective ns/op\tbound ns/op\tbound untyped ns/op" );
+
+        // the first round warms up
+        for ( int round = 0; round <= rounds; round++ ) {
+            long reflective = measure( REFLECTIVE, program, programArgs, iterations );
+            long bound = measure( BOUND, program, programArgs, iterations );
+            long boundUntyped = measure( BOUND, untyped, programArgs, iterations );
+
+            if ( round > 0 ) {
+                System.out.println( round + "\t" + reflective + "\t" + bound + "\t" + boundUntyped );
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds per run
+     */
+    private static long measure( Path path, Object program, Object[] args, int iterations ) throws Exception {
+        long start = System.nanoTime();
+        for ( int i = 0; i < iterations; i++ ) {
+            path.run( program, args );
+        }
+        return ( System.nanoTime() - start ) / iterations;
+    }
+}
@@ -0,0 +1,170 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Generates a package of simple classes and large schemes of their instances
+ * for measuring the loading of schemes.
+ *
+ * Each class has the ports in and out and the field k, the specification is
+ * out = k * in. A scheme consists of chains of objects connected from out to in.
+ *
+ * Usage: SchemeGenerator directory objects [classes]
+ */
+public class SchemeGenerator {
+
+    static final String PACKAGE_NAME = "LoadBenchmark";
+
+    private final File directory;
+    private final int classCount;
+
+    /**
+     * @param directory the directory of the package
+     * @param classCount number of classes in the package
+     */
+    public SchemeGenerator( File directory, int classCount ) {
+        this.directory = directory;
+        this.classCount = classCount;
+    }
+
+    public static void main( String[] args ) throws IOException {
+
+        if ( args.length < 2 ) {
+            System.err.println( "Usage: SchemeGenerator directory objects [classes]" );
+            return;
+        }
+
+        SchemeGenerator generator = new SchemeGenerator( new File( args[0] ),
+                args.length > 2 ? Integer.parseInt( args[2] ) : 20 );
+        File pack = generator.writePackage();
+        File scheme = generator.writeScheme( Integer.parseInt( args[1] ), new Random( 1 ) );
+
+        System.out.println( "package: " + pack + "\nscheme: " + scheme );
+    }
+
+    /**
+     * Writes the package description and the specifications of its classes
+     *
+     * @return the package file
+     */
+    public File writePackage() throws IOException {
+
+        directory.mkdirs();
+        File file = new File( directory, PACKAGE_NAME + ".xml" );
+        PrintWriter out = new PrintWriter( file, "UTF-8" );
+
+        try {
+            out.println( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+            out.println( "<!DOCTYPE package SYSTEM \"" + RuntimeProperties.PACKAGE_DTD + "\">" );
+            out.println( "<package>" );
+            out.println( "  <name>" + PACKAGE_NAME + "</name>" );
+            out.println( "  <description>Generated for measuring the loading of schemes</description>" );
+
+            for ( int i = 0; i < classCount; i++ ) {
+                writeClass( out, getClassName( i ) );
+                writeSpecification( getClassName( i ) );
+            }
+
+            out.println( "</package>" );
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Writes a scheme of chains of up to 100 connected objects
+     *
+     * @param objectCount number of objects
+     * @param random
+     * @return the scheme file
+     */
+    public File writeScheme( int objectCount, Random random ) throws IOException {
+
+        File file = new File( directory, "scheme" + objectCount + ".syn" );
+        PrintWriter out = new PrintWriter( new BufferedWriter( new OutputStreamWriter(
+                new FileOutputStream( file ), "UTF-8" ) ) );
+
+        try {
+            out.println( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+            out.println( "<!DOCTYPE scheme SYSTEM \"" + RuntimeProperties.SCHEME_DTD + "\">" );
+            out.println( "<scheme package=\"" + PACKAGE_NAME + "\">" );
+
+            int columns = (int) Math.ceil( Math.sqrt( objectCount ) );
+
+            for ( int i = 0; i < objectCount; i++ ) {
+                out.println( "<object name=\"obj" + i + "\" type=\"" + getClassName( random.nextInt( classCount ) )
+                        + "\" static=\"false\">" );
+                out.println( "<properties x=\"" + ( i % columns ) * 80 + "\" y=\"" + ( i / columns ) * 80
+                        + "\" width=\"40\" height=\"40\" xsize=\"1.0\" ysize=\"1.0\" strict=\"false\"/>" );
+                out.println( "<fields><field name=\"k\" type=\"double\" value=\"" + random.nextInt( 100 )
+                        + "\"/></fields>" );
+                out.println( "</object>" );
+            }
+
+            for ( int i = 1; i < objectCount; i++ ) {
+                if ( i % 100 != 0 ) {
+                    out.println( "<connection obj1=\"obj" + ( i - 1 ) + "\" port1=\"out\" obj2=\"obj" + i
+                            + "\" port2=\"in\" strict=\"false\"><breakpoints/></connection>" );
+                }
+            }
+
+            out.println( "</scheme>" );
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    private static String getClassName( int i ) {
+        return "Node" + i;
+    }
+
+    private static void writeClass( PrintWriter out, String name ) {
+        out.println( "  <class type=\"class\">" );
+        out.println( "    <name>" + name + "</name>" );
+        out.println( "    <description>" + name + "</description>" );
+        out.println( "    <icon>default.gif</icon>" );
+        out.println( "    <graphics>" );
+        out.println( "      <bounds x=\"0\" y=\"0\" width=\"40\" height=\"40\"/>" );
+        out.println( "      <rect x=\"0\" y=\"0\" width=\"40\" height=\"40\" colour=\"0\" filled=\"false\"/>" );
+        out.println( "    </graphics>" );
+        out.println( "    <ports>" );
+        writePort( out, "in", 0 );
+        writePort( out, "out", 40 );
+        out.println( "    </ports>" );
+        out.println( "    <fields>" );
+        out.println( "      <field name=\"k\" type=\"double\" value=\"1\"/>" );
+        out.println( "    </fields>" );
+        out.println( "  </class>" );
+    }
+
+    private static void writePort( PrintWriter out, String name, int x ) {
+        out.println( "      <port name=\"" + name + "\" type=\"double\" x=\"" + x + "\" y=\"20\" portConnection=\"area\">" );
+        for ( String state : new String[] { "open", "closed" } ) {
+            out.println( "        <" + state + "><graphics>" );
+            out.println( "          <bounds x=\"-3\" y=\"-3\" width=\"6\" height=\"6\"/>" );
+            out.println( "          <oval x=\"-3\" y=\"-3\" width=\"6\" height=\"6\" colour=\"0\" filled=\""
+                    + state.equals( "closed" ) + "\"/>" );
+            out.println( "        </graphics></" + state + ">" );
+        }
+        out.println( "      </port>" );
+    }
+
+    private void writeSpecification( String name ) throws IOException {
+        PrintWriter out = new PrintWriter( new File( directory, name + ".java" ), "UTF-8" );
+        try {
+            out.println( "class " + name + " {" );
+            out.println( "    /*@ specification " + name + " {" );
+            out.println( "        double in, out, k;" );
+            out.println( "        out = k * in;" );
+            out.println( "    }@*/" );
+            out.println( "}" );
+        } finally {
+            out.close();
+        }
+    }
+}
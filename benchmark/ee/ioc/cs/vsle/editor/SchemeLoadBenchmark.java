@@ -0,0 +1,122 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * Measures the loading of generated schemes (see SchemeGenerator) by
+ * SchemeLoader of this build and, optionally, by SchemeLoader of another
+ * build, e.g. the classes of a revision before the loader was changed.
+ * The other build is loaded by its own class loader, so both loaders
+ * run with their own versions of the packages, classes and lists.
+ *
+ * Usage: SchemeLoadBenchmark [-old classpath] [objects...]
+ */
+public class SchemeLoadBenchmark {
+
+    private static final int RUNS = 3;
+
+    public static void main( String[] args ) throws Exception {
+
+        String oldClasspath = null;
+        List<Integer> sizes = new ArrayList<Integer>();
+
+        for ( int i = 0; i < args.length; i++ ) {
+            if ( "-old".equals( args[i] ) ) {
+                oldClasspath = args[++i];
+            } else {
+                sizes.add( Integer.parseInt( args[i] ) );
+            }
+        }
+        if ( sizes.isEmpty() ) {
+            sizes.addAll( Arrays.asList( 1000, 5000, 20000 ) );
+        }
+
+        File directory = File.createTempFile( "schemes", "" );
+        directory.delete();
+
+        SchemeGenerator generator = new SchemeGenerator( directory, 20 );
+        File pack = generator.writePackage();
+        Map<Integer, File> schemes = new LinkedHashMap<Integer, File>();
+        for ( int size : sizes ) {
+            schemes.put( size, generator.writeScheme( size, new Random( size ) ) );
+        }
+
+        ClassLoader current = SchemeLoadBenchmark.class.getClassLoader();
+        ClassLoader old = oldClasspath != null ? createClassLoader( oldClasspath ) : null;
+
+        System.out.println( "objects\tcurrent ms" + ( old != null ? "\told ms" : "" ) );
+
+        for ( Map.Entry<Integer, File> scheme : schemes.entrySet() ) {
+            StringBuilder line = new StringBuilder().append( scheme.getKey() );
+            line.append( '\t' ).append( measure( current, pack, scheme.getValue(), scheme.getKey() ) );
+            if ( old != null ) {
+                line.append( '\t' ).append( measure( old, pack, scheme.getValue(), scheme.getKey() ) );
+            }
+            System.out.println( line );
+        }
+
+        for ( File file : directory.listFiles() ) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static ClassLoader createClassLoader( String classpath ) throws MalformedURLException {
+        String[] paths = classpath.split( File.pathSeparator );
+        URL[] urls = new URL[paths.length];
+        for ( int i = 0; i < paths.length; i++ ) {
+            urls[i] = new File( paths[i] ).toURI().toURL();
+        }
+        // classes of this build are not visible to the other one
+        return new URLClassLoader( urls, ClassLoader.getSystemClassLoader().getParent() );
+    }
+
+    /**
+     * @return the shortest time of loading the scheme in milliseconds, after a warm-up
+     */
+    private static long measure( ClassLoader loader, File pack, File scheme, int objects ) throws Exception {
+
+        Thread thread = Thread.currentThread();
+        ClassLoader context = thread.getContextClassLoader();
+        // resources like DTDs are looked up through the context class loader
+        thread.setContextClassLoader( loader );
+
+        try {
+            Class<?> packageProcessor = loader.loadClass( "ee.ioc.cs.vsle.packageparse.PackageXmlProcessor" );
+            Object vPackage = packageProcessor.getMethod( "load", File.class ).invoke( null, pack );
+            if ( vPackage == null ) {
+                throw new IllegalStateException( "Unable to load the package " + pack );
+            }
+
+            Class<?> schemeLoader = loader.loadClass( "ee.ioc.cs.vsle.editor.SchemeLoader" );
+            Constructor<?> constructor = schemeLoader.getConstructor( vPackage.getClass() );
+            Method load = schemeLoader.getMethod( "load", File.class );
+            Method getObjectList = schemeLoader.getMethod( "getObjectList" );
+
+            long best = Long.MAX_VALUE;
+
+            for ( int run = 0; run <= RUNS; run++ ) {
+                Object instance = constructor.newInstance( vPackage );
+                long start = System.nanoTime();
+                boolean loaded = (Boolean) load.invoke( instance, scheme );
+                long time = System.nanoTime() - start;
+
+                int size = ( (List<?>) getObjectList.invoke( instance ) ).size();
+                if ( !loaded || size != objects ) {
+                    throw new IllegalStateException( "Loaded " + size + " of " + objects + " objects from " + scheme );
+                }
+                // the first run warms up
+                if ( run > 0 ) {
+                    best = Math.min( best, time );
+                }
+            }
+
+            return best / 1000000;
+        } finally {
+            thread.setContextClassLoader( context );
+        }
+    }
+}
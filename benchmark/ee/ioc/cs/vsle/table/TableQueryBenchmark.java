@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Measures the throughput of table queries by the number of querying threads.
+ * Queries go through the current snapshot of a table, with an optional writer
+ * thread that changes a cell value and forces new snapshots to be published.
+ *
+ * Usage: TableQueryBenchmark [rows [seconds [writer]]]
+ */
+public class TableQueryBenchmark {
+
+    public static void main( String[] args ) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt( args[0] ) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt( args[1] ) : 2;
+        boolean writer = args.length > 2 && Boolean.parseBoolean( args[2] );
+
+        Table table = createTable( rows );
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.println( "rows: " + rows + ", writer: " + writer + ", cpus: "
+                + Runtime.getRuntime().availableProcessors() );
+
+        //warm-up
+        run( table, 1, 1, rows, writer );
+
+        System.out.println( "threads\tqueries/s\tper thread" );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 ) {
+            long queries = run( table, threads, seconds, rows, writer );
+            long perSecond = queries / seconds;
+            System.out.println( threads + "\t" + perSecond + "\t" + perSecond / threads );
+        }
+    }
+
+    /**
+     * @return the number of queries answered by all threads
+     */
+    private static long run( final Table table, int threads, int seconds, final int rows, boolean writer )
+            throws Exception {
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong queries = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        List<Thread> workers = new ArrayList<Thread>();
+
+        for ( int i = 0; i < threads; i++ ) {
+            final Random random = new Random( i );
+            workers.add( new Thread() {
+                @Override
+                public void run() {
+                    await( start );
+                    long count = 0;
+                    while ( !stop.get() ) {
+                        for ( int j = 0; j < 1000; j++ ) {
+                            table.queryDouble( random.nextDouble() * rows );
+                        }
+                        count += 1000;
+                    }
+                    queries.addAndGet( count );
+                }
+            } );
+        }
+
+        if ( writer ) {
+            workers.add( new Thread() {
+                @Override
+                public void run() {
+                    await( start );
+                    for ( int i = 0; !stop.get(); i++ ) {
+                        table.setCellValueAt( (double) i, 0, 0 );
+                        try {
+                            Thread.sleep( 1 );
+                        } catch ( InterruptedException e ) {
+                            return;
+                        }
+                    }
+                }
+            } );
+        }
+
+        for ( Thread worker : workers ) {
+            worker.start();
+        }
+        start.countDown();
+        Thread.sleep( seconds * 1000L );
+        stop.set( true );
+        for ( Thread worker : workers ) {
+            worker.join();
+        }
+
+        return queries.get();
+    }
+
+    private static void await( CountDownLatch latch ) {
+        try {
+            latch.await();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return table with rows "i <= x < i + 1" -> i for i = 0 .. rows - 1
+     */
+    private static Table createTable( int rows ) {
+        Table table = new Table( "benchmark" );
+
+        InputTableField x = new InputTableField( "x", "double" );
+        table.addInputFields( Arrays.asList( x ) );
+        table.addOutputFields( Arrays.asList( new TableField( "y", "double" ) ) );
+
+        List<Rule> rules = new ArrayList<Rule>();
+        for ( int i = 0; i < rows; i++ ) {
+            table.addDataCell( i, 0, Collections.singletonMap( "y", Double.toString( i ) ) );
+
+            Rule lower = Rule.createRule( x, "!less", Integer.toString( i ) );
+            lower.addEntry( i );
+            Rule upper = Rule.createRule( x, "less", Integer.toString( i + 1 ) );
+            upper.addEntry( i );
+            rules.add( lower );
+            rules.add( upper );
+        }
+        table.addHRules( rules );
+
+        return table;
+    }
+}
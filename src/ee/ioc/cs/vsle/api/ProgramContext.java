@@ -101,6 +101,30 @@ public final class ProgramContext {
     public static Object queryTable( String[] inputIds, String tableId, Object... args ) {
         return scheme.queryTable( inputIds, tableId, args );
     }
+
+    /**
+     * Method for querying tables with double inputs and a double output without boxing
+     * 
+     * @param tableId
+     * @param args
+     * @return value from the table if conditions hold for some row and column
+     * @see ee.ioc.cs.vsle.table.IStructuralExpertTable#queryDouble(double[])
+     */
+    public static double queryDouble( String tableId, double... args ) {
+        return scheme.queryDouble( tableId, args );
+    }
+
+    /**
+     * Method for querying tables with int inputs and an int output without boxing
+     * 
+     * @param tableId
+     * @param args
+     * @return value from the table if conditions hold for some row and column
+     * @see ee.ioc.cs.vsle.table.IStructuralExpertTable#queryInt(int[])
+     */
+    public static int queryInt( String tableId, int... args ) {
+        return scheme.queryInt( tableId, args );
+    }
     
     /**
      * Sets the value of a scheme object field.
@@ -80,6 +80,16 @@ public interface Scheme {
     public Object queryTable( String tableId, Object[] args );
 
     public Object queryTable( String[] inputIds, String tableId, Object[] args );
+
+    /**
+     * @see ee.ioc.cs.vsle.table.IStructuralExpertTable#queryDouble(double[])
+     */
+    public double queryDouble( String tableId, double[] args );
+
+    /**
+     * @see ee.ioc.cs.vsle.table.IStructuralExpertTable#queryInt(int[])
+     */
+    public int queryInt( String tableId, int[] args );
     
     /**
      * Terminates the execution of a program from any thread
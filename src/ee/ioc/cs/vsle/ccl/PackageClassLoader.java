@@ -20,6 +20,17 @@ import ee.ioc.cs.vsle.util.*;
  */
 public class PackageClassLoader extends CCL implements INameEnvironment {
 
+    // Types resolved by the compiler, kept for the lifetime of the package.
+    // A null value means the type was not found, such answers are kept
+    // only until the next compilation as sources may have been added.
+    private final Map<String, NameEnvironmentAnswer> answers =
+        new HashMap<String, NameEnvironmentAnswer>();
+    // Compiled units of generated classes by main type names
+    private final Map<String, CompiledUnit> compiledUnits =
+        new HashMap<String, CompiledUnit>();
+    // Names of compiled classes (including inner classes) -> unit names
+    private final Map<String, String> unitNames = new HashMap<String, String>();
+
     public PackageClassLoader(File pkgDir) {
         super(createPackageClassPath(pkgDir),
                 PackageClassLoader.class.getClassLoader());
@@ -213,12 +224,39 @@ public class PackageClassLoader extends CCL implements INameEnvironment {
             environment.cleanup();
             environment = null;
         }
+        synchronized (answers) {
+            answers.clear();
+        }
+    }
+
+    /**
+     * Forgets the types that were not found.
+     */
+    void clearMisses() {
+        synchronized (answers) {
+            answers.values().removeAll(Collections.singleton(null));
+        }
+    }
+
+    @Override
+    protected Class<?> compile(String className, char[] source) {
+        clearMisses();
+        return super.compile(className, source);
     }
 
     public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+        String className = toClassName(compoundTypeName);
+        synchronized (answers) {
+            if (answers.containsKey(className)) {
+                return answers.get(className);
+            }
+        }
         NameEnvironmentAnswer rv = environment.findType(compoundTypeName);
         if (rv == null) {
-            rv = findSourceAnswer(toClassName(compoundTypeName));
+            rv = findSourceAnswer(className);
+        }
+        synchronized (answers) {
+            answers.put(className, rv);
         }
         return rv;
     }
@@ -237,9 +275,18 @@ public class PackageClassLoader extends CCL implements INameEnvironment {
     }
 
     public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+        String className = toClassName(packageName, typeName);
+        synchronized (answers) {
+            if (answers.containsKey(className)) {
+                return answers.get(className);
+            }
+        }
         NameEnvironmentAnswer rv = environment.findType(typeName, packageName);
         if (rv == null) {
-            rv = findSourceAnswer(toClassName(packageName, typeName)); 
+            rv = findSourceAnswer(className); 
+        }
+        synchronized (answers) {
+            answers.put(className, rv);
         }
         return rv;
     }
@@ -247,4 +294,60 @@ public class PackageClassLoader extends CCL implements INameEnvironment {
     public boolean isPackage(char[][] parentPackageName, char[] packageName) {
         return environment.isPackage(parentPackageName, packageName);
     }
+
+    /**
+     * Returns the last compiled unit of a generated class.
+     * @param unitName the main type name of the unit
+     * @return compiled unit or null
+     */
+    synchronized CompiledUnit getCompiledUnit(String unitName) {
+        return compiledUnits.get(unitName);
+    }
+
+    /**
+     * Returns the name of the unit a compiled class belongs to.
+     * @param className class name, may be the name of an inner class
+     * @return unit name or null if the class has not been compiled
+     */
+    synchronized String getUnitName(String className) {
+        return unitNames.get(className);
+    }
+
+    /**
+     * Stores a compiled unit of a generated class replacing the
+     * previous one with the same name.
+     * @param unitName the main type name of the unit
+     * @param unit compiled unit
+     */
+    synchronized void putCompiledUnit(String unitName, CompiledUnit unit) {
+        CompiledUnit old = compiledUnits.put(unitName, unit);
+        if (old != null) {
+            unitNames.keySet().removeAll(old.classes.keySet());
+        }
+        for (String className : unit.classes.keySet()) {
+            unitNames.put(className, unitName);
+        }
+        clearMisses();
+    }
+
+    /**
+     * Class files compiled from a generated source together with the
+     * contents of generated sources the unit referred to when compiled.
+     * The class files can be reused as long as all these sources
+     * stay the same.
+     */
+    static class CompiledUnit {
+
+        final char[] source;
+        // referenced simple names -> generated sources, null if there was none
+        final Map<String, char[]> references;
+        final Map<String, byte[]> classes;
+
+        CompiledUnit(char[] source, Map<String, char[]> references,
+                Map<String, byte[]> classes) {
+            this.source = source;
+            this.references = references;
+            this.classes = classes;
+        }
+    }
 }
@@ -4,8 +4,11 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 
+import org.eclipse.jdt.internal.compiler.*;
 import org.eclipse.jdt.internal.compiler.batch.*;
+import org.eclipse.jdt.internal.compiler.classfmt.*;
 import org.eclipse.jdt.internal.compiler.env.*;
+import org.eclipse.jdt.internal.compiler.impl.*;
 
 import ee.ioc.cs.vsle.editor.*;
 import ee.ioc.cs.vsle.util.*;
@@ -17,11 +20,21 @@ import ee.ioc.cs.vsle.util.FileFuncs.*;
  * on the fly and defines the ProgramContext class for a ProgramRunner instance.
  * Work is delegated to the parent PackageClassLoader whenever possible (except
  * in case of ProgramContext and generated classes).
+ * Generated classes compiled by earlier runners of the same package are
+ * reused instead of being recompiled if their sources and the sources of
+ * generated classes they refer to have not changed.
  */
 public class RunnerClassLoader extends CCL {
 
+    private static final char[] NO_SOURCE = new char[0];
+
     private GenStorage storage;
     private PackageClassLoader parent;
+    // contents of the storage as seen by this loader, NO_SOURCE if missing
+    private Map<String, char[]> sources = new HashMap<String, char[]>();
+    // units checked by this loader, null values stand for outdated ones
+    private Map<String, PackageClassLoader.CompiledUnit> reusableUnits =
+        new HashMap<String, PackageClassLoader.CompiledUnit>();
 
     public RunnerClassLoader(GenStorage storage, PackageClassLoader parent) {
         super(new URL[] { }, parent);
@@ -68,36 +81,168 @@ public class RunnerClassLoader extends CCL {
             throw new ClassNotFoundException("ProgramContext not found!");
         }
 
+        // Reuse the class compiled by an earlier runner if it is up to date
+        byte[] classData = getReusableClass(className);
+        if (classData != null) {
+            rv = defineClass(className, classData, 0, classData.length);
+            putCachedClass(className, rv);
+            return rv;
+        }
+
         // Try to find generated source code and, in case it is found, to
         // compile it before asking the parent.  Otherwise metaclasses
         // in the package directory would get compiled instead of the
         // generated classes.
-        if (storage != null) {
-            char[] source = storage.getCharFileContents(
-                    classToSrcFile(className));
+        char[] source = getSource(className);
 
-            if (source != null) {
-                rv = compile(className, source);
-            }
+        if (source != null) {
+            rv = compile(className, source);
         }
 
         // If everything failed then delegate to the parent
         return rv != null ? rv : parent.loadClass(className);
     }
 
-    
+    @Override
+    protected Class<?> compile(String className, char[] source) {
+        // the package may have got new sources since the last compilation
+        parent.clearMisses();
+        return super.compile(className, source);
+    }
+
     @Override
     protected char[] findSource(String className) {
-        if (storage != null) {
-            return storage.getCharFileContents(classToSrcFile(className));
+        return getSource(className);
+    }
+
+    /**
+     * Reads the source of a generated class.  The storage is read only
+     * once per class so that all the decisions of this loader are based
+     * on the same contents.
+     * @param className class name
+     * @return the source or null if the class is not generated
+     */
+    synchronized char[] getSource(String className) {
+        char[] source = sources.get(className);
+        if (source == null) {
+            source = storage == null
+                ? null
+                : storage.getCharFileContents(classToSrcFile(className));
+            sources.put(className, source == null ? NO_SOURCE : source);
         }
-        return null;
+        return source == NO_SOURCE ? null : source;
+    }
+
+    /**
+     * Returns the bytes of a generated class compiled earlier if the
+     * class is still up to date.
+     * @param className class name, may be the name of an inner class
+     * @return class bytes or null
+     */
+    synchronized byte[] getReusableClass(String className) {
+        String unitName = parent.getUnitName(className);
+        if (unitName == null) {
+            return null;
+        }
+        if (!reusableUnits.containsKey(unitName)) {
+            PackageClassLoader.CompiledUnit unit = parent.getCompiledUnit(unitName);
+            reusableUnits.put(unitName,
+                    isReusable(unit, unitName, new HashSet<String>()) ? unit : null);
+        }
+        PackageClassLoader.CompiledUnit unit = reusableUnits.get(unitName);
+        return unit != null ? unit.classes.get(className) : null;
+    }
+
+    /**
+     * A compiled unit is reusable if its source and the sources of all
+     * generated classes it refers to are the same as at compilation time
+     * and all the referred generated classes are reusable themselves.
+     */
+    private boolean isReusable(PackageClassLoader.CompiledUnit unit,
+            String unitName, Set<String> visited) {
+        if (!visited.add(unitName)) {
+            // already being checked, any failure fails the whole check
+            return true;
+        }
+
+        boolean reusable = unit != null
+            && Arrays.equals(unit.source, getSource(unitName));
+
+        if (reusable) {
+            for (Map.Entry<String, char[]> ref : unit.references.entrySet()) {
+                char[] current = getSource(ref.getKey());
+                if (!Arrays.equals(ref.getValue(), current)
+                        || (current != null && !isReusable(
+                                parent.getCompiledUnit(ref.getKey()), ref.getKey(), visited))) {
+                    reusable = false;
+                    break;
+                }
+            }
+        }
+
+        return reusable;
+    }
+
+    /**
+     * Stores the class files of a compiled generated class in the parent
+     * so that later runners could reuse them.
+     */
+    private synchronized void storeUnit(CompilationResult result) {
+        String unitName = new String(result.getCompilationUnit().getMainTypeName());
+        char[] source = getSource(unitName);
+
+        if (source == null
+                || !Arrays.equals(source, result.getCompilationUnit().getContents())) {
+            return;
+        }
+
+        Map<String, char[]> references = new HashMap<String, char[]>();
+        if (result.simpleNameReferences != null) {
+            for (char[] name : result.simpleNameReferences) {
+                String refName = new String(name);
+                if (!refName.equals(unitName)) {
+                    references.put(refName, getSource(refName));
+                }
+            }
+        }
+
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        for (ClassFile f : result.getClassFiles()) {
+            classes.put(toClassName(f.getCompoundName()), f.getBytes());
+        }
+
+        PackageClassLoader.CompiledUnit unit =
+            new PackageClassLoader.CompiledUnit(source, references, classes);
+        parent.putCompiledUnit(unitName, unit);
+        reusableUnits.put(unitName, unit);
+    }
+
+    @Override
+    protected CompilerOptions getCompilerOptions() {
+        CompilerOptions options = super.getCompilerOptions();
+        // references are needed to decide when compiled classes are reusable
+        options.produceReferenceInfo = true;
+        return options;
+    }
+
+    @Override
+    protected ICompilerRequestor getCompileRequestor() {
+        final ICompilerRequestor requestor = super.getCompileRequestor();
+
+        return new ICompilerRequestor() {
+            public void acceptResult(CompilationResult result) {
+                requestor.acceptResult(result);
+                if (!result.hasErrors()) {
+                    storeUnit(result);
+                }
+            }
+        };
     }
 
     @Override
     protected INameEnvironment getNameEnvironment() {
         if (environment == null) {
-            environment = new GeneratedNameEnvironment(storage,
+            environment = new GeneratedNameEnvironment(this,
                     (parent == null ? null : parent.getNameEnvironment()));
         }
         return environment;
@@ -134,17 +279,18 @@ public class RunnerClassLoader extends CCL {
 
 /**
  * This implementation tries to locate resources from its temporary storage
- * that contains the source files generated from metaclasses.  Failed requests
- * are delegated to the parent environment.
+ * that contains the source files generated from metaclasses.  Up to date
+ * classes compiled earlier are returned in the binary form so that they are
+ * not compiled again.  Failed requests are delegated to the parent environment.
  */
 class GeneratedNameEnvironment implements INameEnvironment {
 
-    private GenStorage storage;
+    private RunnerClassLoader loader;
     private INameEnvironment parentEnv;
 
-    public GeneratedNameEnvironment(GenStorage storage,
+    public GeneratedNameEnvironment(RunnerClassLoader loader,
             INameEnvironment parentEnv) {
-        this.storage = storage;
+        this.loader = loader;
         this.parentEnv = parentEnv;
     }
 
@@ -179,8 +325,18 @@ class GeneratedNameEnvironment implements INameEnvironment {
     private NameEnvironmentAnswer findType(String qualifiedName,
             char[] typeName) {
 
+        byte[] classData = loader.getReusableClass(qualifiedName);
+        if (classData != null) {
+            try {
+                return new NameEnvironmentAnswer(new ClassFileReader(classData,
+                        CCL.classToClassResource(qualifiedName).toCharArray()), null);
+            } catch (ClassFormatException e) {
+                db.p(e);
+            }
+        }
+
         String fileName = CCL.classToSrcFile(qualifiedName);
-        char[] src = storage.getCharFileContents(fileName);
+        char[] src = loader.getSource(qualifiedName);
         if (src != null) {
             return new NameEnvironmentAnswer(
                     new CompilationUnit(src, fileName, null), null);
@@ -198,7 +354,7 @@ class GeneratedNameEnvironment implements INameEnvironment {
     }
 
     public void cleanup() {
-        storage = null;
+        loader = null;
         if (parentEnv != null) {
             parentEnv.cleanup();
             parentEnv = null;
@@ -1,6 +1,7 @@
 package ee.ioc.cs.vsle.editor;
 
 import java.awt.*;
+import java.awt.geom.*;
 import java.awt.image.*;
 import java.io.*;
 import java.util.*;
@@ -14,6 +15,7 @@ import javax.swing.undo.*;
 import ee.ioc.cs.vsle.ccl.*;
 import ee.ioc.cs.vsle.event.*;
 import ee.ioc.cs.vsle.packageparse.*;
+import ee.ioc.cs.vsle.synthesize.IncrementalSynthesizer;
 import ee.ioc.cs.vsle.util.*;
 import ee.ioc.cs.vsle.vclass.*;
 import ee.ioc.cs.vsle.vclass.PackageClass.ComponentType;
@@ -24,6 +26,10 @@ import ee.ioc.cs.vsle.vclass.Point;
 public class Canvas extends JPanel implements ISchemeContainer {
     
     private static final long serialVersionUID = 1L;
+
+    // objects up to this distance outside of the repainted area are painted as well
+    static final int PAINT_MARGIN = 100;
+
     int mouseX; // Mouse X coordinate.
     int mouseY; // Mouse Y coordinate.
     private String workDir;
@@ -46,6 +52,9 @@ public class Canvas extends JPanel implements ISchemeContainer {
     ExecutorService executor;
     float scale = 1.0f;
     boolean enableClassPainter = true;
+    private GlyphCache glyphCache = new GlyphCache();
+    private TileRenderer tileRenderer = new TileRenderer();
+    private final IncrementalSynthesizer synthesizer = new IncrementalSynthesizer();
     UndoManager undoManager;
     UndoableEditSupport undoSupport;
     private boolean actionInProgress = false;
@@ -60,6 +69,8 @@ public class Canvas extends JPanel implements ISchemeContainer {
             if( drawingArea != null && ( e.getElement() == RuntimeProperties.Fonts.OBJECTS 
                     || e.getElement() == RuntimeProperties.Fonts.STATIC ) ) {
 
+                glyphCache.clear();
+                tileRenderer.clear();
                 drawingArea.repaint();
             }
         }
@@ -487,6 +498,9 @@ public class Canvas extends JPanel implements ISchemeContainer {
         if(vPackage==null)
             vPackage = oldPackage;
         
+        glyphCache.clear();
+        tileRenderer.clear();
+        synthesizer.reset();
         resetPalette();
     }
     
@@ -1169,10 +1183,91 @@ public class Canvas extends JPanel implements ISchemeContainer {
 
     public boolean loadScheme(File file) {
         SchemeLoader loader = new SchemeLoader(vPackage);
-        loader.load(file);
+        if ( SwingUtilities.isEventDispatchThread() )
+            loadInBackground( loader, file );
+        else
+            loader.load(file);
         return openScheme(loader);
     } // loadScheme
 
+    /**
+     * Loads the scheme by the executor showing the progress of loading.
+     * The progress dialog is modal, so the scheme cannot be edited, run or
+     * loaded again until it has been loaded or loading has been canceled.
+     */
+    private void loadInBackground( final SchemeLoader loader, final File file ) {
+        final JDialog dialog = new JDialog( SwingUtilities.getWindowAncestor( this ) );
+        dialog.setModal( true );
+        dialog.setTitle( "Loading scheme" );
+        dialog.setDefaultCloseOperation( WindowConstants.DO_NOTHING_ON_CLOSE );
+        dialog.addWindowListener( new java.awt.event.WindowAdapter() {
+
+            @Override
+            public void windowClosing( java.awt.event.WindowEvent e ) {
+                loader.cancel();
+            }
+        } );
+
+        final JProgressBar progressBar = new JProgressBar( 0, 100 );
+        JButton cancel = new JButton( "Cancel" );
+        cancel.addActionListener( new java.awt.event.ActionListener() {
+
+            @Override
+            public void actionPerformed( java.awt.event.ActionEvent e ) {
+                loader.cancel();
+            }
+        } );
+
+        JPanel panel = new JPanel( new BorderLayout( 5, 5 ) );
+        panel.setBorder( BorderFactory.createEmptyBorder( 10, 10, 10, 10 ) );
+        panel.add( new JLabel( "Loading scheme " + file.getName() ), BorderLayout.NORTH );
+        panel.add( progressBar, BorderLayout.CENTER );
+        JPanel buttons = new JPanel( new FlowLayout( FlowLayout.RIGHT, 0, 0 ) );
+        buttons.add( cancel );
+        panel.add( buttons, BorderLayout.SOUTH );
+        dialog.add( panel );
+        dialog.pack();
+        dialog.setLocationRelativeTo( this );
+
+        loader.setProgressListener( new SchemeLoader.ProgressListener() {
+
+            @Override
+            public void progressChanged( long read, long total ) {
+                final int percent = total > 0 ? (int) ( 100 * read / total ) : 0;
+
+                SwingUtilities.invokeLater( new Runnable() {
+
+                    @Override
+                    public void run() {
+                        progressBar.setValue( percent );
+                    }
+                } );
+            }
+        } );
+
+        executor.execute( new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    loader.load( file );
+                } finally {
+                    // disposed on the event dispatch thread, the dialog has been shown by then
+                    SwingUtilities.invokeLater( new Runnable() {
+
+                        @Override
+                        public void run() {
+                            dialog.dispose();
+                        }
+                    } );
+                }
+            }
+        } );
+
+        // blocks until the dialog has been disposed
+        dialog.setVisible( true );
+    }
+
     public void saveScheme( File file ) {
         if(scheme.saveToFile( file )) {
             setStatusBarText( "Scheme saved to: " + file.getName() );
@@ -1291,6 +1386,42 @@ public class Canvas extends JPanel implements ISchemeContainer {
         return drawPorts;
     }
     
+    /**
+     * Draws objects as boxes, used when the scheme is zoomed out so much
+     * that their graphics would not be recognizable.
+     */
+    static void drawBoxes( Graphics2D g2, List<GObj> objects, float scale ) {
+        Path2D boxes = new Path2D.Float();
+        Path2D selected = new Path2D.Float();
+        Path2D lines = new Path2D.Float();
+
+        for ( GObj obj : objects ) {
+            if ( obj instanceof RelObj ) {
+                RelObj rel = (RelObj) obj;
+                lines.moveTo( rel.getX(), rel.getY() );
+                lines.lineTo( rel.getEndX(), rel.getEndY() );
+                continue;
+            }
+
+            Shape box = new Rectangle( obj.getX(), obj.getY(), obj.getRealWidth(), obj.getRealHeight() );
+            if ( obj.getAngle() != 0.0 )
+                box = AffineTransform.getRotateInstance( obj.getAngle(), obj.getCenterX(), obj.getCenterY() )
+                        .createTransformedShape( box );
+
+            ( obj.isSelected() ? selected : boxes ).append( box, false );
+        }
+
+        g2.setStroke( new BasicStroke( 1.0f / scale ) );
+        g2.setColor( Color.lightGray );
+        g2.fill( boxes );
+        g2.setColor( Color.cyan );
+        g2.fill( selected );
+        g2.setColor( Color.darkGray );
+        g2.draw( boxes );
+        g2.draw( selected );
+        g2.draw( lines );
+    }
+
     class DrawingArea extends JPanel {
         private static final long serialVersionUID = 1L;
 
@@ -1317,6 +1448,13 @@ public class Canvas extends JPanel implements ISchemeContainer {
                 g.drawLine( vr.x, i, bx, i );
         }
 
+        private void drawObject( Graphics2D g2, GObj obj, boolean simplified ) {
+            if ( simplified )
+                glyphCache.drawSimplified( obj, g2, scale );
+            else
+                glyphCache.draw( obj, g2, scale );
+        }
+
         @Override
         protected void paintComponent( Graphics g ) {
             Connection rel;
@@ -1324,6 +1462,7 @@ public class Canvas extends JPanel implements ISchemeContainer {
 
             g2.setBackground( getBackground() );
 
+            AffineTransform base = g2.getTransform();
             g2.scale( scale, scale );
 
             Rectangle clip = g2.getClipBounds();
@@ -1340,21 +1479,65 @@ public class Canvas extends JPanel implements ISchemeContainer {
                 g2.setRenderingHint( java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON );
             }
 
-            for (GObj obj : getObjectList()) {
-                obj.drawClassGraphics( g2, scale );
+            // level of detail of zoomed out schemes
+            boolean boxes = scale < RuntimeProperties.getBoxDrawingScale();
+            boolean simplified = boxes || scale < RuntimeProperties.getSimplifiedDrawingScale();
+
+            // objects are rendered by background threads, class painters are run here
+            boolean tiled = RuntimeProperties.isBackgroundRendering()
+                    && tileRenderer.paint( this, g2, base, scale, simplified, boxes, getObjectList() );
+
+            if ( boxes ) {
+                if ( !tiled )
+                    drawBoxes( g2, getObjectList().getObjectsIn( clip ), scale );
+            } else {
+                // texts of objects may be drawn outside of their bounds
+                Rectangle area = new Rectangle( clip );
+                area.grow( PAINT_MARGIN, PAINT_MARGIN );
+
+                List<GObj> visible = tiled ? Collections.<GObj>emptyList() : getObjectList().getObjectsIn( area );
+
+                if ( enableClassPainter && classPainters != null && !classPainters.isEmpty() ) {
+                    // class painters may draw anywhere on the canvas, so they are run for all
+                    // the objects in the order of the list, only visible objects are drawn
+                    Set<GObj> drawn = Collections.newSetFromMap( new IdentityHashMap<GObj, Boolean>() );
+                    drawn.addAll( visible );
 
-                if ( enableClassPainter && classPainters != null ) {
-                    ClassPainter p = classPainters.get( obj );
-                    if ( p != null )
-                        p.paint( g2, scale );
+                    for ( GObj obj : getObjectList() ) {
+                        if ( drawn.contains( obj ) )
+                            drawObject( g2, obj, simplified );
+
+                        ClassPainter p = classPainters.get( obj );
+                        if ( p != null )
+                            p.paint( g2, scale );
+                    }
+                } else {
+                    for ( GObj obj : visible )
+                        drawObject( g2, obj, simplified );
                 }
             }
 
             g2.setColor( Color.blue );
             g2.setStroke(connectionStroke);
-            for ( int i = 0; i < scheme.getConnectionList().size(); i++ ) {
-                rel = scheme.getConnectionList().get( i );
-                rel.drawRelation( g2 );
+            List<Connection> connections = scheme.getConnectionList().getConnectionsIn( clip );
+            if ( simplified ) {
+                // all connections are drawn at once, selected ones are hilighted on top
+                Path2D path = new Path2D.Float();
+                for ( int i = 0; i < connections.size(); i++ ) {
+                    connections.get( i ).addToPath( path );
+                }
+                g2.draw( path );
+
+                for ( int i = 0; i < connections.size(); i++ ) {
+                    rel = connections.get( i );
+                    if ( rel.isSelected() )
+                        rel.drawRelation( g2 );
+                }
+            } else {
+                for ( int i = 0; i < connections.size(); i++ ) {
+                    rel = connections.get( i );
+                    rel.drawRelation( g2 );
+                }
             }
 
             if ( isConnectionBeingAdded() ) {
@@ -1470,6 +1653,14 @@ public class Canvas extends JPanel implements ISchemeContainer {
         return scale;
     }
 
+    @Override
+    public void repaintArea( Rectangle area ) {
+        if ( drawingArea != null ) {
+            drawingArea.repaint( (int) Math.floor( area.x * scale ), (int) Math.floor( area.y * scale ),
+                    (int) Math.ceil( area.width * scale ) + 1, (int) Math.ceil( area.height * scale ) + 1 );
+        }
+    }
+
     public void setScale( float scale ) {
         this.scale = scale;
         recalcPreferredSize();
@@ -1539,6 +1730,11 @@ public class Canvas extends JPanel implements ISchemeContainer {
         m_runners.remove( id );
     }
 
+    @Override
+    public IncrementalSynthesizer getSynthesizer() {
+        return synthesizer;
+    }
+
     public long getLastProgramRunnerID() {
         return m_runners.size() > 0 ? m_runners.get( 0 ) : 0;
     }
@@ -1579,6 +1775,8 @@ public class Canvas extends JPanel implements ISchemeContainer {
             scheme = null;
         }
         vPackage = null;
+        glyphCache.clear();
+        tileRenderer.shutdown();
         classPainters = null;
         currentPainter = null;
         currentObj = null;
@@ -1936,6 +2134,10 @@ public class Canvas extends JPanel implements ISchemeContainer {
             throw new IllegalArgumentException("Scheme cannot be null");
         }
         this.scheme = scheme;
+        glyphCache.clear();
+        tileRenderer.clear();
+        scheme.getObjectList().setIndexed( true );
+        scheme.getConnectionList().setIndexed( true );
     }
 
     /**
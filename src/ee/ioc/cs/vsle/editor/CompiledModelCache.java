@@ -0,0 +1,278 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import ee.ioc.cs.vsle.synthesize.*;
+import ee.ioc.cs.vsle.util.*;
+
+/**
+ * Process wide cache of compiled independent models (see ProgramContext.computeModel).
+ * An entry is keyed by the package class loader, the directory of specifications,
+ * the context class and the names of inputs and outputs, and is valid as long as
+ * the specification files the model was synthesized from stay unchanged.
+ *
+ * The package class loader is referenced weakly and compiled models softly,
+ * so models that are not used any more and their class loaders can be unloaded.
+ * The size of the cache is taken from RuntimeProperties, the least recently
+ * used entry is evicted first.
+ * Concurrent requests of the same model share a single compilation.
+ */
+public class CompiledModelCache {
+
+    private static final CompiledModelCache s_instance = new CompiledModelCache();
+
+    private final Map<Key, Entry> entries;
+    private final Map<Key, FutureTask<Object>> inFlight = new HashMap<Key, FutureTask<Object>>();
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    private CompiledModelCache() {
+        entries = new LinkedHashMap<Key, Entry>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Key, CompiledModelCache.Entry> eldest ) {
+                if ( size() > RuntimeProperties.getModelCacheSize() ) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static CompiledModelCache getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Compiles models
+     */
+    public interface Compiler {
+
+        /**
+         * @param dependencies specification files the model is synthesized from should be added here
+         * @return compiled model
+         * @throws Exception
+         */
+        Object compile( Collection<File> dependencies ) throws Exception;
+    }
+
+    /**
+     * @param loader the class loader of the package
+     * @param workDir the directory of specification classes
+     * @param contextClassName
+     * @param inputNames
+     * @param outputNames
+     * @return key
+     */
+    public static Key createKey( ClassLoader loader, String workDir, String contextClassName, String[] inputNames,
+            String[] outputNames ) {
+        return new Key( loader, workDir, contextClassName, inputNames, outputNames );
+    }
+
+    /**
+     * Returns a cached model or compiles a new one.
+     * If the same model is being compiled by another thread, waits for its result.
+     *
+     * @param key
+     * @param compiler
+     * @return compiled model
+     * @throws Exception if the compilation fails
+     */
+    public Object get( Key key, final Compiler compiler ) throws Exception {
+
+        if ( RuntimeProperties.getModelCacheSize() <= 0 ) {
+            return compiler.compile( new ArrayList<File>() );
+        }
+
+        final Collection<File> dependencies = new ArrayList<File>();
+        FutureTask<Object> task;
+        boolean isOwner = false;
+
+        synchronized ( this ) {
+            purge();
+
+            Entry entry = entries.get( key );
+            Object model = entry != null && entry.isUpToDate() ? entry.getModel() : null;
+
+            if ( model != null ) {
+                hits++;
+
+                if ( RuntimeProperties.isLogDebugEnabled() )
+                    db.p( "Model cache hit, " + getStatistics() );
+
+                return model;
+            }
+
+            if ( entry != null ) {
+                entries.remove( key );
+            }
+
+            task = inFlight.get( key );
+
+            if ( task == null ) {
+                misses++;
+                isOwner = true;
+                task = new FutureTask<Object>( new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        return compiler.compile( dependencies );
+                    }
+                } );
+                inFlight.put( key, task );
+            } else {
+                //the result of the compilation is shared
+                hits++;
+            }
+
+            if ( RuntimeProperties.isLogDebugEnabled() )
+                db.p( "Model cache " + ( isOwner ? "miss" : "hit (in progress)" ) + ", " + getStatistics() );
+        }
+
+        if ( isOwner ) {
+            task.run();
+
+            synchronized ( this ) {
+                inFlight.remove( key );
+            }
+        }
+
+        Object model;
+        try {
+            model = task.get();
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof Exception ) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+
+        if ( isOwner && model != null ) {
+            Map<File, PlanCache.Stamp> stamps = new HashMap<File, PlanCache.Stamp>();
+            for ( File file : dependencies ) {
+                stamps.put( file, PlanCache.stamp( file ) );
+            }
+
+            synchronized ( this ) {
+                entries.put( key, new Entry( model, stamps ) );
+            }
+        }
+
+        return model;
+    }
+
+    /**
+     * Removes entries of unloaded models and unloaded packages
+     */
+    private void purge() {
+        for ( Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if ( entry.getKey().loader.get() == null || entry.getValue().getModel() == null ) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized String getStatistics() {
+        return "size: " + entries.size() + ", hits: " + hits + ", misses: " + misses + ", evictions: " + evictions;
+    }
+
+    /**
+     * Identifies a model, loaders are compared by identity
+     */
+    public static class Key {
+
+        private final WeakReference<ClassLoader> loader;
+        private final String workDir;
+        private final String contextClassName;
+        private final String[] inputNames;
+        private final String[] outputNames;
+        private final int hashcode;
+
+        private Key( ClassLoader loader, String workDir, String contextClassName, String[] inputNames,
+                String[] outputNames ) {
+            this.loader = new WeakReference<ClassLoader>( loader );
+            this.workDir = workDir;
+            this.contextClassName = contextClassName;
+            this.inputNames = inputNames.clone();
+            this.outputNames = outputNames.clone();
+
+            int h = System.identityHashCode( loader );
+            h = 31 * h + workDir.hashCode();
+            h = 31 * h + contextClassName.hashCode();
+            h = 31 * h + Arrays.hashCode( this.inputNames );
+            hashcode = 31 * h + Arrays.hashCode( this.outputNames );
+        }
+
+        @Override
+        public int hashCode() {
+            return hashcode;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( !( obj instanceof Key ) ) {
+                return false;
+            }
+            Key other = (Key) obj;
+            ClassLoader cl = loader.get();
+            return hashcode == other.hashcode
+                    && cl != null && cl == other.loader.get()
+                    && workDir.equals( other.workDir )
+                    && contextClassName.equals( other.contextClassName )
+                    && Arrays.equals( inputNames, other.inputNames )
+                    && Arrays.equals( outputNames, other.outputNames );
+        }
+    }
+
+    private static class Entry {
+
+        private final SoftReference<Object> model;
+        private final Map<File, PlanCache.Stamp> dependencies;
+
+        private Entry( Object model, Map<File, PlanCache.Stamp> dependencies ) {
+            this.model = new SoftReference<Object>( model );
+            this.dependencies = dependencies;
+        }
+
+        private Object getModel() {
+            return model.get();
+        }
+
+        private boolean isUpToDate() {
+            for ( Map.Entry<File, PlanCache.Stamp> dep : dependencies.entrySet() ) {
+                if ( !PlanCache.stamp( dep.getKey() ).equals( dep.getValue() ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Cache of rasterized scheme objects used for painting the canvas.
+ *
+ * Objects that would be drawn identically share an image, the images are
+ * keyed by the class, the scale and rotation, the selection and port states
+ * and the values of the fields shown on the object. An object whose shown
+ * field values change gets a new key and is rasterized again, images that
+ * are not used any more are dropped when the cache is full.
+ *
+ * Simplified objects of zoomed out schemes (see GObj.drawSimplified())
+ * are cached separately, their images depend only on the shapes.
+ *
+ * Objects are rasterized in device pixels, so the cache is used only
+ * when the canvas is scaled without rotation or shearing. A scaled object
+ * may start between device pixels, its image is rasterized at the fraction
+ * of a pixel the object starts at, rounded to 1/SUBPIXELS of a pixel.
+ * Relation objects and groups are always drawn directly.
+ */
+class GlyphCache {
+
+    // area around the bounds of an object that is rasterized for texts drawn outside of the object
+    private static final int MARGIN = 64;
+    private static final long MAX_PIXELS = 4L << 20;
+    private static final int AFFINE_SCALE = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_MASK_SCALE;
+    // positions of images within a device pixel
+    private static final int SUBPIXELS = 8;
+
+    // objects drawing outside of the rasterized area
+    private static final Glyph UNCACHEABLE = new Glyph( null, 0, 0 );
+
+    private final Map<String, Glyph> glyphs = new LinkedHashMap<String, Glyph>( 16, 0.75f, true );
+    private long pixels;
+
+    /**
+     * Drops all the images, has to be called when the graphics of classes or fonts change
+     */
+    void clear() {
+        glyphs.clear();
+        pixels = 0;
+    }
+
+    /**
+     * Paints the object like GObj.drawClassGraphics() does
+     *
+     * @param obj
+     * @param g2 graphics of the canvas
+     * @param scale the scale of the canvas
+     */
+    void draw( GObj obj, Graphics2D g2, float scale ) {
+        draw( obj, g2, scale, false );
+    }
+
+    /**
+     * Paints the object like GObj.drawSimplified() does
+     *
+     * @param obj
+     * @param g2 graphics of the canvas
+     * @param scale the scale of the canvas
+     */
+    void drawSimplified( GObj obj, Graphics2D g2, float scale ) {
+        draw( obj, g2, scale, true );
+    }
+
+    private void draw( GObj obj, Graphics2D g2, float scale, boolean simplified ) {
+
+        AffineTransform transform = g2.getTransform();
+
+        if ( obj instanceof RelObj || obj instanceof GObjGroup || ( transform.getType() & ~AFFINE_SCALE ) != 0 ) {
+            drawDirectly( obj, g2, scale, simplified );
+            return;
+        }
+
+        // the device pixel the object starts in and the position within the pixel
+        Point2D origin = transform.transform( new Point2D.Double( obj.getX(), obj.getY() ), null );
+        long x = Math.round( origin.getX() * SUBPIXELS );
+        long y = Math.round( origin.getY() * SUBPIXELS );
+        int subX = (int) ( x & ( SUBPIXELS - 1 ) );
+        int subY = (int) ( y & ( SUBPIXELS - 1 ) );
+
+        String key = getKey( obj, g2, transform, simplified, subX, subY );
+        Glyph glyph = glyphs.get( key );
+
+        if ( glyph == null ) {
+            glyph = render( obj, g2, transform, scale, simplified, (double) subX / SUBPIXELS, (double) subY / SUBPIXELS );
+            put( key, glyph );
+        }
+
+        if ( glyph == UNCACHEABLE ) {
+            drawDirectly( obj, g2, scale, simplified );
+        } else if ( glyph.image != null ) {
+            g2.setTransform( AffineTransform.getTranslateInstance( ( x - subX ) / SUBPIXELS, ( y - subY ) / SUBPIXELS ) );
+            g2.drawImage( glyph.image, glyph.x, glyph.y, null );
+            g2.setTransform( transform );
+        }
+    }
+
+    private static void drawDirectly( GObj obj, Graphics2D g2, float scale, boolean simplified ) {
+        if ( simplified ) {
+            obj.drawSimplified( g2, scale );
+        } else {
+            obj.drawClassGraphics( g2, scale );
+        }
+    }
+
+    private void put( String key, Glyph glyph ) {
+
+        glyphs.put( key, glyph );
+        pixels += glyph.getPixels();
+
+        for ( Iterator<Glyph> it = glyphs.values().iterator(); pixels > MAX_PIXELS && it.hasNext(); ) {
+            pixels -= it.next().getPixels();
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the key of everything the drawing of the object depends on except the position
+     * in whole device pixels
+     */
+    private static String getKey( GObj obj, Graphics2D g2, AffineTransform transform, boolean simplified,
+            int subX, int subY ) {
+
+        StringBuilder key = new StringBuilder( simplified ? "~" : "" ).append( obj.getClassName() );
+
+        key.append( '|' ).append( subX ).append( ',' ).append( subY );
+
+        key.append( '|' ).append( transform.getScaleX() ).append( ',' ).append( transform.getScaleY() )
+                .append( '|' ).append( g2.getColor().getRGB() ).append( ',' ).append( g2.getStroke().hashCode() )
+                .append( ',' ).append( g2.getFont().hashCode() )
+                .append( ',' ).append( g2.getRenderingHint( RenderingHints.KEY_ANTIALIASING ) )
+                .append( ',' ).append( g2.getRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING ) );
+
+        appendState( obj, key, simplified );
+
+        return key.toString();
+    }
+
+    /**
+     * Appends the state of the object its drawing depends on, except the
+     * class, the position and the graphics it is drawn on
+     *
+     * @param obj
+     * @param key
+     * @param simplified true if the object is drawn by GObj.drawSimplified()
+     */
+    private static void appendState( GObj obj, StringBuilder key, boolean simplified ) {
+
+        key.append( '|' ).append( obj.getAngle() )
+                .append( '|' ).append( obj.getWidth() ).append( ',' ).append( obj.getHeight() )
+                .append( ',' ).append( obj.getXsize() ).append( ',' ).append( obj.getYsize() )
+                .append( ',' ).append( obj.getPortOffsetX1() ).append( ',' ).append( obj.getPortOffsetY1() )
+                .append( ',' ).append( obj.getPortOffsetX2() ).append( ',' ).append( obj.getPortOffsetY2() )
+                .append( '|' ).append( obj.isSelected() ? 'S' : '-' ).append( obj.isStatic() ? 's' : '-' )
+                .append( obj.isSuperClass() ? 'C' : '-' );
+
+        if ( simplified ) {
+            return;
+        }
+
+        if ( obj.isDrawInstanceName() ) {
+            key.append( "|N" ).append( obj.getName() );
+        }
+
+        if ( obj.isDrawPorts() ) {
+            key.append( "|P" );
+            for ( Port port : obj.getPortList() ) {
+                key.append( port.isSelected() || port.isConnected() || port.isHilighted() ? '1' : '0' );
+            }
+        }
+
+        for ( ClassField field : obj.getFields() ) {
+            boolean known = field.isKnown() && field.getKnownGraphics() != null;
+            if ( field.getDefaultGraphics() != null || known ) {
+                key.append( '|' ).append( field.getName() ).append( known ? '!' : '=' ).append( field.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Hashes the same state as {@link #appendState(GObj, StringBuilder, boolean)}
+     * without allocating, used for checking on each paint if an object has changed
+     *
+     * @param obj
+     * @param hash the hash to continue
+     * @param simplified true if the object is drawn by GObj.drawSimplified()
+     * @return
+     */
+    static long hashState( GObj obj, long hash, boolean simplified ) {
+
+        hash = mix( hash, Double.doubleToLongBits( obj.getAngle() ) );
+        hash = mix( hash, ( (long) obj.getWidth() << 32 ) | ( obj.getHeight() & 0xffffffffL ) );
+        hash = mix( hash, ( (long) Float.floatToIntBits( obj.getXsize() ) << 32 )
+                | ( Float.floatToIntBits( obj.getYsize() ) & 0xffffffffL ) );
+        hash = mix( hash, ( (long) obj.getPortOffsetX1() << 32 ) | ( obj.getPortOffsetY1() & 0xffffffffL ) );
+        hash = mix( hash, ( (long) obj.getPortOffsetX2() << 32 ) | ( obj.getPortOffsetY2() & 0xffffffffL ) );
+        hash = mix( hash, ( obj.isSelected() ? 1 : 0 ) | ( obj.isStatic() ? 2 : 0 ) | ( obj.isSuperClass() ? 4 : 0 ) );
+
+        if ( simplified ) {
+            return hash;
+        }
+
+        hash = mix( hash, obj.isDrawInstanceName() ? hashString( obj.getName() ) : 0 );
+
+        if ( obj.isDrawPorts() ) {
+            for ( Port port : obj.getPortList() ) {
+                hash = mix( hash, port.isSelected() || port.isConnected() || port.isHilighted() ? 1 : 0 );
+            }
+        }
+
+        for ( ClassField field : obj.getFields() ) {
+            boolean known = field.isKnown() && field.getKnownGraphics() != null;
+            if ( field.getDefaultGraphics() != null || known ) {
+                hash = mix( hash, hashString( field.getName() ) );
+                hash = mix( hash, ( known ? 1L << 32 : 0 ) | ( hashString( field.getValue() ) & 0xffffffffL ) );
+            }
+        }
+
+        return hash;
+    }
+
+    static long mix( long hash, long value ) {
+        hash = ( hash ^ value ) * 0x9e3779b97f4a7c15L;
+        return hash ^ ( hash >>> 31 );
+    }
+
+    private static long hashString( String s ) {
+        return s == null ? -1 : ( (long) s.length() << 32 ) | ( s.hashCode() & 0xffffffffL );
+    }
+
+    /**
+     * @param subX position of the object within a device pixel, 0 <= subX < 1
+     * @param subY
+     */
+    private static Glyph render( GObj obj, Graphics2D g2, AffineTransform transform, float scale, boolean simplified,
+            double subX, double subY ) {
+
+        Rectangle area = obj.getCanvasBounds();
+        area.grow( MARGIN, MARGIN );
+
+        double sx = transform.getScaleX();
+        double sy = transform.getScaleY();
+
+        // device pixels relative to the position of the object
+        int x0 = (int) Math.floor( ( area.x - obj.getX() ) * sx );
+        int y0 = (int) Math.floor( ( area.y - obj.getY() ) * sy );
+        int w = (int) Math.ceil( area.width * sx ) + 1;
+        int h = (int) Math.ceil( area.height * sy ) + 1;
+
+        if ( (long) w * h > MAX_PIXELS / 16 ) {
+            return UNCACHEABLE;
+        }
+
+        BufferedImage image = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
+        Graphics2D ig = image.createGraphics();
+        ig.setRenderingHints( g2.getRenderingHints() );
+        ig.setColor( g2.getColor() );
+        ig.setStroke( g2.getStroke() );
+        ig.setFont( g2.getFont() );
+        ig.translate( subX - x0, subY - y0 );
+        ig.scale( sx, sy );
+        ig.translate( -obj.getX(), -obj.getY() );
+        drawDirectly( obj, ig, scale, simplified );
+        ig.dispose();
+
+        int[] argb = image.getRGB( 0, 0, w, h, null, 0, w );
+        int minX = w, minY = h, maxX = -1, maxY = -1;
+
+        for ( int y = 0; y < h; y++ ) {
+            for ( int x = 0; x < w; x++ ) {
+                if ( ( argb[y * w + x] >>> 24 ) != 0 ) {
+                    minX = Math.min( minX, x );
+                    maxX = Math.max( maxX, x );
+                    minY = Math.min( minY, y );
+                    maxY = Math.max( maxY, y );
+                }
+            }
+        }
+
+        if ( maxX < 0 ) {
+            return new Glyph( null, 0, 0 );
+        } else if ( minX == 0 || minY == 0 || maxX == w - 1 || maxY == h - 1 ) {
+            return UNCACHEABLE;
+        }
+
+        // a compatible image can be kept in video memory
+        int gw = maxX - minX + 1;
+        int gh = maxY - minY + 1;
+        BufferedImage glyph = g2.getDeviceConfiguration().createCompatibleImage( gw, gh, Transparency.TRANSLUCENT );
+        Graphics2D gg = glyph.createGraphics();
+        gg.setComposite( AlphaComposite.Src );
+        gg.drawImage( image.getSubimage( minX, minY, gw, gh ), 0, 0, null );
+        gg.dispose();
+
+        return new Glyph( glyph, x0 + minX, y0 + minY );
+    }
+
+    private static class Glyph {
+
+        private final Image image;
+        // device pixels relative to the position of the object
+        private final int x;
+        private final int y;
+
+        Glyph( Image image, int x, int y ) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+
+        long getPixels() {
+            return image == null ? 1 : (long) image.getWidth( null ) * image.getHeight( null );
+        }
+    }
+}
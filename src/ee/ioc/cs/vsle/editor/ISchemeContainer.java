@@ -1,5 +1,6 @@
 package ee.ioc.cs.vsle.editor;
 
+import ee.ioc.cs.vsle.synthesize.*;
 import ee.ioc.cs.vsle.vclass.*;
 
 /**
@@ -57,4 +58,19 @@ public interface ISchemeContainer {
      * Calls repaint
      */
     public void repaint();
+    
+    /**
+     * Repaints an area of the scheme
+     * 
+     * @param area in scheme coordinates
+     */
+    public void repaintArea( java.awt.Rectangle area );
+
+    /**
+     * Returns the synthesizer shared by all runners of the scheme,
+     * it remembers the previous synthesis
+     * 
+     * @return synthesizer
+     */
+    public IncrementalSynthesizer getSynthesizer();
 }
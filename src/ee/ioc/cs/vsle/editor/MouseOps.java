@@ -280,11 +280,11 @@ class MouseOps extends MouseInputAdapter {
 
         if ( State.dragBreakPoint.equals( state ) ) {
             if ( RuntimeProperties.getSnapToGrid() ) {
-                draggedBreakPoint.x = Math.round( (float) x / RuntimeProperties.getGridStep() ) * RuntimeProperties.getGridStep();
-                draggedBreakPoint.y = Math.round( (float) y / RuntimeProperties.getGridStep() ) * RuntimeProperties.getGridStep();
+                draggedBreakPointConn.moveBreakPoint( draggedBreakPoint,
+                        Math.round( (float) x / RuntimeProperties.getGridStep() ) * RuntimeProperties.getGridStep(),
+                        Math.round( (float) y / RuntimeProperties.getGridStep() ) * RuntimeProperties.getGridStep() );
             } else {
-                draggedBreakPoint.x = x;
-                draggedBreakPoint.y = y;
+                draggedBreakPointConn.moveBreakPoint( draggedBreakPoint, x, y );
             }
         } else if ( State.drag.equals( state ) ) {
             int moveX, moveY;
@@ -360,6 +360,7 @@ class MouseOps extends MouseInputAdapter {
                 canvas.getConnections().clearSelected();
                 c.setSelected(true);
                 draggedBreakPoint = new Point(x, y);
+                draggedBreakPointConn = c;
                 c.addBreakPoint(c.indexOf(x, y), draggedBreakPoint);
                 setState(State.dragBreakPoint);
             }
@@ -600,7 +601,7 @@ class MouseOps extends MouseInputAdapter {
                      - (draggedBreakPoint.y - p1.y) * (p2.x - p1.x);
 
             if (Math.abs(d) < BP_REMOVE_THRESHOLD) {
-                ps.remove(draggedBreakPoint);
+                draggedBreakPointConn.removeBreakPoint(n);
                 draggedBreakPoint = null;
             }
 
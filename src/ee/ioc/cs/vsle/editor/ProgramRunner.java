@@ -10,8 +10,12 @@ import static ee.ioc.cs.vsle.util.TypeUtil.TYPE_LONG;
 import static ee.ioc.cs.vsle.util.TypeUtil.TYPE_SHORT;
 
 import java.awt.BorderLayout;
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -20,8 +24,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,20 +42,27 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeNode;
 
 import ee.ioc.cs.vsle.api.ComputeModelException;
+import ee.ioc.cs.vsle.api.IComputable;
 import ee.ioc.cs.vsle.api.RerunProgramException;
 import ee.ioc.cs.vsle.api.RunningProgramException;
 import ee.ioc.cs.vsle.api.Scheme;
+import ee.ioc.cs.vsle.api.Subtask;
 import ee.ioc.cs.vsle.api.TerminateProgramException;
 import ee.ioc.cs.vsle.ccl.CCL;
 import ee.ioc.cs.vsle.ccl.CompileException;
 import ee.ioc.cs.vsle.event.EventSystem;
 import ee.ioc.cs.vsle.parser.SpecificationLoader;
+import ee.ioc.cs.vsle.synthesize.AlgorithmVisualizer;
 import ee.ioc.cs.vsle.synthesize.AnnotatedClass;
 import ee.ioc.cs.vsle.synthesize.ClassList;
 import ee.ioc.cs.vsle.synthesize.CodeGenerator;
 import ee.ioc.cs.vsle.synthesize.EquationException;
+import ee.ioc.cs.vsle.synthesize.EvaluationAlgorithm;
+import ee.ioc.cs.vsle.synthesize.IncrementalSynthesizer;
 import ee.ioc.cs.vsle.synthesize.LineErrorException;
 import ee.ioc.cs.vsle.synthesize.MutualDeclarationException;
+import ee.ioc.cs.vsle.synthesize.PlanCache;
+import ee.ioc.cs.vsle.synthesize.ProgramInterpreter;
 import ee.ioc.cs.vsle.synthesize.SpecParseException;
 import ee.ioc.cs.vsle.synthesize.SpecParser;
 import ee.ioc.cs.vsle.synthesize.Synthesizer;
@@ -86,7 +97,7 @@ public class ProgramRunner {
     private long m_id;
     private ProgramRunnerEventListener m_lst = new ProgramRunnerEventListener();
 
-    private Object genObject;
+    private volatile Object genObject;
 
     private ObjectList objects;
     private ClassList classList;
@@ -96,6 +107,10 @@ public class ProgramRunner {
     private ISchemeContainer schemeContainer;
     private GenStorage storage;
     private ComputedValuesHandler valueHandler;
+    private IncrementalSynthesizer synthesizer;
+    //the algorithm of the last synthesized program and the program text generated from it
+    private EvaluationAlgorithm algorithm;
+    private String algorithmSource;
 
     public ProgramRunner( ISchemeContainer canvas ) {
 
@@ -103,6 +118,7 @@ public class ProgramRunner {
         ProgramRunnerEvent.registerListener( m_lst );
 
         schemeContainer = canvas;
+        synthesizer = canvas.getSynthesizer();
 
         schemeContainer.registerRunner( m_id );
 
@@ -179,7 +195,20 @@ public class ProgramRunner {
         try {
             GenStorage fs = getStorage();
             Synthesizer.makeProgram( genCode, classList, mainClassName, schemeContainer.getWorkDir(), fs );
-            genObject = compile( fs, schemeContainer, mainClassName );
+
+            ProgramInterpreter interpreter = null;
+            //the program text may come from elsewhere, e.g. from the program text editor
+            if ( RuntimeProperties.isInterpretPrograms() && algorithm != null && genCode.equals( algorithmSource )
+                    && !TieredExecution.isCompiled( genCode ) ) {
+                interpreter = ProgramInterpreter.create( algorithm, classList, getAssumptions() );
+            }
+
+            if ( interpreter != null ) {
+                interpreter.setClassLoader( newClassLoader( fs, schemeContainer ) );
+                genObject = interpreter;
+            } else {
+                genObject = compile( fs, schemeContainer, mainClassName );
+            }
         } catch ( NoClassDefFoundError e ) {
             JOptionPane.showMessageDialog( null, "Class not found:\n"
                     + e.getMessage(), "Execution error",
@@ -202,17 +231,29 @@ public class ProgramRunner {
 
         long start = System.currentTimeMillis();
         
-        ClassLoader classLoader = cont.getPackage().newRunnerClassLoader( fs );
-        Class<?> pc = classLoader.loadClass( CCL.PROGRAM_CONTEXT );
+        ClassLoader classLoader = newClassLoader( fs, cont );
         Class<?> clas = classLoader.loadClass( className );
         Object object = clas.newInstance();
-        pc.getMethod( "setScheme", Scheme.class ).invoke( null,
-                cont.getScheme() );
 
         db.p( "Compilation time: " + (System.currentTimeMillis() - start) + "ms.");
         return object;
     }
 
+    /**
+     * Creates a class loader for generated classes with ProgramContext 
+     * bound to the scheme of the container
+     */
+    private static ClassLoader newClassLoader( GenStorage fs, ISchemeContainer cont ) throws ClassNotFoundException,
+            IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+
+        ClassLoader classLoader = cont.getPackage().newRunnerClassLoader( fs );
+        Class<?> pc = classLoader.loadClass( CCL.PROGRAM_CONTEXT );
+        pc.getMethod( "setScheme", Scheme.class ).invoke( null,
+                cont.getScheme() );
+
+        return classLoader;
+    }
+
     private void generateProgramSource( final ProgramRunnerEvent event, final int operation, final boolean compute ) {
 
         new Thread( "PlanningThread_" + System.currentTimeMillis() ) {
@@ -267,6 +308,24 @@ public class ProgramRunner {
             if ( RuntimeProperties.isLogInfoEnabled() )
                 db.p( "Computing " + mainClassName );
 
+            String cacheKey = PlanCache.createKey( fullSpec, schemeContainer.getWorkDir(), computeAll );
+            PlanCache.Entry cached = PlanCache.getInstance().get( cacheKey );
+            
+            if ( cached != null ) {
+                if ( RuntimeProperties.isLogInfoEnabled() )
+                    db.p( "Using previously synthesized program" );
+                
+                classList = cached.getClassList();
+                addFoundVars( cached.getFoundVars() );
+                setAssumptions( new ArrayList<Var>( cached.getAssumptions() ) );
+                setAlgorithm( cached.getAlgorithm(), cached.getProgramText() );
+                
+                if( RuntimeProperties.isShowAlgorithm() ) {
+                    AlgorithmVisualizer.getInstance().addNewTab( mainClassName, cached.getAlgorithm() );
+                }
+                return cached.getProgramText();
+            }
+
             Set<String> schemeObjects = new HashSet<String>();
 
             for (GObj gObj : schemeContainer.getObjectList()) {
@@ -285,7 +344,8 @@ public class ProgramRunner {
             System.out.println("Done " + (System.currentTimeMillis() - start));
             getAssumptions().clear();
 
-            return Synthesizer.makeProgramText( fullSpec, computeAll, classList, mainClassName, this );
+            return synthesizer.makeProgramText( fullSpec, computeAll, classList, mainClassName, this, 
+                    cacheKey, schemeContainer.getWorkDir() );
             
         } catch ( Throwable ex ) {
             reportException(ex);
@@ -362,11 +422,20 @@ public class ProgramRunner {
     }
 
     /**
-     * Traverses the objects and for each class field whose 
-     * values are known calls setValue, 
-     * then calls a scheme repaint
+     * Requests the propagation of computed values to the scheme.
+     * Propagations and repaints requested within a frame interval 
+     * are coalesced by the scheduler of the scheme container.
      */
     private void propagate() {
+        SchemeUpdateScheduler.getInstance( schemeContainer ).requestPropagation( this );
+    }
+
+    /**
+     * Traverses the objects and for each class field whose 
+     * values are known calls setValue.
+     * The scheme is repainted by the scheduler afterwards.
+     */
+    void propagateValues() {
         try {
 
             if ( genObject == null || isWorking() )
@@ -393,8 +462,6 @@ public class ProgramRunner {
             if ( RuntimeProperties.isLogDebugEnabled() ) {
                 e.printStackTrace( System.err );
             }
-        } finally {
-            schemeContainer.repaint();
         }
     }
 
@@ -425,11 +492,19 @@ public class ProgramRunner {
                         db.p( args[i].getClass() + " " + args[i] );
                     }
 
-                    Class<?> clas = genObject.getClass();
-                    
-                    ClassLoader cl = clas.getClassLoader();
-                    initProgramContext(ProgramRunner.this, cl);
-                    Method method = clas.getMethod( "compute", Object[].class );
+                    Object program = genObject;
+
+                    if ( program instanceof ProgramInterpreter ) {
+                        ProgramInterpreter interpreter = (ProgramInterpreter) program;
+                        //switch to the class compiled in the background
+                        if ( TieredExecution.isCompiled( algorithmSource ) ) {
+                            genObject = program = interpreter.getClassLoader().loadClass( mainClassName ).newInstance();
+                        } else {
+                            TieredExecution.countRun( algorithmSource, interpreter, mainClassName );
+                        }
+                    }
+
+                    initProgramContext(ProgramRunner.this.getId(), getProgramClass( program ));
                     db.p( "Running... ( NB! The thread is alive until the next message --> ) " + Thread.currentThread().getName() );
 
                     setWorking( true );
@@ -437,7 +512,7 @@ public class ProgramRunner {
                     RunningThreadManager.addThread( ProgramRunner.this.getId(), this );
 
                     try {
-                        method.invoke( genObject, new Object[] { args } );
+                        invokeCompute( program, args );
                     } catch ( InvocationTargetException ex ) {
                         /*
                          * Stacktrace is printed so that there is some feedback
@@ -524,44 +599,36 @@ public class ProgramRunner {
      * @param inputValues
      * @return
      */
-    public Object[] computeModel(String contextClassName, String[] inputNames,
-            String[] outputNames, Object[] inputValues, boolean cacheCompiledModel )
+    public Object[] computeModel(final String contextClassName, final String[] inputNames,
+            final String[] outputNames, Object[] inputValues, boolean cacheCompiledModel )
     {
         long start = System.currentTimeMillis();
         try {
-            Object genObj = null;
-            int hash = -1;
+            Object genObj;
             
             if(cacheCompiledModel) {
-                hash = calcHashForSubtask( contextClassName, inputNames, outputNames );
-                genObj = getFromCache( hash );
-            }
-            
-            if ( genObj == null ) {
-                //synthesize
-                StringBuilder result = new StringBuilder();
-                ClassList classes = new ClassList();
-                String generatedClassName = Synthesizer
-                        .computeIndependentModel( contextClassName,
-                                schemeContainer.getWorkDir(), inputNames,
-                                outputNames, classes, result );
-                //save generated code
-                GenStorage fs = getStorage();
-                Synthesizer.makeProgram( result.toString(), classes,
-                        generatedClassName, schemeContainer.getWorkDir(), fs );
-                //compile
-                genObj = compile( fs, schemeContainer, generatedClassName );
-                if(cacheCompiledModel)
-                    cacheObject( hash, genObj );
+                CompiledModelCache.Key key = CompiledModelCache.createKey( 
+                        schemeContainer.getPackage().getPackageClassLoader(), schemeContainer.getWorkDir(), 
+                        contextClassName, inputNames, outputNames );
+                genObj = CompiledModelCache.getInstance().get( key, new CompiledModelCache.Compiler() {
+
+                    @Override
+                    public Object compile( Collection<File> dependencies ) throws Exception {
+                        return compileModel( contextClassName, inputNames, outputNames, dependencies );
+                    }
+                } );
+            } else {
+                genObj = compileModel( contextClassName, inputNames, outputNames, new ArrayList<File>() );
             }
 
             if(genObj == null)
                 throw new ComputeModelException( "Unable to compile " + contextClassName );
             //execute
-            Class<?> clas = genObj.getClass();        
-            ClassLoader cl = clas.getClassLoader();
-            initProgramContext(ProgramRunner.this, cl);
-            Method method = clas.getMethod( "run", Object[].class );
+            initProgramContext(ProgramRunner.this.getId(), getProgramClass( genObj ));
+            if ( genObj instanceof Subtask ) {
+                return ((Subtask)genObj).run( inputValues );
+            }
+            Method method = genObj.getClass().getMethod( "run", Object[].class );
             return (Object[])method.invoke( genObj, new Object[] { inputValues } );
         } catch ( SpecParseException e ) {
             reportException( e );
@@ -575,43 +642,116 @@ public class ProgramRunner {
         }
     }
     
-    private static Map<Integer, Object> objectCache = new Hashtable<Integer, Object>();
-    
-    private Object getFromCache( int hash ) {
-        return objectCache.get( hash );
-    }
-
-    private void cacheObject( int hash, Object obj ) {
-        objectCache.put( hash, obj );
+    /**
+     * Synthesizes and compiles a model
+     * 
+     * @param dependencies specification files of the model are added here
+     * @return an instance of the compiled model
+     */
+    private Object compileModel( String contextClassName, String[] inputNames,
+            String[] outputNames, Collection<File> dependencies ) throws Exception {
+        //synthesize
+        StringBuilder result = new StringBuilder();
+        ClassList classes = new ClassList();
+        ProgramInterpreter[] interpreter = RuntimeProperties.isInterpretPrograms() 
+                ? new ProgramInterpreter[1] : null;
+        String generatedClassName = Synthesizer
+                .computeIndependentModel( contextClassName,
+                        schemeContainer.getWorkDir(), inputNames,
+                        outputNames, classes, result, interpreter );
+        for ( AnnotatedClass ac : classes ) {
+            dependencies.add( new File( schemeContainer.getWorkDir(), ac.getName() + ".java" ) );
+        }
+        //save generated code
+        GenStorage fs = getStorage();
+        if ( generatedClassName == null ) {
+            //only classes of the model are compiled
+            Synthesizer.makeClasses( classes, schemeContainer.getWorkDir(), fs );
+            interpreter[0].setClassLoader( newClassLoader( fs, schemeContainer ) );
+            return new TieredExecution.Model( interpreter[0], fs );
+        }
+        Synthesizer.makeProgram( result.toString(), classes,
+                generatedClassName, schemeContainer.getWorkDir(), fs );
+        //compile
+        return compile( fs, schemeContainer, generatedClassName );
     }
     
-    private int calcHashForSubtask( String name, String[] inputNames,
-            String[] outputNames ) {
-        return new StringBuilder( name ).append( Arrays.toString( inputNames ) )
-                .append( Arrays.toString( outputNames ) ).toString().hashCode();
+    /**
+     * Setters of ProgramContext attributes, looked up once per generated class.
+     * Each generated program has its own ProgramContext class.
+     */
+    private static final ClassValue<MethodHandle[]> s_contextSetters = new ClassValue<MethodHandle[]>() {
+
+        @Override
+        protected MethodHandle[] computeValue( Class<?> programClass ) {
+            try {
+                Class<?> pc = programClass.getClassLoader().loadClass( CCL.PROGRAM_CONTEXT );
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                return new MethodHandle[] {
+                        lookup.findStatic( pc, "setThread", MethodType.methodType( void.class, Thread.class ) ),
+                        lookup.findStatic( pc, "setRunnerId", MethodType.methodType( void.class, long.class ) ) };
+            } catch ( ReflectiveOperationException e ) {
+                throw new IllegalStateException( "Unable to bind " + CCL.PROGRAM_CONTEXT, e );
+            }
+        }
+    };
+
+    /**
+     * @param program generated program or an interpreter
+     * @return the class whose loader defines ProgramContext of the program
+     */
+    private static Class<?> getProgramClass( Object program ) throws ClassNotFoundException {
+        
+        if ( program instanceof ProgramInterpreter ) {
+            return ( (ProgramInterpreter) program ).getClassLoader().loadClass( CCL.PROGRAM_CONTEXT );
+        } else if ( program instanceof TieredExecution.Model ) {
+            return ( (TieredExecution.Model) program ).getClassLoader().loadClass( CCL.PROGRAM_CONTEXT );
+        }
+        return program.getClass();
     }
-    
+
     /**
      * Sets required attributes to ProgramContext before execution
      * 
-     * @param runner
-     * @param cl
-     * @throws ClassNotFoundException
-     * @throws IllegalArgumentException
-     * @throws SecurityException
-     * @throws IllegalAccessException
-     * @throws InvocationTargetException
-     * @throws NoSuchMethodException
+     * @param runnerId id of the runner
+     * @param programClass generated class
      */
-    private static void initProgramContext( ProgramRunner runner, ClassLoader cl )
-            throws ClassNotFoundException, IllegalArgumentException,
-            SecurityException, IllegalAccessException,
-            InvocationTargetException, NoSuchMethodException {
+    static void initProgramContext( long runnerId, Class<?> programClass ) {
+        
+        MethodHandle[] setters = s_contextSetters.get( programClass );
+        try {
+            setters[0].invokeExact( Thread.currentThread() );
+            setters[1].invokeExact( runnerId );
+        } catch ( RuntimeException e ) {
+            throw e;
+        } catch ( Error e ) {
+            throw e;
+        } catch ( Throwable e ) {
+            //setters do not throw checked exceptions
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Runs a generated program. Programs implementing IComputable are called 
+     * directly, others through reflection. In both cases exceptions thrown by 
+     * the program are wrapped into InvocationTargetException.
+     * 
+     * @param program
+     * @param args
+     */
+    static void invokeCompute( Object program, Object[] args ) throws InvocationTargetException,
+            IllegalAccessException, NoSuchMethodException {
         
-        Class<?> pc = cl.loadClass( CCL.PROGRAM_CONTEXT );
-        pc.getMethod( "setThread", Thread.class ).invoke( null,
-                Thread.currentThread() );
-        pc.getMethod( "setRunnerId", long.class ).invoke( null, runner.getId() );
+        if ( program instanceof IComputable ) {
+            try {
+                ((IComputable)program).compute( args );
+            } catch ( Throwable e ) {
+                throw new InvocationTargetException( e );
+            }
+        } else {
+            program.getClass().getMethod( "compute", Object[].class ).invoke( program, new Object[] { args } );
+        }
     }
 
     /**
@@ -748,6 +888,15 @@ public class ProgramRunner {
         return assumptions;
     }
 
+    /**
+     * @param algorithm the algorithm of the synthesized program
+     * @param programText the program generated from the algorithm
+     */
+    public void setAlgorithm( EvaluationAlgorithm algorithm, String programText ) {
+        this.algorithm = algorithm;
+        this.algorithmSource = programText;
+    }
+
     private GenStorage getStorage() {
         if (storage == null) {
             storage = RuntimeProperties.isDumpGenerated()
@@ -768,6 +917,10 @@ public class ProgramRunner {
     
     private class ComputedValuesHandler {
 
+        //resolved fields of variables of the generated class
+        private final Map<String, Field[]> fieldPaths = new HashMap<String, Field[]>();
+        private Class<?> fieldPathsClass;
+
         /**
          * Opens a dialog displaying a tree of computed values
          * 
@@ -946,22 +1099,20 @@ public class ProgramRunner {
         private String getVarValueAsString( String fullName ) throws IllegalArgumentException, IllegalAccessException, SecurityException,
         NoSuchFieldException {
 
-            Class<?> clas;
-            Field f;
-
-            StringTokenizer st = new StringTokenizer( fullName, "." );
             Object obj = genObject;
-            clas = genObject.getClass();
 
-            while ( st.hasMoreElements() ) {
+            if ( obj instanceof ProgramInterpreter ) {
+                Object value = ( (ProgramInterpreter) obj ).getValue( fullName );
+                return value instanceof Float ? value + "f" : objectToString( value );
+            }
 
-                String s = st.nextToken();
+            Field[] path = getFieldPath( obj.getClass(), fullName );
 
-                // show values of variables declared in superclasses as well
-                f = clas.getField( s );// getDeclarField(s);
+            for ( int k = 0; k < path.length; k++ ) {
 
-                if ( st.hasMoreElements() ) {
-                    clas = f.getType();
+                Field f = path[k];
+
+                if ( k < path.length - 1 ) {
                     obj = f.get( obj );
                 } else {
                     Class<?> c = f.getType();
@@ -983,25 +1134,7 @@ public class ProgramRunner {
                     } else if ( c.toString().equals( TYPE_BYTE ) ) {
                         return Byte.toString( f.getByte( obj ) );
                     } else {
-                        Object o = f.get( obj );
-                        if(o == null)
-                        	return null;
-                        	//throw new RuntimeException("Unable to get field's value from object: " + "(" + obj.getClass().getName() + ")" + obj + "." + f.getName() );
-                        if ( o.getClass().isArray() ) {
-                            String result = "";
-                            for ( int i = 0; i < Array.getLength( o ); i++ ) {
-                                result += Array.get( o, i ) + TypeUtil.ARRAY_TOKEN;
-                            }
-                            return result;
-//                            String result = "[";
-//                            for ( int i = 0; i < Array.getLength( o ); i++ ) {
-//                                if(i > 0)
-//                                    result += ", ";
-//                                result += Array.get( o, i );
-//                            }
-//                            return result + "]";
-                        }
-                        return o.toString();
+                        return objectToString( f.get( obj ) );
                     }
                 }
             }
@@ -1009,6 +1142,60 @@ public class ProgramRunner {
             return null;
         }
 
+        private String objectToString( Object o ) {
+            if(o == null)
+            	return null;
+            	//throw new RuntimeException("Unable to get field's value from object: " + "(" + obj.getClass().getName() + ")" + obj + "." + f.getName() );
+            if ( o.getClass().isArray() ) {
+                String result = "";
+                for ( int i = 0; i < Array.getLength( o ); i++ ) {
+                    result += Array.get( o, i ) + TypeUtil.ARRAY_TOKEN;
+                }
+                return result;
+//                String result = "[";
+//                for ( int i = 0; i < Array.getLength( o ); i++ ) {
+//                    if(i > 0)
+//                        result += ", ";
+//                    result += Array.get( o, i );
+//                }
+//                return result + "]";
+            }
+            return o.toString();
+        }
+
+        /**
+         * Resolves fields of a variable, the fields are looked up
+         * only once per generated class
+         * 
+         * @param clas the generated class
+         * @param fullName
+         * @return fields from the generated class to the variable
+         * @throws NoSuchFieldException
+         */
+        private synchronized Field[] getFieldPath( Class<?> clas, String fullName ) throws NoSuchFieldException {
+
+            if ( clas != fieldPathsClass ) {
+                fieldPaths.clear();
+                fieldPathsClass = clas;
+            }
+
+            Field[] path = fieldPaths.get( fullName );
+
+            if ( path == null ) {
+                StringTokenizer st = new StringTokenizer( fullName, "." );
+                path = new Field[st.countTokens()];
+
+                for ( int i = 0; i < path.length; i++ ) {
+                    // show values of variables declared in superclasses as well
+                    path[i] = clas.getField( st.nextToken() );
+                    clas = path[i].getType();
+                }
+                fieldPaths.put( fullName, path );
+            }
+
+            return path;
+        }
+
 
         /**
          * Obtains a string value of a variable given by name
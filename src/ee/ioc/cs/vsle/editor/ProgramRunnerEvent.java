@@ -3,6 +3,8 @@
  */
 package ee.ioc.cs.vsle.editor;
 
+import java.util.*;
+
 import ee.ioc.cs.vsle.event.*;
 
 /**
@@ -58,6 +60,19 @@ public class ProgramRunnerEvent extends BaseEvent {
         return s_dispatcher;
     }
 
+    /**
+     * Requests to show values are idempotent, so repeated ones
+     * that have not been processed yet are coalesced.
+     * Requests that expect feedback are always dispatched.
+     */
+    @Override
+    protected Object getCoalescingKey() {
+        if ( m_requestFeedback || ( m_operation != SHOW_VALUES && m_operation != SHOW_ALL_VALUES ) ) {
+            return null;
+        }
+        return Arrays.asList( m_id, m_operation, m_objectName );
+    }
+
     private static void init() {
 
         if ( s_dispatcher == null ) {
@@ -1,5 +1,7 @@
 package ee.ioc.cs.vsle.editor;
 
+import java.util.*;
+
 import ee.ioc.cs.vsle.event.*;
 
 public class ProgramRunnerFeedbackEvent extends BaseEvent {
@@ -53,6 +55,15 @@ public class ProgramRunnerFeedbackEvent extends BaseEvent {
         return s_dispatcher;
     }
 
+    /**
+     * Only the latest working state of a runner matters,
+     * so waiting state changes are coalesced
+     */
+    @Override
+    protected Object getCoalescingKey() {
+        return m_type == WORKING ? Arrays.asList( WORKING, m_id ) : null;
+    }
+
     private static void init() {
 
         if ( s_dispatcher == null ) {
@@ -9,6 +9,7 @@ import java.util.List;
 
 import javax.swing.*;
 
+import ee.ioc.cs.vsle.synthesize.*;
 import ee.ioc.cs.vsle.util.*;
 import ee.ioc.cs.vsle.vclass.*;
 
@@ -66,6 +67,16 @@ public class RuntimeProperties {
     static final String PROPAGATE_VALUES = "propagateValues";
     private static final String DUMP_GENERATED = "dumpGeneratedFiles";
     private static final String DEFAULT_EDITOR = "defaultEditor";
+    private static final String PLAN_CACHE_SIZE = "planCacheSize";
+    //lru or fifo
+    private static final String PLAN_CACHE_EVICTION = "planCacheEviction";
+    private static final String INCREMENTAL_SYNTHESIS = "incrementalSynthesis";
+    private static final String MODEL_CACHE_SIZE = "modelCacheSize";
+    private static final String INTERPRET_PROGRAMS = "interpretPrograms";
+    private static final String TIERED_COMPILE_THRESHOLD = "tieredCompileThreshold";
+    private static final String SIMPLIFIED_DRAWING_SCALE = "simplifiedDrawingScale";
+    private static final String BOX_DRAWING_SCALE = "boxDrawingScale";
+    private static final String BACKGROUND_RENDERING = "backgroundRendering";
 
     private static boolean isCleanInstall = false;
     private static boolean fromWebstart = false;
@@ -100,6 +111,15 @@ public class RuntimeProperties {
         defaultProperties.put( COMPUTE_GOAL, Boolean.FALSE.toString() );
         defaultProperties.put( PROPAGATE_VALUES, Boolean.FALSE.toString() );
         defaultProperties.put( DUMP_GENERATED, Boolean.TRUE.toString() );
+        defaultProperties.put( PLAN_CACHE_SIZE, Integer.toString( 16 ) );
+        defaultProperties.put( PLAN_CACHE_EVICTION, "lru" );
+        defaultProperties.put( INCREMENTAL_SYNTHESIS, Boolean.TRUE.toString() );
+        defaultProperties.put( MODEL_CACHE_SIZE, Integer.toString( 32 ) );
+        defaultProperties.put( INTERPRET_PROGRAMS, Boolean.FALSE.toString() );
+        defaultProperties.put( TIERED_COMPILE_THRESHOLD, Integer.toString( 5 ) );
+        defaultProperties.put( SIMPLIFIED_DRAWING_SCALE, Float.toString( 0.5f ) );
+        defaultProperties.put( BOX_DRAWING_SCALE, Float.toString( 0.2f ) );
+        defaultProperties.put( BACKGROUND_RENDERING, Boolean.FALSE.toString() );
         
         //init default fonts
         for( Fonts font : Fonts.values() ) {
@@ -130,6 +150,15 @@ public class RuntimeProperties {
     private boolean computeGoal;
     private boolean propagateValues;
     private boolean dumpGenerated;
+    private int planCacheSize;
+    private boolean planCacheLRU;
+    private boolean incrementalSynthesis;
+    private int modelCacheSize;
+    private boolean interpretPrograms;
+    private int tieredCompileThreshold;
+    private float simplifiedDrawingScale;
+    private float boxDrawingScale;
+    private boolean backgroundRendering;
     private Map<Fonts, Font> fonts = new Hashtable<Fonts, Font>();
     private String defaultEditor;
     
@@ -200,6 +229,15 @@ public class RuntimeProperties {
         setPropagateValues( Boolean.parseBoolean( instance.runtimeProperties.getProperty( PROPAGATE_VALUES ) ) );
         setComputeGoal( Boolean.parseBoolean( instance.runtimeProperties.getProperty( COMPUTE_GOAL ) ) );
         setDefaultEditor(instance.runtimeProperties.getProperty(DEFAULT_EDITOR));
+        setPlanCacheSize( Integer.parseInt( instance.runtimeProperties.getProperty( PLAN_CACHE_SIZE ) ) );
+        setPlanCacheLRU( !"fifo".equalsIgnoreCase( instance.runtimeProperties.getProperty( PLAN_CACHE_EVICTION ) ) );
+        setIncrementalSynthesis( Boolean.parseBoolean( instance.runtimeProperties.getProperty( INCREMENTAL_SYNTHESIS ) ) );
+        setModelCacheSize( Integer.parseInt( instance.runtimeProperties.getProperty( MODEL_CACHE_SIZE ) ) );
+        setInterpretPrograms( Boolean.parseBoolean( instance.runtimeProperties.getProperty( INTERPRET_PROGRAMS ) ) );
+        setTieredCompileThreshold( Integer.parseInt( instance.runtimeProperties.getProperty( TIERED_COMPILE_THRESHOLD ) ) );
+        setSimplifiedDrawingScale( Float.parseFloat( instance.runtimeProperties.getProperty( SIMPLIFIED_DRAWING_SCALE ) ) );
+        setBoxDrawingScale( Float.parseFloat( instance.runtimeProperties.getProperty( BOX_DRAWING_SCALE ) ) );
+        setBackgroundRendering( Boolean.parseBoolean( instance.runtimeProperties.getProperty( BACKGROUND_RENDERING ) ) );
 
         for( Fonts font : Fonts.values() ) {
             instance.fonts.put( font, Font.decode( instance.runtimeProperties.getProperty( font.getPropertyName() ) ) );
@@ -265,6 +303,15 @@ public class RuntimeProperties {
         instance.runtimeProperties.setProperty( COMPUTE_GOAL, Boolean.toString( instance.computeGoal ) );
         instance.runtimeProperties.setProperty( PROPAGATE_VALUES, Boolean.toString( instance.propagateValues ) );
         instance.runtimeProperties.setProperty( DUMP_GENERATED, Boolean.toString(instance.dumpGenerated ));
+        instance.runtimeProperties.setProperty( PLAN_CACHE_SIZE, Integer.toString( instance.planCacheSize ) );
+        instance.runtimeProperties.setProperty( PLAN_CACHE_EVICTION, instance.planCacheLRU ? "lru" : "fifo" );
+        instance.runtimeProperties.setProperty( INCREMENTAL_SYNTHESIS, Boolean.toString( instance.incrementalSynthesis ) );
+        instance.runtimeProperties.setProperty( MODEL_CACHE_SIZE, Integer.toString( instance.modelCacheSize ) );
+        instance.runtimeProperties.setProperty( INTERPRET_PROGRAMS, Boolean.toString( instance.interpretPrograms ) );
+        instance.runtimeProperties.setProperty( TIERED_COMPILE_THRESHOLD, Integer.toString( instance.tieredCompileThreshold ) );
+        instance.runtimeProperties.setProperty( SIMPLIFIED_DRAWING_SCALE, Float.toString( instance.simplifiedDrawingScale ) );
+        instance.runtimeProperties.setProperty( BOX_DRAWING_SCALE, Float.toString( instance.boxDrawingScale ) );
+        instance.runtimeProperties.setProperty( BACKGROUND_RENDERING, Boolean.toString( instance.backgroundRendering ) );
 
         if (instance.defaultEditor == null) {
             instance.runtimeProperties.remove(DEFAULT_EDITOR);
@@ -735,6 +782,143 @@ public class RuntimeProperties {
         instance.dumpGenerated = dumpGenerated;
     }
     
+    /**
+     * @return maximum number of synthesized programs kept in the plan cache,
+     * 0 disables the cache
+     */
+    public static int getPlanCacheSize() {
+        return instance.planCacheSize;
+    }
+
+    /**
+     * @param planCacheSize maximum number of entries in the plan cache
+     */
+    public static void setPlanCacheSize( int planCacheSize ) {
+        instance.planCacheSize = Math.max( 0, planCacheSize );
+    }
+
+    /**
+     * @return true if the least recently used entry is evicted from the plan cache,
+     * false if the oldest one
+     */
+    public static boolean isPlanCacheLRU() {
+        return instance.planCacheLRU;
+    }
+
+    /**
+     * Changing the eviction policy clears the plan cache
+     * @param planCacheLRU
+     */
+    public static void setPlanCacheLRU( boolean planCacheLRU ) {
+        boolean old = instance.planCacheLRU;
+        instance.planCacheLRU = planCacheLRU;
+        if ( old != planCacheLRU ) {
+            PlanCache.getInstance().clear();
+        }
+    }
+
+    /**
+     * @return true if a program is re-synthesized incrementally after scheme edits
+     */
+    public static boolean isIncrementalSynthesis() {
+        return instance.incrementalSynthesis;
+    }
+
+    /**
+     * @param incrementalSynthesis
+     */
+    public static void setIncrementalSynthesis( boolean incrementalSynthesis ) {
+        instance.incrementalSynthesis = incrementalSynthesis;
+    }
+
+    /**
+     * @return maximum number of compiled independent models kept in the model cache,
+     * 0 disables the cache
+     */
+    public static int getModelCacheSize() {
+        return instance.modelCacheSize;
+    }
+
+    /**
+     * @param modelCacheSize maximum number of entries in the model cache
+     */
+    public static void setModelCacheSize( int modelCacheSize ) {
+        instance.modelCacheSize = Math.max( 0, modelCacheSize );
+    }
+
+    /**
+     * @return true if programs and independent models are interpreted
+     * instead of being compiled whenever possible
+     */
+    public static boolean isInterpretPrograms() {
+        return instance.interpretPrograms;
+    }
+
+    /**
+     * @param interpretPrograms
+     */
+    public static void setInterpretPrograms( boolean interpretPrograms ) {
+        instance.interpretPrograms = interpretPrograms;
+    }
+
+    /**
+     * @return number of interpreted runs after which a program or a model is compiled
+     * in the background, 0 if interpreted programs are never compiled
+     */
+    public static int getTieredCompileThreshold() {
+        return instance.tieredCompileThreshold;
+    }
+
+    /**
+     * @param tieredCompileThreshold
+     */
+    public static void setTieredCompileThreshold( int tieredCompileThreshold ) {
+        instance.tieredCompileThreshold = Math.max( 0, tieredCompileThreshold );
+    }
+
+    /**
+     * @return the scale of the canvas below which objects are drawn without
+     * ports and texts and connections are drawn without hilighting
+     */
+    public static float getSimplifiedDrawingScale() {
+        return instance.simplifiedDrawingScale;
+    }
+
+    /**
+     * @param simplifiedDrawingScale
+     */
+    public static void setSimplifiedDrawingScale( float simplifiedDrawingScale ) {
+        instance.simplifiedDrawingScale = Math.max( 0, simplifiedDrawingScale );
+    }
+
+    /**
+     * @return the scale of the canvas below which objects are drawn as boxes
+     */
+    public static float getBoxDrawingScale() {
+        return instance.boxDrawingScale;
+    }
+
+    /**
+     * @param boxDrawingScale
+     */
+    public static void setBoxDrawingScale( float boxDrawingScale ) {
+        instance.boxDrawingScale = Math.max( 0, boxDrawingScale );
+    }
+
+    /**
+     * @return true if scheme objects are rendered into tiles by background threads
+     */
+    public static boolean isBackgroundRendering() {
+        return instance.backgroundRendering;
+    }
+
+    /**
+     * @param backgroundRendering
+     */
+    public static void setBackgroundRendering( boolean backgroundRendering ) {
+        instance.backgroundRendering = backgroundRendering;
+    }
+
     private static FontChooser fontChooser;
     
     static void openFontChooser( JFrame parent ) {
@@ -4,6 +4,7 @@ import java.io.*;
 
 import javax.swing.*;
 
+import ee.ioc.cs.vsle.synthesize.*;
 import ee.ioc.cs.vsle.vclass.*;
 
 public class SchemeContainer implements ISchemeContainer {
@@ -11,6 +12,7 @@ public class SchemeContainer implements ISchemeContainer {
     VPackage _package;
     String dir;
     Scheme scheme;
+    private final IncrementalSynthesizer synthesizer = new IncrementalSynthesizer();
 
     public SchemeContainer( VPackage _package, String dir ) {
         this._package = _package;
@@ -62,6 +64,10 @@ public class SchemeContainer implements ISchemeContainer {
     public void repaint() {
     }
 
+    @Override
+    public void repaintArea( java.awt.Rectangle area ) {
+    }
+
     @Override
     public void unregisterRunner( long id ) {
     }
@@ -71,4 +77,9 @@ public class SchemeContainer implements ISchemeContainer {
         return _package.getSchemeClassName( null );
     }
 
+    @Override
+    public IncrementalSynthesizer getSynthesizer() {
+        return synthesizer;
+    }
+
 }
\ No newline at end of file
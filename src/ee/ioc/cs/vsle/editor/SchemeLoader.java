@@ -1,6 +1,8 @@
 package ee.ioc.cs.vsle.editor;
 
 import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
 
 import javax.swing.*;
 import javax.xml.parsers.*;
@@ -19,6 +21,9 @@ import ee.ioc.cs.vsle.vclass.*;
  * description and saved scheme. For example, new fields are quietly
  * accepted. On the other hand, warnings are generated in case of missing
  * fields of classes. The user should be notified about any warnings generated.
+ *
+ * Loading may run on a background thread, the progress is reported to
+ * a ProgressListener and loading can be canceled by calling cancel().
  * 
  * @see ee.ioc.cs.vsle.editor.RuntimeProperties#SCHEME_DTD
  */
@@ -31,6 +36,8 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 	private boolean schemeLoaded;
 	private boolean schemeLoadingCancelled;
 	private String schemePath;
+	private ProgressListener progressListener;
+	private volatile boolean cancelRequested;
 	
 	/**
 	 * Sets the package description
@@ -57,6 +64,24 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
         return schemeLoadingCancelled;
     }
     
+    /**
+     * Sets the listener that is notified about the progress of loading
+     * on the thread loading the scheme
+     * @param listener the listener, null if none
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Asks the loader to stop, the scheme being loaded is discarded
+     * and isSchemeLoadingCancelled() returns true.
+     * Can be called from any thread.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
     /**
 	 * Reads in the scheme description from a .syn file.
 	 * The setPackage() method must be called with a non-null argument
@@ -86,7 +111,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 	    InputStream input = null;
 	    try {
 	        input = new FileInputStream(file);
-	        schemeLoaded = parse(input);
+	        schemeLoaded = parse(new ProgressInputStream(input, file.length()));
 	    } catch (FileNotFoundException e) {
 	        collector.collectDiagnostic(e.getMessage());
 	        return false;
@@ -106,7 +131,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 	}
 
     public boolean load(InputStream input) {
-        schemeLoaded = checkInitLoad() && parse(input);
+        schemeLoaded = checkInitLoad() && parse(new ProgressInputStream(input, -1));
         return schemeLoaded;
     }
 
@@ -152,6 +177,9 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
     boolean parse(InputStream input) {
         long startParsing = System.currentTimeMillis();
 
+        cancelRequested = false;
+        schemeLoadingCancelled = false;
+
         try {
             parser.parse(input, handler);
 
@@ -236,6 +264,8 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
         private static final String EXT_SPEC = "extended_spec";
         
         private ObjectList objects;
+		// names -> objects, for checking duplicates and finding ports of connections
+		private Map<String, GObj> objectsByName;
 		private ConnectionList connections;
 		private VPackage vPackage;
 		private String superClass;
@@ -285,6 +315,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 		public void startDocument() {
 			connections = new ConnectionList();
 			objects = new ObjectList();
+			objectsByName = new HashMap<String, GObj>();
 
 			// the parser may be reused
 			superClass = null;
@@ -296,7 +327,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 		@Override
 		public void endDocument() {
 			if (superClass != null 
-					&& objects.getByName(superClass) == null) {
+					&& !objectsByName.containsKey(superClass)) {
 			    collectDiagnostic("Superclass " + superClass 
 						+ " not found.");
 				superClass = null;
@@ -307,6 +338,10 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 		public void startElement(String namespaceURI, String lName,
 				String qName, Attributes attrs) throws SAXException {
 
+			if (cancelRequested) {
+				throw new SchemeLoaderException("Loading of the scheme was canceled", false);
+			}
+
 			// skip to the end of current broken entry
 			if (ignoreCurrent)
 				return;
@@ -317,7 +352,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 				String name = attrs.getValue(NAME);
 
 				// catch duplicate names
-				if (objects.getByName(name) != null) {
+				if (objectsByName.containsKey(name)) {
 				    collectDiagnostic("Duplicate class name: " + name
 							+ ". Discarding second instance.");
 					ignoreCurrent = true;
@@ -340,6 +375,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 				obj.setClassName(type);
 				obj.setStatic( Boolean.parseBoolean( attrs.getValue("static") ) );
 				objects.add(obj);
+				objectsByName.put(name, obj);
 			} else if (element.equals(SCHEME)) {
 				String type = attrs.getValue(PACKAGE);
 
@@ -352,11 +388,7 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
                             + "\nContinue loading scheme using current package?"
                             + "\nSaving it with override previous package with the current one.";
                     
-                    int res = JOptionPane.showConfirmDialog( null, msg,
-                            "Package mismatch", JOptionPane.YES_NO_OPTION,
-                            JOptionPane.WARNING_MESSAGE );
-
-                    if( res != JOptionPane.YES_OPTION) {
+                    if( !confirm( msg, "Package mismatch" ) ) {
                         
                         throw new SchemeLoaderException(
                                 "Scheme was built with package \"" + type
@@ -385,8 +417,8 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
                 // The property "strict" is not used at all for relclasses?
                 // All these attributes should be ignored here.
             } else if (element.equals(FIELD)) {
-				String name = new String(attrs.getValue(NAME));
-				String type = new String(attrs.getValue(TYPE));
+				String name = attrs.getValue(NAME);
+				String type = attrs.getValue(TYPE);
 				String value = attrs.getValue(VALUE);
 
 				if (!pclass.hasField(name, type)) {
@@ -407,12 +439,12 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 					cf.setGoal(true);
 
 			} else if (element.equals(CONNECTION)) {
-				String obj1 = new String(attrs.getValue("obj1"));
-				String port1 = new String(attrs.getValue("port1"));
-				String obj2 = new String(attrs.getValue("obj2"));
-				String port2 = new String(attrs.getValue("port2"));
-				Port beginPort = objects.getPort(obj1, port1);
-				Port endPort = objects.getPort(obj2, port2);
+				String obj1 = attrs.getValue("obj1");
+				String port1 = attrs.getValue("port1");
+				String obj2 = attrs.getValue("obj2");
+				String port2 = attrs.getValue("port2");
+				Port beginPort = getPort(obj1, port1);
+				Port endPort = getPort(obj2, port2);
 				boolean strict = Boolean.parseBoolean( attrs.getValue( "strict" ) );
 
 				if (beginPort == null || endPort == null) {
@@ -434,8 +466,8 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 				if (connection == null)
 					return;
 
-				String x = new String(attrs.getValue("x"));
-				String y = new String(attrs.getValue("y"));
+				String x = attrs.getValue("x");
+				String y = attrs.getValue("y");
 				connection.addBreakPoint(new Point(Integer.parseInt(x),
 						Integer.parseInt(y)));
 			} else if ( EXT_SPEC.equals( qName ) ) {
@@ -444,6 +476,40 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 
 		}
 
+		private Port getPort(String objName, String portId) {
+			GObj o = objectsByName.get(objName);
+			return o != null ? o.getPort(portId) : null;
+		}
+
+		/**
+		 * Asks the user on the event dispatch thread, the scheme may be loaded in background
+		 * @return true if the user chose to continue
+		 */
+		private boolean confirm(final String msg, final String title) throws SAXException {
+			final int[] res = new int[1];
+			Runnable dialog = new Runnable() {
+
+				@Override
+				public void run() {
+					res[0] = JOptionPane.showConfirmDialog( null, msg, title,
+							JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE );
+				}
+			};
+
+			if (SwingUtilities.isEventDispatchThread()) {
+				dialog.run();
+			} else {
+				try {
+					SwingUtilities.invokeAndWait(dialog);
+				} catch (InterruptedException e) {
+					throw new SchemeLoaderException("Loading of the scheme was interrupted", false);
+				} catch (InvocationTargetException e) {
+					throw new SAXException(e.getMessage());
+				}
+			}
+			return res[0] == JOptionPane.YES_OPTION;
+		}
+
 		@Override
 		public void endElement( String namespaceURI, String sName, String qName ) {
 
@@ -521,6 +587,67 @@ public class SchemeLoader implements DiagnosticsCollector.Diagnosable {
 		}
 	}
 	
+	/**
+	 * Receives the progress of loading a scheme
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * @param read the number of bytes of the scheme parsed
+		 * @param total the size of the scheme file, -1 if unknown
+		 */
+		void progressChanged(long read, long total);
+	}
+
+	/**
+	 * Counts the bytes read by the parser and reports them to the
+	 * progress listener after each percent or 64KB of the input
+	 */
+	private class ProgressInputStream extends FilterInputStream {
+
+		private final long total;
+		private final long step;
+		private long read;
+		private long reported;
+
+		ProgressInputStream(InputStream in, long total) {
+			super(in);
+			this.total = total;
+			step = Math.max(64 * 1024, total / 100);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+
+		private void count(long n) {
+			read += n;
+			if (progressListener != null && read - reported >= step) {
+				reported = read;
+				progressListener.progressChanged(read, total);
+			}
+		}
+	}
+
 	private class SchemeLoaderException extends RuntimeException {
 
 	    private static final long serialVersionUID = 1L;
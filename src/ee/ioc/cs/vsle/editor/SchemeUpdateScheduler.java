@@ -0,0 +1,130 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.lang.ref.*;
+import java.util.*;
+
+import javax.swing.Timer;
+
+/**
+ * Coalesces repaints of a scheme and propagations of computed values.
+ * Requests may come from any thread, e.g. from running programs in a loop,
+ * and are collected until the next frame. At most once per frame interval
+ * pending propagations are performed and the scheme is repainted once
+ * on the event dispatch thread, either completely or only the dirty area.
+ */
+public class SchemeUpdateScheduler implements ActionListener {
+
+    /** Minimum time between two updates, ms */
+    static final int FRAME_INTERVAL = 40;
+
+    private static final Map<ISchemeContainer, SchemeUpdateScheduler> s_instances =
+        new WeakHashMap<ISchemeContainer, SchemeUpdateScheduler>();
+
+    private final WeakReference<ISchemeContainer> container;
+    private final Timer timer;
+    private long lastFrame;
+
+    private boolean fullRepaint;
+    //in scheme coordinates
+    private Rectangle dirtyArea;
+    private final Set<ProgramRunner> runners = new LinkedHashSet<ProgramRunner>();
+
+    private SchemeUpdateScheduler( ISchemeContainer container ) {
+        this.container = new WeakReference<ISchemeContainer>( container );
+        timer = new Timer( FRAME_INTERVAL, this );
+        timer.setRepeats( false );
+    }
+
+    /**
+     * @param container
+     * @return the scheduler of the scheme container
+     */
+    public static SchemeUpdateScheduler getInstance( ISchemeContainer container ) {
+        synchronized ( s_instances ) {
+            SchemeUpdateScheduler scheduler = s_instances.get( container );
+            if ( scheduler == null ) {
+                s_instances.put( container, scheduler = new SchemeUpdateScheduler( container ) );
+            }
+            return scheduler;
+        }
+    }
+
+    /**
+     * Requests a repaint of the whole scheme
+     */
+    public synchronized void requestRepaint() {
+        fullRepaint = true;
+        schedule();
+    }
+
+    /**
+     * Requests a repaint of an area of the scheme
+     *
+     * @param area in scheme coordinates
+     */
+    public synchronized void requestRepaint( Rectangle area ) {
+        if ( dirtyArea == null ) {
+            dirtyArea = new Rectangle( area );
+        } else {
+            dirtyArea.add( area );
+        }
+        schedule();
+    }
+
+    /**
+     * Requests the runner to propagate computed values to the scheme,
+     * the scheme is repainted afterwards
+     *
+     * @param runner
+     */
+    synchronized void requestPropagation( ProgramRunner runner ) {
+        runners.add( runner );
+        schedule();
+    }
+
+    private void schedule() {
+        if ( !timer.isRunning() ) {
+            long wait = lastFrame + FRAME_INTERVAL - System.currentTimeMillis();
+            timer.setInitialDelay( (int) Math.max( 0, Math.min( wait, FRAME_INTERVAL ) ) );
+            timer.start();
+        }
+    }
+
+    /**
+     * Performs pending updates, called on the event dispatch thread
+     */
+    @Override
+    public void actionPerformed( ActionEvent e ) {
+        boolean full;
+        Rectangle area;
+        java.util.List<ProgramRunner> toPropagate;
+
+        synchronized ( this ) {
+            lastFrame = System.currentTimeMillis();
+            full = fullRepaint || !runners.isEmpty();
+            area = dirtyArea;
+            toPropagate = new ArrayList<ProgramRunner>( runners );
+            fullRepaint = false;
+            dirtyArea = null;
+            runners.clear();
+        }
+
+        for ( ProgramRunner runner : toPropagate ) {
+            runner.propagateValues();
+        }
+
+        ISchemeContainer cont = container.get();
+
+        if ( cont == null ) {
+            return;
+        }
+
+        if ( full ) {
+            cont.repaint();
+        } else if ( area != null ) {
+            cont.repaintArea( area );
+        }
+    }
+}
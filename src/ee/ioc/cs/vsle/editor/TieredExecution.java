@@ -0,0 +1,196 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import ee.ioc.cs.vsle.api.*;
+import ee.ioc.cs.vsle.synthesize.*;
+import ee.ioc.cs.vsle.util.*;
+import ee.ioc.cs.vsle.util.FileFuncs.*;
+
+/**
+ * Tiered execution of interpreted programs and independent models
+ * (see RuntimeProperties.isInterpretPrograms()).
+ *
+ * Runs of interpreted programs and models are counted, the ones run
+ * RuntimeProperties.getTieredCompileThreshold() times are compiled by a single
+ * background thread. Runs started after the compilation has finished use
+ * the compiled class, so the first runs never wait for the compiler
+ * and frequently run programs and models get the speed of compiled code.
+ *
+ * Programs are counted by their text, as every run of a scheme has its own ProgramRunner.
+ * A program compiled in the background is kept by the package class loader
+ * and reused by later runners, see RunnerClassLoader.
+ */
+public class TieredExecution {
+
+    private static final int MAX_PROGRAMS = 32;
+
+    private static final ExecutorService s_compiler = Executors.newSingleThreadExecutor( new ThreadFactory() {
+
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread thread = new Thread( r, "TieredCompiler" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        }
+    } );
+
+    //program texts -> programs, the most recently run ones are kept
+    private static final Map<String, Program> s_programs = new LinkedHashMap<String, Program>( 16, 0.75f, true ) {
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Program> eldest ) {
+            return size() > MAX_PROGRAMS;
+        }
+    };
+
+    private TieredExecution() {
+        // should not be instanciated
+    }
+
+    /**
+     * @param programText
+     * @return true if the program has been compiled and does not have to be interpreted any more
+     */
+    static boolean isCompiled( String programText ) {
+        synchronized ( s_programs ) {
+            Program program = s_programs.get( programText );
+            return program != null && program.compiled;
+        }
+    }
+
+    /**
+     * Counts an interpreted run of a program, the program is compiled
+     * in the background when the threshold is reached
+     *
+     * @param programText
+     * @param interpreter the interpreter of the program, its class loader compiles the program
+     * @param className the name of the program class
+     */
+    static void countRun( String programText, final ProgramInterpreter interpreter, final String className ) {
+
+        int threshold = RuntimeProperties.getTieredCompileThreshold();
+
+        if ( threshold <= 0 ) {
+            return;
+        }
+
+        final Program program;
+
+        synchronized ( s_programs ) {
+            Program p = s_programs.get( programText );
+            if ( p == null ) {
+                p = new Program();
+                s_programs.put( programText, p );
+            }
+            if ( ++p.runs != threshold ) {
+                return;
+            }
+            program = p;
+        }
+
+        submit( className, new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                interpreter.getClassLoader().loadClass( className );
+                program.compiled = true;
+                return null;
+            }
+        } );
+    }
+
+    private static void submit( final String name, final Callable<Void> task ) {
+
+        if ( RuntimeProperties.isLogDebugEnabled() )
+            db.p( "Compiling " + name + " in the background" );
+
+        s_compiler.execute( new Runnable() {
+
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    task.call();
+
+                    if ( RuntimeProperties.isLogDebugEnabled() )
+                        db.p( "Compiled " + name + " in the background in "
+                                + ( System.currentTimeMillis() - start ) + "ms." );
+                } catch ( Exception e ) {
+                    db.p( "Background compilation of " + name + " failed, it stays interpreted: " + e.getMessage() );
+                } catch ( LinkageError e ) {
+                    db.p( "Background compilation of " + name + " failed, it stays interpreted: " + e.getMessage() );
+                }
+            }
+        } );
+    }
+
+    private static class Program {
+
+        private int runs;
+        private volatile boolean compiled;
+    }
+
+    /**
+     * Independent model that is interpreted until its compiled class is ready
+     */
+    static class Model implements Subtask {
+
+        private final ProgramInterpreter interpreter;
+        private final GenStorage storage;
+        private final AtomicInteger runs = new AtomicInteger();
+        private volatile Subtask compiled;
+
+        /**
+         * @param interpreter the interpreter of the model
+         * @param storage the storage the class loader of the interpreter reads generated classes from
+         */
+        Model( ProgramInterpreter interpreter, GenStorage storage ) {
+            this.interpreter = interpreter;
+            this.storage = storage;
+        }
+
+        @Override
+        public Object[] run( Object[] in ) {
+
+            Subtask model = compiled;
+
+            if ( model != null ) {
+                return model.run( in );
+            }
+
+            int threshold = RuntimeProperties.getTieredCompileThreshold();
+
+            if ( threshold > 0 && runs.incrementAndGet() == threshold ) {
+                compile();
+            }
+
+            return interpreter.run( in );
+        }
+
+        /**
+         * @return the class loader of the model that defines its ProgramContext
+         */
+        ClassLoader getClassLoader() {
+            return interpreter.getClassLoader();
+        }
+
+        private void compile() {
+
+            submit( "model", new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    StringBuilder code = new StringBuilder();
+                    String className = Synthesizer.generateIndependentModel( interpreter, code );
+                    storage.writeFile( className + ".java", code.toString() );
+                    compiled = (Subtask) interpreter.getClassLoader().loadClass( className ).newInstance();
+                    return null;
+                }
+            } );
+        }
+    }
+}
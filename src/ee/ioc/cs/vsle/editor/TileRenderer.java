@@ -0,0 +1,365 @@
+package ee.ioc.cs.vsle.editor;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+import javax.swing.*;
+
+import ee.ioc.cs.vsle.util.*;
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Renders scheme objects into tiles by background threads
+ * (see RuntimeProperties.isBackgroundRendering()).
+ *
+ * The canvas is divided into square tiles of device pixels. A tile is
+ * rendered from clones of the objects it covers, so that the workers never
+ * touch the scheme edited on the event dispatch thread, which only
+ * copies finished tiles to the screen. Each tile remembers the stamp
+ * of the objects it was rendered from, a hash of the position and everything
+ * else the drawing of an object depends on (see GlyphCache.hashState()).
+ * The stamp is computed on each paint without allocating, only the objects
+ * of tiles whose stamp has changed are cloned. A tile whose objects have
+ * changed is shown as it was until it has been rendered again, so the
+ * canvas does not have to be told which regions have changed.
+ *
+ * Only objects are rendered into tiles, the background, connections and
+ * objects being added are drawn on the event dispatch thread as before.
+ */
+class TileRenderer {
+
+    // device pixels
+    static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 128;
+    private static final int AFFINE_SCALE = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_MASK_SCALE;
+
+    // threads are started when the first tile is rendered
+    private final ExecutorService workers;
+
+    // accessed on the event dispatch thread only
+    private final Map<Long, Tile> tiles = new LinkedHashMap<Long, Tile>( 16, 0.75f, true );
+    // tiles -> stamps of the objects being rendered into them
+    private final ConcurrentMap<Long, Long> pending = new ConcurrentHashMap<Long, Long>();
+    // scale, level of detail and graphics state the tiles have been rendered with
+    private String mode;
+    private volatile int generation;
+    // workers draw objects through their own caches
+    private volatile ThreadLocal<GlyphCache> glyphCaches = new ThreadLocal<GlyphCache>();
+
+    TileRenderer() {
+
+        int threads = Math.min( 4, Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 ) );
+
+        workers = Executors.newFixedThreadPool( threads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread thread = new Thread( r, "TileRenderer" );
+                thread.setDaemon( true );
+                thread.setPriority( Thread.NORM_PRIORITY - 1 );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Drops all the tiles, has to be called when the graphics of classes or fonts change
+     */
+    void clear() {
+        reset();
+        mode = null;
+        glyphCaches = new ThreadLocal<GlyphCache>();
+    }
+
+    private void reset() {
+        tiles.clear();
+        pending.clear();
+        // tiles being rendered are discarded
+        generation++;
+    }
+
+    /**
+     * Stops the workers, the renderer cannot be used any more
+     */
+    void shutdown() {
+        clear();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Paints the objects of the visible tiles that have been rendered and
+     * schedules rendering of the missing and changed ones
+     *
+     * @param component the component painted on, repainted when a tile is ready
+     * @param g2 graphics of the canvas, scaled by the scale of the canvas
+     * @param base the transform of the graphics before scaling
+     * @param scale the scale of the canvas
+     * @param simplified true if objects are drawn by GObj.drawSimplified()
+     * @param boxes true if objects are drawn as boxes
+     * @param objects
+     * @return false if the objects cannot be rendered into tiles and have to be drawn directly
+     */
+    boolean paint( JComponent component, Graphics2D g2, AffineTransform base, float scale, boolean simplified, boolean boxes,
+            ObjectList objects ) {
+
+        if ( ( base.getType() & ~AFFINE_SCALE ) != 0 || base.getScaleX() != base.getScaleY() ) {
+            return false;
+        }
+
+        double deviceScale = base.getScaleX() * scale;
+
+        String newMode = deviceScale + "|" + ( boxes ? 'B' : simplified ? 'S' : 'F' )
+                + "|" + g2.getColor().getRGB() + "," + g2.getStroke().hashCode() + "," + g2.getFont().hashCode()
+                + "," + g2.getRenderingHint( RenderingHints.KEY_ANTIALIASING )
+                + "," + g2.getRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING );
+
+        if ( !newMode.equals( mode ) ) {
+            reset();
+            mode = newMode;
+        }
+
+        Rectangle clip = g2.getClipBounds();
+        // canvas units
+        double tileSize = TILE_SIZE / deviceScale;
+
+        int i1 = (int) Math.floor( clip.x / tileSize );
+        int j1 = (int) Math.floor( clip.y / tileSize );
+        int i2 = (int) Math.floor( ( clip.x + clip.width ) / tileSize );
+        int j2 = (int) Math.floor( ( clip.y + clip.height ) / tileSize );
+
+        AffineTransform transform = g2.getTransform();
+        g2.setTransform( AffineTransform.getTranslateInstance( base.getTranslateX(), base.getTranslateY() ) );
+
+        // objects covering several changed tiles are cloned once
+        Map<GObj, GObj> clones = new IdentityHashMap<GObj, GObj>();
+
+        try {
+            for ( int i = i1; i <= i2; i++ ) {
+                for ( int j = j1; j <= j2; j++ ) {
+                    Long key = key( i, j );
+
+                    // texts of objects may be drawn outside of their bounds
+                    Rectangle area = new Rectangle( (int) Math.floor( i * tileSize ), (int) Math.floor( j * tileSize ),
+                            (int) Math.ceil( tileSize ) + 1, (int) Math.ceil( tileSize ) + 1 );
+                    area.grow( Canvas.PAINT_MARGIN, Canvas.PAINT_MARGIN );
+
+                    List<GObj> covered = objects.getObjectsIn( area );
+                    long stamp = getStamp( covered, simplified || boxes );
+                    Tile tile = tiles.get( key );
+
+                    if ( tile != null ) {
+                        g2.drawImage( tile.image, i * TILE_SIZE, j * TILE_SIZE, null );
+                    }
+
+                    Long pendingStamp = pending.get( key );
+
+                    if ( ( tile == null || tile.stamp != stamp )
+                            && ( pendingStamp == null || pendingStamp.longValue() != stamp ) ) {
+                        pending.put( key, stamp );
+                        submit( component, key, i, j, stamp, snapshot( covered, clones ), g2.getRenderingHints(),
+                                g2.getColor(), g2.getStroke(), g2.getFont(), base.getScaleX(), scale, simplified, boxes );
+                    }
+                }
+            }
+        } finally {
+            g2.setTransform( transform );
+        }
+
+        // visible tiles have just been used and are not evicted
+        int visible = ( i2 - i1 + 1 ) * ( j2 - j1 + 1 );
+        for ( Iterator<Tile> it = tiles.values().iterator(); tiles.size() > Math.max( MAX_TILES, visible ) && it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+
+        return true;
+    }
+
+    private void submit( final JComponent component, final Long key, final int i, final int j, final Long stamp, final List<GObj> snapshot,
+            final RenderingHints hints, final Color color, final Stroke stroke, final Font font,
+            final double baseScale, final float scale, final boolean simplified, final boolean boxes ) {
+
+        final int gen = generation;
+        final ThreadLocal<GlyphCache> caches = glyphCaches;
+
+        workers.execute( new Runnable() {
+
+            @Override
+            public void run() {
+
+                if ( gen != generation || !stamp.equals( pending.get( key ) ) ) {
+                    // the tile has changed again or is not needed any more
+                    return;
+                }
+
+                final BufferedImage image;
+
+                try {
+                    image = render( snapshot, caches, i, j, hints, color, stroke, font, baseScale * scale, scale,
+                            simplified, boxes );
+                } catch ( RuntimeException e ) {
+                    pending.remove( key, stamp );
+                    db.p( "Background rendering of a tile failed: " + e.getMessage() );
+                    return;
+                }
+
+                SwingUtilities.invokeLater( new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        if ( gen != generation || !pending.remove( key, stamp ) ) {
+                            return;
+                        }
+
+                        tiles.put( key, new Tile( image, stamp ) );
+
+                        // component coordinates
+                        int x = (int) Math.floor( i * TILE_SIZE / baseScale );
+                        int y = (int) Math.floor( j * TILE_SIZE / baseScale );
+                        int size = (int) Math.ceil( TILE_SIZE / baseScale ) + 2;
+                        component.repaint( x, y, size, size );
+                    }
+                } );
+            }
+        } );
+    }
+
+    private static BufferedImage render( List<GObj> objects, ThreadLocal<GlyphCache> caches, int i, int j,
+            RenderingHints hints, Color color, Stroke stroke, Font font, double deviceScale, float scale,
+            boolean simplified, boolean boxes ) {
+
+        BufferedImage image = new BufferedImage( TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE );
+        Graphics2D g = image.createGraphics();
+
+        g.setRenderingHints( hints );
+        g.setColor( color );
+        g.setStroke( stroke );
+        g.setFont( font );
+        g.translate( -i * TILE_SIZE, -j * TILE_SIZE );
+        g.scale( deviceScale, deviceScale );
+
+        if ( boxes ) {
+            Canvas.drawBoxes( g, objects, scale );
+        } else {
+            GlyphCache glyphCache = caches.get();
+
+            if ( glyphCache == null ) {
+                glyphCache = new GlyphCache();
+                caches.set( glyphCache );
+            }
+
+            for ( GObj obj : objects ) {
+                if ( simplified )
+                    glyphCache.drawSimplified( obj, g, scale );
+                else
+                    glyphCache.draw( obj, g, scale );
+            }
+        }
+
+        g.dispose();
+
+        return image;
+    }
+
+    /**
+     * @return the stamp of the state of the objects the tile covering them is drawn from
+     */
+    private static long getStamp( List<GObj> objects, boolean simplified ) {
+
+        long stamp = objects.size();
+
+        for ( GObj obj : objects ) {
+            stamp = hashObject( obj, stamp, simplified );
+        }
+
+        return stamp;
+    }
+
+    private static long hashObject( GObj obj, long hash, boolean simplified ) {
+
+        hash = GlyphCache.mix( hash, System.identityHashCode( obj ) );
+        hash = GlyphCache.mix( hash, obj.getClassName() != null ? obj.getClassName().hashCode() : 0 );
+        hash = GlyphCache.mix( hash, ( (long) obj.getX() << 32 ) | ( obj.getY() & 0xffffffffL ) );
+        hash = GlyphCache.hashState( obj, hash, simplified );
+
+        if ( obj instanceof RelObj ) {
+            RelObj rel = (RelObj) obj;
+            hash = GlyphCache.mix( hash, ( (long) rel.getEndX() << 32 ) | ( rel.getEndY() & 0xffffffffL ) );
+        } else if ( obj instanceof GObjGroup ) {
+            List<GObj> components = ( (GObjGroup) obj ).getComponents();
+            hash = GlyphCache.mix( hash, components.size() );
+            for ( GObj component : components ) {
+                hash = hashObject( component, hash, simplified );
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Clones the objects for drawing by a worker, ports of the clones are
+     * connected like the ones of the originals so that they are drawn the same way.
+     * The clones are only read by the workers, so a clone is shared by all
+     * tiles the object covers.
+     *
+     * @param objects
+     * @param clones clones made during the current paint
+     */
+    private static List<GObj> snapshot( List<GObj> objects, Map<GObj, GObj> clones ) {
+
+        List<GObj> snapshot = new ArrayList<GObj>( objects.size() );
+
+        for ( GObj obj : objects ) {
+            GObj clone = clones.get( obj );
+            if ( clone == null ) {
+                clone = obj.clone();
+                copyState( obj, clone );
+                clones.put( obj, clone );
+            }
+            snapshot.add( clone );
+        }
+
+        return snapshot;
+    }
+
+    private static void copyState( GObj obj, GObj clone ) {
+
+        clone.setSuperClass( obj.isSuperClass() );
+
+        List<Port> ports = obj.getPortList();
+        List<Port> clonePorts = clone.getPortList();
+
+        for ( int k = 0; k < ports.size() && k < clonePorts.size(); k++ ) {
+            clonePorts.get( k ).setConnections( new ArrayList<Connection>( ports.get( k ).getConnectionList() ) );
+        }
+
+        if ( obj instanceof GObjGroup ) {
+            List<GObj> components = ( (GObjGroup) obj ).getComponents();
+            List<GObj> cloneComponents = ( (GObjGroup) clone ).getComponents();
+
+            for ( int k = 0; k < components.size() && k < cloneComponents.size(); k++ ) {
+                copyState( components.get( k ), cloneComponents.get( k ) );
+            }
+        }
+    }
+
+    private static Long key( int i, int j ) {
+        return ( (long) i << 32 ) | ( j & 0xffffffffL );
+    }
+
+    private static class Tile {
+
+        private final Image image;
+        private final long stamp;
+
+        Tile( Image image, long stamp ) {
+            this.image = image;
+            this.stamp = stamp;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package ee.ioc.cs.vsle.equations;
 
+import java.util.Set;
+
+import ee.ioc.cs.vsle.equations.LinearEquation.LinearForm;
+
 /**
  * represents all binary operations in an equations
  * @author Ando Saabas
@@ -119,6 +123,48 @@ class BinOpNode extends ExpNode {
         }
     } // getExpressions
 
+    /**
+     * returns the linear form of the expression, for the equation
+     * the right side is subtracted from the left side
+     * @param unknowns unknown variables
+     * @return the linear form or null if the expression is not linear
+     */
+    @Override
+    LinearForm linearize(Set<String> unknowns) {
+        LinearForm l = left.linearize(unknowns);
+        LinearForm r = right.linearize(unknowns);
+
+        if (l == null || r == null) {
+            return null;
+        }
+
+        switch (op) {
+        case '+':
+            return l.add(r);
+        case '-':
+        case '=':
+            return l.add(r.negate());
+        case '*':
+            if (l.isConstant()) {
+                return r.multiply(l);
+            } else if (r.isConstant()) {
+                return l.multiply(r);
+            }
+            return null;
+        case '/':
+            return r.isConstant() ? l.divide(r) : null;
+        default:
+            if (l.isConstant() && r.isConstant()) {
+                return LinearForm.constant("Math.pow(" + zero(l.getConstant()) + ", " + zero(r.getConstant()) + ")");
+            }
+            return null;
+        }
+    } // linearize
+
+    private static String zero(String constant) {
+        return constant != null ? constant : "0";
+    }
+
     /**
      * returns the infix representation of the equation
      * @return Infix representation of the equation
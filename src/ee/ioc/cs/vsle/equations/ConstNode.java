@@ -1,6 +1,9 @@
 package ee.ioc.cs.vsle.equations;
 
+import java.util.*;
+
 import ee.ioc.cs.vsle.equations.EquationSolver.*;
+import ee.ioc.cs.vsle.equations.LinearEquation.*;
 import ee.ioc.cs.vsle.util.*;
 
 class ConstNode extends ExpNode {
@@ -50,6 +53,13 @@ class ConstNode extends ExpNode {
         }
     } // getExpressions
 
+    @Override
+    LinearForm linearize(Set<String> unknowns) {
+        return unknowns.contains(value)
+                ? LinearForm.unknown(value)
+                : LinearForm.constant(value);
+    } // linearize
+
     @Override
     void decorate() {
         // decorate
@@ -17,6 +17,7 @@ import ee.ioc.cs.vsle.synthesize.EquationException;
 public class EquationSolver {
     Set<String> vars = new LinkedHashSet<String>();
     private Set<Relation> relations = new LinkedHashSet<Relation>();
+    private LinearEquation linearEquation;
     String equation;
 
     public void solve(String eq) throws EquationException {
@@ -30,6 +31,10 @@ public class EquationSolver {
         exp.getVars();
         exp.decorate();
         exp.getExpressions();
+
+        linearEquation = exp instanceof BinOpNode && ((BinOpNode) exp).op == '='
+                ? new LinearEquation(exp, vars)
+                : null;
     }
 
     private ExpNode upperTree(StringStack expString) throws EquationException {
@@ -316,6 +321,14 @@ public class EquationSolver {
         return relations;
     }
 
+    /**
+     * @return the last solved equation for rewriting into a linear form,
+     * null if it is not an equation
+     */
+    public LinearEquation getLinearEquation() {
+        return linearEquation;
+    }
+
     public static class Relation {
 
         private String rel, exp;
@@ -1,5 +1,9 @@
 package ee.ioc.cs.vsle.equations;
 
+import java.util.Set;
+
+import ee.ioc.cs.vsle.equations.LinearEquation.LinearForm;
+
 abstract class ExpNode {
 
     abstract String inFix();
@@ -11,5 +15,11 @@ abstract class ExpNode {
     abstract void getExpressions();
 
     abstract void getVars();
+
+    /**
+     * @param unknowns unknown variables ($name$)
+     * @return linear form of the expression or null if it is not linear
+     */
+    abstract LinearForm linearize(Set<String> unknowns);
 }
 
@@ -0,0 +1,334 @@
+package ee.ioc.cs.vsle.equations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Directed acyclic graph of expressions produced for equations.
+ * Expressions are parsed into trees whose nodes are hash-consed, i.e.
+ * structurally equal subexpressions are represented by the same node.
+ * Operands of commutative operations are ordered, so a * b and b * a
+ * share the node as well.
+ *
+ * Expressions consist of numbers, variables (possibly qualified, e.g. obj.x),
+ * function calls (e.g. Math.pow(a, 2)), casts to primitive types,
+ * unary minus and binary + - * /.
+ */
+public class ExpressionDag {
+
+    private static final Set<String> PRIMITIVE_TYPES = new HashSet<String>( Arrays.asList(
+            "double", "float", "long", "int", "short", "byte", "char" ) );
+
+    private Map<String, Node> nodes = new HashMap<String, Node>();
+
+    /**
+     * Parses an expression and adds its nodes to the graph
+     *
+     * @param expression
+     * @return the root node or null if the expression cannot be parsed
+     */
+    public Node add( String expression ) {
+        Parser parser = new Parser( expression );
+        try {
+            Node node = parser.expression();
+            parser.skipBlanks();
+            return parser.pos == expression.length() ? node : null;
+        } catch ( IllegalArgumentException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * @return number of distinct nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private Node intern( char kind, String text, Node... args ) {
+
+        if ( ( kind == '+' || kind == '*' ) && args[0].id > args[1].id ) {
+            args = new Node[] { args[1], args[0] };
+        }
+
+        StringBuilder key = new StringBuilder().append( kind ).append( text );
+        for ( Node arg : args ) {
+            key.append( '#' ).append( arg.id );
+        }
+
+        Node node = nodes.get( key.toString() );
+        if ( node == null ) {
+            node = new Node( nodes.size(), kind, text, args );
+            nodes.put( key.toString(), node );
+        }
+        return node;
+    }
+
+    /**
+     * A node of the graph
+     */
+    public static final class Node {
+
+        /** variable */
+        public static final char VAR = 'v';
+        /** number */
+        public static final char CONST = 'c';
+        /** function call */
+        public static final char CALL = 'f';
+        /** unary minus */
+        public static final char NEG = 'n';
+        /** cast to a primitive type */
+        public static final char CAST = 't';
+
+        private final int id;
+        //VAR, CONST, CALL, NEG, CAST or the operator
+        private final char kind;
+        private final String text;
+        private final List<Node> args;
+        private final Set<String> vars;
+
+        private Node( int id, char kind, String text, Node[] args ) {
+            this.id = id;
+            this.kind = kind;
+            this.text = text;
+            this.args = Collections.unmodifiableList( Arrays.asList( args ) );
+
+            if ( kind == VAR ) {
+                vars = Collections.singleton( text );
+            } else if ( args.length == 0 ) {
+                vars = Collections.emptySet();
+            } else {
+                Set<String> set = new HashSet<String>();
+                for ( Node arg : args ) {
+                    set.addAll( arg.vars );
+                }
+                vars = Collections.unmodifiableSet( set );
+            }
+        }
+
+        public char getKind() {
+            return kind;
+        }
+
+        /**
+         * @return name of the variable or the function, the number or the type of the cast
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return true for binary operations and function calls
+         */
+        public boolean isOperation() {
+            return kind != VAR && kind != CONST && kind != NEG && kind != CAST;
+        }
+
+        public List<Node> getArgs() {
+            return args;
+        }
+
+        /**
+         * @return names of variables the expression depends on
+         */
+        public Set<String> getVars() {
+            return vars;
+        }
+
+        /**
+         * @param names names to use for nodes instead of their expressions, may be empty
+         * @return Java code of the expression
+         */
+        public String toJava( Map<Node, String> names ) {
+
+            String name = names.get( this );
+            if ( name != null ) {
+                return name;
+            }
+
+            switch ( kind ) {
+            case VAR:
+            case CONST:
+                return text;
+            case NEG:
+                return "-(" + args.get( 0 ).toJava( names ) + ")";
+            case CAST:
+                return "((" + text + ") " + args.get( 0 ).toJava( names ) + ")";
+            case CALL:
+                StringBuilder sb = new StringBuilder( text ).append( "(" );
+                for ( int i = 0; i < args.size(); i++ ) {
+                    if ( i > 0 ) {
+                        sb.append( ", " );
+                    }
+                    sb.append( args.get( i ).toJava( names ) );
+                }
+                return sb.append( ")" ).toString();
+            default:
+                return "(" + args.get( 0 ).toJava( names ) + " " + kind + " " + args.get( 1 ).toJava( names ) + ")";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return toJava( Collections.<Node, String>emptyMap() );
+        }
+    }
+
+    /**
+     * Recursive descent parser
+     * <pre>
+     * expression ::= term [ ( "+" | "-" ) term ]...
+     * term       ::= unary [ ( "*" | "/" ) unary ]...
+     * unary      ::= "-" unary | "+" unary | primary
+     * primary    ::= number | name [ "(" expression [ "," expression ]... ")" ]
+     *              | "(" primitive type ")" unary | "(" expression ")"
+     * </pre>
+     */
+    private class Parser {
+
+        private final String s;
+        private int pos;
+
+        Parser( String s ) {
+            this.s = s;
+        }
+
+        void skipBlanks() {
+            while ( pos < s.length() && Character.isWhitespace( s.charAt( pos ) ) ) {
+                pos++;
+            }
+        }
+
+        char peek() {
+            skipBlanks();
+            return pos < s.length() ? s.charAt( pos ) : 0;
+        }
+
+        void expect( char c ) {
+            if ( peek() != c ) {
+                throw new IllegalArgumentException( "Expected " + c + " at " + pos + " in " + s );
+            }
+            pos++;
+        }
+
+        Node expression() {
+            Node node = term();
+            for ( char c = peek(); c == '+' || c == '-'; c = peek() ) {
+                pos++;
+                node = intern( c, "", node, term() );
+            }
+            return node;
+        }
+
+        Node term() {
+            Node node = unary();
+            for ( char c = peek(); c == '*' || c == '/'; c = peek() ) {
+                pos++;
+                node = intern( c, "", node, unary() );
+            }
+            return node;
+        }
+
+        Node unary() {
+            char c = peek();
+            if ( c == '-' ) {
+                pos++;
+                return intern( Node.NEG, "", unary() );
+            } else if ( c == '+' ) {
+                pos++;
+                return unary();
+            }
+            return primary();
+        }
+
+        Node primary() {
+            char c = peek();
+
+            if ( c == '(' ) {
+                pos++;
+                String type = castType();
+                if ( type != null ) {
+                    return intern( Node.CAST, type, unary() );
+                }
+                Node node = expression();
+                expect( ')' );
+                return node;
+            } else if ( Character.isDigit( c ) || c == '.' ) {
+                return intern( Node.CONST, number() );
+            } else if ( Character.isJavaIdentifierStart( c ) ) {
+                String name = name();
+                if ( peek() != '(' ) {
+                    return intern( Node.VAR, name );
+                }
+                pos++;
+                List<Node> args = new ArrayList<Node>();
+                if ( peek() != ')' ) {
+                    args.add( expression() );
+                    while ( peek() == ',' ) {
+                        pos++;
+                        args.add( expression() );
+                    }
+                }
+                expect( ')' );
+                return intern( Node.CALL, name, args.toArray( new Node[args.size()] ) );
+            }
+            throw new IllegalArgumentException( "Unexpected character at " + pos + " in " + s );
+        }
+
+        /**
+         * Reads the type and the closing bracket of a cast
+         *
+         * @return the type or null if the bracket does not start a cast
+         */
+        String castType() {
+            int start = pos;
+            skipBlanks();
+            if ( pos < s.length() && Character.isJavaIdentifierStart( s.charAt( pos ) ) ) {
+                String name = name();
+                if ( PRIMITIVE_TYPES.contains( name ) && peek() == ')' ) {
+                    pos++;
+                    return name;
+                }
+            }
+            pos = start;
+            return null;
+        }
+
+        String name() {
+            int start = pos;
+            while ( pos < s.length() && ( Character.isJavaIdentifierPart( s.charAt( pos ) ) || s.charAt( pos ) == '.' ) ) {
+                pos++;
+            }
+            return s.substring( start, pos );
+        }
+
+        String number() {
+            int start = pos;
+            while ( pos < s.length() ) {
+                char c = s.charAt( pos );
+                if ( Character.isLetterOrDigit( c ) || c == '.' ) {
+                    pos++;
+                } else if ( ( c == '+' || c == '-' ) && isExponent( s.charAt( pos - 1 ), start ) ) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            return s.substring( start, pos );
+        }
+
+        /**
+         * @return true if the sign after the character belongs to the exponent of the number
+         */
+        private boolean isExponent( char c, int start ) {
+            boolean hex = s.regionMatches( true, start, "0x", 0, 2 );
+            return hex ? ( c == 'p' || c == 'P' ) : ( c == 'e' || c == 'E' );
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package ee.ioc.cs.vsle.equations;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed equation that can be rewritten into a linear form
+ * with respect to a given set of unknown variables, i.e.
+ * sum of coefficient * unknown + constant = 0,
+ * where coefficients and the constant are expressions
+ * of the remaining (known) variables.
+ *
+ * Variables appear in expressions of the linear form as $name$.
+ */
+public class LinearEquation {
+
+    private static final Pattern PATTERN_VAR = Pattern.compile( "\\$([^\\$]+)\\$" );
+
+    private ExpNode root;
+    //variable names in the equation -> names in the specification
+    private Map<String, String> names = new LinkedHashMap<String, String>();
+
+    LinearEquation( ExpNode root, Collection<String> vars ) {
+        this.root = root;
+        for ( String var : vars ) {
+            String name = var.replaceAll( "\\$", "" );
+            names.put( name, name );
+        }
+    }
+
+    /**
+     * @return names of variables of the equation
+     */
+    public Set<String> getVars() {
+        return new LinkedHashSet<String>( names.values() );
+    }
+
+    /**
+     * Renames a variable, e.g. if it has a different name in the specification
+     *
+     * @param var
+     * @param name
+     */
+    public void renameVar( String var, String name ) {
+        for ( Map.Entry<String, String> entry : names.entrySet() ) {
+            if ( entry.getValue().equals( var ) ) {
+                entry.setValue( name );
+            }
+        }
+    }
+
+    /**
+     * @param unknowns names of unknown variables
+     * @return linear form of the equation or null if the equation
+     * is not linear with respect to the unknowns
+     */
+    public LinearForm linearize( Collection<String> unknowns ) {
+
+        Set<String> vars = new HashSet<String>();
+        for ( Map.Entry<String, String> entry : names.entrySet() ) {
+            if ( unknowns.contains( entry.getValue() ) ) {
+                vars.add( "$" + entry.getKey() + "$" );
+            }
+        }
+
+        LinearForm form = root.linearize( vars );
+
+        if ( form == null ) {
+            return null;
+        }
+
+        LinearForm result = new LinearForm();
+        for ( Map.Entry<String, String> entry : form.coefficients.entrySet() ) {
+            result.coefficients.put( rename( entry.getKey() ).replaceAll( "\\$", "" ), rename( entry.getValue() ) );
+        }
+        result.constant = form.constant != null ? rename( form.constant ) : null;
+
+        return result;
+    }
+
+    private String rename( String expression ) {
+
+        Matcher matcher = PATTERN_VAR.matcher( expression );
+        StringBuffer sb = new StringBuffer();
+
+        while ( matcher.find() ) {
+            String name = names.get( matcher.group( 1 ) );
+            matcher.appendReplacement( sb, Matcher.quoteReplacement( "$" + ( name != null ? name : matcher.group( 1 ) ) + "$" ) );
+        }
+
+        return matcher.appendTail( sb ).toString();
+    }
+
+    @Override
+    public String toString() {
+        return rename( root.inFix() );
+    }
+
+    /**
+     * Linear form of an equation, sum of coefficient * unknown + constant = 0
+     */
+    public static class LinearForm {
+
+        //unknown -> coefficient
+        private Map<String, String> coefficients = new LinkedHashMap<String, String>();
+        //null stands for zero
+        private String constant;
+
+        /**
+         * @return coefficients of unknowns
+         */
+        public Map<String, String> getCoefficients() {
+            return coefficients;
+        }
+
+        /**
+         * @return the constant term or null if it is zero
+         */
+        public String getConstant() {
+            return constant;
+        }
+
+        boolean isConstant() {
+            return coefficients.isEmpty();
+        }
+
+        static LinearForm constant( String value ) {
+            LinearForm form = new LinearForm();
+            form.constant = value;
+            return form;
+        }
+
+        static LinearForm unknown( String var ) {
+            LinearForm form = new LinearForm();
+            form.coefficients.put( var, "1.0" );
+            return form;
+        }
+
+        LinearForm add( LinearForm other ) {
+            LinearForm form = new LinearForm();
+            form.coefficients.putAll( coefficients );
+            for ( Map.Entry<String, String> entry : other.coefficients.entrySet() ) {
+                String coef = form.coefficients.get( entry.getKey() );
+                form.coefficients.put( entry.getKey(),
+                        coef == null ? entry.getValue() : "(" + coef + ") + (" + entry.getValue() + ")" );
+            }
+            form.constant = constant == null
+                    ? other.constant
+                    : other.constant == null ? constant : "(" + constant + ") + (" + other.constant + ")";
+            return form;
+        }
+
+        LinearForm negate() {
+            LinearForm form = new LinearForm();
+            for ( Map.Entry<String, String> entry : coefficients.entrySet() ) {
+                form.coefficients.put( entry.getKey(), "-(" + entry.getValue() + ")" );
+            }
+            form.constant = constant == null ? null : "-(" + constant + ")";
+            return form;
+        }
+
+        /**
+         * @param factor constant form
+         */
+        LinearForm multiply( LinearForm factor ) {
+            LinearForm form = new LinearForm();
+            if ( factor.constant == null ) {
+                return form;
+            }
+            for ( Map.Entry<String, String> entry : coefficients.entrySet() ) {
+                form.coefficients.put( entry.getKey(), entry.getValue().equals( "1.0" )
+                        ? factor.constant
+                        : "(" + entry.getValue() + ") * (" + factor.constant + ")" );
+            }
+            form.constant = constant == null ? null : "(" + constant + ") * (" + factor.constant + ")";
+            return form;
+        }
+
+        /**
+         * @param divisor constant form
+         */
+        LinearForm divide( LinearForm divisor ) {
+            LinearForm form = new LinearForm();
+            String d = divisor.constant == null ? "0" : divisor.constant;
+            for ( Map.Entry<String, String> entry : coefficients.entrySet() ) {
+                //coefficients are always real numbers
+                form.coefficients.put( entry.getKey(), "(" + entry.getValue() + ") / (double) (" + d + ")" );
+            }
+            form.constant = constant == null ? null : "(" + constant + ") / (" + d + ")";
+            return form;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for ( Map.Entry<String, String> entry : coefficients.entrySet() ) {
+                sb.append( "(" ).append( entry.getValue() ).append( ") * " ).append( entry.getKey() ).append( " + " );
+            }
+            return sb.append( constant == null ? "0" : constant ).append( " = 0" ).toString();
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package ee.ioc.cs.vsle.equations;
 
+import java.util.Set;
+
+import ee.ioc.cs.vsle.equations.LinearEquation.LinearForm;
+
 class UnaryOpNode extends ExpNode {
 	// An expression node to represent a unary minus operator + sin, cos, log,  abs, tan.
 	ExpNode operand;
@@ -31,6 +35,22 @@ class UnaryOpNode extends ExpNode {
 		operand.getVars();
 	}
 
+	@Override
+	LinearForm linearize(Set<String> unknowns) {
+		LinearForm form = operand.linearize(unknowns);
+
+		if (form == null) {
+			return null;
+		} else if (meth.equals("-")) {
+			return form.negate();
+		} else if (!form.isConstant()) {
+			//functions of unknowns are not linear
+			return null;
+		}
+		return LinearForm.constant(Function.valueOf(meth).getFunction() + "("
+				+ (form.getConstant() != null ? form.getConstant() : "0") + ")");
+	}
+
 	void reverse() {
 		sub = operand.inFix();
 	}
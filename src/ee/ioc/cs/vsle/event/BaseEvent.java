@@ -16,6 +16,11 @@ abstract public class BaseEvent extends EventObject {
 	private boolean         m_processed      = false;
 	private long            m_timeStamp      = 0L;
 	
+	/** Fields used by EventQueue */
+	Object                  m_coalescingKey;
+	long                    m_queuedTime;
+	volatile boolean        m_superseded     = false;
+	
 	/** Field <code>instancesMaxNumber</code> */
 	private static int s_instancesMaxNumber = 0;
 
@@ -86,6 +91,18 @@ abstract public class BaseEvent extends EventObject {
 		return true;
 	}
 
+	/**
+	 * If an event with the same non-null key is still waiting in the queue
+	 * when this event is added, the waiting event is dropped and only this one
+	 * is dispatched. Events are not coalesced by default.
+	 * 
+	 * @return the key, null if the event must always be dispatched
+	 */
+	protected Object getCoalescingKey()
+	{
+		return null;
+	}
+
 	public void finalize()
 	{
 		s_instancesCounter--;
@@ -1,16 +1,18 @@
 package ee.ioc.cs.vsle.event;
 
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import ee.ioc.cs.vsle.util.db;
 
 public class EventContainer {
 	
-	private Vector<BaseEventListener> termListeners;
+	//copy-on-write, listeners are added rarely and traversed on every event
+	private List<BaseEventListener> termListeners;
 	
 	EventContainer()
 	{
-		termListeners = new Vector<BaseEventListener>();
+		termListeners = new CopyOnWriteArrayList<BaseEventListener>();
 	}
 
 	public void add( BaseEventListener lst )
@@ -21,15 +23,11 @@ public class EventContainer {
 	public void traverseAll( BaseEvent ftoevent, EventDispatcher dispatcher )
 	{
 
-		// during notifying lisntener can do unsubscribe
-		// use copy of array in for statement
-		Vector listenersCopy = (Vector) termListeners.clone();
-
-		for ( int k = 0; k < listenersCopy.size(); k++ )
+		// during notifying lisntener can do unsubscribe,
+		// the iterator traverses the array as it was before
+		for ( BaseEventListener listener : termListeners )
 		{
-			Object obj = listenersCopy.elementAt( k );
-
-			dispatcher.tryToCallListenerOnEvent( (BaseEventListener) obj, ftoevent );
+			dispatcher.tryToCallListenerOnEvent( listener, ftoevent );
 		}
 	}
 
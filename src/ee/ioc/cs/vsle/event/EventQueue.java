@@ -4,37 +4,72 @@
 package ee.ioc.cs.vsle.event;
 
 import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.SwingUtilities;
 
 import ee.ioc.cs.vsle.util.db;
 
 /**
+ * Event queue with many producers and a single consumer thread.
+ * Events are added to a lock-free queue and dispatched in batches.
+ *
+ * Events having a coalescing key replace older events with the same key
+ * that have not been dispatched yet (see BaseEvent.getCoalescingKey()).
+ *
+ * When the queue is full, producers are slowed down for a while,
+ * except the event dispatch thread and the queue thread itself,
+ * because listeners may wait for them.
+ *
  * @author pavelg
  *
  */
 public class EventQueue extends Thread {
 
-	private int m_eventsAdded       = 0;
-	private int m_eventsConsumed    = 0;
+	/** Maximum number of events dispatched in one go */
+	private static final int BATCH_SIZE = 64;
+
+	/** Number of waiting events after which producers are slowed down */
+	private static final int CAPACITY = 10000;
+
+	/** Maximum time a producer waits for free space, the event is added anyway after that */
+	private static final long MAX_PRODUCER_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+	private final AtomicInteger m_eventsAdded       = new AtomicInteger();
+	private volatile int        m_eventsConsumed    = 0;
+	private final AtomicInteger m_eventsCoalesced   = new AtomicInteger();
 
 	private long m_prevEventTime = System.currentTimeMillis();
 	private long m_maxTimeDelta  = 1000;    //1000 ms
 	private long m_startTime     = System.currentTimeMillis();
 
-	/** Field <code>firstUsedCell</code> */
-	private EventCell m_firstUsedCell = null;
+	/** Field <code>m_queue</code> */
+	private final Queue<BaseEvent> m_queue = new ConcurrentLinkedQueue<BaseEvent>();
 
-	/** Field <code>lastUsedCell</code> */
-	private EventCell m_lastUsedCell = null;
+	/** Number of waiting events, the size of the queue is not constant time */
+	private final AtomicInteger m_depth = new AtomicInteger();
+	private volatile int m_maxDepth = 0;
 
-	/** Field <code>totalSize</code> */
-	private int m_totalSize = 0;
+	/** Waiting events by coalescing keys */
+	private final ConcurrentMap<Object, BaseEvent> m_coalescing = new ConcurrentHashMap<Object, BaseEvent>();
 
-	/** Field <code>usedSize</code> */
-	private int m_usedSize = 0;
+	/** Time between adding and dispatching events */
+	private final AtomicLong m_totalLatency = new AtomicLong();
+	private volatile long m_maxLatency = 0;
+
+	/** Field <code>m_waiting</code>, true if the consumer is parked or about to park */
+	private volatile boolean m_waiting = false;
 
 	/** Field <code>m_running</code> */
 	private volatile boolean m_running = false;
-	
+
 	/**
 	 * Method <code>getStartTime</code>
 	 *
@@ -56,7 +91,7 @@ public class EventQueue extends Thread {
 	 */
 	public final int getOtherEventsAdded()
 	{
-		return m_eventsAdded;
+		return m_eventsAdded.get();
 	}
 
 	/**
@@ -71,6 +106,50 @@ public class EventQueue extends Thread {
 		return m_eventsConsumed;
 	}
 
+	/**
+	 * @return number of events replaced by newer events with the same coalescing key
+	 */
+	public final int getEventsCoalesced()
+	{
+		return m_eventsCoalesced.get();
+	}
+
+	/**
+	 * @return number of events waiting in the queue
+	 */
+	public final int getDepth()
+	{
+		return m_depth.get();
+	}
+
+	/**
+	 * @return maximum number of events that have been waiting in the queue
+	 */
+	public final int getMaxDepth()
+	{
+		return m_maxDepth;
+	}
+
+	/**
+	 * @return average time in milliseconds between adding and dispatching an event
+	 */
+	public final double getAverageLatency()
+	{
+		int consumed = m_eventsConsumed;
+
+		return consumed > 0
+				? m_totalLatency.get() / 1e6 / consumed
+				: 0;
+	}
+
+	/**
+	 * @return maximum time in milliseconds between adding and dispatching an event
+	 */
+	public final double getMaxLatency()
+	{
+		return m_maxLatency / 1e6;
+	}
+
 	/**
 	 * Method <code>resetInternalCounters</code>
 	 *
@@ -79,8 +158,12 @@ public class EventQueue extends Thread {
 	public final synchronized void resetInternalCounters()
 	{
 
-		m_eventsAdded       = 0;
+		m_eventsAdded.set( 0 );
 		m_eventsConsumed    = 0;
+		m_eventsCoalesced.set( 0 );
+		m_maxDepth          = 0;
+		m_totalLatency.set( 0 );
+		m_maxLatency        = 0;
 
 		m_startTime = System.currentTimeMillis();
 	}
@@ -99,6 +182,11 @@ public class EventQueue extends Thread {
 
 		dump += "added = " + getOtherEventsAdded() + ", ";
 		dump += "consumed = " + getOtherEventsConsumed() + ", ";
+		dump += "coalesced = " + getEventsCoalesced() + ", ";
+		dump += "depth = " + getDepth() + ", ";
+		dump += "max depth = " + getMaxDepth() + ", ";
+		dump += "avg latency = " + getAverageLatency() + " ms, ";
+		dump += "max latency = " + getMaxLatency() + " ms";
 
 		return dump;
 	}
@@ -111,6 +199,8 @@ public class EventQueue extends Thread {
 	public void shutdown()
 	{
 		m_running = false;
+
+		LockSupport.unpark( this );
 	}
 
 	/**
@@ -128,114 +218,143 @@ public class EventQueue extends Thread {
 	/**
 	   * Adds a new event to the queue
 	   */
-	public synchronized void addEvent( BaseEvent evt ) throws EventQueueException
+	public void addEvent( BaseEvent evt ) throws EventQueueException
 	{
 
-		m_eventsAdded++;
-
-		if ( m_usedSize >= m_totalSize )
+		if ( evt == null )
 		{
-			if ( m_firstUsedCell == null )
-			{
-				m_firstUsedCell         = m_lastUsedCell = new EventCell();
-				m_firstUsedCell.nextEl  = m_firstUsedCell;
-				m_totalSize             = m_usedSize = 1;
-				m_firstUsedCell.evtData = evt;
+			throw new EventQueueException( "Null event cannot be added to the queue!" );
+		}
 
-				notifyAll();
+		m_eventsAdded.incrementAndGet();
 
-				return;
-			}
+		if ( m_depth.get() >= CAPACITY )
+		{
+			waitForSpace();
+		}
+
+		Object key = evt.getCoalescingKey();
 
-			EventCell afterLast = m_lastUsedCell.nextEl;
+		evt.m_coalescingKey = key;
+		evt.m_queuedTime    = System.nanoTime();
 
-			m_lastUsedCell.nextEl        = new EventCell();
-			m_lastUsedCell.nextEl.nextEl = afterLast;
+		if ( key != null )
+		{
+			BaseEvent prev = m_coalescing.put( key, evt );
 
-			m_totalSize++;
+			if ( prev != null )
+			{
+				//the consumer skips superseded events
+				prev.m_superseded = true;
+			}
 		}
 
-		m_lastUsedCell = m_lastUsedCell.nextEl;
+		m_queue.offer( evt );
 
-		if ( m_lastUsedCell.evtData != null )
-		{
-			EventQueueException ex = new EventQueueException(
-				"Non-null evtData in lastUsedCell when adding new event!" );
+		int depth = m_depth.incrementAndGet();
 
-			throw ( ex );
+		if ( depth > m_maxDepth )
+		{
+			m_maxDepth = depth;
 		}
 
-		m_usedSize++;
-
-		m_lastUsedCell.evtData = evt;
+		if ( m_waiting )
+		{
+			m_waiting = false;
 
-		notifyAll();
+			LockSupport.unpark( this );
+		}
 	}
 
 	/**
-	 * Gets a next event and sends it to receiver
+	 * Slows down the producer until there is free space in the queue or
+	 * the time is up. The queue thread and the event dispatch thread are never delayed.
 	 */
-	private BaseEvent consumeEvent() throws EventQueueException
+	private void waitForSpace()
 	{
 
-		// Consumed event cells are deleted then
-		// queue threshold falls shorts of given value.
-		final double queueThreshold = 0.9;    // 90% occupancy
-		final int    queueMinLimit  = 100;
+		if ( Thread.currentThread() == this || SwingUtilities.isEventDispatchThread() )
+		{
+			return;
+		}
 
-		BaseEvent evt            = null;
+		long deadline = System.nanoTime() + MAX_PRODUCER_WAIT_NANOS;
 
-		synchronized ( this )
+		while ( m_running && m_depth.get() >= CAPACITY )
 		{
+			long left = deadline - System.nanoTime();
 
-			if ( m_usedSize == 0 )
+			if ( left <= 0 )
 			{
-				return null;
+				return;
 			}
 
-			evt = m_firstUsedCell.evtData;
+			LockSupport.parkNanos( Math.min( left, TimeUnit.MILLISECONDS.toNanos( 1 ) ) );
+		}
+	}
 
-			if ( evt == null )
-			{
+	/**
+	 * Takes up to BATCH_SIZE events from the queue
+	 *
+	 * @return number of events taken
+	 */
+	private int drain( BaseEvent[] batch )
+	{
 
-				// SHOULD NEVER HAPPEN !!!
-				EventQueueException ex = new EventQueueException(
-				"Non-zero usedSize but null evtData in firstUsedCell when consuming event!" );
+		int count = 0;
+		BaseEvent evt;
 
-				throw ( ex );
-			}
+		while ( count < batch.length && ( evt = m_queue.poll() ) != null )
+		{
+			m_depth.decrementAndGet();
 
-			long m_newEventTime = System.currentTimeMillis();
+			if ( evt.m_coalescingKey != null )
+			{
+				m_coalescing.remove( evt.m_coalescingKey, evt );
+			}
 
-			if ( ( m_prevEventTime - m_newEventTime ) > m_maxTimeDelta )
+			if ( evt.m_superseded )
 			{
-				db.p( "THE SYSTEM TIME IS JUMPED BACK : prev event time = "
-						+ new Date( m_prevEventTime )
-						+ ", current event time = "
-						+ new Date( m_newEventTime ) );    //evt.getTimeStamp() ) );
+				m_eventsCoalesced.incrementAndGet();
+				evt.processed();
+
+				continue;
 			}
 
-			m_prevEventTime       = m_newEventTime;
-			m_firstUsedCell.evtData = null;
-			m_firstUsedCell         = m_firstUsedCell.nextEl;
+			batch[count++] = evt;
+		}
 
-			// If event queue is longer than 100 cells and
-			// too many cells are empty, then proceed with cleanup.
-			if ( ( m_usedSize > queueMinLimit )
-					&& ( ( 1.0 * m_usedSize / m_totalSize ) < queueThreshold ) )
-			{
+		return count;
+	}
 
-				EventCell t = m_lastUsedCell.nextEl;
+	/**
+	 * Sends the event to receivers
+	 */
+	private void consumeEvent( BaseEvent evt )
+	{
 
-				m_lastUsedCell.nextEl = t.nextEl;
-				t.nextEl            = null;
+		long now = System.nanoTime();
+		long latency = now - evt.m_queuedTime;
 
-				m_totalSize--;
-			}
+		m_totalLatency.addAndGet( latency );
 
-			m_usedSize--;
+		if ( latency > m_maxLatency )
+		{
+			m_maxLatency = latency;
 		}
 
+		long m_newEventTime = System.currentTimeMillis();
+
+		if ( ( m_prevEventTime - m_newEventTime ) > m_maxTimeDelta )
+		{
+			db.p( "THE SYSTEM TIME IS JUMPED BACK : prev event time = "
+					+ new Date( m_prevEventTime )
+					+ ", current event time = "
+					+ new Date( m_newEventTime ) );    //evt.getTimeStamp() ) );
+		}
+
+		m_prevEventTime = m_newEventTime;
+
 		try
 		{
 			if ( evt.isValid() )
@@ -251,8 +370,6 @@ public class EventQueue extends Thread {
 		}
 
 		m_eventsConsumed++;
-
-		return evt;
 	}
 
 	/**
@@ -265,81 +382,47 @@ public class EventQueue extends Thread {
 
 		m_running = true;
 
-		int evtCnt            = 0;
-		int evtCntBeforeYield = 7;      //31;
+		BaseEvent[] batch = new BaseEvent[BATCH_SIZE];
 
 		while ( m_running )
 		{
-			BaseEvent evt = null;
+			int count = drain( batch );
 
-			try
-			{
-				evt = consumeEvent();
-			}
-			catch ( EventQueueException ex )
+			if ( count == 0 )
 			{
-				db.p( "Ignored by event queue: " + ex );
-			}
+				m_waiting = true;
 
-			if ( evt == null )
-			{
-				while ( m_usedSize == 0 )
+				//recheck after announcing, a producer might have missed the flag
+				if ( m_queue.isEmpty() && m_running )
 				{
-					synchronized ( this )
-					{
-						try
-						{
-							wait();
-						}
-						catch ( InterruptedException ex ) {}
-					}
+					LockSupport.park( this );
 				}
 
+				m_waiting = false;
+
 				continue;
 			}
-			if ( ( ( ++evtCnt ) & evtCntBeforeYield ) == 0 )
+
+			for ( int i = 0; i < count; i++ )
 			{
-				yield();
+				consumeEvent( batch[i] );
+
+				batch[i] = null;
 			}
 		}
 
 		cleanup();
 	}
 
-	/**
-	 * An queue element. Contains of an event and pointer to the next element in the queue
-	 */
-	private static class EventCell
-	{
-
-		/** Field <code>evtData</code> */
-		private BaseEvent evtData = null;
-
-		/** Field <code>nextEl</code> */
-		private EventCell nextEl = null;
-	}
-
 	/**
 	 * Stops the thread and clears the queue.
-	 * Leaves only first empty element, other objects are subject
-	 * to next garbage collection iteration.
+	 * Remaining events are subject to next garbage collection iteration.
 	 */
 	private void cleanup()
 	{
 
-		// do cleanup for ordinary (other) events
-		EventCell p = m_firstUsedCell;
-
-		while ( ( p != null ) && ( p.nextEl != null ) )
-		{
-			EventCell r = p.nextEl;
-
-			p.nextEl  = null;
-			p.evtData = null;
-			p         = r;
-		}
-
-		m_lastUsedCell = m_firstUsedCell;
-
+		m_queue.clear();
+		m_coalescing.clear();
+		m_depth.set( 0 );
 	}
-}
\ No newline at end of file
+}
@@ -228,8 +228,6 @@ public class Text extends Shape implements Serializable {
 
         Rectangle2D r = this.getFont().getStringBounds( getText(), 0, getText().length(), frc );
 
-        this.h = (int) r.getHeight();
-        this.w = (int) r.getWidth();
         if ( !isFixed() ) {
             g2.setFont( getFont().deriveFont( (float) Math.sqrt( Xsize * Ysize ) * getFont().getSize() ) );
         } else {
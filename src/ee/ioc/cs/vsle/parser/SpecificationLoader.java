@@ -19,6 +19,8 @@ import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import ee.ioc.cs.vsle.parser.SpecificationLanguageParser.MetaInterfaseContext;
 import ee.ioc.cs.vsle.synthesize.AnnotatedClass;
+import ee.ioc.cs.vsle.synthesize.ClassList;
+import ee.ioc.cs.vsle.synthesize.SpecClassCache;
 import ee.ioc.cs.vsle.synthesize.SpecParseException;
 
 
@@ -35,10 +37,20 @@ public class SpecificationLoader {
 	//TODO: Recursive specifications...
 	public AnnotatedClass getSpecification(String specificationName) throws SpecificationNotFoundException{
 		if(!specificationByName.containsKey(specificationName)){
-			try {
-				loadSpecification(new ANTLRFileStream(basePath.concat(specificationName).concat(".java")), specificationName);
-			} catch (IOException e) {
-				throw new SpecificationNotFoundException("Unable to find specification ".concat(specificationName));
+			ClassList cached = SpecClassCache.getInstance().get(SpecificationLoader.class, basePath, specificationName);
+			if(cached != null) {
+				for (AnnotatedClass annotatedClass : cached) {
+					if(!specificationByName.containsKey(annotatedClass.getName()))
+						specificationByName.put(annotatedClass.getName(), annotatedClass);
+				}
+			} else {
+				try {
+					loadSpecification(new ANTLRFileStream(basePath.concat(specificationName).concat(".java")), specificationName);
+				} catch (IOException e) {
+					throw new SpecificationNotFoundException("Unable to find specification ".concat(specificationName));
+				}
+				SpecClassCache.getInstance().put(SpecificationLoader.class, basePath, specificationName, 
+						SpecClassCache.collectDependencies(specificationName, specificationByName));
 			}
 		}
 		
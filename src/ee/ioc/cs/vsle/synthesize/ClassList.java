@@ -13,6 +13,12 @@ import java.util.*;
 public class ClassList
 	extends LinkedHashSet<AnnotatedClass> {
 
+	//name -> class, kept in sync with the contents of the set
+	private HashMap<String, AnnotatedClass> classesByName = new HashMap<String, AnnotatedClass>();
+	//lazily computed hierarchy queries, dropped on every modification
+	private HashMap<String, ClassList> allSuperClasses = new HashMap<String, ClassList>();
+	private HashMap<String, ClassList> commonTypes = new HashMap<String, ClassList>();
+
 	/**
 	 * Class constructor.
 	 */
@@ -27,17 +33,150 @@ public class ClassList
 	 */
 
 	public AnnotatedClass getType(String type) {
-		for (AnnotatedClass ac : this ) {
+		return classesByName.get( type );
+	} // getType
+
+	public boolean containsType( String type ) {
+		return classesByName.containsKey( type );
+	}
 
-			if ( ac.getName().equals(type) ) {
-				return ac;
+	/**
+	 * Returns all direct and indirect superclasses of a given type.
+	 * The result is computed once and must not be modified.
+	 * @param type String - type of the Annotated Class
+	 * @return ClassList - superclasses or null if the type is not in the list
+	 */
+	public ClassList getAllSuperClasses( String type ) {
+		ClassList supers = allSuperClasses.get( type );
+		if ( supers == null ) {
+			AnnotatedClass ac = getType( type );
+			if ( ac == null ) {
+				return null;
 			}
+			supers = ac.getAllSuperClasses();
+			allSuperClasses.put( type, supers );
 		}
-		return null;
-	} // getType
+		return supers;
+	}
 
-	public boolean containsType( String type ) {
-		return getType( type ) != null;
+	/**
+	 * Derives common types for given two types.
+	 * As multiple inheritance of specifications is allowed, 
+	 * more that one common type may be derived.
+	 * The result is computed once and must not be modified.
+	 * 
+	 * @param type1
+	 * @param type2
+	 * @return
+	 */
+	public ClassList getCommonTypes( String type1, String type2 ) {
+		String key = type1 + "|" + type2;
+		ClassList types = commonTypes.get( key );
+		if ( types != null ) {
+			return types;
+		}
+
+		types = new ClassList();
+
+		if( type1.equals( type2 ) ) {
+			types.add( getType( type1 ) );
+		}
+		else {
+			AnnotatedClass ac1 = getType( type1 );
+			AnnotatedClass ac2 = getType( type2 );
+			ClassList allAC1superclasses = getAllSuperClasses( type1 );
+			ClassList allAC2superclasses = getAllSuperClasses( type2 );
+
+			if( allAC2superclasses.contains( ac1 ) ) {
+				types.add( ac1 );
+			}
+			else if( allAC1superclasses.contains( ac2 ) ) {
+				types.add( ac2 );
+			}
+			else {
+				for ( AnnotatedClass super1 : allAC1superclasses ) {
+					if( allAC2superclasses.contains( super1 ) ) {
+						types.add( super1 );
+					}
+				}
+			}
+		}
+
+		commonTypes.put( key, types );
+		return types;
+	}
+
+	@Override
+	public boolean add( AnnotatedClass ac ) {
+		if ( super.add( ac ) ) {
+			classesByName.put( ac.getName(), ac );
+			hierarchyChanged();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean remove( Object o ) {
+		if ( super.remove( o ) ) {
+			classesByName.remove( ((AnnotatedClass)o).getName() );
+			hierarchyChanged();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		classesByName.clear();
+		hierarchyChanged();
+	}
+
+	@Override
+	public Iterator<AnnotatedClass> iterator() {
+		final Iterator<AnnotatedClass> it = super.iterator();
+		//removal through the iterator (also used by removeAll, retainAll) must update the index
+		return new Iterator<AnnotatedClass>() {
+
+			private AnnotatedClass current;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public AnnotatedClass next() {
+				return current = it.next();
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				classesByName.remove( current.getName() );
+				hierarchyChanged();
+			}
+		};
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public Object clone() {
+		ClassList clone = (ClassList) super.clone();
+		clone.classesByName = (HashMap<String, AnnotatedClass>) classesByName.clone();
+		clone.allSuperClasses = new HashMap<String, ClassList>();
+		clone.commonTypes = new HashMap<String, ClassList>();
+		return clone;
+	}
+
+	private void hierarchyChanged() {
+		if ( !allSuperClasses.isEmpty() ) {
+			allSuperClasses.clear();
+		}
+		if ( !commonTypes.isEmpty() ) {
+			commonTypes.clear();
+		}
 	}
 
 }
@@ -7,6 +7,7 @@ import java.util.LinkedHashSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import ee.ioc.cs.vsle.equations.LinearEquation;
 import ee.ioc.cs.vsle.vclass.ClassField;
 
 /**
@@ -48,6 +49,11 @@ public class ClassRelation {
 	private RelType type;
 	private String method;
 	protected String specLine;
+	/**
+	 * The equation this relation is derived from, shared by all relations
+	 * of the equation, null for other relations
+	 */
+	private LinearEquation equation;
 
 	/**
 	 * Class constructor.
@@ -224,6 +230,14 @@ public class ClassRelation {
 		return specLine;
 	}
 
+	public LinearEquation getEquation() {
+		return equation;
+	}
+
+	public void setEquation(LinearEquation equation) {
+		this.equation = equation;
+	}
+
 	/**
 	 * @return String
 	 */
@@ -7,6 +7,7 @@ import java.util.regex.*;
 
 import ee.ioc.cs.vsle.api.*;
 import ee.ioc.cs.vsle.editor.*;
+import ee.ioc.cs.vsle.equations.*;
 import ee.ioc.cs.vsle.table.*;
 import ee.ioc.cs.vsle.util.*;
 import ee.ioc.cs.vsle.vclass.*;
@@ -60,11 +61,17 @@ public class CodeGenerator {
 
         genInputs( alg, problem.getAssumptions(), COMPUTE_ARG_NAME );
 
+        CommonSubexpressions cse = new CommonSubexpressions( algorithm, relProducer );
+
         for ( PlanningResult res : algorithm ) {
 
             Rel rel = res.getRel();
             
-            if ( rel.getType() != RelType.TYPE_METHOD_WITH_SUBTASK ) {
+            if ( cse.contains( rel ) ) {
+                appendRelToAlg( cse.emit( rel, same() ), rel.getExceptions(), alg, false );
+            }
+
+            else if ( rel.getType() != RelType.TYPE_METHOD_WITH_SUBTASK ) {
                 appendRelToAlg( relProducer.setRel( rel ) .emit(), rel.getExceptions(), alg, false );
             }
 
@@ -78,6 +85,7 @@ public class CodeGenerator {
                 genRelWithSubtasks( res, alg, false, className, usedVars, problem );
             }
 
+            cse.assigned( rel );
         }
 
         db.p( "Code generation time: " + ( System.currentTimeMillis() - start ) + "ms" );
@@ -198,6 +206,8 @@ public class CodeGenerator {
         // apend subtask inputs to algorithm
         genInputs( bufSbtBody, subInputs, subtaskInputArrayName );
 
+        CommonSubexpressions cse = new CommonSubexpressions( subAlg, relProducer );
+
         for ( int i = 0; i < subAlg.size(); i++ ) {
             PlanningResult res = subAlg.get( i );
             Rel trel = res.getRel();
@@ -207,9 +217,12 @@ public class CodeGenerator {
                 // recursion
                 genRelWithSubtasks( res, bufSbtBody, true, sbClassName, currentUsedVars, currentProblem );
 
+            } else if ( cse.contains( trel ) ) {
+                appendRelToAlg( cse.emit( trel, same() ), trel.getExceptions(), bufSbtBody, true );
             } else {
                 appendRelToAlg( relProducer.setRel( trel ).emit(), trel.getExceptions(), bufSbtBody, true );
             }
+            cse.assigned( trel );
             unfoldVarsToSet( trel.getInputs(), currentUsedVars );
             unfoldVarsToSet( trel.getOutputs(), currentUsedVars );
         }
@@ -607,8 +620,12 @@ public class CodeGenerator {
         private static final Pattern PATTERN_VAR_IN_EQUATION = Pattern
                                         .compile( "[^a-zA-Z_]*([a-zA-Z_]{1}[a-zA-Z_0-9\\.]*)" );
         
+        private static final Pattern PATTERN_VAR_IN_LINEAR_FORM = Pattern.compile( "\\$([^\\$]+)\\$" );
+        
         private Rel rel;
         private CodeGenerator cg;
+        //set by resolveEquation()
+        private boolean methodCallExist;
         
         RelCodeProducer(Rel rel) {
             this(new CodeGenerator());
@@ -619,7 +636,7 @@ public class CodeGenerator {
             this.cg = cg;
         }
         
-        private RelCodeProducer setRel(Rel rel) {
+        RelCodeProducer setRel(Rel rel) {
             this.rel = rel;
             return this;
         }
@@ -735,6 +752,9 @@ public class CodeGenerator {
             else if (rel.getType() == RelType.TYPE_EQUATION) {
                 return emitEquation();
                 
+            } else if (rel.getType() == RelType.TYPE_LINEAR_SYSTEM) {
+                return emitLinearSystem();
+
             } else if (rel.getType() == RelType.TYPE_SUBTASK) {
                 // this should not be used in code generation
                 return rel.getInputs() + " -> " + rel.getOutputs();
@@ -813,7 +833,12 @@ public class CodeGenerator {
 
                 StringBuilder cast = new StringBuilder();
 
-                if ( !rel.getOutputs().isEmpty() ) {
+                String primitiveQuery = tableInputsMapping ? null : getPrimitiveTableQuery();
+
+                if ( primitiveQuery != null ) {
+                    //typed query, inputs and the output are not boxed
+                    cast.append( "ProgramContext." ).append( primitiveQuery );
+                } else if ( !rel.getOutputs().isEmpty() ) {
 
                     cast.append( "(" );
 
@@ -830,7 +855,9 @@ public class CodeGenerator {
                     cast.append( ")" );
                 }
                 
-                meth = cast.append( "ProgramContext.queryTable" ).toString();
+                meth = primitiveQuery != null 
+                        ? cast.toString() 
+                        : cast.append( "ProgramContext.queryTable" ).toString();
                 
                 if( tableInputsMapping && rel.getInputs().size() > 1 ) {
                     List<Var> list = new ArrayList<Var>(rel.getInputs());
@@ -859,6 +886,40 @@ public class CodeGenerator {
                             checkAliasOutputs( outputSubstitutions ) ).toString();
         }
 
+        /**
+         * @return queryDouble or queryInt if the table relation has only double (int)
+         * inputs besides the table id and a double (int) output, null otherwise
+         */
+        private String getPrimitiveTableQuery() {
+
+            if ( rel.getOutputs().size() != 1 || rel.getInputs().isEmpty() ) {
+                return null;
+            }
+
+            String type = rel.getFirstOutput().getType();
+            String query;
+
+            if ( TypeUtil.TYPE_DOUBLE.equals( type ) ) {
+                query = "queryDouble";
+            } else if ( TypeUtil.TYPE_INT.equals( type ) ) {
+                query = "queryInt";
+            } else {
+                return null;
+            }
+
+            //the first input is the id of the table
+            Iterator<Var> it = rel.getInputs().iterator();
+            it.next();
+            while ( it.hasNext() ) {
+                Var var = it.next();
+                if ( !type.equals( var.getType() ) || var.getField().isAlias() ) {
+                    return null;
+                }
+            }
+
+            return query;
+        }
+
         private String emitEquation() {
             
             StringBuilder result = new StringBuilder();
@@ -923,6 +984,29 @@ public class CodeGenerator {
                 }
             }
 
+            String equation = resolveEquation();
+
+            // TODO - add casting to other types as well
+            if ( rel.getFirstOutput().getType().equals( TYPE_INT )
+                    && ( methodCallExist || !getMaxType( rel.getInputs() ).equals(
+                            TYPE_INT ) ) ) {
+
+                String[] eq = equation.split( "=" );
+                return result.append( eq[0] ).append( " = (" )
+                        .append( TYPE_INT ).append( ") (" ).append( eq[1] )
+                        .append( " );\n" ).toString();
+            }
+
+            return equation + ";\n";
+        }
+
+        /**
+         * Replaces variable names of the equation with real instance names
+         * 
+         * @return the equation in the form output=expression
+         */
+        String resolveEquation() {
+
             Set<String> varNames = new LinkedHashSet<String>();
             for ( Var out : rel.getOutputs() ) {
                 varNames.add( out.getFullName() );
@@ -934,7 +1018,7 @@ public class CodeGenerator {
             String method = rel.getMethod();
             Matcher matcher = PATTERN_VAR_IN_EQUATION.matcher( method );
 
-            boolean methodCallExist = false;
+            methodCallExist = false;
 
             String parentFullName = rel.getParent().getFullNameForConcat();
             StringBuffer sb = new StringBuffer();
@@ -963,20 +1047,95 @@ public class CodeGenerator {
 
             matcher.appendTail( sb );
 
-            // TODO - add casting to other types as well
-            if ( rel.getFirstOutput().getType().equals( TYPE_INT )
-                    && ( methodCallExist || !getMaxType( rel.getInputs() ).equals(
-                            TYPE_INT ) ) ) {
+            return sb.toString();
+        }
 
-                String[] eq = sb.toString().split( "=" );
-                return result.append( eq[0] ).append( " = (" )
-                        .append( TYPE_INT ).append( ") (" ).append( eq[1] )
-                        .append( " );\n" ).toString();
+        /**
+         * Equations that have only double variables may share subexpressions
+         * with other equations, see {@link CommonSubexpressions}
+         * 
+         * @return the equation in the form output=expression with real instance names
+         * or null if the relation is not such an equation
+         */
+        String getDoubleEquation() {
+
+            if ( rel.getType() != RelType.TYPE_EQUATION || rel.getMethod() == null
+                    || rel.getInputs().isEmpty() || rel.getOutputs().size() != 1 ) {
+                return null;
             }
 
-            return sb.append( ";\n" ).toString();
+            Set<Var> vars = new LinkedHashSet<Var>( rel.getOutputs() );
+            vars.addAll( rel.getInputs() );
+
+            for ( Var var : vars ) {
+                if ( !TYPE_DOUBLE.equals( var.getType() ) || var.getField().isAlias() || var.getField().isAny() ) {
+                    return null;
+                }
+            }
+
+            return resolveEquation();
         }
         
+        /**
+         * Emits code that fills a LinearSystem with coefficients of equations,
+         * solves it and assigns the solution to the unknowns
+         */
+        private String emitLinearSystem() {
+
+            LinearSystemRel system = (LinearSystemRel) rel;
+            String name = "LS" + rel.getId();
+            String solverClass = LinearSystem.class.getName();
+            StringBuilder result = new StringBuilder();
+
+            result.append( solverClass ).append( " " ).append( name ).append( " = new " ).append( solverClass )
+                    .append( "( " ).append( system.getUnknowns().size() ).append( " );\n" );
+
+            for ( int i = 0; i < system.getEquations().size(); i++ ) {
+
+                EquationInstance equation = system.getEquations().get( i );
+                LinearEquation.LinearForm form = system.getForms().get( i );
+
+                for ( Map.Entry<String, String> coef : form.getCoefficients().entrySet() ) {
+                    int col = system.getUnknowns().indexOf( equation.getVar( coef.getKey() ) );
+                    result.append( CodeGenerator.OT_TAB ).append( CodeGenerator.OT_TAB ).append( name )
+                            .append( ".addCoefficient( " ).append( i ).append( ", " ).append( col ).append( ", " )
+                            .append( resolveEquationVars( coef.getValue(), equation ) ).append( " );\n" );
+                }
+
+                if ( form.getConstant() != null ) {
+                    result.append( CodeGenerator.OT_TAB ).append( CodeGenerator.OT_TAB ).append( name )
+                            .append( ".addConstant( " ).append( i ).append( ", " )
+                            .append( resolveEquationVars( form.getConstant(), equation ) ).append( " );\n" );
+                }
+            }
+
+            result.append( CodeGenerator.OT_TAB ).append( CodeGenerator.OT_TAB ).append( "double[] " ).append( name )
+                    .append( "_X = " ).append( name ).append( ".solve();\n" );
+
+            for ( int j = 0; j < system.getUnknowns().size(); j++ ) {
+                result.append( CodeGenerator.OT_TAB ).append( CodeGenerator.OT_TAB )
+                        .append( system.getUnknowns().get( j ).getFullName() ).append( " = " ).append( name )
+                        .append( "_X[" ).append( j ).append( "];\n" );
+            }
+
+            return result.toString();
+        }
+
+        /**
+         * Replaces $name$ in an expression of the linear form with the var of the equation
+         */
+        String resolveEquationVars( String expression, EquationInstance equation ) {
+
+            Matcher matcher = PATTERN_VAR_IN_LINEAR_FORM.matcher( expression );
+            StringBuffer sb = new StringBuffer();
+
+            while ( matcher.find() ) {
+                matcher.appendReplacement( sb, Matcher.quoteReplacement( getVarName( equation.getVar( matcher.group( 1 ) ) ) ) );
+            }
+
+            return matcher.appendTail( sb ).toString();
+        }
+
         private String checkAliasInputs( Map<String, String> varNameSubstitutions ) {
             StringBuilder assigns = new StringBuilder();
             for ( Var input : rel.getInputs() ) {
@@ -0,0 +1,231 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.equations.*;
+import ee.ioc.cs.vsle.equations.ExpressionDag.*;
+
+/**
+ * Common subexpression elimination for equations of an algorithm.
+ *
+ * Right sides of equations with double variables are added to an {@link ExpressionDag}.
+ * Subexpressions that occur at least twice are computed once into a temporary
+ * variable that is declared right before the first equation that uses it.
+ * A temporary variable is dropped as soon as a relation assigns a variable it depends on,
+ * so the next use of the subexpression computes it again.
+ */
+class CommonSubexpressions {
+
+    private static final String TEMP_VAR_PREFIX = "CSE";
+
+    private ExpressionDag dag = new ExpressionDag();
+    //equations that use shared subexpressions -> right sides
+    private Map<Rel, Node> roots = new HashMap<Rel, Node>();
+    //equations -> left sides
+    private Map<Rel, String> outputs = new HashMap<Rel, String>();
+    private Set<Node> shared = new HashSet<Node>();
+    //shared subexpressions computed so far -> temporary variables
+    private Map<Node, String> temps = new HashMap<Node, String>();
+
+    /**
+     * @param algorithm
+     * @param producer used for resolving variable names of equations
+     */
+    CommonSubexpressions( EvaluationAlgorithm algorithm, CodeGenerator.RelCodeProducer producer ) {
+
+        for ( PlanningResult res : algorithm ) {
+
+            Rel rel = res.getRel();
+            String equation;
+
+            if ( !rel.getExceptions().isEmpty() || ( equation = producer.setRel( rel ).getDoubleEquation() ) == null ) {
+                continue;
+            }
+
+            int eq = equation.indexOf( '=' );
+            Node root = dag.add( equation.substring( eq + 1 ) );
+
+            //casts are not produced by equation solving, nodes under them may be not double
+            if ( root != null && !hasCast( root ) ) {
+                roots.put( rel, root );
+                outputs.put( rel, equation.substring( 0, eq ).trim() );
+            }
+        }
+
+        if ( roots.size() > 1 ) {
+            findShared();
+        }
+
+        for ( Iterator<Node> it = roots.values().iterator(); it.hasNext(); ) {
+            if ( !usesShared( it.next() ) ) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Finds operations occurring at least twice in the right sides.
+     * Larger subexpressions are chosen first and their occurrences replace
+     * the occurrences of their own subexpressions.
+     */
+    private void findShared() {
+
+        Map<Node, Integer> counts = new HashMap<Node, Integer>();
+        Map<Node, Integer> sizes = new HashMap<Node, Integer>();
+
+        for ( Node root : roots.values() ) {
+            count( root, counts, 1 );
+            size( root, sizes );
+        }
+
+        List<Node> candidates = new ArrayList<Node>();
+
+        for ( Map.Entry<Node, Integer> entry : counts.entrySet() ) {
+            Node node = entry.getKey();
+            if ( entry.getValue() > 1 && node.isOperation() && !node.getVars().isEmpty() ) {
+                candidates.add( node );
+            }
+        }
+
+        final Map<Node, Integer> _sizes = sizes;
+        Collections.sort( candidates, new Comparator<Node>() {
+            @Override
+            public int compare( Node o1, Node o2 ) {
+                return _sizes.get( o2 ) - _sizes.get( o1 );
+            }
+        } );
+
+        for ( Node node : candidates ) {
+            int count = counts.get( node );
+            if ( count > 1 ) {
+                shared.add( node );
+                for ( Node arg : node.getArgs() ) {
+                    count( arg, counts, 1 - count );
+                }
+            }
+        }
+    }
+
+    private static void count( Node node, Map<Node, Integer> counts, int delta ) {
+        Integer count = counts.get( node );
+        counts.put( node, count == null ? delta : count + delta );
+        for ( Node arg : node.getArgs() ) {
+            count( arg, counts, delta );
+        }
+    }
+
+    private static int size( Node node, Map<Node, Integer> sizes ) {
+        Integer size = sizes.get( node );
+        if ( size == null ) {
+            size = 1;
+            for ( Node arg : node.getArgs() ) {
+                size += size( arg, sizes );
+            }
+            sizes.put( node, size );
+        }
+        return size;
+    }
+
+    private static boolean hasCast( Node node ) {
+        if ( node.getKind() == Node.CAST ) {
+            return true;
+        }
+        for ( Node arg : node.getArgs() ) {
+            if ( hasCast( arg ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean usesShared( Node node ) {
+        if ( shared.contains( node ) ) {
+            return true;
+        }
+        for ( Node arg : node.getArgs() ) {
+            if ( usesShared( arg ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param rel
+     * @return true if the code of the relation has to be emitted by this class
+     */
+    boolean contains( Rel rel ) {
+        return roots.containsKey( rel );
+    }
+
+    /**
+     * Emits the equation, shared subexpressions that have not been computed yet
+     * are declared before it
+     *
+     * @param rel
+     * @param offset indentation of lines after the first one
+     * @return
+     */
+    String emit( Rel rel, CharSequence offset ) {
+
+        StringBuilder result = new StringBuilder();
+        Node root = roots.get( rel );
+
+        declare( root, result, offset );
+
+        return result.append( outputs.get( rel ) ).append( " = " )
+                .append( root.toJava( temps ) ).append( ";\n" ).toString();
+    }
+
+    private void declare( Node node, StringBuilder result, CharSequence offset ) {
+
+        if ( temps.containsKey( node ) ) {
+            return;
+        }
+
+        for ( Node arg : node.getArgs() ) {
+            declare( arg, result, offset );
+        }
+
+        if ( shared.contains( node ) ) {
+            String temp = TEMP_VAR_PREFIX + RelType.nextTmpVarNr();
+            result.append( "double " ).append( temp ).append( " = " )
+                    .append( node.toJava( temps ) ).append( ";\n" ).append( offset );
+            temps.put( node, temp );
+        }
+    }
+
+    /**
+     * Drops temporary variables depending on outputs of the relation,
+     * has to be called after the code of each relation is emitted
+     *
+     * @param rel
+     */
+    void assigned( Rel rel ) {
+
+        if ( temps.isEmpty() ) {
+            return;
+        }
+
+        Set<Var> vars = new HashSet<Var>();
+        CodeGenerator.unfoldVarsToSet( rel.getOutputs(), vars );
+
+        for ( Iterator<Node> it = temps.keySet().iterator(); it.hasNext(); ) {
+            if ( dependsOn( it.next(), vars ) ) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean dependsOn( Node node, Set<Var> vars ) {
+        for ( String name : node.getVars() ) {
+            for ( Var var : vars ) {
+                //fields of an assigned object change as well
+                if ( name.equals( var.getFullName() ) || name.startsWith( var.getFullNameForConcat() ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
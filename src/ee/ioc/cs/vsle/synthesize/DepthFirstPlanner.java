@@ -7,6 +7,8 @@ import static ee.ioc.cs.vsle.synthesize.CodeGenerator.*;
 
 import java.awt.*;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -26,14 +28,17 @@ public class DepthFirstPlanner implements IPlanner {
     private final boolean isSubtaskRepetitionAllowed = s_isSubtaskRepetitionAllowed;
     private final boolean isIncremental = s_isIncremental;
     private final boolean isOptDisabled = s_disableOptimizationInSubtasks;
+    private final boolean isMemoEnabled = s_isSubtaskMemoEnabled;
+    private final boolean isParallel = s_isParallel;
+    private final SubtaskMemo subtaskMemo = new SubtaskMemo();
     private Map<SubtaskRel, EvaluationAlgorithm> indSubtasks = new LinkedHashMap<SubtaskRel, EvaluationAlgorithm>();
     private boolean computeAll;
     private boolean nested;
     
     /**
-     * private constructor
+     * protected constructor
      */
-    private DepthFirstPlanner() {
+    protected DepthFirstPlanner() {
     }
 
     /**
@@ -58,6 +63,18 @@ public class DepthFirstPlanner implements IPlanner {
      * performed until no new variables are introduced into the algorithm.
      */
     public EvaluationAlgorithm invokePlaning( Problem problem, boolean _computeAll ) {
+        return invokePlaning( problem, _computeAll, null );
+    }
+    
+    /**
+     * Same as invokePlaning( problem, _computeAll ), but the planning starts 
+     * after the rels from the seed have been applied. The seed is a still valid 
+     * part of an algorithm planned previously for a similar problem, 
+     * rels of the seed should belong to the given problem.
+     * 
+     * @param seed algorithm to start with or null
+     */
+    EvaluationAlgorithm invokePlaning( Problem problem, boolean _computeAll, EvaluationAlgorithm seed ) {
         long startTime = System.currentTimeMillis();
 
         computeAll = _computeAll;
@@ -88,6 +105,10 @@ public class DepthFirstPlanner implements IPlanner {
 
         context.getFoundVars().addAll( context.getKnownVars() );
 
+        if ( seed != null ) {
+            applySeed( context, algorithm, seed );
+        }
+        
         //remove all known vars with no relations
         for( Iterator<Var> varIter = context.getKnownVars().iterator(); varIter.hasNext(); ) {
             if( varIter.next().getRels().isEmpty() ) {
@@ -113,6 +134,46 @@ public class DepthFirstPlanner implements IPlanner {
         return algorithm;
     }
 
+    /**
+     * Applies rels of the seed in the given order as long as their inputs are known. 
+     * Rels that are not available (e.g. axioms) or whose outputs are already found are skipped.
+     */
+    private void applySeed( PlanningContext context, EvaluationAlgorithm algorithm, EvaluationAlgorithm seed ) {
+        
+        Set<Var> relOutputs = new LinkedHashSet<Var>();
+        int applied = 0;
+        
+        SEED: for ( PlanningResult res : seed ) {
+            Rel rel = res.getRel();
+            
+            if ( !context.isAvailableRel( rel ) ) {
+                continue;
+            }
+            
+            for ( Var input : rel.getInputs() ) {
+                if ( !input.getField().isConstant() && !context.getFoundVars().contains( input ) ) {
+                    //the rest of the seed may depend on this rel, leave it to the planner
+                    break SEED;
+                }
+            }
+            
+            if ( !rel.getOutputs().isEmpty() && context.getFoundVars().containsAll( rel.getOutputs() ) ) {
+                continue;
+            }
+            
+            relOutputs.clear();
+            unfoldVarsToSet( rel.getOutputs(), relOutputs );
+            context.getKnownVars().addAll( relOutputs );
+            context.getFoundVars().addAll( relOutputs );
+            context.removeRel( rel );
+            algorithm.add( res );
+            applied++;
+        }
+        
+        if ( isLinearLoggingOn() )
+            db.p( "Applied " + applied + " of " + seed.size() + " rels from the seed" );
+    }
+    
     /**
      * Linear forward search algorithm
      * 
@@ -122,7 +183,7 @@ public class DepthFirstPlanner implements IPlanner {
      * @param _computeAll
      * @return
      */
-    private boolean linearForwardSearch( PlanningContext context, EvaluationAlgorithm algorithm, boolean _computeAll ) {
+    protected boolean linearForwardSearch( PlanningContext context, EvaluationAlgorithm algorithm, boolean _computeAll ) {
 
         /*
          * while iterating through hashset, items cant be removed from/added to
@@ -234,6 +295,13 @@ public class DepthFirstPlanner implements IPlanner {
             context.getKnownVars().addAll( newVars );
             context.getKnownVars().removeAll( removableVars );
             newVars.clear();
+
+            if ( !changed && ( _computeAll || !context.getRemainingGoals().isEmpty() ) ) {
+                //no relation is applicable, try to solve equations jointly
+                Set<Var> solved = solveLinearSystems( context, algorithm );
+                context.getKnownVars().addAll( solved );
+                changed = !solved.isEmpty();
+            }
         }
         if ( isLinearLoggingOn() )
             db.p( "algorithm " + algorithm );
@@ -252,6 +320,35 @@ public class DepthFirstPlanner implements IPlanner {
                 || context.getFoundVars().containsAll( context.getAllGoals() );
     }
 
+    /**
+     * Adds systems of linear equations that can be solved with found vars 
+     * to the algorithm and removes relations of their equations
+     * 
+     * @return outputs of the systems, these are added to found vars
+     */
+    protected Set<Var> solveLinearSystems( PlanningContext context, EvaluationAlgorithm algorithm ) {
+
+        Set<Var> outputs = new LinkedHashSet<Var>();
+
+        for ( LinearSystemRel system : LinearSystemFinder.findSystems( context ) ) {
+
+            if ( isLinearLoggingOn() )
+                db.p( "Solving jointly: " + system.getDeclaration() );
+
+            for ( EquationInstance equation : system.getEquations() ) {
+                for ( Rel rel : equation.getRels() ) {
+                    context.removeRel( rel );
+                }
+            }
+            outputs.addAll( system.getOutputs() );
+            algorithm.addRel( system );
+        }
+
+        context.getFoundVars().addAll( outputs );
+
+        return outputs;
+    }
+
     private boolean subtaskPlanning( Problem problem, EvaluationAlgorithm algorithm ) {
 
         if ( isSubtaskLoggingOn() )
@@ -278,7 +375,7 @@ public class DepthFirstPlanner implements IPlanner {
                     
                     //if we need to compute some specific goals, after reaching a certain depth, but not the maximal depth, 
                     //the problem may be solved and there is no need to go any deeper.
-                    if( subtaskPlanningImpl( context, relsWithSubtasks, algorithm, new LinkedList<Rel>(), 0 ) ) {
+                    if( subtaskPlanningImpl( context, relsWithSubtasks, algorithm, new LinkedList<Rel>(), 0, null ) ) {
                         if( isSubtaskLoggingOn() )
                             db.p( "The problem was solved during idfs after some intermediate MLB" );
                         return true;
@@ -299,7 +396,7 @@ public class DepthFirstPlanner implements IPlanner {
                 if ( isSubtaskLoggingOn() )
                     db.p( "Starting subtask dfs with maxDepth: " + ( maxDepth + 1 ) );
 
-                if( subtaskPlanningImpl( context, relsWithSubtasks, algorithm, new LinkedList<Rel>(), 0 ) ) {
+                if( subtaskPlanningImpl( context, relsWithSubtasks, algorithm, new LinkedList<Rel>(), 0, null ) ) {
                     if( isSubtaskLoggingOn() )
                         db.p( "The problem was solved during dfs after some intermediate MLB" );
                     return true;
@@ -312,6 +409,10 @@ public class DepthFirstPlanner implements IPlanner {
 
             maxDepth = maxDepthBackup;
             indSubtasks.clear();
+            
+            if( isMemoEnabled && isSubtaskLoggingOn() )
+                db.p( subtaskMemo.toString() );
+            subtaskMemo.clear();
         }
 
         if ( isSubtaskLoggingOn() )
@@ -327,9 +428,10 @@ public class DepthFirstPlanner implements IPlanner {
      * @param algorithm
      * @param subtaskRelsInPath
      * @param depth
+     * @param cancellation is set if the search is a part of an OR branch explored in parallel, null otherwise
      */
     private boolean subtaskPlanningImpl( PlanningContext context, Set<Rel> relsWithSubtasks,
-            EvaluationAlgorithm algorithm, LinkedList<Rel> subtaskRelsInPath, int depth ) {
+            EvaluationAlgorithm algorithm, LinkedList<Rel> subtaskRelsInPath, int depth, Cancellation cancellation ) {
 
         Set<Rel> relsWithSubtasksCopy = new LinkedHashSet<Rel>( relsWithSubtasks );
 
@@ -340,6 +442,10 @@ public class DepthFirstPlanner implements IPlanner {
         // start building Maximal Linear Branch (MLB)
         MLB: while ( !relsWithSubtasksCopy.isEmpty() ) {
 
+            if ( isCancelled( cancellation ) ) {
+                return false;
+            }
+
             if ( isSubtaskLoggingOn() ) {
                 String print = p( depth ) + "Starting new MLB with: ";
                 for ( Rel rel : relsWithSubtasksCopy ) {
@@ -383,191 +489,37 @@ public class DepthFirstPlanner implements IPlanner {
             }
             
             // or children
-            OR: for ( Iterator<Rel> subtaskRelIterator = relsWithSubtasksCopy.iterator(); subtaskRelIterator.hasNext(); ) {
+            PlanningResult solution = isParallel && !nested
+                    ? solveOrBranchesInParallel( context, relsWithSubtasksCopy, relsWithSubtasks, subtaskRelsInPath, depth, cancellation )
+                    : solveOrBranches( context, relsWithSubtasksCopy, relsWithSubtasks, subtaskRelsInPath, depth, cancellation );
 
-                Rel subtaskRel = subtaskRelIterator.next();
-
-                if ( isSubtaskLoggingOn() )
-                    db.p( p( depth ) + "OR: depth: " + ( depth + 1 ) + " rel - " + subtaskRel.getParent().getFullName() + " : "
-                            + subtaskRel.getDeclaration() );
+            if ( solution != null ) {
+                Rel subtaskRel = solution.getRel();
                 
-                if ( subtaskRel.equals( subtaskRelsInPath.peekLast() )
-                        || ( !context.isRelReadyToUse(subtaskRel) ) 
-                        || context.getFoundVars().containsAll( subtaskRel.getOutputs() )
-                        || ( !isSubtaskRepetitionAllowed && subtaskRelsInPath.contains( subtaskRel ) )) {
-                    
-                    if ( isSubtaskLoggingOn() ) {
-                        db.p( p( depth ) + "skipped" );
-                        if ( !context.isRelReadyToUse(subtaskRel) ) {
-                            db.p( p( depth ) + "because it has unknown inputs" );//TODO print unknown
-                        } else if ( context.getFoundVars().containsAll( subtaskRel.getOutputs() ) ) {
-                            db.p( p( depth ) + "because all outputs in FoundVars" );
-                        } else if( subtaskRel.equals( subtaskRelsInPath.peekLast() ) ) {
-                            db.p( p( depth ) + "because it is nested in itself" );
-                        } else if( !isSubtaskRepetitionAllowed && subtaskRelsInPath.contains( subtaskRel ) ) {
-                            db.p( p( depth ) + "This rel with subtasks is already in use, path: " + subtaskRelsInPath );
-                        }
-                    }
-                    continue OR;
-                }
+                algorithm.add( solution );
 
-                LinkedList<Rel> newPath = new LinkedList<Rel>( subtaskRelsInPath );
-                newPath.add( subtaskRel );
+                Set<Var> newVars = new LinkedHashSet<Var>();
 
-                PlanningResult result = new PlanningResult( subtaskRel, true );
+                unfoldVarsToSet( subtaskRel.getOutputs(), newVars );
                 
-                // this is true if all subtasks are solvable
-                boolean allSolved = true;
-                // and children
-                AND: for ( SubtaskRel subtask : subtaskRel.getSubtasks() ) {
-                    if ( isSubtaskLoggingOn() )
-                        db.p( p( depth ) + "AND: subtask - " + subtask );
-
-                    EvaluationAlgorithm sbtAlgorithm = null;
-                    
-                    //////////////////////INDEPENDENT SUBTASK////////////////////////////////////////
-                    if ( subtask.isIndependent() ) {
-                        if ( isSubtaskLoggingOn() )
-                            db.p( "Independent!!!" );
-
-                        if ( subtask.isSolvable() == null ) {
-                            if ( isSubtaskLoggingOn() )
-                                db.p( "Start solving independent subtask " + subtask.getDeclaration() );
-                            // independent subtask is solved only once
-                            Problem problemContext = subtask.getContext();
-                            DepthFirstPlanner planner = new DepthFirstPlanner();
-                            planner.indSubtasks = indSubtasks;
-                            planner.nested = true;
-                            sbtAlgorithm = planner.invokePlaning( problemContext, isOptDisabled );
-                            PlanningContext indCntx = problemContext.getCurrentContext();
-                            boolean solved = indCntx.getFoundVars().containsAll( indCntx.getAllGoals() );
-                            if ( solved ) {
-                                subtask.setSolvable( Boolean.TRUE );
-                                indSubtasks.put( subtask, sbtAlgorithm );
-                                if ( isSubtaskLoggingOn() )
-                                    db.p( "Solved " + subtask.getDeclaration() );
-                            } else {
-                                subtask.setSolvable( Boolean.FALSE );
-                                if ( RuntimeProperties.isLogInfoEnabled() ) {
-                                    db.p( "Unable to solve " + subtask.getDeclaration() );
-                                }
-                            }
-                            allSolved &= solved;
-                        } else if ( subtask.isSolvable() == Boolean.TRUE ) {
-                            if ( isSubtaskLoggingOn() )
-                                db.p( "Already solved" );
-                            allSolved &= true;
-                            sbtAlgorithm = indSubtasks.get( subtask );
-                        } else {
-                            if ( isSubtaskLoggingOn() )
-                                db.p( "Not solvable" );
-                            allSolved &= false;
-                        }
-                        if ( isSubtaskLoggingOn() )
-                            db.p( "End of independent subtask " + subtask );
-                        
-                        if ( !allSolved ) {
-                            continue OR;
-                        }
-                        
-                        assert sbtAlgorithm != null;
-                        
-                        result.addSubtaskAlgorithm( subtask, sbtAlgorithm );
-                    } 
-                    //////////////////////DEPENDENT SUBTASK//////////////////////////////////////
-                    else {
-                        // lets clone the environment
-                        PlanningContext newContext = prepareNewContext( context, subtask );
-                        
-                        sbtAlgorithm = new EvaluationAlgorithm();
-                        
-                        //during linear planning, if some goals are found, they are removed from the set "goals" 
-                        boolean solved = linearForwardSearch( newContext, sbtAlgorithm,
-                                // do not optimize here, because the solution may require additional rels with subtasks
-                                true );
-
-                        if ( solved ) {
-                            if ( isSubtaskLoggingOn() )
-                                db.p( p( depth ) + "SOLVED subtask: " + subtask );
-                            
-                            if( !isOptDisabled ) {
-                                //if a subtask has been solved, optimize its algorithm
-                                Optimizer.optimize( newContext, sbtAlgorithm );
-                            }
-                            
-                            result.addSubtaskAlgorithm( subtask, sbtAlgorithm );
-                            allSolved &= solved;
-                            continue AND;
-                        } else if ( !solved && ( depth == maxDepth ) ) {
-                            if ( isSubtaskLoggingOn() )
-                                db.p( p( depth ) + "NOT SOLVED and cannot go any deeper, subtask: " + subtask );
-                            continue OR;
-                        }
-
-                        if ( isSubtaskLoggingOn() )
-                            db.p( p( depth ) + "Recursing deeper" );
-
-                        solved = subtaskPlanningImpl( newContext, relsWithSubtasks, sbtAlgorithm, newPath, depth + 1 );
-
-                        if ( isSubtaskLoggingOn() )
-                            db.p( p( depth ) + "Back to depth " + ( depth + 1 ) );
-
-                        //the linear planning has been performed at the end of MLB on the depth+1,
-                        //if the problem was solved, there is no need to run linear planning again
-                        if( ( solved || ( solved = linearForwardSearch( newContext, sbtAlgorithm, true ) ) ) 
-                                && !isOptDisabled ) {
-                            // if solved, optimize here with full list of goals in order to get rid of
-                            // unnecessary subtask instances and other relations
-                            Optimizer.optimize( newContext, sbtAlgorithm );
-                        }
-                        
-                        if ( isSubtaskLoggingOn() )
-                            db.p( p( depth ) + ( solved ? "" : "NOT" ) + " SOLVED subtask: " + subtask );
-
-                        allSolved &= solved;
-
-                        // if at least one subtask is not solvable, try another
-                        // branch
-                        if ( !allSolved ) {
-                            continue OR;
-                        }
-                        
-                        result.addSubtaskAlgorithm( subtask, sbtAlgorithm );
-                    }
-
-                }//AND
-
-                if ( allSolved ) {
-                    algorithm.add( result );
-
-                    Set<Var> newVars = new LinkedHashSet<Var>();
+                context.getKnownVars().addAll( newVars );
+                context.getFoundVars().addAll( newVars );
 
-                    unfoldVarsToSet( subtaskRel.getOutputs(), newVars );
-                    
-                    context.getKnownVars().addAll( newVars );
-                    context.getFoundVars().addAll( newVars );
-
-                    subtaskRelIterator.remove();
+                relsWithSubtasksCopy.remove( subtaskRel );
 
-                    if ( isSubtaskLoggingOn() ) {
-                        db.p( p( depth ) + "SOLVED ALL SUBTASKS for " + subtaskRel.getParent().getFullName() + " : "
-                                + subtaskRel.getDeclaration() );
-                        db.p( p( depth ) + "Updating the problem graph and continuing building new MLB" );
-                    }
-
-                    //this is used for incremental dfs
-                    if( depth == 0 ) {
-                        relsWithSubtasksToRemove.add( subtaskRel );
-                    }
-                    
-                    continue MLB;
+                if ( isSubtaskLoggingOn() ) {
+                    db.p( p( depth ) + "SOLVED ALL SUBTASKS for " + subtaskRel.getParent().getFullName() + " : "
+                            + subtaskRel.getDeclaration() );
+                    db.p( p( depth ) + "Updating the problem graph and continuing building new MLB" );
+                }
 
+                //this is used for incremental dfs
+                if( depth == 0 ) {
+                    relsWithSubtasksToRemove.add( subtaskRel );
                 }
-                if ( isSubtaskLoggingOn() )
-                    db.p( p( depth ) + "NOT SOLVED ALL subtasks, removing from path " + subtaskRel.getParent().getFullName()
-                            + " : " + subtaskRel.getDeclaration() );
-                newPath.remove( subtaskRel );
-            }//end OR
+                
+                continue MLB;
+            }
 
             // exit loop because there are no more rels with subtasks to be
             // applied
@@ -586,6 +538,383 @@ public class DepthFirstPlanner implements IPlanner {
         return false;
     }
 
+    /**
+     * Tries rels with subtasks one by one
+     * 
+     * @return the result of the first rel with all subtasks solved or null
+     */
+    private PlanningResult solveOrBranches( PlanningContext context, Set<Rel> candidates, Set<Rel> relsWithSubtasks,
+            LinkedList<Rel> subtaskRelsInPath, int depth, Cancellation cancellation ) {
+        
+        for ( Rel subtaskRel : candidates ) {
+            
+            if ( isCancelled( cancellation ) ) {
+                return null;
+            }
+            
+            if ( isSkipped( context, subtaskRel, subtaskRelsInPath, depth ) ) {
+                continue;
+            }
+            
+            PlanningResult result = solveSubtasks( context, subtaskRel, relsWithSubtasks, subtaskRelsInPath, depth, cancellation );
+            
+            if ( result != null ) {
+                return result;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Tries rels with subtasks in parallel, each with its own copy of the context.
+     * The result is the same as of solveOrBranches(), i.e. the first rel in the 
+     * given order with all subtasks solved wins, branches following it are cancelled.
+     * 
+     * @return the result of the first rel with all subtasks solved or null
+     */
+    private PlanningResult solveOrBranchesInParallel( PlanningContext context, Set<Rel> candidates, Set<Rel> relsWithSubtasks,
+            LinkedList<Rel> subtaskRelsInPath, int depth, Cancellation cancellation ) {
+        
+        final List<OrBranchTask> tasks = new ArrayList<OrBranchTask>();
+        
+        for ( Rel subtaskRel : candidates ) {
+            if ( !isSkipped( context, subtaskRel, subtaskRelsInPath, depth ) ) {
+                tasks.add( new OrBranchTask( context.getCopy(), subtaskRel, relsWithSubtasks, subtaskRelsInPath, depth, 
+                        new Cancellation( cancellation ) ) );
+            }
+        }
+        
+        if ( tasks.isEmpty() ) {
+            return null;
+        } else if ( tasks.size() == 1 ) {
+            return tasks.get( 0 ).compute();
+        }
+        
+        if ( isSubtaskLoggingOn() )
+            db.p( p( depth ) + "Exploring " + tasks.size() + " OR branches in parallel" );
+        
+        RecursiveTask<PlanningResult> search = new RecursiveTask<PlanningResult>() {
+
+            @Override
+            protected PlanningResult compute() {
+                //the first branch is computed by the current thread, others may be stolen in the given order
+                for ( int i = 1; i < tasks.size(); i++ ) {
+                    tasks.get( i ).fork();
+                }
+                
+                PlanningResult solution = null;
+                
+                for ( int i = 0; i < tasks.size(); i++ ) {
+                    OrBranchTask task = tasks.get( i );
+                    PlanningResult result;
+                    
+                    if ( i == 0 ) {
+                        result = task.invoke();
+                    } else {
+                        task.quietlyJoin();
+                        result = task.isCancelled() || task.isCompletedAbnormally() ? null : task.getRawResult();
+                    }
+                    
+                    if ( solution == null && result != null ) {
+                        solution = result;
+                        
+                        for ( int j = i + 1; j < tasks.size(); j++ ) {
+                            tasks.get( j ).cancellation.cancel();
+                            tasks.get( j ).cancel( false );
+                        }
+                    }
+                }
+                
+                for ( OrBranchTask task : tasks ) {
+                    if ( !task.isCancelled() && task.getException() != null ) {
+                        throw new RuntimeException( task.getException() );
+                    }
+                }
+                
+                return solution;
+            }
+        };
+        
+        return ForkJoinTask.inForkJoinPool() ? search.invoke() : getPool().invoke( search );
+    }
+    
+    private boolean isSkipped( PlanningContext context, Rel subtaskRel, LinkedList<Rel> subtaskRelsInPath, int depth ) {
+        
+        if ( isSubtaskLoggingOn() )
+            db.p( p( depth ) + "OR: depth: " + ( depth + 1 ) + " rel - " + subtaskRel.getParent().getFullName() + " : "
+                    + subtaskRel.getDeclaration() );
+        
+        if ( subtaskRel.equals( subtaskRelsInPath.peekLast() )
+                || ( !context.isRelReadyToUse(subtaskRel) ) 
+                || context.getFoundVars().containsAll( subtaskRel.getOutputs() )
+                || ( !isSubtaskRepetitionAllowed && subtaskRelsInPath.contains( subtaskRel ) )) {
+            
+            if ( isSubtaskLoggingOn() ) {
+                db.p( p( depth ) + "skipped" );
+                if ( !context.isRelReadyToUse(subtaskRel) ) {
+                    db.p( p( depth ) + "because it has unknown inputs" );//TODO print unknown
+                } else if ( context.getFoundVars().containsAll( subtaskRel.getOutputs() ) ) {
+                    db.p( p( depth ) + "because all outputs in FoundVars" );
+                } else if( subtaskRel.equals( subtaskRelsInPath.peekLast() ) ) {
+                    db.p( p( depth ) + "because it is nested in itself" );
+                } else if( !isSubtaskRepetitionAllowed && subtaskRelsInPath.contains( subtaskRel ) ) {
+                    db.p( p( depth ) + "This rel with subtasks is already in use, path: " + subtaskRelsInPath );
+                }
+            }
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Tries to solve all subtasks of a given rel, the context is not modified
+     * 
+     * @return planning result with algorithms of all subtasks or null if some subtask is not solvable
+     */
+    private PlanningResult solveSubtasks( PlanningContext context, Rel subtaskRel, Set<Rel> relsWithSubtasks,
+            LinkedList<Rel> subtaskRelsInPath, int depth, Cancellation cancellation ) {
+        
+        LinkedList<Rel> newPath = new LinkedList<Rel>( subtaskRelsInPath );
+        newPath.add( subtaskRel );
+
+        PlanningResult result = new PlanningResult( subtaskRel, true );
+        
+        // and children
+        for ( SubtaskRel subtask : subtaskRel.getSubtasks() ) {
+            
+            if ( isCancelled( cancellation ) ) {
+                return null;
+            }
+            
+            if ( isSubtaskLoggingOn() )
+                db.p( p( depth ) + "AND: subtask - " + subtask );
+
+            EvaluationAlgorithm sbtAlgorithm = subtask.isIndependent() 
+                    ? solveIndependentSubtask( subtask )
+                    : solveDependentSubtask( context, subtask, relsWithSubtasks, newPath, depth, cancellation );
+            
+            // if at least one subtask is not solvable, try another branch
+            if ( sbtAlgorithm == null ) {
+                if ( isSubtaskLoggingOn() )
+                    db.p( p( depth ) + "NOT SOLVED ALL subtasks " + subtaskRel.getParent().getFullName()
+                            + " : " + subtaskRel.getDeclaration() );
+                return null;
+            }
+            
+            result.addSubtaskAlgorithm( subtask, sbtAlgorithm );
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Independent subtask is solved only once, the result is shared between nested planners
+     * 
+     * @return algorithm or null if the subtask is not solvable
+     */
+    private EvaluationAlgorithm solveIndependentSubtask( SubtaskRel subtask ) {
+        
+        if ( isSubtaskLoggingOn() )
+            db.p( "Independent!!!" );
+
+        EvaluationAlgorithm sbtAlgorithm = null;
+        
+        //OR branches explored in parallel may reach the same subtask
+        synchronized ( indSubtasks ) {
+            if ( subtask.isSolvable() == null ) {
+                if ( isSubtaskLoggingOn() )
+                    db.p( "Start solving independent subtask " + subtask.getDeclaration() );
+                // independent subtask is solved only once
+                Problem problemContext = subtask.getContext();
+                DepthFirstPlanner planner = createNestedPlanner();
+                planner.indSubtasks = indSubtasks;
+                planner.nested = true;
+                sbtAlgorithm = planner.invokePlaning( problemContext, isOptDisabled );
+                PlanningContext indCntx = problemContext.getCurrentContext();
+                boolean solved = indCntx.getFoundVars().containsAll( indCntx.getAllGoals() );
+                if ( solved ) {
+                    subtask.setSolvable( Boolean.TRUE );
+                    indSubtasks.put( subtask, sbtAlgorithm );
+                    if ( isSubtaskLoggingOn() )
+                        db.p( "Solved " + subtask.getDeclaration() );
+                } else {
+                    sbtAlgorithm = null;
+                    subtask.setSolvable( Boolean.FALSE );
+                    if ( RuntimeProperties.isLogInfoEnabled() ) {
+                        db.p( "Unable to solve " + subtask.getDeclaration() );
+                    }
+                }
+            } else if ( subtask.isSolvable() == Boolean.TRUE ) {
+                if ( isSubtaskLoggingOn() )
+                    db.p( "Already solved" );
+                sbtAlgorithm = indSubtasks.get( subtask );
+                assert sbtAlgorithm != null;
+            } else {
+                if ( isSubtaskLoggingOn() )
+                    db.p( "Not solvable" );
+            }
+        }
+        
+        if ( isSubtaskLoggingOn() )
+            db.p( "End of independent subtask " + subtask );
+        
+        return sbtAlgorithm;
+    }
+    
+    /**
+     * Solves a dependent subtask in a copy of the context, recursing deeper if necessary
+     * 
+     * @return algorithm or null if the subtask is not solvable
+     */
+    private EvaluationAlgorithm solveDependentSubtask( PlanningContext context, SubtaskRel subtask, Set<Rel> relsWithSubtasks,
+            LinkedList<Rel> newPath, int depth, Cancellation cancellation ) {
+        
+        SubtaskMemo.Key memoKey = null;
+        
+        if( isMemoEnabled ) {
+            memoKey = subtaskMemo.createKey( subtask, context, maxDepth - depth, 
+                    isSubtaskRepetitionAllowed ? null : newPath );
+            
+            if( subtaskMemo.contains( memoKey ) ) {
+                EvaluationAlgorithm sbtAlgorithm = subtaskMemo.get( memoKey );
+                
+                if ( isSubtaskLoggingOn() )
+                    db.p( p( depth ) + "Memoized " + ( sbtAlgorithm != null ? "" : "NOT " ) 
+                            + "SOLVED subtask: " + subtask );
+                
+                return sbtAlgorithm;
+            }
+        }
+        
+        // lets clone the environment
+        PlanningContext newContext = prepareNewContext( context, subtask );
+        
+        EvaluationAlgorithm sbtAlgorithm = new EvaluationAlgorithm();
+        
+        //during linear planning, if some goals are found, they are removed from the set "goals" 
+        boolean solved = linearForwardSearch( newContext, sbtAlgorithm,
+                // do not optimize here, because the solution may require additional rels with subtasks
+                true );
+
+        if ( solved ) {
+            if ( isSubtaskLoggingOn() )
+                db.p( p( depth ) + "SOLVED subtask: " + subtask );
+            
+            if( !isOptDisabled ) {
+                //if a subtask has been solved, optimize its algorithm
+                Optimizer.optimize( newContext, sbtAlgorithm );
+            }
+            
+        } else if ( depth == maxDepth ) {
+            if ( isSubtaskLoggingOn() )
+                db.p( p( depth ) + "NOT SOLVED and cannot go any deeper, subtask: " + subtask );
+            
+        } else {
+            if ( isSubtaskLoggingOn() )
+                db.p( p( depth ) + "Recursing deeper" );
+
+            solved = subtaskPlanningImpl( newContext, relsWithSubtasks, sbtAlgorithm, newPath, depth + 1, cancellation );
+
+            if ( isSubtaskLoggingOn() )
+                db.p( p( depth ) + "Back to depth " + ( depth + 1 ) );
+
+            //the linear planning has been performed at the end of MLB on the depth+1,
+            //if the problem was solved, there is no need to run linear planning again
+            if( ( solved || ( !isCancelled( cancellation ) && ( solved = linearForwardSearch( newContext, sbtAlgorithm, true ) ) ) ) 
+                    && !isOptDisabled ) {
+                // if solved, optimize here with full list of goals in order to get rid of
+                // unnecessary subtask instances and other relations
+                Optimizer.optimize( newContext, sbtAlgorithm );
+            }
+            
+            if ( isSubtaskLoggingOn() )
+                db.p( p( depth ) + ( solved ? "" : "NOT" ) + " SOLVED subtask: " + subtask );
+        }
+        
+        //the outcome of a cancelled branch is not reliable
+        if( memoKey != null && !isCancelled( cancellation ) ) {
+            if( solved )
+                subtaskMemo.putSolved( memoKey, sbtAlgorithm );
+            else
+                subtaskMemo.putUnsolvable( memoKey );
+        }
+        
+        return solved ? sbtAlgorithm : null;
+    }
+    
+    private static boolean isCancelled( Cancellation cancellation ) {
+        return cancellation != null && cancellation.isCancelled();
+    }
+    
+    private static ForkJoinPool s_pool;
+    
+    private static synchronized ForkJoinPool getPool() {
+        if ( s_pool == null ) {
+            s_pool = new ForkJoinPool();
+        }
+        return s_pool;
+    }
+    
+    /**
+     * Cancellation flag of an OR branch explored in parallel.
+     * A branch is also cancelled if any of the enclosing branches is.
+     */
+    private static class Cancellation {
+        
+        private final Cancellation parent;
+        private volatile boolean cancelled;
+        
+        Cancellation( Cancellation parent ) {
+            this.parent = parent;
+        }
+        
+        void cancel() {
+            cancelled = true;
+        }
+        
+        boolean isCancelled() {
+            return cancelled || ( parent != null && parent.isCancelled() );
+        }
+    }
+    
+    /**
+     * Solves subtasks of a rel in its own context
+     */
+    private class OrBranchTask extends RecursiveTask<PlanningResult> {
+        
+        private static final long serialVersionUID = 1L;
+        private final PlanningContext context;
+        private final Rel subtaskRel;
+        private final Set<Rel> relsWithSubtasks;
+        private final LinkedList<Rel> subtaskRelsInPath;
+        private final int depth;
+        private final Cancellation cancellation;
+        
+        OrBranchTask( PlanningContext context, Rel subtaskRel, Set<Rel> relsWithSubtasks, 
+                LinkedList<Rel> subtaskRelsInPath, int depth, Cancellation cancellation ) {
+            this.context = context;
+            this.subtaskRel = subtaskRel;
+            this.relsWithSubtasks = relsWithSubtasks;
+            this.subtaskRelsInPath = subtaskRelsInPath;
+            this.depth = depth;
+            this.cancellation = cancellation;
+        }
+        
+        @Override
+        protected PlanningResult compute() {
+            return solveSubtasks( context, subtaskRel, relsWithSubtasks, subtaskRelsInPath, depth, cancellation );
+        }
+    }
+
+    /**
+     * @return a new planner of the same kind for planning independent subtasks
+     */
+    protected DepthFirstPlanner createNestedPlanner() {
+        return new DepthFirstPlanner();
+    }
+
     private PlanningContext prepareNewContext( PlanningContext context, Rel subtask ) {
         
         PlanningContext newContext = context.getCopy();
@@ -606,6 +935,18 @@ public class DepthFirstPlanner implements IPlanner {
     private static volatile boolean s_isSubtaskRepetitionAllowed = false;
     private static volatile boolean s_isIncremental = false;
     private static volatile boolean s_disableOptimizationInSubtasks = false;
+    private static volatile boolean s_isSubtaskMemoEnabled = true;
+    private static volatile boolean s_isParallel = false;
+    
+    /**
+     * @return current values of planning settings
+     */
+    static String getSettingsString() {
+        return "maxDepth=" + s_maxDepth + ";maxRept=" + s_maxRept 
+                + ";repetition=" + s_isSubtaskRepetitionAllowed + ";incremental=" + s_isIncremental
+                + ";disableOpt=" + s_disableOptimizationInSubtasks + ";memo=" + s_isSubtaskMemoEnabled 
+                + ";parallel=" + s_isParallel;
+    }
     
     private String p( int depth ) {
         String s = "";
@@ -793,11 +1134,47 @@ public class DepthFirstPlanner implements IPlanner {
             }
         } );
         
+        final JCheckBox chboxMemo = new JCheckBox( "Memoize subtask solutions", s_isSubtaskMemoEnabled );
+        chboxMemo.setToolTipText( "Reuse results of subtasks already planned in the same context" );
+        
+        chboxMemo.addChangeListener( new ChangeListener() {
+
+            public void stateChanged( ChangeEvent e ) {
+                
+                if( s_isSubtaskMemoEnabled == chboxMemo.isSelected() )
+                    return;
+                
+                s_isSubtaskMemoEnabled = chboxMemo.isSelected();
+                
+                if ( RuntimeProperties.isLogDebugEnabled() )
+                    db.p( "isSubtaskMemoEnabled " + s_isSubtaskMemoEnabled );
+            }
+        } );
+        
+        final JCheckBox chboxParallel = new JCheckBox( "Parallel search", s_isParallel );
+        chboxParallel.setToolTipText( "Explore alternative rels with subtasks on all processors" );
+        
+        chboxParallel.addChangeListener( new ChangeListener() {
+
+            public void stateChanged( ChangeEvent e ) {
+                
+                if( s_isParallel == chboxParallel.isSelected() )
+                    return;
+                
+                s_isParallel = chboxParallel.isSelected();
+                
+                if ( RuntimeProperties.isLogDebugEnabled() )
+                    db.p( "isParallel " + s_isParallel );
+            }
+        } );
+        
         JPanel container1 = new JPanel();
         container1.setLayout( new BoxLayout( container1, BoxLayout.Y_AXIS ) );
         container1.setBorder( BorderFactory.createTitledBorder( "Planning settings" ) );
         container1.add( GuiUtil.addComponentAsFlow( chboxOptimize, FlowLayout.LEFT ) );
         container1.add( GuiUtil.addComponentAsFlow( chboxIncremental, FlowLayout.LEFT ) );
+        container1.add( GuiUtil.addComponentAsFlow( chboxMemo, FlowLayout.LEFT ) );
+        container1.add( GuiUtil.addComponentAsFlow( chboxParallel, FlowLayout.LEFT ) );
         container1.add( GuiUtil.addComponentAsFlow( chboxRepeat, FlowLayout.LEFT ) );
         container1.add( GuiUtil.addComponentAsFlow( panel, FlowLayout.LEFT ) );
 
@@ -851,7 +1228,7 @@ public class DepthFirstPlanner implements IPlanner {
     /**
      * @return the linearLoggingOn
      */
-    private boolean isLinearLoggingOn() {
+    protected boolean isLinearLoggingOn() {
         return linearLoggingOn || RuntimeProperties.isLogDebugEnabled();
     }
 }
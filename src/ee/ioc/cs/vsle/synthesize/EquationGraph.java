@@ -0,0 +1,90 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.util.*;
+
+/**
+ * Equations of a problem that may have to be solved jointly, see {@link LinearSystemFinder}.
+ * The graph is built once when the problem is created and is shared by all
+ * planning contexts of the problem, so that the planner does not have to scan
+ * the available relations each time no relation is applicable.
+ *
+ * Only equations with at least two candidates for unknowns are kept, an equation
+ * with a single unknown is solved by one of its relations.
+ */
+class EquationGraph {
+
+    private List<EquationInstance> equations = new ArrayList<EquationInstance>();
+    private List<Var> vars = new ArrayList<Var>();
+    private Map<Var, Integer> varIds = new HashMap<Var, Integer>();
+    //equation -> ids of non-constant vars of type double, candidates for unknowns
+    private List<int[]> candidates = new ArrayList<int[]>();
+    //equation -> other non-constant vars, these have to be known
+    private List<Var[]> inputs = new ArrayList<Var[]>();
+
+    void addEquation( EquationInstance equation ) {
+
+        List<Var> doubles = new ArrayList<Var>();
+        List<Var> others = new ArrayList<Var>();
+
+        for ( Var var : new LinkedHashSet<Var>( equation.getVars() ) ) {
+            if ( var.getField().isConstant() ) {
+                continue;
+            }
+            if ( TypeUtil.TYPE_DOUBLE.equals( var.getType() ) && !var.getField().isAlias() ) {
+                doubles.add( var );
+            } else {
+                others.add( var );
+            }
+        }
+
+        if ( doubles.size() < 2 ) {
+            return;
+        }
+
+        int[] ids = new int[doubles.size()];
+
+        for ( int i = 0; i < ids.length; i++ ) {
+            Var var = doubles.get( i );
+            Integer id = varIds.get( var );
+            if ( id == null ) {
+                varIds.put( var, id = vars.size() );
+                vars.add( var );
+            }
+            ids[i] = id;
+        }
+
+        equations.add( equation );
+        candidates.add( ids );
+        inputs.add( others.toArray( new Var[others.size()] ) );
+    }
+
+    boolean isEmpty() {
+        return equations.isEmpty();
+    }
+
+    int getEquationCount() {
+        return equations.size();
+    }
+
+    EquationInstance getEquation( int eq ) {
+        return equations.get( eq );
+    }
+
+    int getVarCount() {
+        return vars.size();
+    }
+
+    Var getVar( int id ) {
+        return vars.get( id );
+    }
+
+    int[] getCandidates( int eq ) {
+        return candidates.get( eq );
+    }
+
+    Var[] getInputs( int eq ) {
+        return inputs.get( eq );
+    }
+}
@@ -0,0 +1,79 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.equations.*;
+import ee.ioc.cs.vsle.equations.LinearEquation.*;
+
+/**
+ * An equation of an object in the problem.
+ * All relations derived from the equation for the object refer to the same instance,
+ * so that the planner is able to solve the equation together with other equations
+ * when none of the relations is applicable alone, see {@link LinearSystemFinder}.
+ */
+class EquationInstance {
+
+    private LinearEquation equation;
+    private Var parent;
+    //names in the specification -> vars of the problem
+    private Map<String, Var> vars = new LinkedHashMap<String, Var>();
+    private Collection<Rel> rels = new ArrayList<Rel>();
+
+    EquationInstance( LinearEquation equation, Var parent ) {
+        this.equation = equation;
+        this.parent = parent;
+    }
+
+    Var getParent() {
+        return parent;
+    }
+
+    void addVar( String name, Var var ) {
+        vars.put( name, var );
+    }
+
+    Var getVar( String name ) {
+        return vars.get( name );
+    }
+
+    Collection<Var> getVars() {
+        return vars.values();
+    }
+
+    void addRel( Rel rel ) {
+        rels.add( rel );
+    }
+
+    /**
+     * @return relations derived from the equation
+     */
+    Collection<Rel> getRels() {
+        return rels;
+    }
+
+    /**
+     * @param unknowns unknown vars of the equation
+     * @return linear form of the equation or null if the equation is not linear
+     */
+    LinearForm linearize( Collection<Var> unknowns ) {
+
+        Set<String> names = new HashSet<String>();
+
+        for ( Map.Entry<String, Var> entry : vars.entrySet() ) {
+            if ( unknowns.contains( entry.getValue() ) ) {
+                names.add( entry.getKey() );
+            }
+        }
+
+        return equation.linearize( names );
+    }
+
+    String getDeclaration() {
+        return rels.isEmpty() ? equation.toString() : rels.iterator().next().getDeclaration();
+    }
+
+    @Override
+    public String toString() {
+        return parent.getFullNameForConcat() + "[" + equation + "]";
+    }
+}
@@ -0,0 +1,397 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import static ee.ioc.cs.vsle.synthesize.CodeGenerator.*;
+import static ee.ioc.cs.vsle.util.TypeUtil.TYPE_THIS;
+
+import java.io.*;
+import java.util.*;
+
+import ee.ioc.cs.vsle.editor.*;
+import ee.ioc.cs.vsle.util.*;
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Re-synthesizes a program after an edit of a scheme reusing the result
+ * of the previous synthesis. Objects and connections of a scheme end up as
+ * fields and relations of the class THIS, so the edit is found by comparing
+ * the previous and the new THIS, all other classes must stay unchanged.
+ *
+ * If only values of fields have been changed, the problem and the algorithm
+ * are reused, only axioms with new values are replaced and nothing is planned.
+ * Otherwise a new problem is created and the part of the previous algorithm
+ * that does not depend on removed or changed relations is given to the planner
+ * as a seed, so only the part of the problem downstream of the edit is planned.
+ *
+ * One instance should be used per scheme (see ISchemeContainer.getSynthesizer()).
+ */
+public class IncrementalSynthesizer {
+
+    /**
+     * How a program has been synthesized
+     */
+    public enum Mode {
+        /** the problem has been planned from scratch */
+        FULL,
+        /** the problem has been planned reusing a part of the previous algorithm */
+        SEEDED,
+        /** only values have changed, nothing has been planned */
+        VALUES
+    }
+
+    private State state;
+    private Mode lastMode;
+
+    /**
+     * @see Synthesizer#makeProgramText(String, boolean, ClassList, String, ProgramRunner, String, String)
+     */
+    public synchronized String makeProgramText( String fileString, boolean computeAll, ClassList classList,
+            String mainClassName, ProgramRunner runner, String cacheKey, String workDir ) throws SpecParseException {
+
+        IPlanner planner = PlannerFactory.getInstance().getCurrentPlanner();
+        String settings = planner.getClass().getName() + ";" + DepthFirstPlanner.getSettingsString()
+                + ";" + computeAll + ";" + mainClassName + ";" + workDir;
+
+        State prev = state;
+        state = null;
+
+        //ProblemCreator adds relations initializing lengths of aliases to THIS,
+        //relations of the previous synthesis are compared before that
+        AnnotatedClass thisClass = classList.getType( TYPE_THIS );
+        List<ClassRelation> thisRelations = thisClass != null
+                ? new ArrayList<ClassRelation>( thisClass.getClassRelations() ) : null;
+
+        boolean incremental = RuntimeProperties.isIncrementalSynthesis() && prev != null
+                && prev.isCompatible( classList, settings, workDir );
+
+        Problem problem;
+        EvaluationAlgorithm algorithm = null;
+
+        if ( incremental ) {
+            algorithm = prev.replaceValues( classList );
+        }
+
+        if ( algorithm != null ) {
+            problem = prev.problem;
+            lastMode = Mode.VALUES;
+
+            if ( RuntimeProperties.isLogInfoEnabled() )
+                db.p( "Incremental synthesis: only values have changed, planning skipped" );
+        } else {
+            problem = new ProblemCreator( classList ).makeProblem();
+
+            if ( incremental && planner instanceof DepthFirstPlanner ) {
+
+                EvaluationAlgorithm seed = prev.createSeed( problem );
+
+                if ( RuntimeProperties.isLogInfoEnabled() )
+                    db.p( "Incremental synthesis: " + seed.size() + " of " + prev.algorithm.size()
+                            + " steps of the previous algorithm are reused" );
+
+                algorithm = ( (DepthFirstPlanner)planner ).invokePlaning( problem, computeAll, seed );
+                lastMode = Mode.SEEDED;
+            } else {
+                algorithm = planner.invokePlaning( problem, computeAll );
+                lastMode = Mode.FULL;
+            }
+        }
+
+        String programText = Synthesizer.generateProgramText( fileString, classList, mainClassName, runner,
+                problem, algorithm, cacheKey, workDir );
+
+        if ( RuntimeProperties.isIncrementalSynthesis() ) {
+            state = new State( classList, thisRelations, settings, workDir, problem, algorithm );
+        }
+
+        return programText;
+    }
+
+    /**
+     * Forgets the previous synthesis, the next one will be full
+     */
+    public synchronized void reset() {
+        state = null;
+    }
+
+    /**
+     * @return how the last program has been synthesized or null if nothing has been synthesized yet
+     */
+    public synchronized Mode getLastMode() {
+        return lastMode;
+    }
+
+    /**
+     * Result of the previous synthesis
+     */
+    private static class State {
+
+        private final String settings;
+        private final AnnotatedClass thisClass;
+        private final List<ClassRelation> thisRelations;
+        private final Map<String, PlanCache.Stamp> dependencies = new HashMap<String, PlanCache.Stamp>();
+        private final Problem problem;
+        private final EvaluationAlgorithm algorithm;
+
+        private State( ClassList classList, List<ClassRelation> thisRelations, String settings, String workDir,
+                Problem problem, EvaluationAlgorithm algorithm ) {
+            this.settings = settings;
+            this.thisClass = classList.getType( TYPE_THIS );
+            this.thisRelations = thisRelations;
+            this.problem = problem;
+            this.algorithm = algorithm;
+
+            for ( AnnotatedClass ac : classList ) {
+                if ( !TYPE_THIS.equals( ac.getName() ) ) {
+                    dependencies.put( ac.getName(), PlanCache.stamp( new File( workDir, ac.getName() + ".java" ) ) );
+                }
+            }
+        }
+
+        /**
+         * @return true if the new class list differs from the previous one only by THIS
+         */
+        private boolean isCompatible( ClassList classList, String newSettings, String workDir ) {
+
+            if ( !settings.equals( newSettings ) || classList.size() != dependencies.size() + 1 ) {
+                return false;
+            }
+
+            for ( AnnotatedClass ac : classList ) {
+                if ( TYPE_THIS.equals( ac.getName() ) ) {
+                    continue;
+                }
+                PlanCache.Stamp stamp = dependencies.get( ac.getName() );
+                if ( stamp == null || !stamp.equals( PlanCache.stamp( new File( workDir, ac.getName() + ".java" ) ) ) ) {
+                    return false;
+                }
+            }
+
+            return thisClass != null && classList.getType( TYPE_THIS ) != null;
+        }
+
+        /**
+         * @return a copy of the previous algorithm with new values in axioms
+         * or null if not only values have been changed
+         */
+        private EvaluationAlgorithm replaceValues( ClassList classList ) {
+
+            AnnotatedClass newThisClass = classList.getType( TYPE_THIS );
+            Collection<ClassRelation> newRelations = newThisClass.getClassRelations();
+
+            if ( !fieldSignatures( thisClass ).equals( fieldSignatures( newThisClass ) )
+                    || thisRelations.size() != newRelations.size() ) {
+                return null;
+            }
+
+            Iterator<ClassRelation> newIter = newRelations.iterator();
+            Map<String, ClassRelation> changed = new HashMap<String, ClassRelation>();
+
+            for ( ClassRelation cr : thisRelations ) {
+                ClassRelation newCr = newIter.next();
+
+                if ( isValue( cr ) && isValue( newCr ) ) {
+                    if ( !relationSignature( cr, false ).equals( relationSignature( newCr, false ) ) ) {
+                        return null;
+                    }
+                    if ( !cr.getMethod().equals( newCr.getMethod() ) ) {
+                        changed.put( cr.getMethod(), newCr );
+                    }
+                } else if ( !relationSignature( cr, true ).equals( relationSignature( newCr, true ) ) ) {
+                    return null;
+                }
+            }
+
+            EvaluationAlgorithm newAlgorithm = new EvaluationAlgorithm();
+
+            for ( PlanningResult res : algorithm ) {
+                Rel rel = res.getRel();
+                ClassRelation newCr;
+
+                if ( rel.getParent() == problem.getRootVar() && rel.getType() == RelType.TYPE_EQUATION
+                        && rel.getInputs().isEmpty() && ( newCr = changed.get( rel.getMethod() ) ) != null ) {
+
+                    Rel newRel = new Rel( rel.getParent(), newCr.getSpecLine() );
+                    newRel.addOutputs( rel.getOutputs() );
+                    newRel.getExceptions().addAll( rel.getExceptions() );
+                    newRel.setMethod( newCr.getMethod() );
+                    newRel.setType( rel.getType() );
+                    newRel.addSubstitutions( rel.getSubstitutions() );
+                    newAlgorithm.addRel( newRel );
+                } else {
+                    newAlgorithm.add( res );
+                }
+            }
+
+            return newAlgorithm;
+        }
+
+        /**
+         * Maps the previous algorithm onto rels of the new problem. A step is reused
+         * only if all rels it consists of exist in the new problem and none of the vars
+         * it reads is computed by a step that has been dropped.
+         *
+         * @return reusable steps of the previous algorithm in the original order
+         */
+        private EvaluationAlgorithm createSeed( Problem newProblem ) {
+
+            Map<String, Rel> newRels = new HashMap<String, Rel>();
+
+            for ( Rel rel : newProblem.getAxioms() ) {
+                newRels.put( relKey( rel ), rel );
+            }
+            for ( Rel rel : newProblem.getAllRels() ) {
+                newRels.put( relKey( rel ), rel );
+            }
+
+            EvaluationAlgorithm seed = new EvaluationAlgorithm();
+            Set<String> dropped = new HashSet<String>();
+            Set<Var> vars = new LinkedHashSet<Var>();
+
+            for ( PlanningResult res : algorithm ) {
+
+                PlanningResult newRes = mapResult( res, newRels );
+
+                boolean reused = newRes != null;
+
+                if ( reused && !dropped.isEmpty() ) {
+                    vars.clear();
+                    collectInputs( res, vars );
+                    for ( Var var : vars ) {
+                        if ( dropped.contains( var.getFullName() ) ) {
+                            reused = false;
+                            break;
+                        }
+                    }
+                }
+
+                if ( reused ) {
+                    seed.add( newRes );
+                } else {
+                    vars.clear();
+                    unfoldVarsToSet( res.getRel().getOutputs(), vars );
+                    for ( Var var : vars ) {
+                        dropped.add( var.getFullName() );
+                    }
+                }
+            }
+
+            return seed;
+        }
+
+        /**
+         * @return a copy of the result built from rels of the new problem
+         * or null if some rel does not exist there
+         */
+        private PlanningResult mapResult( PlanningResult res, Map<String, Rel> newRels ) {
+
+            Rel rel = res.getRel();
+            Rel newRel = newRels.get( relKey( rel ) );
+
+            if ( newRel == null ) {
+                return null;
+            }
+
+            if ( rel.getType() != RelType.TYPE_METHOD_WITH_SUBTASK ) {
+                return new PlanningResult( newRel );
+            }
+
+            PlanningResult newRes = new PlanningResult( newRel, true );
+            Iterator<SubtaskRel> newSubtasks = newRel.getSubtasks().iterator();
+
+            for ( SubtaskRel subtask : rel.getSubtasks() ) {
+                SubtaskRel newSubtask = newSubtasks.next();
+
+                //independent subtasks have their own problems, it is simpler to plan them again
+                if ( subtask.isIndependent() ) {
+                    return null;
+                }
+
+                EvaluationAlgorithm newSbtAlgorithm = new EvaluationAlgorithm();
+
+                for ( PlanningResult sbtRes : res.getSubtaskAlgorithm( subtask ) ) {
+                    PlanningResult newSbtRes = mapResult( sbtRes, newRels );
+                    if ( newSbtRes == null ) {
+                        return null;
+                    }
+                    newSbtAlgorithm.add( newSbtRes );
+                }
+
+                newRes.addSubtaskAlgorithm( newSubtask, newSbtAlgorithm );
+            }
+
+            return newRes;
+        }
+
+        private static void collectInputs( PlanningResult res, Set<Var> to ) {
+
+            Rel rel = res.getRel();
+            unfoldVarsToSet( rel.getInputs(), to );
+
+            if ( rel.getType() == RelType.TYPE_METHOD_WITH_SUBTASK ) {
+                for ( SubtaskRel subtask : rel.getSubtasks() ) {
+                    for ( PlanningResult sbtRes : res.getSubtaskAlgorithm( subtask ) ) {
+                        collectInputs( sbtRes, to );
+                    }
+                }
+            }
+        }
+
+        private static boolean isValue( ClassRelation cr ) {
+            return cr.getType() == RelType.TYPE_EQUATION && cr.getInputs().isEmpty() && cr.getSubtasks().isEmpty();
+        }
+
+        private static String relKey( Rel rel ) {
+            StringBuilder sb = new StringBuilder();
+            sb.append( rel.getType() ).append( '|' ).append( rel.getDeclaration() ).append( '|' ).append( rel.getMethod() )
+                .append( '|' ).append( rel.getSubstitutions() );
+            //code generation depends on types of vars as well
+            appendVars( rel.getInputs(), sb.append( '|' ) );
+            appendVars( rel.getOutputs(), sb.append( '|' ) );
+            appendVars( rel.getExceptions(), sb.append( '|' ) );
+
+            for ( SubtaskRel subtask : rel.getSubtasks() ) {
+                sb.append( '[' ).append( subtask.isIndependent() ).append( relKey( subtask ) ).append( ']' );
+            }
+            return sb.toString();
+        }
+
+        private static void appendVars( Collection<Var> vars, StringBuilder sb ) {
+            for ( Var var : vars ) {
+                sb.append( var.getType() ).append( ' ' ).append( var.getFullName() ).append( ',' );
+            }
+        }
+
+        private static String relationSignature( ClassRelation cr, boolean withMethod ) {
+            StringBuilder sb = new StringBuilder();
+            sb.append( cr.getType() ).append( '|' ).append( cr.getInputs() ).append( cr.getOutputs() )
+                .append( cr.getExceptions() );
+
+            if ( withMethod ) {
+                sb.append( '|' ).append( cr.getSpecLine() ).append( '|' ).append( cr.getMethod() );
+            }
+
+            for ( SubtaskClassRelation subtask : cr.getSubtasks() ) {
+                sb.append( '[' ).append( subtask.isIndependent() ).append( relationSignature( subtask, true ) ).append( ']' );
+            }
+            return sb.toString();
+        }
+
+        private static List<String> fieldSignatures( AnnotatedClass ac ) {
+            List<String> signatures = new ArrayList<String>();
+
+            for ( ClassField field : ac.getFields() ) {
+                signatures.add( field.getType() + " " + field.getName()
+                        + ( field.isConstant() ? "=" + field.getValue() : "" )
+                        + ( field.isStatic() ? " static" : "" )
+                        + ( field.isSchemeObject() ? " object" : "" )
+                        + ( field.isAlias() ? field.getVars() : "" ) );
+            }
+            for ( AnnotatedClass superClass : ac.getSuperClasses() ) {
+                signatures.add( "super " + superClass.getName() );
+            }
+            return signatures;
+        }
+    }
+}
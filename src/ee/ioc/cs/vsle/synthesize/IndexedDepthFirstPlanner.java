@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.util.*;
+
+/**
+ * Depth first planner with an indexed linear planning core.
+ * Vars and rels are numbered by {@link ProblemIndex}, unknown inputs
+ * are counted in arrays and known vars are propagated through a worklist
+ * instead of scanning all known vars on every pass.
+ * Produces the same algorithm as {@link DepthFirstPlanner}.
+ */
+public class IndexedDepthFirstPlanner extends DepthFirstPlanner {
+
+    /**
+     * protected constructor
+     */
+    protected IndexedDepthFirstPlanner() {
+    }
+
+    /**
+     * @return IndexedDepthFirstPlanner instance
+     */
+    public static IndexedDepthFirstPlanner getInstance() {
+        return new IndexedDepthFirstPlanner();
+    }
+
+    /**
+     * @return description of this planner
+     */
+    @Override
+    public String getDescription() {
+        return "Depth First (indexed)";
+    }
+
+    @Override
+    EvaluationAlgorithm invokePlaning( Problem problem, boolean _computeAll, EvaluationAlgorithm seed ) {
+
+        if ( !( problem.getCurrentContext() instanceof IndexedPlanningContext ) ) {
+            ProblemIndex index = new ProblemIndex( problem );
+            problem.setCurrentContext( IndexedPlanningContext.create( index, problem.getCurrentContext() ) );
+        }
+
+        return super.invokePlaning( problem, _computeAll, seed );
+    }
+
+    @Override
+    protected DepthFirstPlanner createNestedPlanner() {
+        return new IndexedDepthFirstPlanner();
+    }
+
+    /**
+     * Linear forward search over the indexed problem graph. Each var is put
+     * into the worklist at most once, one level of the worklist corresponds
+     * to one pass over known vars in {@link DepthFirstPlanner},
+     * so the order of relations in the algorithm is preserved.
+     */
+    @Override
+    protected boolean linearForwardSearch( PlanningContext _context, EvaluationAlgorithm algorithm, boolean _computeAll ) {
+
+        IndexedPlanningContext context = (IndexedPlanningContext) _context;
+        ProblemIndex index = context.getIndex();
+
+        BitSet found = index.toBitSet( context.getFoundVars() );
+        BitSet queued = new BitSet( index.getVarCount() );
+        BitSet removable = new BitSet( index.getVarCount() );
+        int[] queue = new int[index.getVarCount()];
+        int head = 0;
+        int tail = 0;
+
+        for ( Var var : context.getKnownVars() ) {
+            int varId = index.getVarId( var );
+            if ( varId >= 0 && !queued.get( varId ) ) {
+                queued.set( varId );
+                queue[tail++] = varId;
+            }
+        }
+
+        if ( isLinearLoggingOn() )
+            db.p( "------Starting indexed linear planning with (sub)goals: " + context.getRemainingGoals() + "--------" );
+
+        boolean changed = true;
+        int counter = 1;
+
+        while ( changed && ( _computeAll || !context.getRemainingGoals().isEmpty() ) ) {
+
+            if ( isLinearLoggingOn() )
+                db.p( "----Iteration " + counter + " ----" );
+
+            counter++;
+            changed = false;
+
+            for ( int levelEnd = tail; head < levelEnd; ) {
+
+                int varId = queue[head++];
+                int[] rels = index.getVarRels( varId );
+                int[] pairs = index.getVarPairs( varId );
+
+                for ( int i = 0; i < rels.length; i++ ) {
+                    int relId = rels[i];
+
+                    if ( !context.isAvailableRel( relId ) ) {
+                        continue;
+                    }
+
+                    removable.set( varId );
+
+                    if ( context.removeUnknownInput( relId, pairs[i] ) > 0 ) {
+                        continue;
+                    }
+
+                    Rel rel = index.getRel( relId );
+
+                    if ( rel.getType() == RelType.TYPE_METHOD_WITH_SUBTASK ) {
+                        continue;
+                    }
+
+                    int[] outputs = index.getRelOutputs( relId );
+                    boolean relIsNeeded = outputs.length == 0;
+
+                    for ( int j = 0; j < outputs.length && !relIsNeeded; j++ ) {
+                        relIsNeeded = !found.get( outputs[j] );
+                    }
+
+                    if ( relIsNeeded ) {
+                        for ( int output : index.getRelUnfoldedOutputs( relId ) ) {
+                            if ( !found.get( output ) ) {
+                                found.set( output );
+                                context.getFoundVars().add( index.getVar( output ) );
+                            }
+                            if ( !queued.get( output ) ) {
+                                queued.set( output );
+                                queue[tail++] = output;
+                            }
+                        }
+                        algorithm.addRel( rel );
+
+                        if ( isLinearLoggingOn() )
+                            db.p( "rel is used " + rel );
+                    }
+
+                    context.removeRel( relId );
+                    changed = true;
+                }
+            }
+
+            // remove targets if they have already been found
+            for ( Iterator<Var> targetIter = context.getRemainingGoals().iterator(); targetIter.hasNext(); ) {
+                if ( context.getFoundVars().contains( targetIter.next() ) ) {
+                    targetIter.remove();
+                }
+            }
+
+            if ( head == tail && ( _computeAll || !context.getRemainingGoals().isEmpty() ) ) {
+                //no relation is applicable, try to solve equations jointly
+                for ( Var var : solveLinearSystems( context, algorithm ) ) {
+                    int varId = index.getVarId( var );
+                    if ( varId >= 0 && !queued.get( varId ) ) {
+                        found.set( varId );
+                        queued.set( varId );
+                        queue[tail++] = varId;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        //vars with no available rels stay known, vars not yet processed become known
+        Set<Var> knownVars = context.getKnownVars();
+        for ( int i = 0; i < tail; i++ ) {
+            Var var = index.getVar( queue[i] );
+            if ( removable.get( queue[i] ) ) {
+                knownVars.remove( var );
+            } else {
+                knownVars.add( var );
+            }
+        }
+
+        if ( isLinearLoggingOn() )
+            db.p( "algorithm " + algorithm );
+
+        if ( !_computeAll ) {
+            Optimizer.optimize( context, algorithm );
+
+            if ( isLinearLoggingOn() )
+                db.p( "optimized algorithm " + algorithm );
+        }
+
+        if ( isLinearLoggingOn() )
+            db.p( "\n---!!!Finished indexed linear planning!!!---\n" );
+
+        return context.getRemainingGoals().isEmpty()
+                || context.getFoundVars().containsAll( context.getAllGoals() );
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+/**
+ * Planning context that keeps unknown inputs of relations in
+ * arrays indexed by {@link ProblemIndex} instead of a map of sets.
+ * Known and found vars are still kept as sets, because optimizer
+ * and code generator work with them.
+ */
+class IndexedPlanningContext extends PlanningContext {
+
+    private final ProblemIndex index;
+    //rel id -> number of unknown inputs, -1 if the rel is not available
+    private final int[] unknownInputCounts;
+    //pair ids of inputs that are still unknown
+    private final BitSet unknownInputs;
+
+    private IndexedPlanningContext( EquationGraph equationGraph, ProblemIndex index, int[] unknownInputCounts,
+            BitSet unknownInputs ) {
+        super( equationGraph );
+        this.index = index;
+        this.unknownInputCounts = unknownInputCounts;
+        this.unknownInputs = unknownInputs;
+    }
+
+    /**
+     * Creates an indexed copy of the given context including goals
+     */
+    static IndexedPlanningContext create( ProblemIndex index, PlanningContext context ) {
+
+        int[] counts = new int[index.getRelCount()];
+        BitSet unknown = new BitSet( index.getPairCount() );
+
+        for ( int r = 0; r < counts.length; r++ ) {
+            Set<Var> relUnknownInputs = context.getUnknownInputs( index.getRel( r ) );
+            if ( relUnknownInputs == null ) {
+                counts[r] = -1;
+                continue;
+            }
+            for ( int pair = index.getFirstPair( r ); pair < index.getPairEnd( r ); pair++ ) {
+                if ( relUnknownInputs.contains( index.getVar( index.getPairVar( pair ) ) ) ) {
+                    unknown.set( pair );
+                    counts[r]++;
+                }
+            }
+        }
+
+        IndexedPlanningContext newContext = new IndexedPlanningContext( context.getEquationGraph(), index, counts, unknown );
+        newContext.getKnownVars().addAll( context.getKnownVars() );
+        newContext.getFoundVars().addAll( context.getFoundVars() );
+        newContext.getAllGoals().addAll( context.getAllGoals() );
+        newContext.getRemainingGoals().addAll( context.getRemainingGoals() );
+
+        return newContext;
+    }
+
+    ProblemIndex getIndex() {
+        return index;
+    }
+
+    boolean isAvailableRel( int relId ) {
+        return unknownInputCounts[relId] >= 0;
+    }
+
+    /**
+     * Marks the input of a rel as known
+     * @return the number of remaining unknown inputs
+     */
+    int removeUnknownInput( int relId, int pair ) {
+        if ( pair >= 0 && unknownInputs.get( pair ) ) {
+            unknownInputs.clear( pair );
+            unknownInputCounts[relId]--;
+        }
+        return unknownInputCounts[relId];
+    }
+
+    void removeRel( int relId ) {
+        unknownInputCounts[relId] = -1;
+        int end = index.getPairEnd( relId );
+        if ( end > index.getFirstPair( relId ) ) {
+            unknownInputs.clear( index.getFirstPair( relId ), end );
+        }
+    }
+
+    @Override
+    boolean isRelReadyToUse( Rel rel ) {
+        int relId = index.getRelId( rel );
+        return relId >= 0 && unknownInputCounts[relId] == 0;
+    }
+
+    @Override
+    void removeUnknownInput( Rel rel, Var var ) {
+        int relId = index.getRelId( rel );
+        if ( relId >= 0 && isAvailableRel( relId ) ) {
+            removeUnknownInput( relId, index.getPair( relId, var ) );
+        }
+    }
+
+    @Override
+    void addUnknownInputs( Rel rel, Collection<Var> vars ) {
+        int relId = index.getRelId( rel );
+        if ( relId < 0 ) {
+            throw new IllegalArgumentException( "Rel " + rel.getDeclaration() + " is not indexed" );
+        }
+        if ( unknownInputCounts[relId] < 0 ) {
+            unknownInputCounts[relId] = 0;
+        }
+        for ( Var var : vars ) {
+            int pair = index.getPair( relId, var );
+            if ( pair >= 0 && !index.isPairConstant( pair ) && !unknownInputs.get( pair ) ) {
+                unknownInputs.set( pair );
+                unknownInputCounts[relId]++;
+            }
+        }
+    }
+
+    @Override
+    Set<Var> getUnknownInputs( Rel rel ) {
+        int relId = index.getRelId( rel );
+        if ( relId < 0 || !isAvailableRel( relId ) ) {
+            return null;
+        }
+        Set<Var> inputs = new LinkedHashSet<Var>();
+        for ( int pair = unknownInputs.nextSetBit( index.getFirstPair( relId ) );
+                pair >= 0 && pair < index.getPairEnd( relId ); pair = unknownInputs.nextSetBit( pair + 1 ) ) {
+            inputs.add( index.getVar( index.getPairVar( pair ) ) );
+        }
+        return inputs;
+    }
+
+    @Override
+    boolean isAvailableRel( Rel rel ) {
+        int relId = index.getRelId( rel );
+        return relId >= 0 && isAvailableRel( relId );
+    }
+
+    @Override
+    void removeRel( Rel rel ) {
+        int relId = index.getRelId( rel );
+        if ( relId >= 0 ) {
+            removeRel( relId );
+        }
+    }
+
+    @Override
+    public Set<Rel> getAvailableRels() {
+        Set<Rel> rels = new LinkedHashSet<Rel>();
+        for ( int r = 0; r < unknownInputCounts.length; r++ ) {
+            if ( isAvailableRel( r ) ) {
+                rels.add( index.getRel( r ) );
+            }
+        }
+        return Collections.unmodifiableSet( rels );
+    }
+
+    //copies the context skipping goals
+    @Override
+    PlanningContext getCopy() {
+        IndexedPlanningContext newContext = new IndexedPlanningContext( getEquationGraph(), index,
+                unknownInputCounts.clone(), (BitSet) unknownInputs.clone() );
+        newContext.getFoundVars().addAll( getFoundVars() );
+        newContext.getKnownVars().addAll( getKnownVars() );
+        return newContext;
+    }
+}
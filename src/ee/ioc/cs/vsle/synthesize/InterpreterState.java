@@ -0,0 +1,312 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import ee.ioc.cs.vsle.util.*;
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Values of variables of a program run by {@link ProgramInterpreter}.
+ *
+ * Top level variables that would be fields of the generated class are kept in a map,
+ * objects of specification classes are instances of the compiled classes,
+ * so that their fields are visible to their methods. Variables are accessed by
+ * full names, aliases are composed of and decomposed into their elements
+ * like in the generated code.
+ */
+class InterpreterState {
+
+    private final ClassLoader classLoader;
+    //shared by states of the same program, full names -> fields below the top level variable
+    private final ConcurrentMap<String, Field[]> fieldPaths;
+    //top level variables -> values
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    InterpreterState( ClassLoader classLoader, ConcurrentMap<String, Field[]> fieldPaths ) {
+        this.classLoader = classLoader;
+        this.fieldPaths = fieldPaths;
+    }
+
+    /**
+     * Initializes a top level variable as it is declared in the generated class
+     *
+     * @param field
+     */
+    void declare( ClassField field ) throws Exception {
+
+        if ( field.isAlias() || field.isVoid() ) {
+            return;
+        }
+
+        Object value = null;
+        TypeToken token = TypeToken.getTypeToken( field.getType() );
+
+        if ( field.isConstant() && field.getValue() != null ) {
+            value = TypeUtil.createObjectFromString( field.getType(), field.getValue() );
+        } else if ( field.isSpecField() && !field.isAny() ) {
+            value = classLoader.loadClass( field.getType() ).newInstance();
+        } else if ( token.isPrimitive() ) {
+            value = coerce( 0, field.getType() );
+        }
+
+        values.put( field.getName(), value );
+    }
+
+    /**
+     * @param var
+     * @return the value of the variable, an array of element values in case of an alias
+     */
+    Object get( Var var ) throws Exception {
+
+        if ( var.getField().isVoid() ) {
+            return null;
+        } else if ( !var.getField().isAlias() ) {
+            return get( var.getFullName() );
+        } else if ( var.getChildVars().isEmpty() && !( (Alias) var.getField() ).isInitialized() ) {
+            return null;
+        }
+
+        List<Var> elements = var.getChildVars();
+        Object array = Array.newInstance( getClass( var.getType() ).getComponentType(), elements.size() );
+
+        for ( int i = 0; i < elements.size(); i++ ) {
+            if ( !elements.get( i ).getField().isVoid() ) {
+                Array.set( array, i, get( elements.get( i ) ) );
+            }
+        }
+
+        return array;
+    }
+
+    /**
+     * Assigns a value to the variable, elements of an alias get elements of the array
+     *
+     * @param var
+     * @param value
+     */
+    void set( Var var, Object value ) throws Exception {
+
+        if ( var.getField().isVoid() ) {
+            return;
+        } else if ( !var.getField().isAlias() ) {
+            set( var.getFullName(), coerce( value, var.getType() ) );
+            return;
+        }
+
+        List<Var> elements = var.getChildVars();
+
+        for ( int i = 0; i < elements.size(); i++ ) {
+            if ( !elements.get( i ).getField().isVoid() ) {
+                set( elements.get( i ), Array.get( value, i ) );
+            }
+        }
+    }
+
+    /**
+     * @param fullName
+     * @return the value of a non-alias variable
+     */
+    Object get( String fullName ) throws IllegalAccessException, NoSuchFieldException {
+
+        int dot = fullName.indexOf( '.' );
+
+        if ( dot < 0 ) {
+            return values.get( fullName );
+        }
+
+        Object obj = values.get( fullName.substring( 0, dot ) );
+        Field[] path = getFieldPath( obj, fullName, dot );
+
+        for ( Field field : path ) {
+            obj = field.get( obj );
+        }
+
+        return obj;
+    }
+
+    /**
+     * @param fullName
+     * @param value of the type of the variable
+     */
+    void set( String fullName, Object value ) throws IllegalAccessException, NoSuchFieldException {
+
+        int dot = fullName.indexOf( '.' );
+
+        if ( dot < 0 ) {
+            values.put( fullName, value );
+            return;
+        }
+
+        Object obj = values.get( fullName.substring( 0, dot ) );
+        Field[] path = getFieldPath( obj, fullName, dot );
+
+        for ( int i = 0; i < path.length - 1; i++ ) {
+            obj = path[i].get( obj );
+        }
+
+        path[path.length - 1].set( obj, value );
+    }
+
+    private Field[] getFieldPath( Object top, String fullName, int dot ) throws NoSuchFieldException {
+
+        Field[] path = fieldPaths.get( fullName );
+
+        if ( path == null ) {
+            StringTokenizer st = new StringTokenizer( fullName.substring( dot + 1 ), "." );
+            path = new Field[st.countTokens()];
+            Class<?> clas = top.getClass();
+
+            for ( int i = 0; i < path.length; i++ ) {
+                path[i] = getField( clas, st.nextToken() );
+                clas = path[i].getType();
+            }
+            fieldPaths.put( fullName, path );
+        }
+
+        return path;
+    }
+
+    private static Field getField( Class<?> clas, String name ) throws NoSuchFieldException {
+
+        for ( Class<?> c = clas; c != null; c = c.getSuperclass() ) {
+            try {
+                Field field = c.getDeclaredField( name );
+                field.setAccessible( true );
+                return field;
+            } catch ( NoSuchFieldException e ) {
+                //look in the superclass
+            }
+        }
+        throw new NoSuchFieldException( clas.getName() + "." + name );
+    }
+
+    /**
+     * Creates the state of a dependent subtask. Like the generated subtask class,
+     * the new state gets copies of top level variables and new instances
+     * of top level objects with values of the used fields.
+     *
+     * @param usedVars
+     * @return
+     */
+    InterpreterState copy( Collection<Var> usedVars ) throws Exception {
+
+        InterpreterState state = new InterpreterState( classLoader, fieldPaths );
+
+        for ( Var var : usedVars ) {
+
+            ClassField cf = var.getField();
+            boolean allow = !cf.isAlias() && !cf.isConstant() && !cf.isVoid() && !cf.isStatic();
+
+            //constants and static fields are not copied, the generated subtask refers to the ones of the program
+            if ( isTopLevel( var ) ) {
+                if ( !cf.isAlias() && !cf.isVoid() ) {
+                    Object value = values.get( var.getName() );
+                    state.values.put( var.getName(), allow ? copyValue( var, value ) : value );
+                }
+                continue;
+            }
+
+            Var top = var.getParent();
+            while ( !isTopLevel( top ) ) {
+                top = top.getParent();
+            }
+
+            if ( top.getField().isStatic() ) {
+                state.values.put( top.getName(), values.get( top.getName() ) );
+                continue;
+            }
+
+            if ( !state.values.containsKey( top.getName() ) ) {
+                state.declare( top.getField() );
+            }
+
+            if ( allow ) {
+                state.set( var.getFullName(), get( var.getFullName() ) );
+            }
+        }
+
+        return state;
+    }
+
+    private static Object copyValue( Var var, Object value ) throws Exception {
+
+        if ( value == null || !var.getField().isArray() ) {
+            return value;
+        } else if ( var.getField().isPrimitiveArray() ) {
+            Object copy = Array.newInstance( value.getClass().getComponentType(), Array.getLength( value ) );
+            System.arraycopy( value, 0, copy, 0, Array.getLength( value ) );
+            return copy;
+        }
+        return DeepCopy.copy( value );
+    }
+
+    /**
+     * @param var
+     * @return true if the variable is a field of the root class
+     */
+    static boolean isTopLevel( Var var ) {
+        return var.getParent() != null && var.getParent().getParent() == null;
+    }
+
+    /**
+     * Converts a value to the type of a variable as an assignment in the generated code would do
+     *
+     * @param value
+     * @param type
+     * @return
+     */
+    static Object coerce( Object value, String type ) {
+
+        if ( !( value instanceof Number ) ) {
+            return value;
+        }
+
+        Number number = (Number) value;
+        TypeToken token = TypeToken.getTypeToken( type );
+
+        if ( token == TypeToken.TOKEN_DOUBLE ) {
+            return number.doubleValue();
+        } else if ( token == TypeToken.TOKEN_INT ) {
+            return number.intValue();
+        } else if ( token == TypeToken.TOKEN_LONG ) {
+            return number.longValue();
+        } else if ( token == TypeToken.TOKEN_FLOAT ) {
+            return number.floatValue();
+        } else if ( token == TypeToken.TOKEN_SHORT ) {
+            return number.shortValue();
+        } else if ( token == TypeToken.TOKEN_BYTE ) {
+            return number.byteValue();
+        }
+        return value;
+    }
+
+    /**
+     * @param type name of a type as it appears in specifications
+     * @return the class of the type
+     */
+    Class<?> getClass( String type ) throws ClassNotFoundException {
+
+        if ( TypeUtil.isArray( type ) ) {
+            Class<?> component = getClass( TypeUtil.getArrayComponentType( type ) );
+            return Array.newInstance( component, 0 ).getClass();
+        }
+
+        TypeToken token = TypeToken.getTypeToken( type );
+
+        if ( token.getPrimeClass() != null ) {
+            return token.getPrimeClass();
+        } else if ( TypeUtil.TYPE_CHAR.equals( type ) ) {
+            return char.class;
+        } else if ( TypeUtil.TYPE_ANY.equals( type ) ) {
+            return Object.class;
+        }
+
+        try {
+            return classLoader.loadClass( type );
+        } catch ( ClassNotFoundException e ) {
+            return classLoader.loadClass( "java.lang." + type );
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.equations.LinearEquation.*;
+
+/**
+ * Finds systems of linear equations that have to be solved jointly.
+ *
+ * Each equation is rewritten into one relation per variable, so equations
+ * with cyclic dependencies cannot be solved by the planner one by one.
+ * When no relation is applicable anymore, equations with unknown vars
+ * are matched with their unknowns and the strongly connected components
+ * of the resulting dependency graph are found. A component is solvable
+ * if it depends only on its own unknowns and all of its equations are linear
+ * with respect to them. Each solvable component becomes a {@link LinearSystemRel}.
+ * Unknowns of the equations have to be of type double.
+ * Only equations of the {@link EquationGraph} of the problem are considered.
+ */
+class LinearSystemFinder {
+
+    private EquationGraph graph;
+    private List<EquationInstance> equations = new ArrayList<EquationInstance>();
+    private List<LinearForm> forms = new ArrayList<LinearForm>();
+    //equation -> ids of unknown vars in the graph
+    private List<int[]> equationVars = new ArrayList<int[]>();
+    private int[] varMatch;
+    private int[] equationMatch;
+
+    //Tarjan's algorithm
+    private int[] order;
+    private int[] lowLink;
+    private boolean[] onStack;
+    private Deque<Integer> stack = new ArrayDeque<Integer>();
+    private int counter;
+    private List<LinearSystemRel> systems = new ArrayList<LinearSystemRel>();
+
+    private LinearSystemFinder( EquationGraph graph ) {
+        this.graph = graph;
+    }
+
+    /**
+     * @param context
+     * @return systems that can be solved with known vars of the context,
+     * no system depends on another one
+     */
+    static List<LinearSystemRel> findSystems( PlanningContext context ) {
+
+        EquationGraph graph = context.getEquationGraph();
+
+        if ( graph == null || graph.isEmpty() ) {
+            return Collections.emptyList();
+        }
+
+        LinearSystemFinder finder = new LinearSystemFinder( graph );
+
+        if ( !finder.collectEquations( context ) ) {
+            return Collections.emptyList();
+        }
+
+        finder.match();
+        finder.findComponents();
+
+        return finder.systems;
+    }
+
+    /**
+     * Collects available linear equations with at least two unknown vars
+     *
+     * @return true if there is at least one such equation
+     */
+    private boolean collectEquations( PlanningContext context ) {
+
+        Set<Var> found = context.getFoundVars();
+        List<Var> unknowns = new ArrayList<Var>();
+
+        NEXT: for ( int eq = 0; eq < graph.getEquationCount(); eq++ ) {
+
+            EquationInstance equation = graph.getEquation( eq );
+
+            if ( !isAvailable( equation, context ) ) {
+                continue;
+            }
+
+            for ( Var var : graph.getInputs( eq ) ) {
+                if ( !found.contains( var ) ) {
+                    continue NEXT;
+                }
+            }
+
+            int[] candidates = graph.getCandidates( eq );
+            int[] ids = new int[candidates.length];
+            int count = 0;
+
+            unknowns.clear();
+
+            for ( int id : candidates ) {
+                Var var = graph.getVar( id );
+                if ( !found.contains( var ) ) {
+                    unknowns.add( var );
+                    ids[count++] = id;
+                }
+            }
+
+            LinearForm form;
+
+            if ( count < 2 || ( form = equation.linearize( unknowns ) ) == null ) {
+                continue;
+            }
+
+            equations.add( equation );
+            forms.add( form );
+            equationVars.add( Arrays.copyOf( ids, count ) );
+        }
+
+        return !equations.isEmpty();
+    }
+
+    private static boolean isAvailable( EquationInstance equation, PlanningContext context ) {
+
+        for ( Rel rel : equation.getRels() ) {
+            if ( context.isAvailableRel( rel ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a maximum matching of equations and unknown vars
+     */
+    private void match() {
+
+        varMatch = new int[graph.getVarCount()];
+        equationMatch = new int[equations.size()];
+        Arrays.fill( varMatch, -1 );
+        Arrays.fill( equationMatch, -1 );
+
+        boolean[] visited = new boolean[graph.getVarCount()];
+
+        for ( int eq = 0; eq < equations.size(); eq++ ) {
+            Arrays.fill( visited, false );
+            augment( eq, visited );
+        }
+    }
+
+    private boolean augment( int eq, boolean[] visited ) {
+
+        for ( int var : equationVars.get( eq ) ) {
+            if ( !visited[var] ) {
+                visited[var] = true;
+                if ( varMatch[var] < 0 || augment( varMatch[var], visited ) ) {
+                    varMatch[var] = eq;
+                    equationMatch[eq] = var;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds strongly connected components of matched equations.
+     * An equation depends on the equations matched with its other unknowns.
+     */
+    private void findComponents() {
+
+        order = new int[equations.size()];
+        lowLink = new int[equations.size()];
+        onStack = new boolean[equations.size()];
+        Arrays.fill( order, -1 );
+
+        for ( int eq = 0; eq < equations.size(); eq++ ) {
+            if ( equationMatch[eq] >= 0 && order[eq] < 0 ) {
+                visit( eq );
+            }
+        }
+    }
+
+    private void visit( int eq ) {
+
+        order[eq] = lowLink[eq] = counter++;
+        stack.push( eq );
+        onStack[eq] = true;
+
+        for ( int var : equationVars.get( eq ) ) {
+            int next = varMatch[var];
+            if ( next < 0 || next == eq ) {
+                continue;
+            }
+            if ( order[next] < 0 ) {
+                visit( next );
+                lowLink[eq] = Math.min( lowLink[eq], lowLink[next] );
+            } else if ( onStack[next] ) {
+                lowLink[eq] = Math.min( lowLink[eq], order[next] );
+            }
+        }
+
+        if ( lowLink[eq] == order[eq] ) {
+            List<Integer> component = new ArrayList<Integer>();
+            int member;
+            do {
+                member = stack.pop();
+                onStack[member] = false;
+                component.add( member );
+            } while ( member != eq );
+
+            addSystem( component );
+        }
+    }
+
+    /**
+     * Creates a system of the component if it depends only on its own unknowns
+     */
+    private void addSystem( List<Integer> component ) {
+
+        Set<Integer> members = new HashSet<Integer>( component );
+
+        for ( int eq : component ) {
+            for ( int var : equationVars.get( eq ) ) {
+                if ( !members.contains( varMatch[var] ) ) {
+                    return;
+                }
+            }
+        }
+
+        //keep the order of equations in the specification
+        Collections.sort( component );
+
+        StringBuilder declaration = new StringBuilder();
+
+        for ( int eq : component ) {
+            if ( declaration.length() > 0 ) {
+                declaration.append( "; " );
+            }
+            declaration.append( equations.get( eq ).getDeclaration() );
+        }
+
+        LinearSystemRel system = new LinearSystemRel( equations.get( component.get( 0 ) ).getParent(),
+                declaration.toString() );
+
+        for ( int eq : component ) {
+            system.addEquation( equations.get( eq ), forms.get( eq ) );
+            system.addUnknown( graph.getVar( equationMatch[eq] ) );
+        }
+
+        system.addInputsFromEquations();
+        systems.add( system );
+    }
+}
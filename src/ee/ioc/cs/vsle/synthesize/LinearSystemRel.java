@@ -0,0 +1,63 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.equations.LinearEquation.*;
+
+/**
+ * Composite relation that solves a system of linear equations jointly.
+ * Row i of the system is the linear form of the i-th equation,
+ * column j corresponds to the j-th output.
+ */
+class LinearSystemRel extends Rel {
+
+    private List<EquationInstance> equations = new ArrayList<EquationInstance>();
+    private List<LinearForm> forms = new ArrayList<LinearForm>();
+    private List<Var> unknowns = new ArrayList<Var>();
+
+    LinearSystemRel( Var parent, String declaration ) {
+        super( parent, declaration );
+        setType( RelType.TYPE_LINEAR_SYSTEM );
+    }
+
+    /**
+     * Adds a row, vars of the equation that are not unknowns become inputs
+     */
+    void addEquation( EquationInstance equation, LinearForm form ) {
+        equations.add( equation );
+        forms.add( form );
+    }
+
+    /**
+     * Adds a column
+     */
+    void addUnknown( Var var ) {
+        unknowns.add( var );
+        addOutput( var );
+    }
+
+    /**
+     * Adds inputs, must be called after all unknowns have been added
+     */
+    void addInputsFromEquations() {
+        for ( EquationInstance equation : equations ) {
+            for ( Var var : equation.getVars() ) {
+                if ( !unknowns.contains( var ) ) {
+                    addInput( var );
+                }
+            }
+        }
+    }
+
+    List<EquationInstance> getEquations() {
+        return equations;
+    }
+
+    List<LinearForm> getForms() {
+        return forms;
+    }
+
+    List<Var> getUnknowns() {
+        return unknowns;
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import static ee.ioc.cs.vsle.util.TypeUtil.TYPE_THIS;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+import ee.ioc.cs.vsle.editor.*;
+import ee.ioc.cs.vsle.util.*;
+
+/**
+ * Process wide cache of synthesized programs.
+ * An entry is keyed by a fingerprint of the specification text, planner
+ * settings and goals and is valid as long as the specification files
+ * of all classes from the ClassList stay unchanged.
+ * On a hit the whole synthesis (parsing, planning and code generation)
+ * can be skipped.
+ *
+ * Size and eviction policy are taken from RuntimeProperties.
+ */
+public class PlanCache {
+
+    private static final PlanCache s_instance = new PlanCache();
+
+    private Map<String, Entry> entries;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    private PlanCache() {
+        entries = createMap();
+    }
+
+    public static PlanCache getInstance() {
+        return s_instance;
+    }
+
+    private Map<String, Entry> createMap() {
+        return new LinkedHashMap<String, Entry>( 16, 0.75f, RuntimeProperties.isPlanCacheLRU() ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, PlanCache.Entry> eldest ) {
+                if ( size() > RuntimeProperties.getPlanCacheSize() ) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Creates a key for given specification and current planner settings
+     *
+     * @param specText refined specification text, includes goals
+     * @param workDir the directory of specification classes
+     * @param computeAll
+     * @return key or null if the key cannot be calculated
+     */
+    public static String createKey( String specText, String workDir, boolean computeAll ) {
+        try {
+            MessageDigest md = MessageDigest.getInstance( "SHA-1" );
+            md.update( specText.getBytes( "UTF-8" ) );
+            md.update( ( "\n" + workDir + "\n" + computeAll
+                    + "\n" + PlannerFactory.getInstance().getCurrentPlannerClass().getName()
+                    + "\n" + DepthFirstPlanner.getSettingsString() ).getBytes( "UTF-8" ) );
+
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : md.digest() ) {
+                sb.append( Integer.toHexString( ( b & 0xff ) | 0x100 ).substring( 1 ) );
+            }
+            return sb.toString();
+        } catch ( NoSuchAlgorithmException e ) {
+            db.p( e );
+        } catch ( UnsupportedEncodingException e ) {
+            db.p( e );
+        }
+        return null;
+    }
+
+    /**
+     * @param key
+     * @return valid cached entry or null
+     */
+    public synchronized Entry get( String key ) {
+
+        if ( key == null || RuntimeProperties.getPlanCacheSize() <= 0 ) {
+            return null;
+        }
+
+        Entry entry = entries.get( key );
+
+        if ( entry != null && !entry.isUpToDate() ) {
+            entries.remove( key );
+            entry = null;
+        }
+
+        if ( entry == null ) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        if ( RuntimeProperties.isLogDebugEnabled() )
+            db.p( "Plan cache " + ( entry == null ? "miss" : "hit" ) + ", " + getStatistics() );
+
+        return entry;
+    }
+
+    synchronized void put( String key, String workDir, String programText, ClassList classList,
+            EvaluationAlgorithm algorithm, Collection<Var> foundVars, List<Var> assumptions ) {
+
+        if ( key == null || RuntimeProperties.getPlanCacheSize() <= 0 ) {
+            return;
+        }
+
+        Map<File, Stamp> dependencies = new HashMap<File, Stamp>();
+        for ( AnnotatedClass ac : classList ) {
+            if ( !TYPE_THIS.equals( ac.getName() ) ) {
+                File file = new File( workDir, ac.getName() + ".java" );
+                dependencies.put( file, stamp( file ) );
+            }
+        }
+
+        entries.put( key, new Entry( programText, classList, algorithm,
+                new ArrayList<Var>( foundVars ), new ArrayList<Var>( assumptions ), dependencies ) );
+    }
+
+    /**
+     * Removes all entries, should be called when settings of the cache are changed
+     */
+    public synchronized void clear() {
+        entries = createMap();
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized String getStatistics() {
+        return "size: " + entries.size() + ", hits: " + hits + ", misses: " + misses + ", evictions: " + evictions;
+    }
+
+    /**
+     * @param file
+     * @return the modification time and the size of the file, used for detecting changes of specifications
+     */
+    public static Stamp stamp( File file ) {
+        return new Stamp( file.lastModified(), file.length() );
+    }
+
+    /**
+     * Modification time and size of a file
+     */
+    public static final class Stamp {
+
+        private final long lastModified;
+        private final long length;
+
+        private Stamp( long lastModified, long length ) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !( obj instanceof Stamp ) ) {
+                return false;
+            }
+            Stamp other = (Stamp) obj;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) ( lastModified ^ ( lastModified >>> 32 ) ) * 31 + (int) ( length ^ ( length >>> 32 ) );
+        }
+    }
+
+    /**
+     * Result of synthesis
+     */
+    public static class Entry {
+
+        private final String programText;
+        private final ClassList classList;
+        private final EvaluationAlgorithm algorithm;
+        private final List<Var> foundVars;
+        private final List<Var> assumptions;
+        private final Map<File, Stamp> dependencies;
+
+        private Entry( String programText, ClassList classList, EvaluationAlgorithm algorithm,
+                List<Var> foundVars, List<Var> assumptions, Map<File, Stamp> dependencies ) {
+            this.programText = programText;
+            this.classList = classList;
+            this.algorithm = algorithm;
+            this.foundVars = Collections.unmodifiableList( foundVars );
+            this.assumptions = Collections.unmodifiableList( assumptions );
+            this.dependencies = dependencies;
+        }
+
+        private boolean isUpToDate() {
+            for ( Map.Entry<File, Stamp> dep : dependencies.entrySet() ) {
+                if ( !stamp( dep.getKey() ).equals( dep.getValue() ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String getProgramText() {
+            return programText;
+        }
+
+        public ClassList getClassList() {
+            return classList;
+        }
+
+        public EvaluationAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public List<Var> getFoundVars() {
+            return foundVars;
+        }
+
+        public List<Var> getAssumptions() {
+            return assumptions;
+        }
+    }
+}
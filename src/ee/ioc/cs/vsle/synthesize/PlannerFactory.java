@@ -24,6 +24,7 @@ public class PlannerFactory {
 	public List<Class<? extends IPlanner>> getAllInstances() {
 		List<Class<? extends IPlanner>> list = new ArrayList<Class<? extends IPlanner>>();
 		list.add(DepthFirstPlanner.class);
+		list.add(IndexedDepthFirstPlanner.class);
 		return list;
 	}
 	
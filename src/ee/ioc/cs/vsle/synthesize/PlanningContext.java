@@ -18,6 +18,12 @@ public class PlanningContext {
     private Map<Rel, Set<Var>> availableRelsWithUnknownInputs = new LinkedHashMap<Rel, Set<Var>>();
     private Set<Var> allGoals = new LinkedHashSet<Var>();
     private Set<Var> remainingGoals = new LinkedHashSet<Var>();
+    //shared by all contexts of a problem
+    private EquationGraph equationGraph;
+
+    PlanningContext( EquationGraph equationGraph ) {
+        this.equationGraph = equationGraph;
+    }
     
     boolean isRelReadyToUse(Rel rel) {
         return availableRelsWithUnknownInputs.get( rel ).size() == 0;
@@ -36,6 +42,13 @@ public class PlanningContext {
         }
     }
     
+    /**
+     * @return unknown inputs of the rel or null if the rel is not available
+     */
+    Set<Var> getUnknownInputs( Rel rel ) {
+        return availableRelsWithUnknownInputs.get( rel );
+    }
+    
     boolean isAvailableRel(Rel rel) {
         return availableRelsWithUnknownInputs.containsKey( rel );
     }
@@ -59,6 +72,13 @@ public class PlanningContext {
         return foundVars;
     }
 
+    /**
+     * @return equations of the problem that may have to be solved jointly or null
+     */
+    EquationGraph getEquationGraph() {
+        return equationGraph;
+    }
+
     public void addGoals(Collection<Var> goals) {
         allGoals.addAll( goals );
         remainingGoals.addAll( goals );
@@ -85,7 +105,7 @@ public class PlanningContext {
     
     //copies the context skipping goals
     PlanningContext getCopy() {
-        PlanningContext newContext = new PlanningContext();
+        PlanningContext newContext = new PlanningContext( equationGraph );
         newContext.foundVars.addAll( foundVars );
         newContext.knownVars.addAll( knownVars );
         for ( Rel rel : availableRelsWithUnknownInputs.keySet() ) {
@@ -17,17 +17,22 @@ class Problem {
 	private Set<SubtaskRel> subtasks = new LinkedHashSet<SubtaskRel>();
 	private Var rootVarThis;
 	private PlanningContext currentContext;
+	private EquationGraph equationGraph = new EquationGraph();
 	
 	Problem( Var varThis ) {
 		rootVarThis = varThis;
 		addVar( varThis );
-		currentContext = new PlanningContext();
+		currentContext = new PlanningContext( equationGraph );
 	}
 	
 	PlanningContext getCurrentContext() {
 	    return currentContext;
 	}
 	
+	void setCurrentContext( PlanningContext context ) {
+	    currentContext = context;
+	}
+	
 	Var getRootVar() {
 		return rootVarThis;
 	}
@@ -36,6 +41,10 @@ class Problem {
 	    allVars.put(var.getFullName(), var);
 	}
 
+	Collection<Var> getAllVars() {
+	    return allVars.values();
+	}
+
 	Var getVar(String varName) {
 	    return allVars.get( varName );
 	}
@@ -76,6 +85,10 @@ class Problem {
 		currentContext.addUnknownInputs( rel, rel.getInputs() );
 	}
 
+	void addEquation(EquationInstance equation) {
+		equationGraph.addEquation( equation );
+	}
+
 	void addRelWithSubtask(Rel rel) {
 		relWithSubtasks.add(rel);
 	}
@@ -15,6 +15,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import ee.ioc.cs.vsle.editor.RuntimeProperties;
+import ee.ioc.cs.vsle.equations.LinearEquation;
 import ee.ioc.cs.vsle.util.TypeUtil;
 import ee.ioc.cs.vsle.util.db;
 import ee.ioc.cs.vsle.vclass.Alias;
@@ -180,6 +181,8 @@ public class ProblemCreator {
         
         AnnotatedClass ac = classes.getType( parent.getType() );
         
+        Map<LinearEquation, EquationInstance> equations = new HashMap<LinearEquation, EquationInstance>();
+        
         for ( ClassRelation classRelation : ac.getClassRelations() ) {
 
             //check mutual declaration
@@ -231,6 +234,14 @@ public class ProblemCreator {
             if ( !isAliasRel ) {
                 rel = makeRel( new Rel( parent, classRelation.getSpecLine() ), classRelation, problem, parent, varSubstitutions );
                 
+                if ( rel != null && classRelation.getEquation() != null ) {
+                    EquationInstance equation = getEquationInstance( equations, classRelation.getEquation(), ac, problem, parent );
+                    if ( equation != null ) {
+                        equation.addRel( rel );
+                        rel.setEquation( equation );
+                    }
+                }
+                
                 if ( classRelation.getSubtasks().size() > 0 ) {
 
                     for ( SubtaskClassRelation subtask : classRelation.getSubtasks() ) {
@@ -286,6 +297,44 @@ public class ProblemCreator {
         }
     }
 
+    /**
+     * Returns the instance of the equation for the given object,
+     * vars of the equation are resolved when the instance is created.
+     * 
+     * @return the instance or null if some var cannot be resolved, 
+     * such equations are not solved jointly with other equations
+     */
+    private EquationInstance getEquationInstance( Map<LinearEquation, EquationInstance> equations, 
+            LinearEquation equation, AnnotatedClass ac, Problem problem, Var parent ) {
+        
+        if ( equations.containsKey( equation ) ) {
+            return equations.get( equation );
+        }
+        
+        EquationInstance instance = new EquationInstance( equation, parent );
+        
+        try {
+            for ( String name : equation.getVars() ) {
+                ClassField field = SpecParser.getVar( name, ac.getFields() );
+                if ( field == null ) {
+                    field = new ClassField( name );
+                }
+                instance.addVar( name, checkVarExistance( problem, parent, field, null, false ) );
+            }
+        } catch ( SpecParseException e ) {
+            if ( RuntimeProperties.isLogDebugEnabled() )
+                db.p( "Unable to resolve vars of equation " + equation + ": " + e.getMessage() );
+            instance = null;
+        }
+        
+        if ( instance != null ) {
+            problem.addEquation( instance );
+        }
+        equations.put( equation, instance );
+        
+        return instance;
+    }
+
     /**
      * Creates an instance of an independent subtask
      * 
@@ -446,7 +495,7 @@ public class ProblemCreator {
             String typeIn = inpVar.getType();
             String typeOut = outpVar.getType();
             
-            ClassList commonTypes = getCommonTypes( classes, typeIn, typeOut );
+            ClassList commonTypes = classes.getCommonTypes( typeIn, typeOut );
             
             if( commonTypes.isEmpty() ) {
                 throw new SpecParseException( "Incorrect equality, types " + typeIn + " and " + typeOut 
@@ -483,46 +532,6 @@ public class ProblemCreator {
         }
     }
     
-    /**
-     * Derives common types for given two types.
-     * As multiple inheritance of specifications is allowed, 
-     * more that one common type may be derived.
-     * 
-     * @param classes
-     * @param type1
-     * @param type2
-     * @return
-     */
-    private static ClassList getCommonTypes( ClassList classes, String type1, String type2 ) {
-        
-        ClassList types = new ClassList();
-        
-        if( type1.equals( type2 ) ) {
-            types.add( classes.getType( type1 ) );
-        }
-        else {
-            AnnotatedClass ac1 = classes.getType( type1 );
-            AnnotatedClass ac2 = classes.getType( type2 );
-            
-            if( ac2.getAllSuperClasses().contains( ac1 ) ) {
-                types.add( ac1 );
-            }
-            else if( ac1.getAllSuperClasses().contains( ac2 ) ) {
-                types.add( ac2 );
-            }
-            else {
-                ClassList allAC2superclasses = ac2.getAllSuperClasses();
-                for ( AnnotatedClass super1 : ac1.getAllSuperClasses() ) {
-                    if( allAC2superclasses.contains( super1 ) ) {
-                        types.add( super1 );
-                    }
-                }
-            }
-        }
-        
-        return types;
-    }
-    
     /**
      * Creates an alias
      * 
@@ -0,0 +1,229 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import static ee.ioc.cs.vsle.synthesize.CodeGenerator.*;
+
+import java.util.*;
+
+/**
+ * Dense integer numbering of vars and rels of a problem graph.
+ * Every input of a relation gets its own "pair" id, so that the unknown inputs
+ * of all relations can be kept in a single bitset.
+ * The index is immutable after construction and may be shared between
+ * copies of the planning context.
+ */
+class ProblemIndex {
+
+    private final Map<Var, Integer> varIds = new HashMap<Var, Integer>();
+    private final List<Var> vars = new ArrayList<Var>();
+    private final Map<Rel, Integer> relIds = new HashMap<Rel, Integer>();
+    private final Rel[] rels;
+
+    //rel id -> var ids of outputs
+    private final int[][] relOutputs;
+    //rel id -> var ids of outputs, including child vars of aliases
+    private final int[][] relUnfoldedOutputs;
+    //rel id -> first pair id, pairs of rel r are [relPairOffset[r], relPairOffset[r+1])
+    private final int[] relPairOffset;
+    //pair id -> var id
+    private final int[] pairVar;
+    //pair id -> true if the input is constant and is never unknown
+    private final boolean[] pairConstant;
+    //var id -> ids of rels that var is an input of, in the order of Var.getRels()
+    private final int[][] varRels;
+    //var id -> pair ids matching varRels, -1 if var is not an input of the rel
+    private final int[][] varPairs;
+
+    ProblemIndex( Problem problem ) {
+
+        Set<Rel> allRels = problem.getAllRels();
+        rels = allRels.toArray( new Rel[allRels.size()] );
+
+        for ( int i = 0; i < rels.length; i++ ) {
+            relIds.put( rels[i], i );
+        }
+
+        //number all vars the planner can ever meet
+        Set<Var> unfolded = new LinkedHashSet<Var>();
+        unfoldVarsToSet( problem.getAllVars(), unfolded );
+        for ( Rel rel : rels ) {
+            unfoldVarsToSet( rel.getInputs(), unfolded );
+            unfoldVarsToSet( rel.getOutputs(), unfolded );
+            for ( SubtaskRel subtask : rel.getSubtasks() ) {
+                unfoldVarsToSet( subtask.getInputs(), unfolded );
+                unfoldVarsToSet( subtask.getOutputs(), unfolded );
+            }
+        }
+        PlanningContext context = problem.getCurrentContext();
+        unfoldVarsToSet( context.getKnownVars(), unfolded );
+        unfoldVarsToSet( context.getFoundVars(), unfolded );
+        unfoldVarsToSet( context.getAllGoals(), unfolded );
+
+        for ( Var var : unfolded ) {
+            varIds.put( var, vars.size() );
+            vars.add( var );
+        }
+
+        relOutputs = new int[rels.length][];
+        relUnfoldedOutputs = new int[rels.length][];
+        relPairOffset = new int[rels.length + 1];
+
+        int pairCount = 0;
+        for ( int i = 0; i < rels.length; i++ ) {
+            relPairOffset[i] = pairCount;
+            pairCount += rels[i].getInputs().size();
+        }
+        relPairOffset[rels.length] = pairCount;
+
+        pairVar = new int[pairCount];
+        pairConstant = new boolean[pairCount];
+
+        for ( int i = 0; i < rels.length; i++ ) {
+            Rel rel = rels[i];
+            int pair = relPairOffset[i];
+            for ( Var input : rel.getInputs() ) {
+                pairVar[pair] = getVarId( input );
+                pairConstant[pair] = input.getField().isConstant();
+                pair++;
+            }
+            relOutputs[i] = toIds( rel.getOutputs() );
+            unfolded.clear();
+            unfoldVarsToSet( rel.getOutputs(), unfolded );
+            relUnfoldedOutputs[i] = toIds( unfolded );
+        }
+
+        varRels = new int[vars.size()][];
+        varPairs = new int[vars.size()][];
+
+        int[] relBuf = new int[16];
+        int[] pairBuf = new int[16];
+        for ( int v = 0; v < vars.size(); v++ ) {
+            int count = 0;
+            for ( Rel rel : vars.get( v ).getRels() ) {
+                Integer relId = relIds.get( rel );
+                if ( relId == null ) {
+                    continue;
+                }
+                if ( count == relBuf.length ) {
+                    relBuf = Arrays.copyOf( relBuf, count * 2 );
+                    pairBuf = Arrays.copyOf( pairBuf, count * 2 );
+                }
+                relBuf[count] = relId;
+                pairBuf[count] = findPair( relId, v );
+                count++;
+            }
+            varRels[v] = Arrays.copyOf( relBuf, count );
+            varPairs[v] = Arrays.copyOf( pairBuf, count );
+        }
+    }
+
+    private int[] toIds( Collection<Var> from ) {
+        int[] ids = new int[from.size()];
+        int i = 0;
+        for ( Var var : from ) {
+            ids[i++] = getVarId( var );
+        }
+        return ids;
+    }
+
+    private int findPair( int relId, int varId ) {
+        for ( int pair = relPairOffset[relId]; pair < relPairOffset[relId + 1]; pair++ ) {
+            if ( pairVar[pair] == varId ) {
+                return pair;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return id of the var or -1 if the var does not belong to the problem
+     */
+    int getVarId( Var var ) {
+        Integer id = varIds.get( var );
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return id of the rel or -1 if the rel is not a part of the problem graph
+     */
+    int getRelId( Rel rel ) {
+        Integer id = relIds.get( rel );
+        return id == null ? -1 : id;
+    }
+
+    Var getVar( int id ) {
+        return vars.get( id );
+    }
+
+    Rel getRel( int id ) {
+        return rels[id];
+    }
+
+    int getVarCount() {
+        return vars.size();
+    }
+
+    int getRelCount() {
+        return rels.length;
+    }
+
+    int getPairCount() {
+        return pairVar.length;
+    }
+
+    int getFirstPair( int relId ) {
+        return relPairOffset[relId];
+    }
+
+    int getPairEnd( int relId ) {
+        return relPairOffset[relId + 1];
+    }
+
+    int getPairVar( int pair ) {
+        return pairVar[pair];
+    }
+
+    boolean isPairConstant( int pair ) {
+        return pairConstant[pair];
+    }
+
+    /**
+     * @return pair id of the input var of the rel or -1
+     */
+    int getPair( int relId, Var var ) {
+        int varId = getVarId( var );
+        return varId < 0 ? -1 : findPair( relId, varId );
+    }
+
+    int[] getRelOutputs( int relId ) {
+        return relOutputs[relId];
+    }
+
+    int[] getRelUnfoldedOutputs( int relId ) {
+        return relUnfoldedOutputs[relId];
+    }
+
+    int[] getVarRels( int varId ) {
+        return varRels[varId];
+    }
+
+    int[] getVarPairs( int varId ) {
+        return varPairs[varId];
+    }
+
+    /**
+     * @return a bitset with ids of given vars, vars not in this index are ignored
+     */
+    BitSet toBitSet( Collection<Var> from ) {
+        BitSet set = new BitSet( vars.size() );
+        for ( Var var : from ) {
+            int id = getVarId( var );
+            if ( id >= 0 ) {
+                set.set( id );
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,1017 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import static ee.ioc.cs.vsle.util.TypeUtil.TYPE_THIS;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import ee.ioc.cs.vsle.api.*;
+import ee.ioc.cs.vsle.ccl.*;
+import ee.ioc.cs.vsle.editor.*;
+import ee.ioc.cs.vsle.equations.*;
+import ee.ioc.cs.vsle.equations.ExpressionDag.*;
+import ee.ioc.cs.vsle.table.*;
+import ee.ioc.cs.vsle.util.*;
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Runs an evaluation algorithm without generating and compiling a Java program.
+ *
+ * Equations are evaluated from their expression trees following the arithmetic
+ * of the generated code, methods of objects are invoked through method handles
+ * that are looked up once per relation, subtasks are interpreted as nested algorithms.
+ * Classes of specifications still have to be compiled, as objects of the program
+ * are instances of these classes, see {@link InterpreterState}.
+ *
+ * An interpreter either runs a program (compute) or an independent model (run).
+ * Algorithms that cannot be interpreted, e.g. with methods of the scheme class itself,
+ * are rejected by the factory methods and have to be compiled.
+ */
+public class ProgramInterpreter implements IComputable, Subtask {
+
+    private final Body body;
+    //the model and its algorithm, null for programs
+    private final SubtaskRel model;
+    private final EvaluationAlgorithm modelAlgorithm;
+    //declarations of top level variables
+    private final Collection<ClassField> fields;
+    private final ConcurrentMap<String, Field[]> fieldPaths = new ConcurrentHashMap<String, Field[]>();
+    private final ExpressionDag dag = new ExpressionDag();
+    private final CodeGenerator.RelCodeProducer producer = new CodeGenerator.RelCodeProducer( null );
+    //independent subtasks are prepared once
+    private final Map<SubtaskRel, SubtaskBody> independentSubtasks = new HashMap<SubtaskRel, SubtaskBody>();
+    private volatile ClassLoader classLoader;
+    private InterpreterState state;
+
+    private ProgramInterpreter( Collection<ClassField> fields, EvaluationAlgorithm algorithm, Collection<Var> inputs,
+            Collection<Var> outputs, SubtaskRel model ) throws UnsupportedRelException {
+
+        this.fields = fields;
+        this.model = model;
+        this.modelAlgorithm = model != null ? algorithm : null;
+        body = new Body( algorithm, inputs, outputs, false, null );
+    }
+
+    /**
+     * @param algorithm
+     * @param classList
+     * @param assumptions inputs of the program
+     * @return the interpreter of the program or null if the algorithm cannot be interpreted
+     */
+    public static ProgramInterpreter create( EvaluationAlgorithm algorithm, ClassList classList, Collection<Var> assumptions ) {
+
+        try {
+            return new ProgramInterpreter( classList.getType( TYPE_THIS ).getClassFields(), algorithm, assumptions,
+                    Collections.<Var>emptyList(), null );
+        } catch ( UnsupportedRelException e ) {
+            if ( RuntimeProperties.isLogInfoEnabled() )
+                db.p( "The program cannot be interpreted: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * @param subtask independent subtask of the model
+     * @param algorithm
+     * @return the interpreter of the model or null if the algorithm cannot be interpreted
+     */
+    static ProgramInterpreter createIndependentModel( SubtaskRel subtask, EvaluationAlgorithm algorithm ) {
+
+        try {
+            return new ProgramInterpreter( Collections.singleton( subtask.getContextCF() ), algorithm,
+                    subtask.getInputs(), subtask.getOutputs(), subtask );
+        } catch ( UnsupportedRelException e ) {
+            if ( RuntimeProperties.isLogInfoEnabled() )
+                db.p( "The model cannot be interpreted: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * @param classLoader loader of compiled classes of specifications
+     * and ProgramContext of the program, has to be set before running
+     */
+    public void setClassLoader( ClassLoader classLoader ) {
+        this.classLoader = classLoader;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * @return the subtask of an independent model, null for programs
+     */
+    SubtaskRel getModel() {
+        return model;
+    }
+
+    EvaluationAlgorithm getModelAlgorithm() {
+        return modelAlgorithm;
+    }
+
+    /**
+     * Runs the program, values of variables are kept until the next run
+     */
+    @Override
+    public void compute( Object... args ) {
+        body.run( getState(), args );
+    }
+
+    /**
+     * Runs the independent model
+     */
+    @Override
+    public Object[] run( Object[] in ) {
+        return body.run( getState(), in );
+    }
+
+    /**
+     * @param fullName
+     * @return the value of a variable or null if the program has not been run
+     */
+    public Object getValue( String fullName ) throws IllegalAccessException, NoSuchFieldException {
+
+        InterpreterState current;
+        synchronized ( this ) {
+            current = state;
+        }
+        return current != null ? current.get( fullName ) : null;
+    }
+
+    private synchronized InterpreterState getState() {
+
+        if ( state == null ) {
+            InterpreterState newState = newState();
+            try {
+                for ( ClassField field : fields ) {
+                    newState.declare( field );
+                }
+            } catch ( Exception e ) {
+                throw new RunningProgramException( e );
+            }
+            state = newState;
+        }
+        return state;
+    }
+
+    private InterpreterState newState() {
+
+        if ( classLoader == null ) {
+            throw new IllegalStateException( "Class loader of the program is not set" );
+        }
+        return new InterpreterState( classLoader, fieldPaths );
+    }
+
+    /**
+     * Steps of an algorithm with its inputs and outputs
+     */
+    private class Body {
+
+        private final List<Step> steps = new ArrayList<Step>();
+        private final Collection<Var> inputs;
+        private final Collection<Var> outputs;
+        private final boolean inSubtask;
+
+        /**
+         * @param usedVars vars of the enclosing dependent subtask, null at the top level
+         */
+        Body( EvaluationAlgorithm algorithm, Collection<Var> inputs, Collection<Var> outputs, boolean inSubtask,
+                Set<Var> usedVars ) throws UnsupportedRelException {
+
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.inSubtask = inSubtask;
+
+            for ( PlanningResult res : algorithm ) {
+
+                Rel rel = res.getRel();
+                Step step = createStep( res, usedVars );
+
+                if ( step != null ) {
+                    steps.add( step );
+                }
+
+                if ( usedVars != null ) {
+                    CodeGenerator.unfoldVarsToSet( rel.getInputs(), usedVars );
+                    CodeGenerator.unfoldVarsToSet( rel.getOutputs(), usedVars );
+                }
+            }
+        }
+
+        Object[] run( InterpreterState state, Object[] in ) {
+
+            int i = 0;
+            try {
+                for ( Var var : inputs ) {
+                    state.set( var, in[i++] );
+                }
+            } catch ( Exception e ) {
+                throw wrap( e, inSubtask );
+            }
+
+            for ( Step step : steps ) {
+                try {
+                    step.execute( state );
+                } catch ( Throwable e ) {
+                    if ( step.rel.getExceptions().isEmpty() && e instanceof Error ) {
+                        throw (Error) e;
+                    } else if ( step.rel.getExceptions().isEmpty() && e instanceof RuntimeException ) {
+                        throw (RuntimeException) e;
+                    }
+                    throw wrap( e, inSubtask );
+                }
+            }
+
+            Object[] out = new Object[outputs.size()];
+            i = 0;
+            try {
+                for ( Var var : outputs ) {
+                    out[i++] = state.get( var );
+                }
+            } catch ( Exception e ) {
+                throw wrap( e, inSubtask );
+            }
+
+            return out;
+        }
+    }
+
+    /**
+     * Wraps an exception like the exception handler of the generated code
+     */
+    private static RuntimeException wrap( Throwable e, boolean inSubtask ) {
+        return inSubtask ? new SubtaskExecutionException( e ) : new RunningProgramException( e );
+    }
+
+    private Step createStep( PlanningResult res, Set<Var> usedVars ) throws UnsupportedRelException {
+
+        Rel rel = res.getRel();
+
+        switch ( rel.getType() ) {
+        case TYPE_ALIAS:
+            return null;
+        case TYPE_EQUATION:
+            if ( isAssignment( rel ) ) {
+                return new AssignmentStep( rel );
+            }
+            return new EquationStep( rel );
+        case TYPE_LINEAR_SYSTEM:
+            return new LinearSystemStep( (LinearSystemRel) rel );
+        case TYPE_JAVAMETHOD:
+            if ( Table.TABLE_KEYWORD.equals( rel.getMethod() )
+                    || Table.TABLE_WITH_INPUT_MAPPING_KEYWORD.equals( rel.getMethod() ) ) {
+                return new TableStep( rel );
+            }
+            return new MethodStep( rel, Collections.<SubtaskBody>emptyList() );
+        case TYPE_METHOD_WITH_SUBTASK:
+            return new MethodStep( rel, createSubtasks( res, usedVars ) );
+        case TYPE_SUBTASK:
+            throw new UnsupportedRelException( rel, "subtask outside of a relation" );
+        default:
+            return new AssignmentStep( rel );
+        }
+    }
+
+    /**
+     * @return true if the equation is emitted as an assignment between a var and an alias
+     * or an array or as a copy
+     */
+    private static boolean isAssignment( Rel rel ) {
+
+        if ( rel.getInputs().size() != 1 || rel.getOutputs().size() != 1 ) {
+            return false;
+        }
+
+        ClassField ip = rel.getFirstInput().getField();
+        ClassField op = rel.getFirstOutput().getField();
+
+        return ( ip.isArray() && op.isAlias() ) || ( op.isArray() && ip.isAlias() )
+                || ( op.isVoid() && ip.isVoid() ) || rel.getMethod() == null;
+    }
+
+    private List<SubtaskBody> createSubtasks( PlanningResult res, Set<Var> usedVars ) throws UnsupportedRelException {
+
+        Rel rel = res.getRel();
+        List<SubtaskBody> subtasks = new ArrayList<SubtaskBody>();
+
+        //vars copied into dependent subtasks, shared with the enclosing subtask like in the generated code
+        Set<Var> relUsedVars = usedVars;
+        if ( relUsedVars == null ) {
+            relUsedVars = new HashSet<Var>();
+            CodeGenerator.unfoldVarsToSet( rel.getInputs(), relUsedVars );
+            CodeGenerator.unfoldVarsToSet( rel.getOutputs(), relUsedVars );
+        }
+
+        for ( SubtaskRel subtask : rel.getSubtasks() ) {
+
+            SubtaskBody body;
+
+            if ( subtask.isIndependent() ) {
+                if ( ( body = independentSubtasks.get( subtask ) ) == null ) {
+                    body = new SubtaskBody( subtask, new Body( res.getSubtaskAlgorithm( subtask ), subtask.getInputs(),
+                            subtask.getOutputs(), true, new HashSet<Var>() ), null );
+                    independentSubtasks.put( subtask, body );
+                }
+            } else {
+                CodeGenerator.unfoldVarsToSet( subtask.getInputs(), relUsedVars );
+                CodeGenerator.unfoldVarsToSet( subtask.getOutputs(), relUsedVars );
+                body = new SubtaskBody( subtask, new Body( res.getSubtaskAlgorithm( subtask ), subtask.getInputs(),
+                        subtask.getOutputs(), true, relUsedVars ), relUsedVars );
+            }
+
+            subtasks.add( body );
+        }
+
+        return subtasks;
+    }
+
+    /**
+     * Algorithm of a subtask with vars that are copied into the state of the subtask
+     */
+    private class SubtaskBody {
+
+        private final SubtaskRel subtask;
+        private final Body body;
+        private final Collection<Var> usedVars;
+
+        SubtaskBody( SubtaskRel subtask, Body body, Collection<Var> usedVars ) {
+            this.subtask = subtask;
+            this.body = body;
+            this.usedVars = usedVars;
+        }
+
+        /**
+         * Creates an instance of the subtask like the generated code does
+         * each time before calling the method
+         */
+        Subtask newInstance( InterpreterState parent ) throws Exception {
+
+            final InterpreterState subtaskState;
+
+            if ( subtask.isIndependent() ) {
+                subtaskState = newState();
+                subtaskState.declare( subtask.getContextCF() );
+            } else {
+                subtaskState = parent.copy( usedVars );
+            }
+
+            return new Subtask() {
+                @Override
+                public Object[] run( Object[] in ) {
+                    return body.run( subtaskState, in );
+                }
+            };
+        }
+    }
+
+    /**
+     * Executable relation
+     */
+    private abstract static class Step {
+
+        final Rel rel;
+
+        Step( Rel rel ) {
+            this.rel = rel;
+        }
+
+        abstract void execute( InterpreterState state ) throws Throwable;
+    }
+
+    private static class AssignmentStep extends Step {
+
+        AssignmentStep( Rel rel ) {
+            super( rel );
+        }
+
+        @Override
+        void execute( InterpreterState state ) throws Exception {
+
+            Var ip = rel.getFirstInput();
+            Var op = rel.getFirstOutput();
+
+            if ( op.getField().isAlias() && ip.getField().isAlias() ) {
+                for ( int i = 0; i < ip.getChildVars().size(); i++ ) {
+                    state.set( op.getChildVars().get( i ), state.get( ip.getChildVars().get( i ) ) );
+                }
+            } else if ( op.getField().isArray() && ip.getField().isAlias() ) {
+                state.set( op, toArray( state.get( ip ), state.getClass( op.getType() ) ) );
+            } else {
+                state.set( op, state.get( ip ) );
+            }
+        }
+
+        /**
+         * @return the array itself if it is of the given type, a copy of the given type otherwise
+         */
+        private static Object toArray( Object array, Class<?> type ) {
+
+            if ( array == null || type.isInstance( array ) ) {
+                return array;
+            }
+
+            int length = Array.getLength( array );
+            Object result = Array.newInstance( type.getComponentType(), length );
+
+            for ( int i = 0; i < length; i++ ) {
+                Array.set( result, i, Array.get( array, i ) );
+            }
+            return result;
+        }
+    }
+
+    private class EquationStep extends Step {
+
+        private final Var output;
+        private final Expression expression;
+
+        EquationStep( Rel rel ) throws UnsupportedRelException {
+            super( rel );
+
+            if ( rel.getOutputs().size() != 1 ) {
+                throw new UnsupportedRelException( rel, "equation with several outputs" );
+            }
+
+            output = rel.getFirstOutput();
+
+            Set<String> names = new HashSet<String>();
+
+            for ( Var var : rel.getInputs() ) {
+                names.add( var.getFullName() );
+            }
+            names.addAll( rel.getSubstitutions().values() );
+
+            Set<Var> vars = new HashSet<Var>( rel.getInputs() );
+            vars.add( output );
+
+            for ( Var var : vars ) {
+                TypeToken token = TypeToken.getTypeToken( var.getType() );
+                if ( token.getPrimeClass() == null || token == TypeToken.TOKEN_BOOLEAN
+                        || var.getField().isAlias() || var.getField().isAny() ) {
+                    throw new UnsupportedRelException( rel, "equation of type " + var.getType() );
+                }
+            }
+
+            String equation = producer.setRel( rel ).resolveEquation();
+            expression = parse( equation.substring( equation.indexOf( '=' ) + 1 ), names, rel );
+        }
+
+        @Override
+        void execute( InterpreterState state ) throws Exception {
+            state.set( output, expression.evaluate( state ) );
+        }
+    }
+
+    private class LinearSystemStep extends Step {
+
+        private final int size;
+        //for each equation: columns of unknowns and coefficients
+        private final List<int[]> columns = new ArrayList<int[]>();
+        private final List<Expression[]> coefficients = new ArrayList<Expression[]>();
+        private final List<Expression> constants = new ArrayList<Expression>();
+
+        LinearSystemStep( LinearSystemRel system ) throws UnsupportedRelException {
+            super( system );
+
+            size = system.getUnknowns().size();
+
+            Set<String> names = new HashSet<String>();
+            for ( Var var : system.getInputs() ) {
+                names.add( var.getFullName() );
+            }
+
+            producer.setRel( system );
+
+            for ( int i = 0; i < system.getEquations().size(); i++ ) {
+
+                EquationInstance equation = system.getEquations().get( i );
+                LinearEquation.LinearForm form = system.getForms().get( i );
+
+                int[] cols = new int[form.getCoefficients().size()];
+                Expression[] coefs = new Expression[cols.length];
+                int k = 0;
+
+                for ( Map.Entry<String, String> coef : form.getCoefficients().entrySet() ) {
+                    cols[k] = system.getUnknowns().indexOf( equation.getVar( coef.getKey() ) );
+                    coefs[k++] = parse( producer.resolveEquationVars( coef.getValue(), equation ), names, system );
+                }
+
+                columns.add( cols );
+                coefficients.add( coefs );
+                constants.add( form.getConstant() == null
+                        ? null
+                        : parse( producer.resolveEquationVars( form.getConstant(), equation ), names, system ) );
+            }
+        }
+
+        @Override
+        void execute( InterpreterState state ) throws Exception {
+
+            LinearSystem system = new LinearSystem( size );
+
+            for ( int i = 0; i < columns.size(); i++ ) {
+
+                int[] cols = columns.get( i );
+                Expression[] coefs = coefficients.get( i );
+
+                for ( int k = 0; k < cols.length; k++ ) {
+                    system.addCoefficient( i, cols[k], coefs[k].evaluate( state ).doubleValue() );
+                }
+                if ( constants.get( i ) != null ) {
+                    system.addConstant( i, constants.get( i ).evaluate( state ).doubleValue() );
+                }
+            }
+
+            double[] x = system.solve();
+            List<Var> unknowns = ( (LinearSystemRel) rel ).getUnknowns();
+
+            for ( int j = 0; j < x.length; j++ ) {
+                state.set( unknowns.get( j ), x[j] );
+            }
+        }
+    }
+
+    /**
+     * Method of an object, possibly with subtasks
+     */
+    private class MethodStep extends Step {
+
+        private final List<SubtaskBody> subtasks;
+        private final List<Var> inputs = new ArrayList<Var>();
+        private final Var output;
+        private volatile ResolvedMethod method;
+
+        MethodStep( Rel rel, List<SubtaskBody> subtasks ) throws UnsupportedRelException {
+            super( rel );
+
+            if ( rel.getParent().getFullNameForConcat().length() == 0 ) {
+                throw new UnsupportedRelException( rel, "method of the scheme class" );
+            }
+
+            this.subtasks = subtasks;
+
+            for ( Var var : rel.getInputs() ) {
+                if ( !TypeUtil.TYPE_VOID.equals( var.getType() ) ) {
+                    inputs.add( var );
+                }
+            }
+
+            output = rel.getOutputs().isEmpty() || TypeUtil.TYPE_VOID.equals( rel.getFirstOutput().getType() )
+                    ? null
+                    : rel.getFirstOutput();
+        }
+
+        @Override
+        void execute( InterpreterState state ) throws Throwable {
+
+            Object target = state.get( rel.getParent().getFullName() );
+            Object[] args = new Object[subtasks.size() + inputs.size()];
+            int i = 0;
+
+            for ( SubtaskBody subtask : subtasks ) {
+                args[i++] = subtask.newInstance( state );
+            }
+            for ( Var var : inputs ) {
+                args[i++] = state.get( var );
+            }
+
+            ResolvedMethod m = method;
+            if ( m == null || m.targetClass != target.getClass() ) {
+                method = m = resolve( target.getClass() );
+            }
+
+            for ( i = 0; i < args.length; i++ ) {
+                if ( m.parameterTypes[i].isPrimitive() ) {
+                    args[i] = InterpreterState.coerce( args[i], m.parameterTypes[i].getName() );
+                }
+            }
+
+            Object result = (Object) m.handle.invokeExact( target, args );
+
+            if ( output != null ) {
+                state.set( output, result );
+            }
+        }
+
+        /**
+         * Finds the method by its name, number and types of parameters
+         */
+        private ResolvedMethod resolve( Class<?> clas ) throws NoSuchMethodException, IllegalAccessException {
+
+            List<String> types = new ArrayList<String>();
+            for ( int i = 0; i < subtasks.size(); i++ ) {
+                types.add( Subtask.class.getName() );
+            }
+            for ( Var var : inputs ) {
+                types.add( var.getField().isAny() ? null : var.getType() );
+            }
+
+            Method found = null;
+            int candidates = 0;
+
+            for ( Class<?> c = clas; c != null && found == null; c = c.getSuperclass() ) {
+                for ( Method m : c.getDeclaredMethods() ) {
+                    if ( m.getName().equals( rel.getMethod() ) && m.getParameterTypes().length == types.size() ) {
+                        candidates++;
+                        if ( matches( m.getParameterTypes(), types ) ) {
+                            found = m;
+                            break;
+                        } else if ( candidates == 1 ) {
+                            found = m;
+                        }
+                    }
+                }
+                if ( candidates > 1 && found != null && !matches( found.getParameterTypes(), types ) ) {
+                    found = null;
+                }
+            }
+
+            if ( found == null ) {
+                throw new NoSuchMethodException( clas.getName() + "." + rel.getMethod() + types );
+            }
+
+            found.setAccessible( true );
+            MethodHandle handle = MethodHandles.lookup().unreflect( found );
+
+            if ( Modifier.isStatic( found.getModifiers() ) ) {
+                handle = MethodHandles.dropArguments( handle, 0, Object.class );
+            } else {
+                handle = handle.asType( handle.type().changeParameterType( 0, Object.class ) );
+            }
+
+            handle = handle.asType( handle.type().changeReturnType( Object.class ) )
+                    .asSpreader( Object[].class, types.size() );
+
+            return new ResolvedMethod( clas, handle, found.getParameterTypes() );
+        }
+
+        private boolean matches( Class<?>[] parameterTypes, List<String> types ) {
+
+            for ( int i = 0; i < parameterTypes.length; i++ ) {
+                String type = types.get( i );
+                Class<?> p = parameterTypes[i];
+                if ( type != null && !type.equals( p.getName() ) && !type.equals( p.getSimpleName() )
+                        && !type.equals( p.getCanonicalName() ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class ResolvedMethod {
+
+        private final Class<?> targetClass;
+        //(Object target, Object[] args)Object
+        private final MethodHandle handle;
+        private final Class<?>[] parameterTypes;
+
+        ResolvedMethod( Class<?> targetClass, MethodHandle handle, Class<?>[] parameterTypes ) {
+            this.targetClass = targetClass;
+            this.handle = handle;
+            this.parameterTypes = parameterTypes;
+        }
+    }
+
+    /**
+     * Query of a table through ProgramContext of the program
+     */
+    private class TableStep extends Step {
+
+        private final boolean inputMapping;
+        private volatile MethodHandle query;
+        private volatile MethodHandle mappingQuery;
+
+        TableStep( Rel rel ) throws UnsupportedRelException {
+            super( rel );
+
+            inputMapping = Table.TABLE_WITH_INPUT_MAPPING_KEYWORD.equals( rel.getMethod() );
+
+            for ( Var var : rel.getInputs() ) {
+                if ( var.getField().isAlias() ) {
+                    throw new UnsupportedRelException( rel, "alias input of a table" );
+                }
+            }
+        }
+
+        @Override
+        void execute( InterpreterState state ) throws Throwable {
+
+            List<Var> vars = new ArrayList<Var>( rel.getInputs() );
+            Object[] args = new Object[vars.size() - 1];
+
+            for ( int i = 1; i < vars.size(); i++ ) {
+                args[i - 1] = state.get( vars.get( i ) );
+            }
+
+            String tableId = (String) state.get( vars.get( 0 ) );
+            Object result;
+
+            //like the generated code, the mapping is passed only if there are inputs
+            if ( inputMapping && args.length > 0 ) {
+                String[] inputIds = new String[vars.size() - 1];
+                for ( int i = 1; i < vars.size(); i++ ) {
+                    inputIds[i - 1] = vars.get( i ).getName();
+                }
+                result = (Object) getQuery( true ).invokeExact( inputIds, tableId, args );
+            } else {
+                result = (Object) getQuery( false ).invokeExact( tableId, args );
+            }
+
+            if ( !rel.getOutputs().isEmpty() ) {
+                state.set( rel.getFirstOutput(), result );
+            }
+        }
+
+        private MethodHandle getQuery( boolean mapping ) throws ReflectiveOperationException {
+
+            MethodHandle q = mapping ? mappingQuery : query;
+
+            if ( q == null ) {
+                Class<?> pc = classLoader.loadClass( CCL.PROGRAM_CONTEXT );
+                MethodType type = mapping
+                        ? MethodType.methodType( Object.class, String[].class, String.class, Object[].class )
+                        : MethodType.methodType( Object.class, String.class, Object[].class );
+                //the handle takes the arguments as an array
+                q = MethodHandles.publicLookup().findStatic( pc, "queryTable", type ).asFixedArity();
+                if ( mapping ) {
+                    mappingQuery = q;
+                } else {
+                    query = q;
+                }
+            }
+            return q;
+        }
+    }
+
+    /**
+     * Parses an expression of an equation
+     *
+     * @param expression with full names of vars
+     * @param names vars the expression may refer to
+     */
+    private Expression parse( String expression, Set<String> names, Rel rel ) throws UnsupportedRelException {
+
+        Node root = dag.add( expression );
+
+        if ( root == null ) {
+            throw new UnsupportedRelException( rel, "unable to parse " + expression );
+        }
+
+        return compile( root, names, rel );
+    }
+
+    private Expression compile( Node node, Set<String> names, Rel rel ) throws UnsupportedRelException {
+
+        Expression[] args = new Expression[node.getArgs().size()];
+        for ( int i = 0; i < args.length; i++ ) {
+            args[i] = compile( node.getArgs().get( i ), names, rel );
+        }
+
+        switch ( node.getKind() ) {
+        case Node.VAR:
+            if ( "Math.PI".equals( node.getText() ) ) {
+                return new Constant( Math.PI );
+            } else if ( "Math.E".equals( node.getText() ) ) {
+                return new Constant( Math.E );
+            } else if ( !names.contains( node.getText() ) ) {
+                throw new UnsupportedRelException( rel, "unknown variable " + node.getText() );
+            }
+            return new Variable( node.getText() );
+        case Node.CONST:
+            try {
+                return new Constant( parseNumber( node.getText() ) );
+            } catch ( NumberFormatException e ) {
+                throw new UnsupportedRelException( rel, "number " + node.getText() );
+            }
+        case Node.CAST:
+            if ( TypeUtil.TYPE_CHAR.equals( node.getText() ) ) {
+                throw new UnsupportedRelException( rel, "cast to char" );
+            }
+            return new Cast( node.getText(), args[0] );
+        case Node.CALL:
+            return new Call( getFunction( node.getText(), args.length, rel ), args );
+        case Node.NEG:
+            return new Negation( args[0] );
+        default:
+            return new Operation( node.getKind(), args[0], args[1] );
+        }
+    }
+
+    /**
+     * @return a static method of Math taking doubles as an (Object[])Object handle
+     */
+    private static MethodHandle getFunction( String name, int arity, Rel rel ) throws UnsupportedRelException {
+
+        if ( !name.startsWith( "Math." ) ) {
+            throw new UnsupportedRelException( rel, "function " + name );
+        }
+
+        Class<?>[] parameters = new Class<?>[arity];
+        Arrays.fill( parameters, double.class );
+
+        try {
+            Method method = Math.class.getMethod( name.substring( 5 ), parameters );
+            MethodHandle handle = MethodHandles.publicLookup().unreflect( method );
+            return handle.asType( handle.type().changeReturnType( Object.class ) ).asSpreader( Object[].class, arity );
+        } catch ( ReflectiveOperationException e ) {
+            throw new UnsupportedRelException( rel, "function " + name );
+        }
+    }
+
+    /**
+     * @param text Java literal
+     * @return the number of the type of the literal
+     */
+    static Number parseNumber( String text ) {
+
+        char last = Character.toLowerCase( text.charAt( text.length() - 1 ) );
+        boolean hex = text.startsWith( "0x" ) || text.startsWith( "0X" );
+
+        if ( last == 'l' ) {
+            return Long.decode( text.substring( 0, text.length() - 1 ) );
+        } else if ( !hex && ( last == 'f' ) ) {
+            return Float.parseFloat( text );
+        } else if ( !hex && ( last == 'd' || text.indexOf( '.' ) >= 0 || text.indexOf( 'e' ) >= 0
+                || text.indexOf( 'E' ) >= 0 ) ) {
+            return Double.parseDouble( text );
+        }
+        return Integer.decode( text );
+    }
+
+    /**
+     * Compiled expression of an equation, numbers are of the types
+     * the generated code would compute with
+     */
+    private abstract static class Expression {
+
+        abstract Number evaluate( InterpreterState state ) throws Exception;
+    }
+
+    private static class Constant extends Expression {
+
+        private final Number value;
+
+        Constant( Number value ) {
+            this.value = value;
+        }
+
+        @Override
+        Number evaluate( InterpreterState state ) {
+            return value;
+        }
+    }
+
+    private static class Variable extends Expression {
+
+        private final String name;
+
+        Variable( String name ) {
+            this.name = name;
+        }
+
+        @Override
+        Number evaluate( InterpreterState state ) throws Exception {
+            return (Number) state.get( name );
+        }
+    }
+
+    private static class Cast extends Expression {
+
+        private final String type;
+        private final Expression arg;
+
+        Cast( String type, Expression arg ) {
+            this.type = type;
+            this.arg = arg;
+        }
+
+        @Override
+        Number evaluate( InterpreterState state ) throws Exception {
+            return (Number) InterpreterState.coerce( arg.evaluate( state ), type );
+        }
+    }
+
+    private static class Call extends Expression {
+
+        private final MethodHandle function;
+        private final Expression[] args;
+
+        Call( MethodHandle function, Expression[] args ) {
+            this.function = function;
+            this.args = args;
+        }
+
+        @Override
+        Number evaluate( InterpreterState state ) throws Exception {
+
+            Object[] values = new Object[args.length];
+            for ( int i = 0; i < args.length; i++ ) {
+                values[i] = args[i].evaluate( state ).doubleValue();
+            }
+            try {
+                return (Number) (Object) function.invokeExact( values );
+            } catch ( Exception e ) {
+                throw e;
+            } catch ( Throwable e ) {
+                throw new RunningProgramException( e );
+            }
+        }
+    }
+
+    private static class Negation extends Expression {
+
+        private final Expression arg;
+
+        Negation( Expression arg ) {
+            this.arg = arg;
+        }
+
+        @Override
+        Number evaluate( InterpreterState state ) throws Exception {
+
+            Number a = arg.evaluate( state );
+
+            if ( a instanceof Double ) {
+                return -a.doubleValue();
+            } else if ( a instanceof Float ) {
+                return -a.floatValue();
+            } else if ( a instanceof Long ) {
+                return -a.longValue();
+            }
+            return -a.intValue();
+        }
+    }
+
+    /**
+     * Binary operation with binary numeric promotion of Java
+     */
+    private static class Operation extends Expression {
+
+        private final char op;
+        private final Expression left;
+        private final Expression right;
+
+        Operation( char op, Expression left, Expression right ) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Number evaluate( InterpreterState state ) throws Exception {
+
+            Number a = left.evaluate( state );
+            Number b = right.evaluate( state );
+
+            if ( a instanceof Double || b instanceof Double ) {
+                double x = a.doubleValue(), y = b.doubleValue();
+                switch ( op ) {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                default: return x / y;
+                }
+            } else if ( a instanceof Float || b instanceof Float ) {
+                float x = a.floatValue(), y = b.floatValue();
+                switch ( op ) {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                default: return x / y;
+                }
+            } else if ( a instanceof Long || b instanceof Long ) {
+                long x = a.longValue(), y = b.longValue();
+                switch ( op ) {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                default: return x / y;
+                }
+            }
+
+            int x = a.intValue(), y = b.intValue();
+            switch ( op ) {
+            case '+': return x + y;
+            case '-': return x - y;
+            case '*': return x * y;
+            default: return x / y;
+            }
+        }
+    }
+
+    /**
+     * Thrown when a relation cannot be interpreted
+     */
+    private static class UnsupportedRelException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedRelException( Rel rel, String reason ) {
+            super( reason + " in " + rel );
+        }
+    }
+}
@@ -28,6 +28,8 @@ class Rel {
     //EquationSolver produces a method string that is directly used by CodeEmitter. 
     //Variable name a.1 has to be replaced by x in the method string to make it y=x;
     private Map<String, String> substitutions = null;
+    //the equation of the object the relation is derived from
+    private EquationInstance equation;
     /* ------------------------------------------------------------------- */
     
     Rel( Var parent, String declaration ) {
@@ -143,6 +145,14 @@ class Rel {
             getSubstitutions().putAll( substs );
     }
     
+    EquationInstance getEquation() {
+        return equation;
+    }
+
+    void setEquation( EquationInstance equation ) {
+        this.equation = equation;
+    }
+
     Map<String, String> getSubstitutions() {
         
         if(substitutions==null)
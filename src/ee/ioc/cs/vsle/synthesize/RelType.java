@@ -1,5 +1,7 @@
 package ee.ioc.cs.vsle.synthesize;
 
+import java.util.concurrent.atomic.*;
+
 public enum RelType {
 
             TYPE_DECLARATION,
@@ -8,11 +10,13 @@ public enum RelType {
             TYPE_ALIAS,
             TYPE_SUBTASK,
             TYPE_METHOD_WITH_SUBTASK,
-            TYPE_UNIMPLEMENTED;
+            TYPE_UNIMPLEMENTED,
+            TYPE_LINEAR_SYSTEM;
 
-    private static int auxVarCounter = 0;
-    private static int relCounter = 0;
-    private static int varCounter = 0;
+    //rels and vars are created by parallel planning of subtasks as well
+    private static final AtomicInteger auxVarCounter = new AtomicInteger();
+    private static final AtomicInteger relCounter = new AtomicInteger();
+    private static final AtomicInteger varCounter = new AtomicInteger();
 
     final static String TAG_SUBTASK = "<<subtask>>";
 
@@ -20,18 +24,18 @@ public enum RelType {
     public final static int VAR_HASH = "var".hashCode();
 
     public static int tmpVarNr() {
-        return auxVarCounter;
+        return auxVarCounter.get();
     }
     
     public static int nextTmpVarNr() {
-        return auxVarCounter++;
+        return auxVarCounter.getAndIncrement();
     }
     
     public static int nextRelNr() {
-        return relCounter++;
+        return relCounter.getAndIncrement();
     }
     
     public static int nextVarNr() {
-        return varCounter++;
+        return varCounter.getAndIncrement();
     }
 }
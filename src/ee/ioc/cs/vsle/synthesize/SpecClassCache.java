@@ -0,0 +1,239 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+import ee.ioc.cs.vsle.editor.*;
+import ee.ioc.cs.vsle.util.*;
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Process wide cache of parsed specification classes.
+ * An entry is keyed by the parser and the path of a class file and holds
+ * the annotated class together with all classes it depends on.
+ * The entry is valid as long as the files of these classes and the files
+ * of all types they refer to stay unchanged (compared by mtime and size).
+ *
+ * Parsers produce annotated classes slightly differently,
+ * so entries of different parsers are kept apart.
+ * Cached annotated classes are shared and must not be modified.
+ */
+public class SpecClassCache {
+
+    private static final SpecClassCache s_instance = new SpecClassCache();
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    //file -> stamp of the file and whether it contains a specification
+    private final Map<File, SpecFile> specFiles = new HashMap<File, SpecFile>();
+    private int hits;
+    private int misses;
+
+    private SpecClassCache() {
+    }
+
+    public static SpecClassCache getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * @param parser class of the parser
+     * @param path directory of specification classes
+     * @param type name of the class
+     * @return the class and classes it depends on or null if nothing valid is cached
+     */
+    public synchronized ClassList get( Class<?> parser, String path, String type ) {
+
+        String key = parser.getName() + "|" + path + type;
+        Entry entry = entries.get( key );
+
+        if ( entry != null && !entry.isUpToDate() ) {
+            entries.remove( key );
+            entry = null;
+        }
+
+        if ( entry == null ) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        if ( RuntimeProperties.isLogDebugEnabled() )
+            db.p( "Spec class cache " + ( entry == null ? "miss" : "hit" ) + " for " + type + ", " + getStatistics() );
+
+        if ( entry == null ) {
+            return null;
+        }
+
+        ClassList classes = new ClassList();
+        classes.addAll( entry.classes );
+        return classes;
+    }
+
+    /**
+     * @param parser class of the parser
+     * @param path directory of specification classes
+     * @param type name of the class
+     * @param classes the parsed class and all classes it depends on
+     */
+    public synchronized void put( Class<?> parser, String path, String type, Collection<AnnotatedClass> classes ) {
+
+        Map<File, PlanCache.Stamp> dependencies = new HashMap<File, PlanCache.Stamp>();
+
+        for ( AnnotatedClass ac : classes ) {
+            addDependency( dependencies, path, ac.getName() );
+
+            for ( String referredType : getReferredTypes( ac ) ) {
+                addDependency( dependencies, path, referredType );
+            }
+        }
+
+        entries.put( parser.getName() + "|" + path + type,
+                new Entry( Collections.unmodifiableList( new ArrayList<AnnotatedClass>( classes ) ), dependencies ) );
+    }
+
+    /**
+     * Collects a class and all classes it refers to, directly or indirectly
+     * 
+     * @param type name of the class
+     * @param loaded all loaded classes by names
+     * @return classes in the order they are reached
+     */
+    public static Collection<AnnotatedClass> collectDependencies( String type, Map<String, AnnotatedClass> loaded ) {
+
+        Map<String, AnnotatedClass> collected = new LinkedHashMap<String, AnnotatedClass>();
+        LinkedList<String> queue = new LinkedList<String>();
+        queue.add( type );
+
+        while ( !queue.isEmpty() ) {
+            String name = queue.removeFirst();
+            AnnotatedClass ac = loaded.get( name );
+
+            if ( ac != null && !collected.containsKey( name ) ) {
+                collected.put( name, ac );
+                queue.addAll( getReferredTypes( ac ) );
+            }
+        }
+
+        return collected.values();
+    }
+
+    /**
+     * @return names of superclasses, types of fields and contexts of independent subtasks
+     */
+    private static Set<String> getReferredTypes( AnnotatedClass ac ) {
+
+        Set<String> types = new LinkedHashSet<String>();
+
+        for ( AnnotatedClass superClass : ac.getSuperClasses() ) {
+            types.add( superClass.getName() );
+        }
+
+        for ( ClassField field : ac.getFields() ) {
+            types.add( field.getType() );
+        }
+
+        for ( ClassRelation cr : ac.getClassRelations() ) {
+            for ( SubtaskClassRelation subtask : cr.getSubtasks() ) {
+                if ( subtask.isIndependent() ) {
+                    types.add( subtask.getContext().getType() );
+                }
+            }
+        }
+
+        return types;
+    }
+
+    /**
+     * Checks if a file exists and contains the specification of the given class.
+     * The result is cached until the file is changed.
+     */
+    public synchronized boolean isSpecClass( String path, String type ) {
+
+        File file = new File( path + type + ".java" );
+        PlanCache.Stamp stamp = PlanCache.stamp( file );
+        SpecFile cached = specFiles.get( file );
+
+        if ( cached == null || !cached.stamp.equals( stamp ) ) {
+            boolean isSpec = false;
+
+            String text = FileFuncs.getFileContents( file );
+
+            if ( text != null ) {
+                //line breaks are ignored
+                text = text.replace( "\r", "" ).replace( "\n", "" );
+                isSpec = Pattern.compile( "specification +" + Pattern.quote( type ) ).matcher( text ).find();
+            }
+
+            cached = new SpecFile( stamp, isSpec );
+            specFiles.put( file, cached );
+        }
+
+        return cached.isSpec;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+        specFiles.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized String getStatistics() {
+        return "size: " + entries.size() + ", hits: " + hits + ", misses: " + misses;
+    }
+
+    private static void addDependency( Map<File, PlanCache.Stamp> dependencies, String path, String type ) {
+        //arrays of spec classes are not allowed, but stay on the safe side
+        while ( type.endsWith( "[]" ) ) {
+            type = type.substring( 0, type.length() - 2 );
+        }
+        File file = new File( path + type + ".java" );
+        if ( !dependencies.containsKey( file ) ) {
+            dependencies.put( file, PlanCache.stamp( file ) );
+        }
+    }
+
+    private static class SpecFile {
+
+        private final PlanCache.Stamp stamp;
+        private final boolean isSpec;
+
+        private SpecFile( PlanCache.Stamp stamp, boolean isSpec ) {
+            this.stamp = stamp;
+            this.isSpec = isSpec;
+        }
+    }
+
+    private static class Entry {
+
+        private final List<AnnotatedClass> classes;
+        private final Map<File, PlanCache.Stamp> dependencies;
+
+        private Entry( List<AnnotatedClass> classes, Map<File, PlanCache.Stamp> dependencies ) {
+            this.classes = classes;
+            this.dependencies = dependencies;
+        }
+
+        private boolean isUpToDate() {
+            for ( Map.Entry<File, PlanCache.Stamp> dep : dependencies.entrySet() ) {
+                if ( !PlanCache.stamp( dep.getKey() ).equals( dep.getValue() ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.util.regex.Pattern;
 import ee.ioc.cs.vsle.editor.RuntimeProperties;
 import ee.ioc.cs.vsle.equations.EquationSolver;
 import ee.ioc.cs.vsle.equations.EquationSolver.Relation;
+import ee.ioc.cs.vsle.equations.LinearEquation;
 import ee.ioc.cs.vsle.table.Table;
 import ee.ioc.cs.vsle.util.FileFuncs;
 import ee.ioc.cs.vsle.util.TypeToken;
@@ -583,6 +584,13 @@ public class SpecParser {
                         LineType.Equation statement = ( LineType.Equation)lt.getStatement();
                         EquationSolver solver = new EquationSolver();
                         solver.solve( statement.getEq() );
+                        LinearEquation equation = solver.getLinearEquation();
+                        if ( equation != null ) {
+                            for ( String var : equation.getVars() ) {
+                                String name = checkAliasLength( var, annClass, className );
+                                equation.renameVar( var, name.startsWith( "*" ) ? name.substring( 1 ) : name );
+                            }
+                        }
                         next: for ( Relation rel : solver.getRelations() ) {
                             if ( RuntimeProperties.isLogDebugEnabled() )
                                 db.p( "equation: " + rel );
@@ -630,6 +638,7 @@ public class SpecParser {
                                 classRelation.addInputs( inputs, annClass.getFields() );
                             }
                             classRelation.setMethod( method );
+                            classRelation.setEquation( equation );
                             annClass.addClassRelation( classRelation );
                             if ( RuntimeProperties.isLogDebugEnabled() )
                                 db.p( "Equation: " + classRelation );
@@ -789,11 +798,23 @@ public class SpecParser {
         if ( file.exists() && isSpecClass( path, type ) ) {
             specClass = true;
             if ( !classList.containsType( type ) ) {
+                ClassList cached = SpecClassCache.getInstance().get( SpecParser.class, path, type );
+                
+                if ( cached != null ) {
+                    classList.addAll( cached );
+                    return specClass;
+                }
+                
                 checkedClasses.add( type );
                 String s = FileFuncs.getFileContents(file);
 
                 try {
-                    classList.addAll( parseSpecificationImpl( refineSpec( s ), type, null, path, checkedClasses ) );
+                    ClassList parsed = parseSpecificationImpl( refineSpec( s ), type, null, path, checkedClasses );
+                    classList.addAll( parsed );
+                    //with recursive specs the list may lack classes that are being parsed at the moment
+                    if ( !RuntimeProperties.isRecursiveSpecsAllowed() ) {
+                        SpecClassCache.getInstance().put( SpecParser.class, path, type, parsed );
+                    }
                 } catch ( SpecParseException e ) {
                     throw new SpecParseException("Class \"" + type + "\": " + e.toString(), e);
                 }
@@ -979,22 +1000,7 @@ public class SpecParser {
     }
 
     private static boolean isSpecClass( String path, String file ) {
-        try {
-            BufferedReader in = new BufferedReader( new FileReader( path + file + ".java" ) );
-            String lineString, fileString = new String();
-
-            while ( ( lineString = in.readLine() ) != null ) {
-                fileString += lineString;
-            }
-            in.close();
-            if ( fileString.matches( ".*specification +" + file + ".*" ) ) {
-
-                return true;
-            }
-        } catch ( IOException ioe ) {
-            db.p( ioe );
-        }
-        return false;
+        return SpecClassCache.getInstance().isSpecClass( path, file );
     }
 
     private static boolean containsVar( Collection<ClassField> vars, String varName ) {
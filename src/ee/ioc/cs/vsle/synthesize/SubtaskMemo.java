@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.synthesize;
+
+import java.util.*;
+
+/**
+ * Memo table of dependent subtask planning outcomes.
+ * An outcome depends on the subtask, the state of the planning context
+ * at the moment the subtask is being solved, the remaining depth
+ * and, if repetition is not allowed, on the rels with subtasks in the path.
+ * Both solved and unsolvable outcomes are stored.
+ * The memo may be shared by OR branches explored in parallel.
+ */
+class SubtaskMemo {
+
+    private final Map<Key, EvaluationAlgorithm> outcomes = new HashMap<Key, EvaluationAlgorithm>();
+    private int hits;
+    private int misses;
+
+    Key createKey( SubtaskRel subtask, PlanningContext context, int depthBudget, Collection<Rel> path ) {
+        return new Key( subtask, context, depthBudget, path );
+    }
+
+    /**
+     * @return true if the outcome for the key is known
+     */
+    synchronized boolean contains( Key key ) {
+        if ( outcomes.containsKey( key ) ) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * @return a copy of the stored algorithm or null if the subtask is not solvable
+     */
+    synchronized EvaluationAlgorithm get( Key key ) {
+        EvaluationAlgorithm algorithm = outcomes.get( key );
+        return algorithm == null ? null : copy( algorithm );
+    }
+
+    synchronized void putSolved( Key key, EvaluationAlgorithm algorithm ) {
+        outcomes.put( key, copy( algorithm ) );
+    }
+
+    synchronized void putUnsolvable( Key key ) {
+        outcomes.put( key, null );
+    }
+
+    synchronized void clear() {
+        outcomes.clear();
+    }
+
+    synchronized int getHitCount() {
+        return hits;
+    }
+
+    synchronized int getMissCount() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Subtask memo: size " + outcomes.size() + ", hits " + hits + ", misses " + misses;
+    }
+
+    private static EvaluationAlgorithm copy( EvaluationAlgorithm algorithm ) {
+        EvaluationAlgorithm copy = new EvaluationAlgorithm();
+        copy.addAll( algorithm );
+        return copy;
+    }
+
+    /**
+     * Vars and rels are identified by their hash codes, which are unique
+     */
+    static class Key {
+
+        private final int subtask;
+        private final int depthBudget;
+        private final int[] foundVars;
+        private final int[] knownVars;
+        private final int[] path;
+        private final int hashcode;
+
+        private Key( SubtaskRel subtask, PlanningContext context, int depthBudget, Collection<Rel> path ) {
+            this.subtask = subtask.hashCode();
+            this.depthBudget = depthBudget;
+            this.foundVars = toSortedArray( context.getFoundVars() );
+            this.knownVars = toSortedArray( context.getKnownVars() );
+            this.path = path == null ? new int[0] : toSortedArray( path );
+
+            int h = 31 * this.subtask + depthBudget;
+            h = 31 * h + Arrays.hashCode( foundVars );
+            h = 31 * h + Arrays.hashCode( knownVars );
+            hashcode = 31 * h + Arrays.hashCode( this.path );
+        }
+
+        private static int[] toSortedArray( Collection<?> from ) {
+            int[] arr = new int[from.size()];
+            int i = 0;
+            for ( Object o : from ) {
+                arr[i++] = o.hashCode();
+            }
+            Arrays.sort( arr );
+            return arr;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashcode;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( !( obj instanceof Key ) ) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashcode == other.hashcode
+                    && subtask == other.subtask
+                    && depthBudget == other.depthBudget
+                    && Arrays.equals( foundVars, other.foundVars )
+                    && Arrays.equals( knownVars, other.knownVars )
+                    && Arrays.equals( path, other.path );
+        }
+    }
+}
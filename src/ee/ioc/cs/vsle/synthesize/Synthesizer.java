@@ -40,10 +40,18 @@ public class Synthesizer {
      * @throws SpecParseException 
     */
     public static void makeProgram( String progText, ClassList classes, String mainClassName, String path, GenStorage storage ) throws SpecParseException {
-        generateSubclasses( classes, path, storage );
+        makeClasses( classes, path, storage );
         storage.writeFile( mainClassName + ".java", progText );
     }
 
+    /**
+     * Generates only the classes used in the specification, e.g. for an interpreted program
+     * @throws SpecParseException 
+     */
+    public static void makeClasses( ClassList classes, String path, GenStorage storage ) throws SpecParseException {
+        generateSubclasses( classes, path, storage );
+    }
+
     /** Takes care of steps needed for planning and algorithm extracting, calling problem creator
      * and planner and	returning compilable java source.
      * Creating a problem means parsing the specification(s recursively), unfolding it, and making
@@ -57,6 +65,17 @@ public class Synthesizer {
      */
     public static String makeProgramText( String fileString, boolean computeAll, ClassList classList,
                                    String mainClassName, ProgramRunner runner ) throws SpecParseException {
+        return makeProgramText( fileString, computeAll, classList, mainClassName, runner, null, null );
+    }
+
+    /**
+     * Same as makeProgramText( fileString, computeAll, classList, mainClassName, runner ), 
+     * additionally stores the result in the PlanCache under the given key.
+     * @param cacheKey - key created by PlanCache.createKey() or null
+     * @param workDir - directory of specification classes
+     */
+    public static String makeProgramText( String fileString, boolean computeAll, ClassList classList,
+            String mainClassName, ProgramRunner runner, String cacheKey, String workDir ) throws SpecParseException {
 
         Problem problem = null;
         // call the packageParser to create a problem from the specification
@@ -66,6 +85,15 @@ public class Synthesizer {
         // run the planner on the obtained problem
         EvaluationAlgorithm algorithm = PlannerFactory.getInstance().getCurrentPlanner().invokePlaning( problem, computeAll );
         
+        return generateProgramText( fileString, classList, mainClassName, runner, problem, algorithm, cacheKey, workDir );
+    }
+
+    /**
+     * Generates compilable java source for an algorithm planned on a given problem
+     */
+    static String generateProgramText( String fileString, ClassList classList, String mainClassName, ProgramRunner runner, 
+            Problem problem, EvaluationAlgorithm algorithm, String cacheKey, String workDir ) {
+        
         if( RuntimeProperties.isShowAlgorithm() ) {
         	AlgorithmVisualizer.getInstance().addNewTab( mainClassName, algorithm );
         }
@@ -132,7 +160,18 @@ public class Synthesizer {
         fsb.insert( 0, "import ee.ioc.cs.vsle.util.*;\nimport ee.ioc.cs.vsle.api.*;\n\n" )
                 .append( cg.getIndependentSubtasks() );
         
-        return fsb.toString();
+        String programText = fsb.toString();
+        
+        if ( runner != null ) {
+            runner.setAlgorithm( algorithm, programText );
+        }
+
+        if ( cacheKey != null ) {
+            PlanCache.getInstance().put( cacheKey, workDir, programText, classList, algorithm, 
+                    problem.getCurrentContext().getFoundVars(), problem.getAssumptions() );
+        }
+        
+        return programText;
     }
 
     /**
@@ -208,6 +247,21 @@ public class Synthesizer {
             String path, String[] inputs, String[] outputs,
             ClassList classList, StringBuilder result ) throws IOException,
             SpecParseException {
+        return computeIndependentModel( contextClassName, path, inputs, outputs, classList, result, null );
+    }
+
+    /**
+     * Same as computeIndependentModel( contextClassName, path, inputs, outputs, classList, result ),
+     * but tries to interpret the model first
+     * 
+     * @param interpreter if not null and the algorithm of the model can be interpreted,
+     * the interpreter is stored at index 0 and the code is not generated
+     * @return the name of the generated class or null if the model is interpreted
+     */
+    public static String computeIndependentModel( String contextClassName,
+            String path, String[] inputs, String[] outputs,
+            ClassList classList, StringBuilder result, ProgramInterpreter[] interpreter )
+            throws IOException, SpecParseException {
         
         //create an instance of current subtask relation
         SubtaskRel subtask;
@@ -237,7 +291,27 @@ public class Synthesizer {
             throw new ComputeModelException( contextClassName
                     + " problem is not solvable!" );
         }
+        if ( interpreter != null
+                && ( interpreter[0] = ProgramInterpreter.createIndependentModel( subtask, alg ) ) != null ) {
+            return null;
+        }
         //generate code
+        return generateIndependentModel( subtask, alg, result );
+    }
+
+    /**
+     * Generates the code of an interpreted independent model, e.g. for compiling it later
+     * 
+     * @param model interpreter created by computeIndependentModel
+     * @param result
+     * @return the name of the generated class
+     */
+    public static String generateIndependentModel( ProgramInterpreter model, StringBuilder result ) {
+        return generateIndependentModel( model.getModel(), model.getModelAlgorithm(), result );
+    }
+
+    private static String generateIndependentModel( SubtaskRel subtask, EvaluationAlgorithm alg, StringBuilder result ) {
+        
         StringBuilder classCode = new StringBuilder();
         String className = CodeGenerator.genIndependentSubtask( subtask, alg,
                 classCode );
@@ -23,6 +23,24 @@ public interface IStructuralExpertTable {
      * @return
      */
     public Object queryTable( String[] inputIds, Object[] args );
+
+    /**
+     * Method for querying a table with double inputs and a double output
+     * 
+     * @param args values of input variables (order is strict!)
+     * @return value from the table if conditions hold for some row and column
+     * @throws TableException if proper value cannot be returned 
+     */
+    public double queryDouble( double... args );
+    
+    /**
+     * Method for querying a table with int inputs and an int output
+     * 
+     * @param args values of input variables (order is strict!)
+     * @return value from the table if conditions hold for some row and column
+     * @throws TableException if proper value cannot be returned 
+     */
+    public int queryInt( int... args );
     
     /**
      * @return id of the table
@@ -1,6 +1,7 @@
 package ee.ioc.cs.vsle.table;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import ee.ioc.cs.vsle.table.exception.*;
 import ee.ioc.cs.vsle.util.*;
@@ -11,6 +12,9 @@ import ee.ioc.cs.vsle.util.*;
  */
 public class Rule {
     
+    //incremented on every change of any rule, see Table.getQueryIndex()
+    private static final AtomicInteger s_version = new AtomicInteger();
+    
     private InputTableField field;
     protected Object value;
     private Set<Integer> entries = new LinkedHashSet<Integer>();
@@ -37,10 +41,12 @@ public class Rule {
      */
     public void addEntry( int index ) {
         entries.add( index );
+        s_version.incrementAndGet();
     }
     
     public void removeEntry( int index ) {
         entries.remove( index );
+        s_version.incrementAndGet();
     }
     
     /**
@@ -76,6 +82,7 @@ public class Rule {
 
     public void setNegative( boolean negative ) {
         this.negative = negative;
+        s_version.incrementAndGet();
     }
 
     public Condition getCondition() {
@@ -84,6 +91,14 @@ public class Rule {
 
     public void setCondition( Condition condition ) {
         this.condition = condition;
+        s_version.incrementAndGet();
+    }
+
+    /**
+     * @return the version of all rules
+     */
+    static int getVersion() {
+        return s_version.get();
     }
 
     public Object getValue() {
@@ -110,6 +125,7 @@ public class Rule {
             throw new TableException( "Unable to create an object from the string \"" + 
                     svalue + "\", " + field.toString(), e );
         }
+        s_version.incrementAndGet();
 
     }
 
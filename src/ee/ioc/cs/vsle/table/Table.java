@@ -4,6 +4,7 @@
 package ee.ioc.cs.vsle.table;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import javax.swing.*;
 
@@ -43,6 +44,15 @@ public final class Table implements IStructuralExpertTable {
     
     private int lastHorizontalId = -1;
     private int lastVerticalId = -1;
+    
+    //changes of the table and rules invalidate the published snapshot
+    private volatile int modCount;
+    private volatile TableSnapshot snapshot;
+    
+    //maximum number of cached input tuples, 0 if results are not cached
+    private int resultCacheSize;
+    private final AtomicLong resultCacheHits = new AtomicLong();
+    private final AtomicLong resultCacheMisses = new AtomicLong();
 
     /**
      * Constructor
@@ -92,6 +102,7 @@ public final class Table implements IStructuralExpertTable {
     public void changePropertiesAndVerify( String newTableId, TableFieldList<InputTableField> inputFields, TableFieldList<TableField> outputFields, TableField alias ) {
         
         tableId = newTableId;
+        modCount++;
         
         int eventTypeMask = 0;
         
@@ -203,6 +214,7 @@ public final class Table implements IStructuralExpertTable {
     public void addInputFields( Collection<InputTableField> fields ) {
         
         inputList.addAll( fields );
+        modCount++;
     }
 
     /**
@@ -216,6 +228,7 @@ public final class Table implements IStructuralExpertTable {
         if( outputList.contains( field ) ) {
             if( output != field ) {
                 output = field;
+                modCount++;
                 if( notify ) {
                     TableEvent.dispatchEvent( new TableEvent( this, TableEvent.DATA ) );
                 }
@@ -228,6 +241,7 @@ public final class Table implements IStructuralExpertTable {
     public void addOutputFields( Collection<TableField> fields ) {
         
         outputList.addAll( fields );
+        modCount++;
     }
 
     /**
@@ -245,6 +259,7 @@ public final class Table implements IStructuralExpertTable {
      */
     void addHRules( Collection<Rule> rules ) {
         hrules.addAll( rules );
+        modCount++;
     }
     
     /**
@@ -253,6 +268,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void addHRule( int position, Rule rule ) {
         hrules.add( position, rule );
+        modCount++;
     }
     
     /**
@@ -261,6 +277,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void moveHRule( int from, int to ) {
         hrules.add( to, hrules.remove( from ) );
+        modCount++;
     }
     
     /**
@@ -268,6 +285,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void removeHRule( int position ) {
         hrules.remove( position );
+        modCount++;
     }
     
     /**
@@ -276,6 +294,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void addVRule( int position, Rule rule ) {
         vrules.add( position, rule );
+        modCount++;
     }
 
     /**
@@ -284,6 +303,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void moveVRule( int from, int to ) {
         vrules.add( to, vrules.remove( from ) );
+        modCount++;
     }
     
     /**
@@ -291,6 +311,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void removeVRule( int position ) {
         vrules.remove( position );
+        modCount++;
     }
     
     /**
@@ -305,6 +326,7 @@ public final class Table implements IStructuralExpertTable {
      */
     void addVRules( Collection<Rule> rules ) {
         vrules.addAll( rules );
+        modCount++;
     }
     
     /**
@@ -320,6 +342,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public int addEmptyRow( int position ) {
         int id = getNextHorizontalId();
+        modCount++;
         DataRow anyRow = data.size() > 0 ? data.get( 0 ) : null;
         DataRow newRow = new DataRow( id );
         data.add( position, newRow );
@@ -341,6 +364,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public int addEmptyColumn( int position ) {
         int id = getNextVerticalId();
+        modCount++;
         
         for ( DataRow row : data ) {
             row.cells.add( position, new DataCell( id, null ) );
@@ -354,6 +378,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void moveDataRow( int from, int to ) {
         data.add( to, data.remove( from ) );
+        modCount++;
     }
     
     /**
@@ -364,6 +389,7 @@ public final class Table implements IStructuralExpertTable {
             return;
         
         data.remove( from );
+        modCount++;
     }
     
     /**
@@ -372,6 +398,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void moveDataColumn( int from, int to ) {
         
+        modCount++;
         for ( DataRow row : data ) {
             row.cells.add( to, row.cells.remove( from ) );
         }
@@ -382,6 +409,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void removeDataColumn( int from ) {
         
+        modCount++;
         for ( DataRow row : data ) {
             if( row.cells.size() <= 1 )
                 return;
@@ -398,6 +426,7 @@ public final class Table implements IStructuralExpertTable {
     void addDataCell( int horizontalId, int verticalId, Map<String, String> values ) {
         
         DataRow row;
+        modCount++;
         
         if( ( row = getDataRowById( horizontalId ) ) == null ) {
             data.add( row = new DataRow( horizontalId ) );
@@ -454,6 +483,7 @@ public final class Table implements IStructuralExpertTable {
      */
     public void setCellValueAt( Object value, int rowIndex, int columnIndex ) {
         data.get( rowIndex ).getCells().get( columnIndex ).setValue( value );
+        modCount++;
     }
     
     /**
@@ -548,35 +578,160 @@ public final class Table implements IStructuralExpertTable {
     
     public void setAliasOutput( TableField alias ) {
         aliasOutput = alias;
+        modCount++;
     }
     
     public TableField getAliasOutput() {
         return aliasOutput;
     }
     
+    /**
+     * @return maximum number of input tuples whose resolved rows and columns are cached, 
+     * 0 if queries are not cached
+     */
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+    
+    /**
+     * Enables caching of resolved queries, the cache is cleared
+     * every time the table is changed
+     * 
+     * @param size maximum number of cached input tuples, 0 disables the cache
+     */
+    public void setResultCacheSize( int size ) {
+        resultCacheSize = Math.max( 0, size );
+        modCount++;
+    }
+    
+    public long getResultCacheHitCount() {
+        return resultCacheHits.get();
+    }
+    
+    public long getResultCacheMissCount() {
+        return resultCacheMisses.get();
+    }
+    
+    /**
+     * @return the ratio of cache hits to all cached lookups
+     */
+    public double getResultCacheHitRate() {
+        long hits = resultCacheHits.get();
+        long total = hits + resultCacheMisses.get();
+        return total > 0 ? (double) hits / total : 0;
+    }
+    
+    public String getResultCacheStatistics() {
+        return "size: " + resultCacheSize + ", hits: " + getResultCacheHitCount() 
+                + ", misses: " + getResultCacheMissCount();
+    }
+    
     @Override
-    public synchronized Object queryTable( Object[] args ) {
+    public Object queryTable( Object[] args ) {
         return queryTable( args, true );
     }
     
-    public synchronized Object queryTable( Object[] args, boolean verifyInputs ) {
-        
+    /**
+     * Queries the current snapshot of the table, does not lock
+     * 
+     * @param args
+     * @param verifyInputs
+     * @return
+     */
+    public Object queryTable( Object[] args, boolean verifyInputs ) {
         //TODO check the following case -- when no inputs are actually required in order to get a default value
-        if( verifyInputs ) {
-            if( inputList.size() != args.length )
-                throw new TableException( "Number of table inputs for " + tableId + " is incorrect!" );
-            TableInferenceEngine.verifyInputs( inputList, args );
+        return getSnapshot().query( args, verifyInputs );
+    }
+    
+    /**
+     * Queries a table whose inputs and output are doubles without boxing,
+     * otherwise the arguments and the result are boxed
+     * 
+     * @param args
+     * @return
+     */
+    @Override
+    public double queryDouble( double... args ) {
+        return getSnapshot().queryDouble( args );
+    }
+    
+    /**
+     * Queries a table whose inputs and output are ints without boxing,
+     * otherwise the arguments and the result are boxed
+     * 
+     * @param args
+     * @return
+     */
+    @Override
+    public int queryInt( int... args ) {
+        return getSnapshot().queryInt( args );
+    }
+    
+    /**
+     * Returns the snapshot of the current version of the table,
+     * a new snapshot is taken after the table or any rule has been changed
+     * 
+     * @return
+     */
+    TableSnapshot getSnapshot() {
+        TableSnapshot current = snapshot;
+        
+        if( current == null || !current.isVersion( modCount, Rule.getVersion() ) ) {
+            synchronized( this ) {
+                current = snapshot;
+                int version = modCount;
+                int ruleVersion = Rule.getVersion();
+                
+                if( current == null || !current.isVersion( version, ruleVersion ) ) {
+                    snapshot = current = takeSnapshot( version, ruleVersion );
+                }
+            }
         }
         
-        int rowId = TableInferenceEngine.checkRules( inputList, getOrderedRowIds(), hrules, args );
-        int colId = TableInferenceEngine.checkRules( inputList, getOrderedColumnIds(), vrules, args );
+        return current;
+    }
+    
+    /**
+     * @param version
+     * @param ruleVersion
+     * @return
+     */
+    private TableSnapshot takeSnapshot( int version, int ruleVersion ) {
+        List<Integer> rowIds = getOrderedRowIds();
+        List<Integer> colIds = getOrderedColumnIds();
+        
+        Map<TableField, Object>[][] cells = newCellArray( rowIds.size(), colIds.size() );
         
-        return getOutputValue( rowId, colId );
+        for ( int i = 0; i < data.size(); i++ ) {
+            Map<Integer, DataCell> cellsById = new HashMap<Integer, DataCell>();
+            for ( DataCell cell : data.get( i ).cells ) {
+                if( !cellsById.containsKey( cell.getVerticalId() ) ) {
+                    cellsById.put( cell.getVerticalId(), cell );
+                }
+            }
+            for ( int j = 0; j < colIds.size(); j++ ) {
+                DataCell cell = cellsById.get( colIds.get( j ) );
+                if( cell != null ) {
+                    cells[i][j] = new HashMap<TableField, Object>( cell.values );
+                }
+            }
+        }
+        
+        return new TableSnapshot( tableId, inputList, rowIds, hrules, colIds, vrules, cells, 
+                outputList, getOutputField(), isAliasOutput(), 
+                resultCacheSize > 0 ? new TableResultCache( resultCacheSize, resultCacheHits, resultCacheMisses ) : null,
+                version, ruleVersion );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Map<TableField, Object>[][] newCellArray( int rows, int columns ) {
+        return (Map<TableField, Object>[][]) new Map<?, ?>[rows][columns];
     }
 
     @Override
-    public synchronized Object queryTable( String[] inputIds, Object[] args ) {
+    public Object queryTable( String[] inputIds, Object[] args ) {
         //inputIds may contain names in different order
+        List<InputTableField> inputList = getSnapshot().getInputs();
         List<String> outerInputs = Arrays.asList( inputIds );
         List<InputTableField> missingInputs = new ArrayList<InputTableField>();
         Object[] newArgs = new Object[inputList.size()];
@@ -687,17 +842,6 @@ public final class Table implements IStructuralExpertTable {
         return 0;
     }
     
-    /**
-     * 
-     */
-    synchronized void destroy() {
-        inputList.clear();
-        output = null;
-        hrules.clear();
-        vrules.clear();
-        data.clear();
-    }
-    
     /**
      * @author pavelg
      *
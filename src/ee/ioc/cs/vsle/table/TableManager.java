@@ -6,6 +6,7 @@ package ee.ioc.cs.vsle.table;
 import java.awt.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.swing.*;
 
@@ -15,11 +16,13 @@ import ee.ioc.cs.vsle.table.exception.*;
 import ee.ioc.cs.vsle.util.*;
 
 /**
- * Class for caching tables and providing access to the tables from outer packages
+ * Class for caching tables and providing access to the tables from outer packages.
+ * Tables of a package are published as a read-only map that is replaced
+ * when the tables are parsed again, lookups do not lock.
  */
 public class TableManager {
 
-    private static Map<Package, Map<String, Table>> tablesByPackages = new HashMap<Package, Map<String, Table>>();
+    private static final Map<Package, Map<String, Table>> tablesByPackages = new ConcurrentHashMap<Package, Map<String, Table>>();
     
     private static final FilenameFilter FILENAME_FILTER = new FilenameFilter() {
 
@@ -37,11 +40,45 @@ public class TableManager {
      * @param tableId
      * @return
      */
-    public synchronized static IStructuralExpertTable getTable( Package pack, String tableId ) {
+    public static IStructuralExpertTable getTable( Package pack, String tableId ) {
         
-        if( !tablesByPackages.containsKey( pack ) ) {
+        Map<String, Table> tables = tablesByPackages.get( pack );
+        
+        if( tables == null ) {
+            tables = loadTables( pack );
+        }
+        
+        IStructuralExpertTable table = tables.get( tableId );
+        
+        if( table != null ) {
+            return table;
+        }
+        
+        final String msg = "No such table: " + tableId;
+        
+        SwingUtilities.invokeLater( new Runnable() {
+            @Override
+            public void run() {
+                JOptionPane.showMessageDialog( null, msg + "\n(NB! Table ids are case sensitive!)", "Error", JOptionPane.ERROR_MESSAGE );
+            }
+        } );
+        
+        throw new TableException( msg );
+    }
+    
+    /**
+     * Parses tables of the package unless another thread has already done it
+     * 
+     * @param pack
+     * @return
+     */
+    private synchronized static Map<String, Table> loadTables( Package pack ) {
+        
+        Map<String, Table> tables = tablesByPackages.get( pack );
+        
+        if( tables == null ) {
             
-            Map<String, Table> tables = new HashMap<String, Table>();
+            tables = new HashMap<String, Table>();
             
             File folder = new File( pack.getPath() );
             
@@ -59,42 +96,22 @@ public class TableManager {
             }
             
             //this line can be reached if no errors occurred during parsing 
+            tables = Collections.unmodifiableMap( tables );
             tablesByPackages.put( pack, tables );
         }
         
-        IStructuralExpertTable table = tablesByPackages.get( pack ).get( tableId );
-        
-        if( table != null ) {
-            return table;
-        }
-        
-        final String msg = "No such table: " + tableId;
-        
-        SwingUtilities.invokeLater( new Runnable() {
-            @Override
-            public void run() {
-                JOptionPane.showMessageDialog( null, msg + "\n(NB! Table ids are case sensitive!)", "Error", JOptionPane.ERROR_MESSAGE );
-            }
-        } );
-        
-        throw new TableException( msg );
+        return tables;
     }
     
     /**
-     * Assumes that tables have been modified and forces to parses them again
+     * Assumes that tables have been modified and forces to parses them again.
+     * Tables that have already been obtained stay intact for running queries.
      * 
      * @param pack
      */
     public synchronized static void updateTables( Package pack ) {
         
-        Map<String, Table> tables = tablesByPackages.remove( pack );
-        
-        if( tables != null ) {
-            for ( Table table : tables.values() ) {
-                table.destroy();
-            }
-            tables.clear();
-        }
+        tablesByPackages.remove( pack );
     }
 
     /**
@@ -0,0 +1,517 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+
+/**
+ * Query index of a table version.
+ * Rules of rows (columns) are compiled into bitsets of positions of rows (columns)
+ * the rules are attached to. A query evaluates every rule (or group of rules) once
+ * and removes positions of failed rules from candidates, the first remaining position
+ * is the result, which is the same as the first row (column) whose all rules hold.
+ *
+ * Rules over the same input with numeric thresholds (less, leq) are grouped and
+ * resolved by a binary search, equality rules are resolved by a hash lookup.
+ * Other rules are verified one by one.
+ *
+ * Double and int thresholds and values are also kept in primitive arrays, so
+ * queries with primitive arguments do not box them unless a rule has to be
+ * verified individually.
+ *
+ * Conditions, values and entries of rules are copied, so an index is immutable
+ * and can be queried by several threads at once.
+ */
+final class TableQueryIndex {
+
+    //classes having natural ordering with compareTo() returning -1, 0 or 1 and symmetric equals(),
+    //Short and Byte return the difference, Condition.verify() compares the result with -1
+    private static final Set<Class<?>> ORDERED_TYPES = new HashSet<Class<?>>( Arrays.<Class<?>>asList(
+            Integer.class, Long.class, Double.class, Float.class ) );
+    private static final Set<Class<?>> HASHED_TYPES = new HashSet<Class<?>>( Arrays.<Class<?>>asList(
+            Integer.class, Long.class, Short.class, Byte.class, Double.class, Float.class,
+            String.class, Boolean.class, Character.class ) );
+
+    private final Dimension rows;
+    private final Dimension columns;
+
+    /**
+     * @param inputs
+     * @param rowIds ordered row ids
+     * @param hrules
+     * @param columnIds ordered column ids
+     * @param vrules
+     */
+    TableQueryIndex( TableFieldList<InputTableField> inputs, List<Integer> rowIds, List<Rule> hrules,
+            List<Integer> columnIds, List<Rule> vrules ) {
+        rows = new Dimension( inputs, rowIds, hrules );
+        columns = new Dimension( inputs, columnIds, vrules );
+    }
+
+    /**
+     * @param args
+     * @return position of the first row whose rules hold, -1 if there is no such row
+     * or -2 if the index cannot answer the query
+     */
+    int findRow( Object[] args ) {
+        return rows.find( args, null, null );
+    }
+
+    /**
+     * @see #findRow(Object[])
+     */
+    int findRow( double[] args ) {
+        return rows.find( null, args, null );
+    }
+
+    /**
+     * @see #findRow(Object[])
+     */
+    int findRow( int[] args ) {
+        return rows.find( null, null, args );
+    }
+
+    /**
+     * @param args
+     * @return position of the first column whose rules hold, -1 if there is no such column
+     * or -2 if the index cannot answer the query
+     */
+    int findColumn( Object[] args ) {
+        return columns.find( args, null, null );
+    }
+
+    /**
+     * @see #findColumn(Object[])
+     */
+    int findColumn( double[] args ) {
+        return columns.find( null, args, null );
+    }
+
+    /**
+     * @see #findColumn(Object[])
+     */
+    int findColumn( int[] args ) {
+        return columns.find( null, null, args );
+    }
+
+    int getRowId( int position ) {
+        return rows.ids[position];
+    }
+
+    int getColumnId( int position ) {
+        return columns.ids[position];
+    }
+
+    /**
+     * Rows or columns
+     */
+    private static class Dimension {
+
+        private final int[] ids;
+        private final List<Group> groups = new ArrayList<Group>();
+
+        Dimension( TableFieldList<InputTableField> inputs, List<Integer> orderedIds, List<Rule> rules ) {
+
+            ids = new int[orderedIds.size()];
+            Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+            for ( int i = 0; i < ids.length; i++ ) {
+                ids[i] = orderedIds.get( i );
+                positions.put( ids[i], i );
+            }
+
+            //rules by input, condition and negation
+            Map<List<Object>, List<Rule>> similarRules = new LinkedHashMap<List<Object>, List<Rule>>();
+
+            for ( Rule rule : rules ) {
+                List<Object> key = Arrays.<Object>asList( rule.getField(), rule.getCondition(), rule.isNegative() );
+                List<Rule> list = similarRules.get( key );
+                if ( list == null ) {
+                    similarRules.put( key, list = new ArrayList<Rule>() );
+                }
+                list.add( rule );
+            }
+
+            for ( List<Rule> list : similarRules.values() ) {
+                Rule first = list.get( 0 );
+                int input = inputs.indexOf( first.getField() );
+                Condition cond = first.getCondition();
+
+                if ( ( cond == Condition.COND_LESS || cond == Condition.COND_LESS_OR_EQUAL )
+                        && haveSameType( list, ORDERED_TYPES ) ) {
+                    groups.add( new ThresholdGroup( input, list, positions, ids.length ) );
+                } else if ( cond == Condition.COND_EQUALS && haveSameType( list, HASHED_TYPES ) ) {
+                    groups.add( new EqualsGroup( input, list, positions, ids.length ) );
+                } else {
+                    for ( Rule rule : list ) {
+                        groups.add( new SingleRule( input, rule, positions, ids.length ) );
+                    }
+                }
+            }
+        }
+
+        /**
+         * Exactly one kind of arguments is given
+         */
+        int find( Object[] args, double[] doubleArgs, int[] intArgs ) {
+            BitSet candidates = new BitSet( ids.length );
+            candidates.set( 0, ids.length );
+
+            for ( Group group : groups ) {
+                boolean ok = args != null ? group.removeFailed( args, candidates )
+                        : doubleArgs != null ? group.removeFailed( doubleArgs, candidates )
+                        : group.removeFailed( intArgs, candidates );
+                if ( !ok ) {
+                    return -2;
+                }
+            }
+
+            return candidates.nextSetBit( 0 );
+        }
+    }
+
+    /**
+     * @return true if values of all rules are of the same class from the given set
+     */
+    private static boolean haveSameType( List<Rule> rules, Set<Class<?>> types ) {
+        Object first = rules.get( 0 ).getValue();
+        if ( first == null || !types.contains( first.getClass() ) ) {
+            return false;
+        }
+        for ( Rule rule : rules ) {
+            if ( rule.getValue() == null || rule.getValue().getClass() != first.getClass() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BitSet getEntries( Rule rule, Map<Integer, Integer> positions, int size ) {
+        BitSet entries = new BitSet( size );
+        for ( Integer id : rule.getEntries() ) {
+            Integer pos = positions.get( id );
+            if ( pos != null ) {
+                entries.set( pos );
+            }
+        }
+        return entries;
+    }
+
+    private static abstract class Group {
+
+        protected final int input;
+
+        Group( int input ) {
+            this.input = input;
+        }
+
+        /**
+         * Removes positions of rules that do not hold
+         *
+         * @return false if the group cannot be evaluated for given arguments
+         */
+        abstract boolean removeFailed( Object[] args, BitSet candidates );
+
+        /**
+         * @see #removeFailed(Object[], BitSet)
+         */
+        abstract boolean removeFailed( double[] args, BitSet candidates );
+
+        /**
+         * @see #removeFailed(Object[], BitSet)
+         */
+        abstract boolean removeFailed( int[] args, BitSet candidates );
+    }
+
+    /**
+     * Any rule
+     */
+    private static class SingleRule extends Group {
+
+        private final Condition condition;
+        private final Object value;
+        private final boolean negative;
+        private final BitSet entries;
+
+        SingleRule( int input, Rule rule, Map<Integer, Integer> positions, int size ) {
+            super( input );
+            this.condition = rule.getCondition();
+            this.value = rule.getValue();
+            this.negative = rule.isNegative();
+            this.entries = getEntries( rule, positions, size );
+        }
+
+        @Override
+        boolean removeFailed( Object[] args, BitSet candidates ) {
+            //the rule is verified even if its rows (columns) have been discarded,
+            //so that any exception the inference engine would throw is thrown here as well
+            //same as Rule.verifyCondition()
+            return removeFailed( args[input], candidates );
+        }
+
+        @Override
+        boolean removeFailed( double[] args, BitSet candidates ) {
+            return removeFailed( Double.valueOf( args[input] ), candidates );
+        }
+
+        @Override
+        boolean removeFailed( int[] args, BitSet candidates ) {
+            return removeFailed( Integer.valueOf( args[input] ), candidates );
+        }
+
+        private boolean removeFailed( Object arg, BitSet candidates ) {
+            if ( condition.verify( value, arg ) == negative ) {
+                candidates.andNot( entries );
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Rules "input < value" or "input <= value" (or their negations) over the same input
+     */
+    private static class ThresholdGroup extends Group {
+
+        private final Comparable<Object>[] values;
+        private final double[] doubleValues;
+        private final int[] intValues;
+        private final Class<?> type;
+        private final boolean inclusive;
+        private final boolean negative;
+        //failed[k] - positions of rules that fail if first k sorted values are not greater (or not greater or equal) than the input
+        private final BitSet[] failed;
+
+        @SuppressWarnings( "unchecked" )
+        ThresholdGroup( int input, List<Rule> rules, Map<Integer, Integer> positions, int size ) {
+            super( input );
+
+            List<Rule> sorted = new ArrayList<Rule>( rules );
+            Collections.sort( sorted, new Comparator<Rule>() {
+                @Override
+                public int compare( Rule r1, Rule r2 ) {
+                    return ( (Comparable<Object>) r1.getValue() ).compareTo( r2.getValue() );
+                }
+            } );
+
+            Rule first = sorted.get( 0 );
+            type = first.getValue().getClass();
+            inclusive = first.getCondition() == Condition.COND_LESS_OR_EQUAL;
+            negative = first.isNegative();
+
+            int n = sorted.size();
+            values = newComparableArray( n );
+            failed = new BitSet[n + 1];
+
+            doubleValues = type == Double.class ? new double[n] : null;
+            intValues = type == Integer.class ? new int[n] : null;
+
+            for ( int i = 0; i < n; i++ ) {
+                values[i] = (Comparable<Object>) sorted.get( i ).getValue();
+                if ( doubleValues != null ) {
+                    doubleValues[i] = (Double) sorted.get( i ).getValue();
+                } else if ( intValues != null ) {
+                    intValues[i] = (Integer) sorted.get( i ).getValue();
+                }
+            }
+
+            //positive rules fail for a prefix of sorted values, negative ones for a suffix
+            if ( !negative ) {
+                failed[0] = new BitSet( size );
+                for ( int k = 1; k <= n; k++ ) {
+                    failed[k] = (BitSet) failed[k - 1].clone();
+                    failed[k].or( getEntries( sorted.get( k - 1 ), positions, size ) );
+                }
+            } else {
+                failed[n] = new BitSet( size );
+                for ( int k = n - 1; k >= 0; k-- ) {
+                    failed[k] = (BitSet) failed[k + 1].clone();
+                    failed[k].or( getEntries( sorted.get( k ), positions, size ) );
+                }
+            }
+        }
+
+        @SuppressWarnings( "unchecked" )
+        private static Comparable<Object>[] newComparableArray( int n ) {
+            return (Comparable<Object>[]) new Comparable<?>[n];
+        }
+
+        @Override
+        boolean removeFailed( Object[] args, BitSet candidates ) {
+            Object arg = args[input];
+
+            if ( arg == null || arg.getClass() != type ) {
+                return false;
+            }
+
+            //number of values v such that input < v (input <= v) does not hold
+            int lo = 0;
+            int hi = values.length;
+            while ( lo < hi ) {
+                int mid = ( lo + hi ) >>> 1;
+                int c = values[mid].compareTo( arg );
+                if ( c < 0 || ( c == 0 && !inclusive ) ) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            candidates.andNot( failed[lo] );
+            return true;
+        }
+
+        @Override
+        boolean removeFailed( double[] args, BitSet candidates ) {
+            if ( doubleValues == null ) {
+                return false;
+            }
+
+            double arg = args[input];
+            int lo = 0;
+            int hi = doubleValues.length;
+            while ( lo < hi ) {
+                int mid = ( lo + hi ) >>> 1;
+                //Double.compare() is the same as Double.compareTo()
+                int c = Double.compare( doubleValues[mid], arg );
+                if ( c < 0 || ( c == 0 && !inclusive ) ) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            candidates.andNot( failed[lo] );
+            return true;
+        }
+
+        @Override
+        boolean removeFailed( int[] args, BitSet candidates ) {
+            if ( intValues == null ) {
+                return false;
+            }
+
+            int arg = args[input];
+            int lo = 0;
+            int hi = intValues.length;
+            while ( lo < hi ) {
+                int mid = ( lo + hi ) >>> 1;
+                if ( intValues[mid] < arg || ( intValues[mid] == arg && !inclusive ) ) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            candidates.andNot( failed[lo] );
+            return true;
+        }
+    }
+
+    /**
+     * Rules "input = value" (or their negations) over the same input
+     */
+    private static class EqualsGroup extends Group {
+
+        //value -> positions of rules that fail if the input equals the value
+        private final Map<Object, BitSet> failedByValue = new HashMap<Object, BitSet>();
+        //positions of rules that fail if the input does not equal any value
+        private final BitSet failedOther;
+        private final Class<?> type;
+        //sorted double or int values and corresponding sets of failed positions
+        private double[] doubleValues;
+        private int[] intValues;
+        private BitSet[] failedBySortedValue;
+
+        EqualsGroup( int input, List<Rule> rules, Map<Integer, Integer> positions, int size ) {
+            super( input );
+
+            type = rules.get( 0 ).getValue().getClass();
+
+            boolean negative = rules.get( 0 ).isNegative();
+            BitSet all = new BitSet( size );
+            Map<Object, BitSet> byValue = new HashMap<Object, BitSet>();
+
+            for ( Rule rule : rules ) {
+                BitSet entries = getEntries( rule, positions, size );
+                all.or( entries );
+                BitSet set = byValue.get( rule.getValue() );
+                if ( set == null ) {
+                    byValue.put( rule.getValue(), set = new BitSet( size ) );
+                }
+                set.or( entries );
+            }
+
+            if ( negative ) {
+                failedByValue.putAll( byValue );
+                failedOther = new BitSet( size );
+            } else {
+                for ( Object value : byValue.keySet() ) {
+                    BitSet failed = new BitSet( size );
+                    for ( Map.Entry<Object, BitSet> other : byValue.entrySet() ) {
+                        if ( !other.getKey().equals( value ) ) {
+                            failed.or( other.getValue() );
+                        }
+                    }
+                    failedByValue.put( value, failed );
+                }
+                failedOther = all;
+            }
+
+            if ( type == Double.class || type == Integer.class ) {
+                List<Object> sorted = new ArrayList<Object>( failedByValue.keySet() );
+                Collections.sort( sorted, new Comparator<Object>() {
+                    @SuppressWarnings( "unchecked" )
+                    @Override
+                    public int compare( Object o1, Object o2 ) {
+                        return ( (Comparable<Object>) o1 ).compareTo( o2 );
+                    }
+                } );
+
+                failedBySortedValue = new BitSet[sorted.size()];
+                if ( type == Double.class ) {
+                    doubleValues = new double[sorted.size()];
+                } else {
+                    intValues = new int[sorted.size()];
+                }
+                for ( int i = 0; i < sorted.size(); i++ ) {
+                    failedBySortedValue[i] = failedByValue.get( sorted.get( i ) );
+                    if ( doubleValues != null ) {
+                        doubleValues[i] = (Double) sorted.get( i );
+                    } else {
+                        intValues[i] = (Integer) sorted.get( i );
+                    }
+                }
+            }
+        }
+
+        @Override
+        boolean removeFailed( Object[] args, BitSet candidates ) {
+            Object arg = args[input];
+            //values of other types are never equal to the values of rules
+            BitSet failed = arg != null && arg.getClass() == type ? failedByValue.get( arg ) : null;
+            candidates.andNot( failed != null ? failed : failedOther );
+            return true;
+        }
+
+        @Override
+        boolean removeFailed( double[] args, BitSet candidates ) {
+            if ( doubleValues == null ) {
+                return false;
+            }
+            //Double.compare() returns 0 iff Double.equals() holds
+            int i = Arrays.binarySearch( doubleValues, args[input] );
+            candidates.andNot( i >= 0 ? failedBySortedValue[i] : failedOther );
+            return true;
+        }
+
+        @Override
+        boolean removeFailed( int[] args, BitSet candidates ) {
+            if ( intValues == null ) {
+                return false;
+            }
+            int i = Arrays.binarySearch( intValues, args[input] );
+            candidates.andNot( i >= 0 ? failedBySortedValue[i] : failedOther );
+            return true;
+        }
+    }
+}
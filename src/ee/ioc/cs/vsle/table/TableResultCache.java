@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Cache of resolved queries of a table snapshot.
+ * Maps tuples of input values to positions of the row and the column
+ * the rules of the table select for these inputs. Output values are not
+ * cached, so undefined cells and default values are handled as without the cache.
+ *
+ * Only tuples of immutable values (boxed primitives and strings) are cached.
+ * When the cache is full, it is cleared. The cache belongs to a snapshot,
+ * so it is dropped together with the snapshot when the table is changed or reloaded.
+ */
+final class TableResultCache {
+
+    private static final Set<Class<?>> CACHEABLE_TYPES = new HashSet<Class<?>>( Arrays.<Class<?>>asList(
+            Integer.class, Long.class, Short.class, Byte.class, Double.class, Float.class,
+            String.class, Boolean.class, Character.class ) );
+
+    private final int maxSize;
+    private final ConcurrentMap<List<Object>, Long> positions = new ConcurrentHashMap<List<Object>, Long>();
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * @param maxSize maximum number of cached tuples
+     * @param hits counter of hits
+     * @param misses counter of misses
+     */
+    TableResultCache( int maxSize, AtomicLong hits, AtomicLong misses ) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @param args
+     * @return row position in the upper and column position in the lower half
+     * of the value, or -1 if the tuple is not cached
+     */
+    long get( Object[] args ) {
+        if( !isCacheable( args ) ) {
+            return -1;
+        }
+
+        Long pos = positions.get( Arrays.asList( args ) );
+
+        if( pos == null ) {
+            misses.incrementAndGet();
+            return -1;
+        }
+
+        hits.incrementAndGet();
+        return pos;
+    }
+
+    /**
+     * @param args
+     * @param rowPos
+     * @param colPos
+     */
+    void put( Object[] args, int rowPos, int colPos ) {
+        if( !isCacheable( args ) ) {
+            return;
+        }
+
+        if( positions.size() >= maxSize ) {
+            positions.clear();
+        }
+
+        positions.put( Arrays.asList( args.clone() ), ( (long) rowPos << 32 ) | colPos );
+    }
+
+    private static boolean isCacheable( Object[] args ) {
+        for ( Object arg : args ) {
+            if( arg == null || !CACHEABLE_TYPES.contains( arg.getClass() ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+
+import ee.ioc.cs.vsle.table.exception.*;
+import ee.ioc.cs.vsle.util.*;
+
+/**
+ * Immutable snapshot of a table version used for answering queries.
+ * Tables publish a new snapshot after they have been changed (copy-on-write),
+ * so any number of threads may query a snapshot without locking.
+ *
+ * If all inputs are doubles (ints) without constraints and the output is a double (int),
+ * the snapshot also answers queries with primitive arguments and results without boxing.
+ * Cell values of such outputs are kept in primitive arrays.
+ * All other queries are answered by boxing arguments and results.
+ */
+final class TableSnapshot {
+
+    private final String tableId;
+    private final TableFieldList<InputTableField> inputs;
+    private final List<Integer> rowIds;
+    private final List<Rule> hrules;
+    private final List<Integer> columnIds;
+    private final List<Rule> vrules;
+    private final TableQueryIndex index;
+    //[row position][column position] -> values of the cell, null if there is no such cell
+    private final Map<TableField, Object>[][] cells;
+    private final List<TableField> outputs;
+    private final TableField output;
+    private final boolean isAliasOutput;
+    //[row position * number of columns + column position] -> cell value, if defined
+    private final double[] doubleCells;
+    private final int[] intCells;
+    private final BitSet definedCells;
+    //null if results are not cached
+    private final TableResultCache resultCache;
+    //versions of the table and rules the snapshot has been taken from
+    private final int modCount;
+    private final int ruleVersion;
+
+    /**
+     * @param tableId
+     * @param inputs
+     * @param rowIds ordered row ids
+     * @param hrules
+     * @param columnIds ordered column ids
+     * @param vrules
+     * @param cells values of cells by row and column positions
+     * @param outputs
+     * @param output current output
+     * @param isAliasOutput
+     * @param resultCache cache of resolved queries or null
+     * @param modCount
+     * @param ruleVersion
+     */
+    TableSnapshot( String tableId, TableFieldList<InputTableField> inputs, List<Integer> rowIds, List<Rule> hrules,
+            List<Integer> columnIds, List<Rule> vrules, Map<TableField, Object>[][] cells,
+            List<TableField> outputs, TableField output, boolean isAliasOutput, TableResultCache resultCache,
+            int modCount, int ruleVersion ) {
+
+        this.tableId = tableId;
+        this.inputs = new TableFieldList<InputTableField>();
+        this.inputs.addAll( inputs );
+        this.rowIds = Collections.unmodifiableList( new ArrayList<Integer>( rowIds ) );
+        this.hrules = Collections.unmodifiableList( new ArrayList<Rule>( hrules ) );
+        this.columnIds = Collections.unmodifiableList( new ArrayList<Integer>( columnIds ) );
+        this.vrules = Collections.unmodifiableList( new ArrayList<Rule>( vrules ) );
+        this.cells = cells;
+        this.outputs = Collections.unmodifiableList( new ArrayList<TableField>( outputs ) );
+        this.output = output;
+        this.isAliasOutput = isAliasOutput;
+        this.resultCache = resultCache;
+        this.modCount = modCount;
+        this.ruleVersion = ruleVersion;
+
+        index = new TableQueryIndex( this.inputs, this.rowIds, this.hrules, this.columnIds, this.vrules );
+
+        //type of primitive queries, null if the table does not support them
+        String primitiveType = getPrimitiveType();
+        int size = rowIds.size() * columnIds.size();
+        doubleCells = TypeUtil.TYPE_DOUBLE.equals( primitiveType ) ? new double[size] : null;
+        intCells = TypeUtil.TYPE_INT.equals( primitiveType ) ? new int[size] : null;
+        definedCells = new BitSet( size );
+
+        if( primitiveType != null ) {
+            for ( int i = 0; i < rowIds.size(); i++ ) {
+                for ( int j = 0; j < columnIds.size(); j++ ) {
+                    Object value = cells[i][j] != null ? cells[i][j].get( output ) : null;
+                    int k = i * columnIds.size() + j;
+                    //undefined values (and default values) are taken from the map
+                    if( doubleCells != null && value instanceof Double ) {
+                        doubleCells[k] = (Double) value;
+                        definedCells.set( k );
+                    } else if( intCells != null && value instanceof Integer ) {
+                        intCells[k] = (Integer) value;
+                        definedCells.set( k );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return double or int if all inputs and the output are of this type, null otherwise
+     */
+    private String getPrimitiveType() {
+        if( isAliasOutput || output == null ) {
+            return null;
+        }
+
+        String type = output.getType();
+        if( !TypeUtil.TYPE_DOUBLE.equals( type ) && !TypeUtil.TYPE_INT.equals( type ) ) {
+            return null;
+        }
+
+        for ( InputTableField input : inputs ) {
+            if( !type.equals( input.getType() ) || !input.getConstraints().isEmpty() ) {
+                return null;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * @param modCount
+     * @param ruleVersion
+     * @return true if the snapshot has been taken from the given version
+     */
+    boolean isVersion( int modCount, int ruleVersion ) {
+        return this.modCount == modCount && this.ruleVersion == ruleVersion;
+    }
+
+    List<InputTableField> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @see Table#queryTable(Object[], boolean)
+     */
+    Object query( Object[] args, boolean verifyInputs ) {
+
+        if( verifyInputs ) {
+            if( inputs.size() != args.length )
+                throw new TableException( "Number of table inputs for " + tableId + " is incorrect!" );
+            TableInferenceEngine.verifyInputs( inputs, args );
+        }
+
+        long cached = resultCache != null ? resultCache.get( args ) : -1;
+        if( cached >= 0 ) {
+            return getOutputValue( (int) ( cached >>> 32 ), (int) cached );
+        }
+
+        int rowPos;
+        int colPos;
+        try {
+            rowPos = index.findRow( args );
+            colPos = rowPos >= 0 ? index.findColumn( args ) : rowPos;
+        } catch ( RuntimeException e ) {
+            //let the inference engine evaluate rules in the original order and report the error
+            rowPos = colPos = -2;
+        }
+
+        if( rowPos == -1 || colPos == -1 ) {
+            throw new TableException( "No valid rules for current input: " + Arrays.toString( args ) );
+        }
+
+        if( rowPos < 0 ) {
+            rowPos = rowIds.indexOf( TableInferenceEngine.checkRules( inputs, rowIds, hrules, args ) );
+        }
+        if( colPos < 0 ) {
+            colPos = columnIds.indexOf( TableInferenceEngine.checkRules( inputs, columnIds, vrules, args ) );
+        }
+
+        if( resultCache != null ) {
+            resultCache.put( args, rowPos, colPos );
+        }
+
+        return getOutputValue( rowPos, colPos );
+    }
+
+    /**
+     * @see Table#queryDouble(double[])
+     */
+    double queryDouble( double[] args ) {
+
+        if( doubleCells == null || inputs.size() != args.length ) {
+            return (Double) query( box( args ), true );
+        }
+
+        int rowPos;
+        int colPos;
+        try {
+            rowPos = index.findRow( args );
+            colPos = rowPos >= 0 ? index.findColumn( args ) : rowPos;
+        } catch ( RuntimeException e ) {
+            rowPos = colPos = -2;
+        }
+
+        if( rowPos == -1 || colPos == -1 ) {
+            throw new TableException( "No valid rules for current input: " + Arrays.toString( args ) );
+        }
+
+        if( rowPos < 0 || colPos < 0 ) {
+            return (Double) query( box( args ), true );
+        }
+
+        int k = rowPos * columnIds.size() + colPos;
+        return definedCells.get( k ) ? doubleCells[k] : (Double) getOutputValue( rowPos, colPos );
+    }
+
+    /**
+     * @see Table#queryInt(int[])
+     */
+    int queryInt( int[] args ) {
+
+        if( intCells == null || inputs.size() != args.length ) {
+            return (Integer) query( box( args ), true );
+        }
+
+        int rowPos;
+        int colPos;
+        try {
+            rowPos = index.findRow( args );
+            colPos = rowPos >= 0 ? index.findColumn( args ) : rowPos;
+        } catch ( RuntimeException e ) {
+            rowPos = colPos = -2;
+        }
+
+        if( rowPos == -1 || colPos == -1 ) {
+            throw new TableException( "No valid rules for current input: " + Arrays.toString( args ) );
+        }
+
+        if( rowPos < 0 || colPos < 0 ) {
+            return (Integer) query( box( args ), true );
+        }
+
+        int k = rowPos * columnIds.size() + colPos;
+        return definedCells.get( k ) ? intCells[k] : (Integer) getOutputValue( rowPos, colPos );
+    }
+
+    private static Object[] box( double[] args ) {
+        Object[] boxed = new Object[args.length];
+        for ( int i = 0; i < args.length; i++ ) {
+            boxed[i] = args[i];
+        }
+        return boxed;
+    }
+
+    private static Object[] box( int[] args ) {
+        Object[] boxed = new Object[args.length];
+        for ( int i = 0; i < args.length; i++ ) {
+            boxed[i] = args[i];
+        }
+        return boxed;
+    }
+
+    /**
+     * @see Table#getOutputValue(int, int)
+     */
+    private Object getOutputValue( int rowPos, int colPos ) {
+
+        int rowId = rowIds.get( rowPos );
+        int colId = columnIds.get( colPos );
+        Map<TableField, Object> cell = cells[rowPos][colPos];
+
+        if( cell == null ) {
+            throw new TableException( "Cell is null (rowId=" + rowId + ", colId=" + colId );
+        }
+
+        if( isAliasOutput ) {
+            List<Object> res = new ArrayList<Object>();
+            for ( TableField out : outputs ) {
+                Object val = getValue( cell, out );
+                if( val == null )
+                    throw new TableException( "Cell value for output " + out.getId() + " not specified" );
+                res.add( val );
+            }
+
+            return res.toArray();
+        }
+
+        Object res = getValue( cell, output );
+        if( res == null ) {
+            throw new TableCellValueUndefinedException( "Cell value not specified. Row: " + rowId + ", col: " + colId );
+        }
+        return res;
+    }
+
+    /**
+     * Returns the value and if it is null, returns the default value
+     */
+    private static Object getValue( Map<TableField, Object> cell, TableField field ) {
+        Object value;
+        return ( value = cell.get( field ) ) != null
+                    ? value
+                    : field.getDefaultValue();
+    }
+}
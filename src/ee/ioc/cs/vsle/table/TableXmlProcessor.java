@@ -48,6 +48,7 @@ public class TableXmlProcessor extends AbstractXmlProcessor {
     private static final String TBL_ATTR_ALIAS_TYPE = "alias_type";
     private static final String TBL_ATTR_DEFAULT = "default";
     private static final String TBL_ATTR_KIND = "kind";
+    private static final String TBL_ATTR_CACHE = "cache";
     //values
     private static final String TBL_ATTR_VALUE_ALIAS = "alias";
     
@@ -153,6 +154,9 @@ public class TableXmlProcessor extends AbstractXmlProcessor {
         
         Element tableNode = document.createElementNS( XML_NS_URI, TBL_ELEM_ROOT );
         tableNode.setAttribute( TBL_ATTR_ID, table.getTableId() );
+        if( table.getResultCacheSize() > 0 ) {
+            tableNode.setAttribute( TBL_ATTR_CACHE, Integer.toString( table.getResultCacheSize() ) );
+        }
         
         //save input vars
         Element inputNode = document.createElementNS( XML_NS_URI,TBL_ELEM_INPUT );
@@ -369,6 +373,14 @@ public class TableXmlProcessor extends AbstractXmlProcessor {
         
         Table table = new Table( tableRoot.getAttribute( TBL_ATTR_ID ) );
         
+        if( tableRoot.hasAttribute( TBL_ATTR_CACHE ) ) {
+            try {
+                table.setResultCacheSize( Integer.parseInt( tableRoot.getAttribute( TBL_ATTR_CACHE ) ) );
+            } catch ( NumberFormatException e ) {
+                throw new TableException( "Invalid size of the result cache: " + tableRoot.getAttribute( TBL_ATTR_CACHE ) );
+            }
+        }
+        
         NodeList nodes = tableRoot.getChildNodes();
         
         for (int i=0; i < nodes.getLength(); i++) {
@@ -0,0 +1,322 @@
+package ee.ioc.cs.vsle.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * System of linear equations used by generated programs for solving
+ * equations jointly. Row i stands for the equation
+ * sum of coefficient(i, j) * x(j) + constant(i) = 0.
+ * Coefficients of the same variable and constants of the same row are summed up.
+ *
+ * The system is solved by LU decomposition (Gaussian elimination) with partial pivoting.
+ * Small or dense systems are kept in a dense matrix, large sparse systems
+ * in sparse rows, so that only nonzero coefficients are stored and eliminated.
+ */
+public class LinearSystem {
+
+    /** Systems up to this size are always solved as dense */
+    private static final int MAX_DENSE_SIZE = 32;
+
+    /** Pivots smaller than this relative to the largest coefficient make the system singular */
+    private static final double SINGULARITY_THRESHOLD = 1e-12;
+
+    /** Pivots not smaller than this relative to the largest candidate are chosen by the number of nonzeros */
+    private static final double PIVOT_THRESHOLD = 0.1;
+
+    private final int size;
+    private final SparseRow[] rows;
+    private final double[] rhs;
+
+    /**
+     * @param size number of equations and unknowns
+     */
+    public LinearSystem( int size ) {
+        this.size = size;
+        rows = new SparseRow[size];
+        rhs = new double[size];
+        for ( int i = 0; i < size; i++ ) {
+            rows[i] = new SparseRow();
+        }
+    }
+
+    /**
+     * @param row equation
+     * @param col unknown
+     * @param value
+     */
+    public void addCoefficient( int row, int col, double value ) {
+        rows[row].add( col, value );
+    }
+
+    /**
+     * @param row equation
+     * @param value
+     */
+    public void addConstant( int row, double value ) {
+        rhs[row] -= value;
+    }
+
+    /**
+     * @return values of unknowns
+     * @throws ArithmeticException if the system is singular
+     */
+    public double[] solve() {
+
+        int nonzeros = 0;
+        double scale = 0;
+
+        for ( SparseRow row : rows ) {
+            row.compact();
+            nonzeros += row.count;
+            for ( int k = 0; k < row.count; k++ ) {
+                scale = Math.max( scale, Math.abs( row.values[k] ) );
+            }
+        }
+
+        double tolerance = scale * SINGULARITY_THRESHOLD;
+
+        if ( size <= MAX_DENSE_SIZE || nonzeros > (long) size * size / 8 ) {
+            return solveDense( tolerance );
+        }
+        return solveSparse( tolerance );
+    }
+
+    private double[] solveDense( double tolerance ) {
+
+        double[][] a = new double[size][size];
+        double[] b = rhs.clone();
+
+        for ( int i = 0; i < size; i++ ) {
+            SparseRow row = rows[i];
+            for ( int k = 0; k < row.count; k++ ) {
+                a[i][row.cols[k]] = row.values[k];
+            }
+        }
+
+        for ( int k = 0; k < size; k++ ) {
+
+            int pivot = k;
+            for ( int i = k + 1; i < size; i++ ) {
+                if ( Math.abs( a[i][k] ) > Math.abs( a[pivot][k] ) ) {
+                    pivot = i;
+                }
+            }
+
+            if ( !( Math.abs( a[pivot][k] ) > tolerance ) ) {
+                throw new ArithmeticException( "Linear system is singular" );
+            }
+
+            if ( pivot != k ) {
+                double[] tmp = a[pivot];
+                a[pivot] = a[k];
+                a[k] = tmp;
+                double t = b[pivot];
+                b[pivot] = b[k];
+                b[k] = t;
+            }
+
+            double[] pivotRow = a[k];
+
+            for ( int i = k + 1; i < size; i++ ) {
+                double factor = a[i][k] / pivotRow[k];
+                if ( factor != 0 ) {
+                    double[] r = a[i];
+                    for ( int j = k + 1; j < size; j++ ) {
+                        r[j] -= factor * pivotRow[j];
+                    }
+                    b[i] -= factor * b[k];
+                }
+            }
+        }
+
+        double[] x = new double[size];
+
+        for ( int i = size - 1; i >= 0; i-- ) {
+            double sum = b[i];
+            for ( int j = i + 1; j < size; j++ ) {
+                sum -= a[i][j] * x[j];
+            }
+            x[i] = sum / a[i][i];
+        }
+
+        return x;
+    }
+
+    private double[] solveSparse( double tolerance ) {
+
+        //rows not yet used as pivots, all their columns are not less than the current one
+        SparseRow[] remaining = rows.clone();
+        double[] b = rhs.clone();
+        int[] remainingRhs = new int[size];
+        for ( int i = 0; i < size; i++ ) {
+            remainingRhs[i] = i;
+        }
+        int remainingCount = size;
+
+        SparseRow[] upper = new SparseRow[size];
+        double[] upperRhs = new double[size];
+
+        for ( int k = 0; k < size; k++ ) {
+
+            double max = 0;
+            for ( int i = 0; i < remainingCount; i++ ) {
+                max = Math.max( max, Math.abs( remaining[i].get( k ) ) );
+            }
+
+            if ( !( max > tolerance ) ) {
+                throw new ArithmeticException( "Linear system is singular" );
+            }
+
+            //among large enough pivots, prefer the sparsest row to limit fill-in
+            int pivot = -1;
+            for ( int i = 0; i < remainingCount; i++ ) {
+                if ( Math.abs( remaining[i].get( k ) ) >= PIVOT_THRESHOLD * max
+                        && ( pivot < 0 || remaining[i].count < remaining[pivot].count ) ) {
+                    pivot = i;
+                }
+            }
+
+            SparseRow pivotRow = remaining[pivot];
+            double pivotRhs = b[remainingRhs[pivot]];
+            double pivotValue = pivotRow.values[0];
+
+            remainingCount--;
+            remaining[pivot] = remaining[remainingCount];
+            remainingRhs[pivot] = remainingRhs[remainingCount];
+
+            upper[k] = pivotRow;
+            upperRhs[k] = pivotRhs;
+
+            for ( int i = 0; i < remainingCount; i++ ) {
+                double value = remaining[i].get( k );
+                if ( value != 0 ) {
+                    double factor = value / pivotValue;
+                    remaining[i] = remaining[i].eliminate( factor, pivotRow );
+                    b[remainingRhs[i]] -= factor * pivotRhs;
+                }
+            }
+        }
+
+        double[] x = new double[size];
+
+        for ( int i = size - 1; i >= 0; i-- ) {
+            SparseRow row = upper[i];
+            double sum = upperRhs[i];
+            for ( int k = 1; k < row.count; k++ ) {
+                sum -= row.values[k] * x[row.cols[k]];
+            }
+            x[i] = sum / row.values[0];
+        }
+
+        return x;
+    }
+
+    /**
+     * Row of a sparse matrix, columns are kept in ascending order after compacting
+     */
+    private static class SparseRow {
+
+        private int[] cols = new int[4];
+        private double[] values = new double[4];
+        private int count;
+
+        void add( int col, double value ) {
+            if ( count == cols.length ) {
+                cols = Arrays.copyOf( cols, count * 2 );
+                values = Arrays.copyOf( values, count * 2 );
+            }
+            cols[count] = col;
+            values[count] = value;
+            count++;
+        }
+
+        /**
+         * Sorts columns, sums up duplicates and removes zeros
+         */
+        void compact() {
+
+            Integer[] order = new Integer[count];
+            for ( int k = 0; k < count; k++ ) {
+                order[k] = k;
+            }
+            final int[] c = cols;
+            Arrays.sort( order, new Comparator<Integer>() {
+                @Override
+                public int compare( Integer o1, Integer o2 ) {
+                    return c[o1] < c[o2] ? -1 : c[o1] == c[o2] ? 0 : 1;
+                }
+            } );
+
+            int[] newCols = new int[Math.max( count, 1 )];
+            double[] newValues = new double[Math.max( count, 1 )];
+            int n = 0;
+
+            for ( int k = 0; k < count; k++ ) {
+                int col = cols[order[k]];
+                if ( n > 0 && newCols[n - 1] == col ) {
+                    newValues[n - 1] += values[order[k]];
+                } else {
+                    newCols[n] = col;
+                    newValues[n] = values[order[k]];
+                    n++;
+                }
+            }
+
+            count = 0;
+            for ( int k = 0; k < n; k++ ) {
+                if ( newValues[k] != 0 ) {
+                    newCols[count] = newCols[k];
+                    newValues[count] = newValues[k];
+                    count++;
+                }
+            }
+            cols = newCols;
+            values = newValues;
+        }
+
+        /**
+         * @return the value of the column if it is the first one, zero otherwise
+         */
+        double get( int col ) {
+            return count > 0 && cols[0] == col ? values[0] : 0;
+        }
+
+        /**
+         * @return this row minus factor * pivot row without the first column
+         */
+        SparseRow eliminate( double factor, SparseRow pivot ) {
+
+            SparseRow result = new SparseRow();
+            result.cols = new int[count + pivot.count];
+            result.values = new double[count + pivot.count];
+
+            int i = 1;
+            int j = 1;
+            int n = 0;
+
+            while ( i < count || j < pivot.count ) {
+                int col;
+                double value;
+                if ( j >= pivot.count || ( i < count && cols[i] < pivot.cols[j] ) ) {
+                    col = cols[i];
+                    value = values[i++];
+                } else if ( i >= count || pivot.cols[j] < cols[i] ) {
+                    col = pivot.cols[j];
+                    value = -factor * pivot.values[j++];
+                } else {
+                    col = cols[i];
+                    value = values[i++] - factor * pivot.values[j++];
+                }
+                if ( value != 0 ) {
+                    result.cols[n] = col;
+                    result.values[n] = value;
+                    n++;
+                }
+            }
+
+            result.count = n;
+            return result;
+        }
+    }
+}
@@ -76,12 +76,21 @@ public class ClassGraphics implements Serializable {
 	} // draw
 
 	void drawSpecial(int xPos, int yPos, float Xsize, float Ysize, Graphics2D g2, String name, String value) {
+		drawSpecial(xPos, yPos, Xsize, Ysize, g2, name, value, getAngle());
+	} // drawSpecial
+
+	/**
+	 * Draws the shapes with texts rotated by the given angle. The graphics
+	 * of a field are shared by all objects of a class and may be drawn by
+	 * several threads at once, so the angle of an object is not stored here.
+	 */
+	void drawSpecial(int xPos, int yPos, float Xsize, float Ysize, Graphics2D g2, String name, String value, double angle) {
 		Shape s;
 
 		for (int i = 0; i < shapes.size(); i++) {
 			s = shapes.get(i);
 			if (s instanceof Text)
-				((Text)s).drawSpecial(xPos, yPos, Xsize, Ysize, g2, name, value, getAngle());
+				((Text)s).drawSpecial(xPos, yPos, Xsize, Ysize, g2, name, value, angle);
 			else
 				s.draw(xPos, yPos, Xsize, Ysize, g2);
 		}
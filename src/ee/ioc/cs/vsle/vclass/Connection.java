@@ -8,7 +8,9 @@ import java.util.ArrayList;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Stroke;
+import java.awt.geom.Path2D;
 
 import javax.xml.transform.sax.TransformerHandler;
 
@@ -44,6 +46,9 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 	 */
 	private boolean strict;
 
+	// the index of the scheme the connection is in, see ConnectionList.setIndexed()
+	private transient SpatialIndex<Connection> index;
+
 	/**
 	 * Class constructor. The second port is left disconnected by
 	 * this constructor.
@@ -163,6 +168,8 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 			breakPoints.add(p);
 		else
 			breakPoints.add(index, p);
+
+		boundsChanged();
 	} // addBreakPoint
 
 	/**
@@ -174,14 +181,17 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 			breakPoints = new ArrayList<Point>();
 		
 		breakPoints.add(p);
+		boundsChanged();
 	} // addBreakPoint
 
 	/**
 	 * Removes the last breakpoint from the connection line.
 	 */
 	public void removeBreakPoint() {
-		if (breakPoints != null && breakPoints.size() > 0)
+		if (breakPoints != null && breakPoints.size() > 0) {
 			breakPoints.remove(breakPoints.size() - 1);
+			boundsChanged();
+		}
 	} // removeBreakPoint
 
 	/**
@@ -192,8 +202,10 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 	 */
 	public boolean removeBreakPoint(int pointX, int pointY) {
 		Point bp = breakPointContains(pointX, pointY);
-		if (bp != null)
-			return breakPoints.remove(bp);
+		if (bp != null && breakPoints.remove(bp)) {
+			boundsChanged();
+			return true;
+		}
 		
 		return false;
 	}
@@ -204,8 +216,9 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 	 * @return true if a breakpoint was removed, false otherwise
 	 */
 	public boolean removeBreakPoint(int index) {
-	    if (breakPoints != null) {
-	        return breakPoints.remove(index) != null;
+	    if (breakPoints != null && breakPoints.remove(index) != null) {
+	        boundsChanged();
+	        return true;
 	    }
 	    return false;
 	}
@@ -221,7 +234,59 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 				p.x += dx;
 				p.y += dy; 
 			}
+			boundsChanged();
+		}
+	}
+
+	/**
+	 * Moves a breakpoint of this connection to the specified location.
+	 * @param p the breakpoint
+	 * @param x new X coordinate
+	 * @param y new Y coordinate
+	 */
+	public void moveBreakPoint(Point p, int x, int y) {
+		p.x = x;
+		p.y = y;
+		boundsChanged();
+	}
+
+	/**
+	 * Returns the area on the canvas covered by the connection line
+	 * including the hilighting of selected connections.
+	 * @return the bounds of the connection on the canvas
+	 */
+	public Rectangle getCanvasBounds() {
+		Rectangle bounds = new Rectangle(getBeginPort().getAbsoluteX(),
+				getBeginPort().getAbsoluteY(), 0, 0);
+
+		if (getEndPort() != null)
+			bounds.add(getEndPort().getAbsoluteX(), getEndPort().getAbsoluteY());
+
+		if (breakPoints != null) {
+			for (Point p : breakPoints)
+				bounds.add(p.x, p.y);
 		}
+
+		int margin = (int) NEAR_DISTANCE + 3;
+		bounds.grow(margin, margin);
+		return bounds;
+	}
+
+	/**
+	 * Has to be called after the connection line is changed,
+	 * updates the index of the scheme.
+	 */
+	void boundsChanged() {
+		if (index != null)
+			index.update(this);
+	}
+
+	SpatialIndex<Connection> getIndex() {
+		return index;
+	}
+
+	void setIndex(SpatialIndex<Connection> index) {
+		this.index = index;
 	}
 
 	/**
@@ -404,6 +469,25 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
 		}
 	} // drawRelation
 
+	/**
+	 * Appends the connection line to the path, so that many connections
+	 * can be drawn at once. Implicit connections are not added.
+	 * @param path the path
+	 */
+	public void addToPath(Path2D path) {
+		if (isImplicit())
+			return;
+
+		path.moveTo(getBeginPort().getAbsoluteX(), getBeginPort().getAbsoluteY());
+
+		if (breakPoints != null) {
+			for (Point p : breakPoints)
+				path.lineTo(p.x, p.y);
+		}
+
+		path.lineTo(getEndPort().getAbsoluteX(), getEndPort().getAbsoluteY());
+	}
+
 	/**
 	 * Shows whether this connection was created implicitly.
 	 * Implicit connections are invisible and created and removed behind
@@ -498,6 +582,7 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
      */
     public void setBeginPort( Port beginPort ) {
         this.beginPort = beginPort;
+        boundsChanged();
     }
 
     /**
@@ -512,6 +597,7 @@ public class Connection implements ee.ioc.cs.vsle.api.Connection, Serializable {
      */
     public void setEndPort( Port endPort ) {
         this.endPort = endPort;
+        boundsChanged();
     }
 
     /**
@@ -1,7 +1,9 @@
 package ee.ioc.cs.vsle.vclass;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * A <tt>list</tt> for storing and manipulating connections
@@ -11,6 +13,10 @@ public class ConnectionList extends ArrayList<Connection> {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient SpatialIndex<Connection> index;
+	// connections have been replaced by set() since the last sync of the index
+	private transient boolean replaced;
+
 	/**
 	 * Class constructor.
 	 */
@@ -32,6 +38,56 @@ public class ConnectionList extends ArrayList<Connection> {
 			this.add(conn);
 	}
 
+	/**
+	 * Turns on or off the spatial index of the list. {@link #nearPoint(int, int)}
+	 * and {@link #getConnectionsIn(Rectangle)} of an indexed list check only
+	 * the connections near the point or the area.
+	 * @param indexed true to index the list
+	 * @see ObjectList#setIndexed(boolean)
+	 */
+	public void setIndexed(boolean indexed) {
+		if (!indexed && index != null) {
+			index.clear();
+			index = null;
+		} else if (indexed && index == null) {
+			index = new SpatialIndex<Connection>() {
+
+				@Override
+				protected Rectangle getBounds(Connection con) {
+					return con.getCanvasBounds();
+				}
+
+				@Override
+				protected SpatialIndex<Connection> getIndex(Connection con) {
+					return con.getIndex();
+				}
+
+				@Override
+				protected void setIndex(Connection con, SpatialIndex<Connection> idx) {
+					con.setIndex(idx);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns the connections that may be visible in the specified area.
+	 * @param area the area
+	 * @return the connections whose bounds intersect the area in the order
+	 * they are in this list
+	 */
+	public List<Connection> getConnectionsIn(Rectangle area) {
+		if (index == null)
+			return this;
+
+		if (replaced) {
+			replaced = false;
+			index.invalidate();
+		}
+		index.sync(this, modCount);
+		return index.query(area);
+	}
+
 	/**
 	 * Returns a connection if the distance of a pointer location is closer than
 	 * Connection.NEAR_DISTANCE pixels from the line. Selected connections
@@ -45,9 +101,10 @@ public class ConnectionList extends ArrayList<Connection> {
 	 */
 	public Connection nearPoint(int x, int y) {
 		Connection relation = null;
+		List<Connection> connections = getConnectionsIn(new Rectangle(x, y, 1, 1));
 
-		for (int i = 0; i < this.size(); i++) {
-			Connection rel = this.get(i);
+		for (int i = 0; i < connections.size(); i++) {
+			Connection rel = connections.get(i);
 			if (rel.distanceFromPoint(x, y) < Connection.NEAR_DISTANCE
 					// ignore implicit connections, otherwise connections
 					// between strict ports or between relation class endport
@@ -180,6 +237,17 @@ public class ConnectionList extends ArrayList<Connection> {
 		return modified;
 	}
 
+	/**
+	 * Replaces a connection, the index is updated on the next query.
+	 * The modification count is not changed, so that the list can be
+	 * sorted and modified by ListIterator.set().
+	 */
+	@Override
+	public Connection set(int i, Connection con) {
+		replaced = true;
+		return super.set(i, con);
+	}
+
 	/**
 	 * Removes all of the connections from the list. The connections
 	 * are removed from the connection lists of the ports also.
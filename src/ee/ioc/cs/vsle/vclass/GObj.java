@@ -73,6 +73,9 @@ public class GObj implements Serializable, Cloneable,
     private boolean drawInstanceName = false;
     
     private String extendedSpec;
+
+    // the index of the scheme the object is in, see ObjectList.setIndexed()
+    private transient SpatialIndex<GObj> index;
     
     public GObj() {
         // default constructor
@@ -150,6 +153,55 @@ public class GObj implements Serializable, Cloneable,
         }
     }
 
+    /**
+     * Returns the area on the canvas the object covers, including ports outside
+     * the object, selection marks and rotation.
+     * 
+     * @return the bounds of the object on the canvas
+     */
+    public Rectangle getCanvasBounds() {
+        int x1 = Math.min( 0, Math.min( getPortOffsetX1(), (int) ( getXsize() * getPortOffsetX1() ) ) );
+        int y1 = Math.min( 0, Math.min( getPortOffsetY1(), (int) ( getYsize() * getPortOffsetY1() ) ) );
+        int x2 = Math.max( (int) ( getXsize() * ( getWidth() + Math.max( 0, getPortOffsetX2() ) ) ),
+                getRealWidth() + Math.max( 0, getPortOffsetX2() ) );
+        int y2 = Math.max( (int) ( getYsize() * ( getHeight() + Math.max( 0, getPortOffsetY2() ) ) ),
+                getRealHeight() + Math.max( 0, getPortOffsetY2() ) );
+
+        Rectangle bounds = new Rectangle( getX() + x1, getY() + y1, x2 - x1, y2 - y1 );
+
+        if ( getAngle() != 0.0 ) {
+            bounds = AffineTransform.getRotateInstance( getAngle(), getCenterX(), getCenterY() )
+                    .createTransformedShape( bounds ).getBounds();
+        }
+        bounds.grow( CORNER_SIZE + 2, CORNER_SIZE + 2 );
+
+        return bounds;
+    }
+
+    /**
+     * Has to be called after the position, size or rotation of the object
+     * is changed, updates the index of the scheme and the connections
+     * of the object.
+     */
+    protected void boundsChanged() {
+        if ( index != null ) {
+            index.update( this );
+        }
+        for ( Port port : ports ) {
+            for ( Connection con : port.getConnectionList() ) {
+                con.boundsChanged();
+            }
+        }
+    }
+
+    SpatialIndex<GObj> getIndex() {
+        return index;
+    }
+
+    void setIndex( SpatialIndex<GObj> index ) {
+        this.index = index;
+    }
+
     public Port portContains( int pointX, int pointY ) {
         Point p = toObjectSpace( pointX, pointY );
         Port port;
@@ -300,6 +352,19 @@ public class GObj implements Serializable, Cloneable,
         return ports;
     }
 
+    /**
+     * @param portId the id of the port, the name of the port if it has no id
+     * @return the port or null if the object does not have such a port
+     */
+    public Port getPort( String portId ) {
+        for ( Port port : ports ) {
+            if ( port.getId() != null ? port.getId().equals( portId ) : port.getName().equals( portId ) ) {
+                return port;
+            }
+        }
+        return null;
+    }
+
     public List<ee.ioc.cs.vsle.api.Port> getPorts() {
         return new ArrayList<ee.ioc.cs.vsle.api.Port>(ports);
     }
@@ -408,6 +473,27 @@ public class GObj implements Serializable, Cloneable,
         g2.setTransform( origTransform );
     }
 
+    /**
+     * Draws the shapes of the object without ports, the instance name and
+     * field values, used when the scheme is zoomed out.
+     * 
+     * @param g2
+     * @param scale
+     */
+    public void drawSimplified( Graphics2D g2, float scale ) {
+        AffineTransform origTransform = g2.getTransform();
+        g2.rotate( getAngle(), getCenterX(), getCenterY() );
+
+        draw( getX(), getY(), getXsize(), getYsize(), g2 );
+
+        if ( isSelected() ) {
+            g2.setColor( Color.black );
+            drawSelectionMarks( g2, scale );
+        }
+
+        g2.setTransform( origTransform );
+    }
+
     private void drawSelectionMarks( Graphics g, float scale ) {
         g.fillRect( getX() + getPortOffsetX1() - CORNER_SIZE - 1, getY() + getPortOffsetY1() - CORNER_SIZE - 1, CORNER_SIZE, CORNER_SIZE );
 
@@ -448,6 +534,8 @@ public class GObj implements Serializable, Cloneable,
             // Only one superclass is permitted
             obj.setSuperClass(false);
 
+            obj.index = null;
+
             return obj;
         } catch ( CloneNotSupportedException e ) {
             db.p( "Unable to clone." );
@@ -461,6 +549,7 @@ public class GObj implements Serializable, Cloneable,
 
     public void setXsize( float xsize ) {
         Xsize = xsize;
+        boundsChanged();
     }
 
     public float getYsize() {
@@ -469,26 +558,31 @@ public class GObj implements Serializable, Cloneable,
 
     public void setYsize( float ysize ) {
         Ysize = ysize;
+        boundsChanged();
     }
 
     @Override
     public void setX( int x ) {
         // Editor GUI does not support negative coordinates properly
         this.x = x < 0 ? DEFAULT_X : x;
+        boundsChanged();
     }
 
     @Override
     public void setY( int y ) {
         // Editor GUI does not support negative coordinates properly
         this.y = y < 0 ? DEFAULT_Y : y;
+        boundsChanged();
     }
 
     public void setWidth( int width ) {
         this.width = width;
+        boundsChanged();
     }
 
     public void setHeight( int height ) {
         this.height = height;
+        boundsChanged();
     }
 
     /**
@@ -705,6 +799,7 @@ public class GObj implements Serializable, Cloneable,
      */
     public void setAngle( double theta ) {
         angle = theta;
+        boundsChanged();
     }
 
     /**
@@ -755,6 +850,13 @@ public class GObj implements Serializable, Cloneable,
         this.drawPorts = drawPorts;
     }
 
+    /**
+     * @return the drawInstanceName
+     */
+    public boolean isDrawInstanceName() {
+        return drawInstanceName;
+    }
+
     /**
      * @param drawInstanceName the drawInstanceName to set
      */
@@ -809,6 +911,7 @@ public class GObj implements Serializable, Cloneable,
      */
     public void setPortOffsetX1( int portOffsetX1 ) {
         this.portOffsetX1 = portOffsetX1;
+        boundsChanged();
     }
 
     /**
@@ -823,6 +926,7 @@ public class GObj implements Serializable, Cloneable,
      */
     public void setPortOffsetX2( int portOffsetX2 ) {
         this.portOffsetX2 = portOffsetX2;
+        boundsChanged();
     }
 
     /**
@@ -837,6 +941,7 @@ public class GObj implements Serializable, Cloneable,
      */
     public void setPortOffsetY1( int portOffsetY1 ) {
         this.portOffsetY1 = portOffsetY1;
+        boundsChanged();
     }
 
     /**
@@ -851,6 +956,7 @@ public class GObj implements Serializable, Cloneable,
      */
     public void setPortOffsetY2( int portOffsetY2 ) {
         this.portOffsetY2 = portOffsetY2;
+        boundsChanged();
     }
 
     /**
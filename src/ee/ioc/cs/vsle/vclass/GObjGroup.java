@@ -189,6 +189,15 @@ public class GObjGroup extends GObj implements Serializable {
 	}
 
 
+	@Override
+	public void drawSimplified(Graphics2D g, float scale) {
+		g.setColor(Color.gray);
+		g.drawRect(getX(), getY(), (int) (getWidth() * getXsize()), (int) (getHeight() * getYsize()));
+
+		for (int j = 0; j < objects.size(); j++)
+			objects.get(j).drawSimplified(g, scale);
+	}
+
 	@Override
 	public void setXsize(float s) {
 		float change = s / getXsize();
@@ -2,8 +2,10 @@ package ee.ioc.cs.vsle.vclass;
 
 import ee.ioc.cs.vsle.util.*;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * A <tt>List</tt> for storing and organizing scheme objects.
@@ -12,6 +14,10 @@ public class ObjectList extends ArrayList<GObj> {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient SpatialIndex<GObj> index;
+	// objects have been replaced by set() since the last sync of the index
+	private transient boolean replaced;
+
 	public ObjectList() {
 		super();
 	}
@@ -30,6 +36,65 @@ public class ObjectList extends ArrayList<GObj> {
 			this.add(obj);
 	}
 
+	/**
+	 * Turns on or off the spatial index of the list. Hit tests and
+	 * {@link #getObjectsIn(Rectangle)} of an indexed list check only
+	 * the objects near the point or the area. An object can be in one
+	 * indexed list at a time, only the list of the scheme shown on
+	 * the canvas should be indexed.
+	 * @param indexed true to index the list
+	 */
+	public void setIndexed(boolean indexed) {
+		if (!indexed && index != null) {
+			index.clear();
+			index = null;
+		} else if (indexed && index == null) {
+			index = new SpatialIndex<GObj>() {
+
+				@Override
+				protected Rectangle getBounds(GObj obj) {
+					return obj.getCanvasBounds();
+				}
+
+				@Override
+				protected SpatialIndex<GObj> getIndex(GObj obj) {
+					return obj.getIndex();
+				}
+
+				@Override
+				protected void setIndex(GObj obj, SpatialIndex<GObj> idx) {
+					obj.setIndex(idx);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns the objects that may be visible in the specified area.
+	 * @param area the area
+	 * @return the objects whose bounds intersect the area in the order
+	 * they are in this list
+	 */
+	public List<GObj> getObjectsIn(Rectangle area) {
+		if (index == null)
+			return this;
+
+		if (replaced) {
+			replaced = false;
+			index.invalidate();
+		}
+		index.sync(this, modCount);
+		return index.query(area);
+	}
+
+	/**
+	 * @return objects that may contain the point, all objects if
+	 * the list is not indexed
+	 */
+	private List<GObj> getObjectsAt(int x, int y) {
+		return getObjectsIn(new Rectangle(x, y, 1, 1));
+	}
+
 	public void sendToBack(GObj obj) {
 		this.remove(obj);
 		this.add(0, obj);
@@ -64,8 +129,9 @@ public class ObjectList extends ArrayList<GObj> {
 	}
 
 	public GObj checkInside(int x, int y, GObj asker) {
-		for (int i = this.size() - 1; i >= 0; i--) {
-			GObj obj = this.get(i);
+		List<GObj> objects = getObjectsAt(x, y);
+		for (int i = objects.size() - 1; i >= 0; i--) {
+			GObj obj = objects.get(i);
 			if (obj.contains(x, y) && obj != asker) {
 				return obj;
 			}
@@ -74,10 +140,22 @@ public class ObjectList extends ArrayList<GObj> {
 	}
 
 	public void selectObjectsInsideBox(int x1, int y1, int x2, int y2, boolean appendSelection) {
-		for (GObj obj : this) {
-		    //select that are inside and deselect if outside the box
-		    obj.setSelected( obj.isInside(x1, y1, x2, y2) 
-		            || ( appendSelection && obj.isSelected() ) );
+		if (index == null) {
+			for (GObj obj : this) {
+			    //select that are inside and deselect if outside the box
+			    obj.setSelected( obj.isInside(x1, y1, x2, y2) 
+			            || ( appendSelection && obj.isSelected() ) );
+			}
+			return;
+		}
+
+		// only the objects intersecting the box can be inside it
+		if (!appendSelection)
+			clearSelected();
+
+		for (GObj obj : getObjectsIn(new Rectangle(x1, y1, x2 - x1, y2 - y1))) {
+			if (obj.isInside(x1, y1, x2, y2))
+				obj.setSelected(true);
 		}
 	}
 
@@ -161,7 +239,7 @@ public class ObjectList extends ArrayList<GObj> {
 
 	public int controlRectContains(int x, int y) {
 		int corner;
-		for (GObj obj: this) {
+		for (GObj obj: getObjectsAt(x, y)) {
 			corner = obj.controlRectContains(x, y);
 			if (corner != 0) {
 				return corner;
@@ -173,14 +251,9 @@ public class ObjectList extends ArrayList<GObj> {
 	public Port getPort(String objName, String portId) {
 		for (GObj obj : this) {
 			if (obj.getName().equals(objName)) {
-				for (Port port : obj.getPortList()) {
-					if (port.getId() != null) {
-						if (port.getId().equals(portId)) {
-							return port;
-						}
-					} else if (port.getName().equals(portId)) {
-						return port;
-					}
+				Port port = obj.getPort(portId);
+				if (port != null) {
+					return port;
 				}
 			}
 		}
@@ -271,6 +344,17 @@ public class ObjectList extends ArrayList<GObj> {
         return true;
     }
 
+    /**
+     * Replaces an object, the index is updated on the next query.
+     * The modification count is not changed, so that the list can be
+     * sorted and modified by ListIterator.set().
+     */
+    @Override
+    public GObj set( int i, GObj e ) {
+        replaced = true;
+        return super.set( i, e );
+    }
+
     public static ObjectList unfold(ObjectList objects) {
         ObjectList objects2 = new ObjectList();
         GObj obj;
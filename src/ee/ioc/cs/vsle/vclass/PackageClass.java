@@ -137,9 +137,8 @@ public class PackageClass implements Serializable {
             obj.addSpecField( newField );
         }
         
-		obj.setShapes( new ArrayList<Shape>(graphics.getShapes().size()) );
-		for (Shape shape : graphics.getShapes())
-			obj.getShapes().add(shape.clone());
+		// shapes are not modified by instances, they are shared like by clones of objects
+		obj.setShapes( graphics.getShapes() );
 
 		ArrayList<Port> newPorts = new ArrayList<Port>(getPorts().size());
 		for (Port port : getPorts()) {
@@ -193,14 +192,9 @@ public class PackageClass implements Serializable {
 	 * false otherwise
 	 */
 	public boolean hasField(String fieldName, String fieldType) {
-		if (getFields() == null)
-			return false;
-		
-		for (ClassField f : getFields()) {
-			if (f.getName().equals(fieldName) && f.getType().equals(fieldType))
-				return true;
-		}
-		return false;
+		ClassField f = propFields.get(fieldName);
+
+		return f != null && f.getType().equals(fieldType);
 	}
 
 	/**
@@ -3,6 +3,7 @@ package ee.ioc.cs.vsle.vclass;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 
 import javax.xml.transform.sax.TransformerHandler;
@@ -41,6 +42,17 @@ public class RelObj extends GObj {
 		return false;
 	}
 
+	/**
+	 * The bounds of a relation object cover the line between its end points.
+	 */
+	@Override
+	public Rectangle getCanvasBounds() {
+		Rectangle bounds = new Rectangle(getX(), getY(), 0, 0);
+		bounds.add(getEndX(), getEndY());
+		bounds.grow(getHeight() + CORNER_SIZE + 4, getHeight() + CORNER_SIZE + 4);
+		return bounds;
+	}
+
 	@Override
 	protected void draw(int xPos, int yPos, float Xsize, float Ysize, Graphics2D g2) {
         AffineTransform origTransform = g2.getTransform();
@@ -61,14 +73,12 @@ public class RelObj extends GObj {
 
 		for (ClassField field: getFields()) {
 			if (field.getDefaultGraphics() != null) {
-				field.getDefaultGraphics().setAngle( getAngle() );
 				field.getDefaultGraphics().drawSpecial(xModifier,
-					yModifier, getXsize(), getYsize(), g, field.getName(), field.value);
+					yModifier, getXsize(), getYsize(), g, field.getName(), field.value, getAngle());
 			}
 			if (field.isKnown() && field.getKnownGraphics() != null) {
-				field.getKnownGraphics().setAngle( getAngle() );
 				field.getKnownGraphics().drawSpecial(xModifier,
-					yModifier, getXsize(), getYsize(), g, field.getName(), field.value);
+					yModifier, getXsize(), getYsize(), g, field.getName(), field.value, getAngle());
 			}
 		}
 
@@ -77,6 +87,16 @@ public class RelObj extends GObj {
 			drawSelectionMarks(g);
 	}
 
+	@Override
+	public void drawSimplified(Graphics2D g, float scale) {
+		draw(getX(), getY(), getXsize(), getYsize(), g);
+
+		if (isSelected()) {
+			g.setColor(Color.black);
+			drawSelectionMarks(g);
+		}
+	}
+
 	/**
 	 * Sets the coordinates of the end points of the relation object. The fields
 	 * Xsize and angle are updated accordingly.
@@ -215,6 +235,7 @@ public class RelObj extends GObj {
      */
     public void setEndX( int endX ) {
         this.endX = endX;
+        boundsChanged();
     }
 
     /**
@@ -229,6 +250,7 @@ public class RelObj extends GObj {
      */
     public void setEndY( int endY ) {
         this.endY = endY;
+        boundsChanged();
     }
 
     /**
@@ -110,21 +110,27 @@ public class Scheme implements Serializable, ee.ioc.cs.vsle.api.Scheme, ISpecExt
      * Repaint the canvas.  This call gives the ClassPainters a chance to
      * update the visuals when, for example, the values of the fields have
      * changed.
+     * Repaints requested within a frame interval are coalesced.
      */
     @Override
     public void repaint() {
         if (canvas == Editor.getInstance().getCurrentCanvas()) {
-            canvas.repaint(); // TODO should repaint only the drawingarea
+            SchemeUpdateScheduler.getInstance(canvas).requestRepaint();
         }
     }
 
     /*
-     * TODO do we need this method?
+     * Repaints an area of the scheme, requests within a frame interval
+     * are coalesced into one dirty area.
      * 
      * @see ee.ioc.cs.vsle.api.Scheme#repaint(int, int, int, int)
      */
     @Override
     public void repaint(int x, int y, int width, int height) {
+        if (canvas == Editor.getInstance().getCurrentCanvas()) {
+            SchemeUpdateScheduler.getInstance(canvas).requestRepaint(
+                    new java.awt.Rectangle(x, y, width, height));
+        }
     }
 
     /*
@@ -161,6 +167,16 @@ public class Scheme implements Serializable, ee.ioc.cs.vsle.api.Scheme, ISpecExt
     public Object queryTable( String[] inputIds, String tableId, Object[] args ) {
         return TableManager.getTable( getPackage(), tableId ).queryTable( inputIds, args );
     }
+
+    @Override
+    public double queryDouble( String tableId, double[] args ) {
+        return TableManager.getTable( getPackage(), tableId ).queryDouble( args );
+    }
+
+    @Override
+    public int queryInt( String tableId, int[] args ) {
+        return TableManager.getTable( getPackage(), tableId ).queryInt( args );
+    }
     
     @Override
     public void rerun() {
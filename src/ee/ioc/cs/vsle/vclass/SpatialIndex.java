@@ -0,0 +1,279 @@
+package ee.ioc.cs.vsle.vclass;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Uniform grid over the bounds of the elements of a list, used for finding
+ * scheme objects and connections near a point or inside the visible area
+ * without testing every element.
+ *
+ * Elements moving on the canvas report their new bounds by calling
+ * {@link #update(Object)}. Additions and removals are not reported,
+ * the index is brought up to date with the list by {@link #sync(List, int)}
+ * before each query when the modification count of the list has changed.
+ * Results are in the order of the list, so that the topmost object
+ * can be chosen like before.
+ *
+ * @param <T> type of the elements
+ */
+abstract class SpatialIndex<T> {
+
+    static final int CELL_SIZE = 128;
+    // elements covering more cells are not put into cells but tested on each query
+    private static final int MAX_CELLS = 64;
+
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<T, Entry<T>>();
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<Long, List<Entry<T>>>();
+    private final List<Entry<T>> large = new ArrayList<Entry<T>>();
+
+    private int modCount = -1;
+    private int generation;
+
+    /**
+     * @param item
+     * @return the area on the canvas covered by the element
+     */
+    protected abstract Rectangle getBounds( T item );
+
+    /**
+     * @param item
+     * @return the index the element reports its moves to
+     */
+    protected abstract SpatialIndex<T> getIndex( T item );
+
+    /**
+     * @param item
+     * @param index the index the element has to report its moves to, null if none
+     */
+    protected abstract void setIndex( T item, SpatialIndex<T> index );
+
+    /**
+     * Adds new elements of the list and drops removed ones
+     *
+     * @param items the indexed list
+     * @param listModCount the modification count of the list
+     */
+    void sync( List<? extends T> items, int listModCount ) {
+
+        if ( listModCount == modCount ) {
+            return;
+        }
+        modCount = listModCount;
+        generation++;
+
+        for ( int i = 0; i < items.size(); i++ ) {
+            T item = items.get( i );
+            Entry<T> entry = entries.get( item );
+
+            if ( entry == null ) {
+                entry = new Entry<T>( item );
+                entries.put( item, entry );
+                setIndex( item, this );
+                insert( entry, getBounds( item ) );
+            }
+            entry.order = i;
+            entry.generation = generation;
+        }
+
+        for ( Iterator<Entry<T>> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry<T> entry = it.next();
+
+            if ( entry.generation != generation ) {
+                it.remove();
+                unlink( entry );
+                if ( getIndex( entry.item ) == this ) {
+                    setIndex( entry.item, null );
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the next sync compare the index with the list even if the
+     * modification count of the list has not changed, used when elements
+     * have been replaced
+     */
+    void invalidate() {
+        modCount = -1;
+    }
+
+    /**
+     * Detaches all the elements, the next sync adds the elements of the list again
+     */
+    void clear() {
+        for ( T item : entries.keySet() ) {
+            if ( getIndex( item ) == this ) {
+                setIndex( item, null );
+            }
+        }
+        entries.clear();
+        cells.clear();
+        large.clear();
+        modCount = -1;
+    }
+
+    /**
+     * Records the current bounds of an element that has moved or changed its size
+     *
+     * @param item
+     */
+    void update( T item ) {
+
+        Entry<T> entry = entries.get( item );
+
+        if ( entry == null ) {
+            return;
+        }
+
+        Rectangle bounds = getBounds( item );
+
+        if ( entry.bounds != null && !isLarge( entry.bounds ) && !isLarge( bounds )
+                && sameCells( entry.bounds, bounds ) ) {
+            entry.bounds = bounds;
+            return;
+        }
+        unlink( entry );
+        insert( entry, bounds );
+    }
+
+    /**
+     * @param area
+     * @return elements whose bounds intersect the area, in the order of the list
+     */
+    List<T> query( Rectangle area ) {
+
+        List<Entry<T>> found = new ArrayList<Entry<T>>();
+
+        int x1 = cell( area.x );
+        int y1 = cell( area.y );
+        int x2 = cell( area.x + area.width );
+        int y2 = cell( area.y + area.height );
+
+        if ( (long) ( x2 - x1 + 1 ) * ( y2 - y1 + 1 ) > entries.size() ) {
+            // the area is large compared to the number of elements
+            for ( Entry<T> entry : entries.values() ) {
+                if ( entry.bounds.intersects( area ) ) {
+                    found.add( entry );
+                }
+            }
+        } else {
+            for ( int cx = x1; cx <= x2; cx++ ) {
+                for ( int cy = y1; cy <= y2; cy++ ) {
+                    List<Entry<T>> cell = cells.get( key( cx, cy ) );
+
+                    if ( cell == null ) {
+                        continue;
+                    }
+                    for ( Entry<T> entry : cell ) {
+                        // an element covering several cells is reported by the first one of them in the area
+                        if ( cx == Math.max( x1, cell( entry.bounds.x ) )
+                                && cy == Math.max( y1, cell( entry.bounds.y ) )
+                                && entry.bounds.intersects( area ) ) {
+                            found.add( entry );
+                        }
+                    }
+                }
+            }
+            for ( Entry<T> entry : large ) {
+                if ( entry.bounds.intersects( area ) ) {
+                    found.add( entry );
+                }
+            }
+        }
+
+        Collections.sort( found );
+
+        List<T> result = new ArrayList<T>( found.size() );
+        for ( Entry<T> entry : found ) {
+            result.add( entry.item );
+        }
+        return result;
+    }
+
+    private void insert( Entry<T> entry, Rectangle bounds ) {
+
+        entry.bounds = bounds;
+
+        if ( isLarge( bounds ) ) {
+            large.add( entry );
+            return;
+        }
+
+        for ( int cx = cell( bounds.x ); cx <= cell( bounds.x + bounds.width ); cx++ ) {
+            for ( int cy = cell( bounds.y ); cy <= cell( bounds.y + bounds.height ); cy++ ) {
+                Long key = key( cx, cy );
+                List<Entry<T>> cell = cells.get( key );
+
+                if ( cell == null ) {
+                    cell = new ArrayList<Entry<T>>( 4 );
+                    cells.put( key, cell );
+                }
+                cell.add( entry );
+            }
+        }
+    }
+
+    private void unlink( Entry<T> entry ) {
+
+        Rectangle bounds = entry.bounds;
+
+        if ( isLarge( bounds ) ) {
+            large.remove( entry );
+            return;
+        }
+
+        for ( int cx = cell( bounds.x ); cx <= cell( bounds.x + bounds.width ); cx++ ) {
+            for ( int cy = cell( bounds.y ); cy <= cell( bounds.y + bounds.height ); cy++ ) {
+                Long key = key( cx, cy );
+                List<Entry<T>> cell = cells.get( key );
+
+                if ( cell != null ) {
+                    cell.remove( entry );
+                    if ( cell.isEmpty() ) {
+                        cells.remove( key );
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isLarge( Rectangle bounds ) {
+        return (long) ( cell( bounds.x + bounds.width ) - cell( bounds.x ) + 1 )
+                * ( cell( bounds.y + bounds.height ) - cell( bounds.y ) + 1 ) > MAX_CELLS;
+    }
+
+    private static boolean sameCells( Rectangle r1, Rectangle r2 ) {
+        return cell( r1.x ) == cell( r2.x ) && cell( r1.y ) == cell( r2.y )
+                && cell( r1.x + r1.width ) == cell( r2.x + r2.width )
+                && cell( r1.y + r1.height ) == cell( r2.y + r2.height );
+    }
+
+    private static int cell( int coord ) {
+        // rounded down for negative coordinates as well
+        return coord >= 0 ? coord / CELL_SIZE : -( ( -coord - 1 ) / CELL_SIZE ) - 1;
+    }
+
+    private static Long key( int cx, int cy ) {
+        return ( (long) cx << 32 ) | ( cy & 0xffffffffL );
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+
+        private final T item;
+        private Rectangle bounds;
+        // position in the list
+        private int order;
+        private int generation;
+
+        Entry( T item ) {
+            this.item = item;
+        }
+
+        @Override
+        public int compareTo( Entry<T> o ) {
+            return order < o.order ? -1 : ( order == o.order ? 0 : 1 );
+        }
+    }
+}
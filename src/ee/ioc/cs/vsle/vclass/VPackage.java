@@ -20,6 +20,8 @@ public class VPackage implements ee.ioc.cs.vsle.api.Package {
     private String description;
     private String path;
     private ArrayList<PackageClass> classes = new ArrayList<PackageClass>();
+    //rebuilt when classes have been added to the list, may be used by a thread loading a scheme
+    private volatile ClassIndex classIndex;
     private PackageClassLoader classLoader;
 
     /**
@@ -38,15 +40,7 @@ public class VPackage implements ee.ioc.cs.vsle.api.Package {
 	 *                   class or not.
 	 */
 	public boolean hasClass(String className) {
-		PackageClass pClass;
-
-		for (int i = 0; i < getClasses().size(); i++) {
-			pClass = getClasses().get(i);
-			if (pClass.getName().equals(className)) {
-				return true;
-			}
-		}
-		return false;
+		return getClass(className) != null;
 	} // hasClass
 
 	/**
@@ -56,9 +50,23 @@ public class VPackage implements ee.ioc.cs.vsle.api.Package {
 	 */
 	public PackageClass getClass(String className) {
 
-		for (PackageClass pClass : getClasses()) {
-			if (pClass.getName().equals(className)) {
-				return pClass;
+		ClassIndex index = classIndex;
+
+		if (index == null || index.size != classes.size()) {
+			index = new ClassIndex(classes);
+			classIndex = index;
+		}
+
+		PackageClass pClass = index.classes.get(className);
+
+		if (pClass != null && pClass.getName().equals(className)) {
+			return pClass;
+		}
+
+		// a class may have been renamed after indexing
+		for (PackageClass pc : classes) {
+			if (pc.getName().equals(className)) {
+				return pc;
 			}
 		}
 		return null;
@@ -185,6 +193,23 @@ public class VPackage implements ee.ioc.cs.vsle.api.Package {
         return classes;
     }
 
+    /**
+     * Class names -> classes, built completely before it is published
+     */
+    private static final class ClassIndex {
+
+        private final Map<String, PackageClass> classes = new HashMap<String, PackageClass>();
+        private final int size;
+
+        ClassIndex(List<PackageClass> list) {
+            // the first class of a name is found like by a linear search
+            for (int i = list.size() - 1; i >= 0; i--) {
+                classes.put(list.get(i).getName(), list.get(i));
+            }
+            size = list.size();
+        }
+    }
+
     @Override
     public String toString() {
         return "VPackage [name=" + name + ", description=" + description
@@ -0,0 +1,86 @@
+package ee.ioc.cs.vsle.synthesize;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+import ee.ioc.cs.vsle.editor.*;
+import ee.ioc.cs.vsle.parser.*;
+import ee.ioc.cs.vsle.synthesize.IncrementalSynthesizer.Mode;
+import ee.ioc.cs.vsle.util.*;
+
+public class IncrementalSynthesizerTest {
+
+    // x.length makes ProblemCreator add a relation to THIS
+    private static final String SPEC = "public class THIS {\n"
+            + "    /*@ specification THIS {\n"
+            + "        double a, b, c, d;\n"
+            + "        alias x = (a, b);\n"
+            + "        a = %s;\n"
+            + "        b = 2;\n"
+            + "        c = x.length * a + b;\n"
+            + "        %s\n"
+            + "        -> %s;\n"
+            + "    }@*/\n"
+            + "}\n";
+
+    private final String workDir = System.getProperty( "java.io.tmpdir" ) + File.separator;
+    private boolean incrementalSynthesis;
+
+    @Before
+    public void setUp() {
+        incrementalSynthesis = RuntimeProperties.isIncrementalSynthesis();
+        RuntimeProperties.setIncrementalSynthesis( true );
+    }
+
+    @After
+    public void tearDown() {
+        RuntimeProperties.setIncrementalSynthesis( incrementalSynthesis );
+    }
+
+    @Test
+    public void valueChange() throws Exception {
+        IncrementalSynthesizer synthesizer = new IncrementalSynthesizer();
+
+        synthesize( synthesizer, "1", "", "c" );
+        Assert.assertEquals( Mode.FULL, synthesizer.getLastMode() );
+
+        String second = synthesize( synthesizer, "7", "", "c" );
+        Assert.assertEquals( Mode.VALUES, synthesizer.getLastMode() );
+        Assert.assertTrue( second.contains( "a= 7;" ) );
+        Assert.assertEquals( second, synthesize( new IncrementalSynthesizer(), "7", "", "c" ) );
+    }
+
+    @Test
+    public void relationAdded() throws Exception {
+        IncrementalSynthesizer synthesizer = new IncrementalSynthesizer();
+
+        synthesize( synthesizer, "1", "", "c" );
+        String second = synthesize( synthesizer, "1", "d = c + 1;", "d" );
+        Assert.assertEquals( Mode.SEEDED, synthesizer.getLastMode() );
+        Assert.assertEquals( second, synthesize( new IncrementalSynthesizer(), "1", "d = c + 1;", "d" ) );
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        RuntimeProperties.setIncrementalSynthesis( false );
+        IncrementalSynthesizer synthesizer = new IncrementalSynthesizer();
+
+        synthesize( synthesizer, "1", "", "c" );
+        synthesize( synthesizer, "7", "", "c" );
+        Assert.assertEquals( Mode.FULL, synthesizer.getLastMode() );
+    }
+
+    private String synthesize( IncrementalSynthesizer synthesizer, String value, String relation, String goal )
+            throws SpecParseException {
+
+        String spec = String.format( SPEC, value, relation, goal );
+        SpecificationLoader loader = new SpecificationLoader( workDir, new HashSet<String>() );
+        loader.loadSpecification( spec, TypeUtil.TYPE_THIS );
+        ClassList classList = new ClassList();
+        classList.addAll( loader.getLoaddedSpecificationList() );
+
+        return synthesizer.makeProgramText( spec, false, classList, "IncrementalTest", null, null, workDir );
+    }
+}
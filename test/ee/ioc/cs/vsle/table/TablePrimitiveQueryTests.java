@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+
+import org.junit.*;
+
+import ee.ioc.cs.vsle.table.TableFieldConstraint.Range;
+import ee.ioc.cs.vsle.table.exception.*;
+
+/**
+ * Compares results of queryDouble() and queryInt() with the ones of queryTable(),
+ * exceptions are compared by their classes
+ */
+public class TablePrimitiveQueryTests {
+
+    private static final String[] COMPARISONS = { "eq", "less", "leq", "!eq", "!less", "!leq" };
+
+    private final Random random = new Random( 7 );
+
+    @Test
+    public void doubleTables() {
+        double[] args = { Double.NEGATIVE_INFINITY, -2, -1.5, -0.0, 0, 1, 2.5, 3, Double.NaN };
+
+        for ( int n = 0; n < 200; n++ ) {
+            Table table = createRandomTable( "double", new String[] { "-1.5", "0.0", "2.5", "NaN" },
+                    new String[] { "-1.0", "0.5", "7.0" } );
+
+            for ( double x : args ) {
+                for ( double y : args ) {
+                    Assert.assertEquals( table.getHRules() + " " + table.getVRules() + " " + x + " " + y,
+                            queryTable( table, x, y ), queryDouble( table, x, y ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void intTables() {
+        int[] args = { Integer.MIN_VALUE, -2, -1, 0, 1, 2, 3, Integer.MAX_VALUE };
+
+        for ( int n = 0; n < 200; n++ ) {
+            Table table = createRandomTable( "int", new String[] { "-1", "0", "2", "2147483647" },
+                    new String[] { "-1", "5", "7" } );
+
+            for ( int x : args ) {
+                for ( int y : args ) {
+                    Assert.assertEquals( table.getHRules() + " " + table.getVRules() + " " + x + " " + y,
+                            queryTable( table, x, y ), queryInt( table, x, y ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Other types of inputs or outputs are queried with boxed values
+     */
+    @Test
+    public void otherTypes() {
+        Table table = createTable( "int", "double", "less", "5" );
+        Assert.assertEquals( queryTable( table, 1.0 ), queryDouble( table, 1.0 ) );
+        Assert.assertEquals( queryTable( table, 7.0 ), queryDouble( table, 7.0 ) );
+        //the result is not an int
+        Assert.assertEquals( 10.0, queryTable( table, 1 ) );
+        Assert.assertEquals( ClassCastException.class, queryInt( table, 1 ) );
+
+        table = createTable( "double", "int", "less", "5" );
+        Assert.assertEquals( queryTable( table, 1 ), queryInt( table, 1 ) );
+        Assert.assertEquals( queryTable( table, 7 ), queryInt( table, 7 ) );
+        Assert.assertEquals( 10, queryTable( table, 1.0 ) );
+        Assert.assertEquals( ClassCastException.class, queryDouble( table, 1.0 ) );
+    }
+
+    @Test
+    public void constraints() {
+        Table table = createTable( "double", "double", "less", "5" );
+        Range range = new Range();
+        range.setMin( 0.0 );
+        table.getInputFields().get( 0 ).getConstraints().add( range );
+
+        Assert.assertEquals( 10.0, queryDouble( table, 1.0 ) );
+        Assert.assertEquals( TableInputConstraintViolationException.class, queryTable( table, -1.0 ) );
+        Assert.assertEquals( queryTable( table, -1.0 ), queryDouble( table, -1.0 ) );
+    }
+
+    @Test
+    public void numberOfArguments() {
+        Table table = createTable( "double", "double", "less", "5" );
+        Assert.assertEquals( TableException.class, queryDouble( table ) );
+        Assert.assertEquals( TableException.class, queryDouble( table, 1.0, 2.0 ) );
+
+        table = createTable( "int", "int", "less", "5" );
+        Assert.assertEquals( TableException.class, queryInt( table ) );
+        Assert.assertEquals( TableException.class, queryInt( table, 1, 2 ) );
+    }
+
+    /**
+     * Rules the index cannot evaluate are checked by the inference engine
+     */
+    @Test
+    public void otherConditions() {
+        Table table = createTable( "double", "double", "in", "1.0%%2.0" );
+        Assert.assertEquals( 10.0, queryDouble( table, 2.0 ) );
+        Assert.assertEquals( 20.0, queryDouble( table, 3.0 ) );
+
+        table = createTable( "int", "int", "in", "1%%2" );
+        Assert.assertEquals( 10, queryInt( table, 2 ) );
+        Assert.assertEquals( 20, queryInt( table, 3 ) );
+
+        //no valid rules
+        table = createTable( "int", "int", "less", "5" );
+        Rule zero = Rule.createRule( table.getInputFields().get( 0 ), "eq", "0" );
+        zero.addEntry( 2 );
+        table.addHRule( 2, zero );
+        Assert.assertEquals( TableException.class, queryTable( table, 7 ) );
+        Assert.assertEquals( TableException.class, queryInt( table, 7 ) );
+    }
+
+    @Test
+    public void undefinedCells() {
+        Table table = createTable( "double", "double", "less", "5" );
+        table.setCellValueAt( null, 1, 0 );
+        Assert.assertEquals( TableCellValueUndefinedException.class, queryTable( table, 7.0 ) );
+        Assert.assertEquals( TableCellValueUndefinedException.class, queryDouble( table, 7.0 ) );
+
+        table.getOutputField().setDefaultValueFromString( "-1.0" );
+        table.setCellValueAt( null, 1, 0 );
+        Assert.assertEquals( -1.0, queryDouble( table, 7.0 ) );
+        Assert.assertEquals( 10.0, queryDouble( table, 1.0 ) );
+
+        table = createTable( "int", "int", "less", "5" );
+        table.getOutputField().setDefaultValueFromString( "-1" );
+        table.setCellValueAt( null, 0, 0 );
+        Assert.assertEquals( -1, queryInt( table, 1 ) );
+        Assert.assertEquals( 20, queryInt( table, 7 ) );
+    }
+
+    /**
+     * @return result of queryTable() or the class of the exception
+     */
+    private static Object queryTable( Table table, Object... args ) {
+        try {
+            return table.queryTable( args );
+        } catch ( RuntimeException e ) {
+            return e.getClass();
+        }
+    }
+
+    private static Object queryDouble( Table table, double... args ) {
+        try {
+            return table.queryDouble( args );
+        } catch ( RuntimeException e ) {
+            return e.getClass();
+        }
+    }
+
+    private static Object queryInt( Table table, int... args ) {
+        try {
+            return table.queryInt( args );
+        } catch ( RuntimeException e ) {
+            return e.getClass();
+        }
+    }
+
+    /**
+     * @return table with rows "x cond value" -> 10 and "!(x cond value)" -> 20
+     */
+    private static Table createTable( String inputType, String outputType, String condition, String value ) {
+        Table table = new Table( "t" );
+
+        InputTableField x = new InputTableField( "x", inputType );
+        table.addInputFields( Arrays.asList( x ) );
+        table.addOutputFields( Arrays.asList( new TableField( "y", outputType ) ) );
+
+        table.addDataCell( 1, 1, Collections.singletonMap( "y", "10" ) );
+        table.addDataCell( 2, 1, Collections.singletonMap( "y", "20" ) );
+
+        Rule rule = Rule.createRule( x, condition, value );
+        rule.addEntry( 1 );
+        Rule negation = Rule.createRule( x, "!" + condition, value );
+        negation.addEntry( 2 );
+        table.addHRules( Arrays.asList( rule, negation ) );
+
+        return table;
+    }
+
+    /**
+     * @return table with inputs x, y of the given type, random rules and
+     * random cells, some of them undefined
+     */
+    private Table createRandomTable( String type, String[] ruleValues, String[] cellValues ) {
+        Table table = new Table( "t" );
+
+        InputTableField x = new InputTableField( "x", type );
+        InputTableField y = new InputTableField( "y", type );
+        table.addInputFields( Arrays.asList( x, y ) );
+        TableField output = new TableField( "z", type );
+        table.addOutputFields( Arrays.asList( output ) );
+        if ( random.nextBoolean() ) {
+            output.setDefaultValueFromString( cellValues[0] );
+        }
+
+        int rows = 1 + random.nextInt( 6 );
+        int columns = 1 + random.nextInt( 3 );
+
+        for ( int row = 1; row <= rows; row++ ) {
+            for ( int column = 1; column <= columns; column++ ) {
+                Map<String, String> values = new HashMap<String, String>();
+                if ( random.nextInt( 5 ) > 0 ) {
+                    values.put( "z", cellValues[random.nextInt( cellValues.length )] );
+                }
+                table.addDataCell( row, column, values );
+            }
+        }
+
+        table.addHRules( createRules( Arrays.asList( x, y ), rows, ruleValues ) );
+        table.addVRules( createRules( Arrays.asList( x, y ), columns, ruleValues ) );
+
+        return table;
+    }
+
+    private List<Rule> createRules( List<InputTableField> inputs, int ids, String[] values ) {
+        List<Rule> rules = new ArrayList<Rule>();
+        int count = random.nextInt( 8 );
+
+        for ( int i = 0; i < count; i++ ) {
+            Rule rule = Rule.createRule( inputs.get( random.nextInt( inputs.size() ) ),
+                    COMPARISONS[random.nextInt( COMPARISONS.length )], values[random.nextInt( values.length )] );
+            for ( int id = 1; id <= ids; id++ ) {
+                if ( random.nextInt( 3 ) == 0 ) {
+                    rule.addEntry( id );
+                }
+            }
+            rules.add( rule );
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+
+import org.junit.*;
+
+import ee.ioc.cs.vsle.table.exception.*;
+
+/**
+ * Compares rows and columns found by TableQueryIndex with the ones
+ * found by TableInferenceEngine.checkRules() on random rules
+ */
+public class TableQueryIndexTests {
+
+    private static final String[] COMPARISONS = { "eq", "less", "leq", "!eq", "!less", "!leq" };
+
+    private final Random random = new Random( 42 );
+
+    @Test
+    public void intRules() {
+        compare( "int", COMPARISONS, new String[] { "-3", "0", "1", "5", "7", "2147483647" },
+                new Object[] { -4, -3, -2, 0, 1, 2, 5, 6, 7, 8, 2147483647, -2147483648 } );
+    }
+
+    @Test
+    public void doubleRules() {
+        compare( "double", COMPARISONS, new String[] { "-1.5", "0.0", "-0.0", "2.25", "NaN", "Infinity" },
+                new Object[] { -2.0, -1.5, -1.0, -0.0, 0.0, 1.0, 2.25, 3.0, Double.NaN, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY } );
+    }
+
+    @Test
+    public void longRules() {
+        compare( "long", COMPARISONS, new String[] { "-10", "0", "10", "9223372036854775807" },
+                new Object[] { -11L, -10L, -9L, 0L, 9L, 10L, 11L, Long.MAX_VALUE, Long.MIN_VALUE } );
+    }
+
+    @Test
+    public void floatRules() {
+        compare( "float", COMPARISONS, new String[] { "-1.5", "0.0", "2.5" },
+                new Object[] { -2f, -1.5f, 0f, -0f, 2.5f, 3f, Float.NaN } );
+    }
+
+    /**
+     * compareTo() of Short and Byte returns the difference of the values,
+     * their thresholds are verified one by one
+     */
+    @Test
+    public void shortRules() {
+        compare( "short", COMPARISONS, new String[] { "-5", "0", "3", "100" },
+                new Object[] { (short) -6, (short) -5, (short) 0, (short) 2, (short) 3, (short) 4, (short) 100,
+                        (short) 101, (short) 32767, (short) -32768 } );
+    }
+
+    @Test
+    public void byteRules() {
+        compare( "byte", COMPARISONS, new String[] { "-5", "0", "3", "127" },
+                new Object[] { (byte) -6, (byte) -5, (byte) 0, (byte) 3, (byte) 4, (byte) 126, (byte) 127,
+                        (byte) -128 } );
+    }
+
+    @Test
+    public void stringRules() {
+        compare( "String", new String[] { "eq", "!eq", "regexp", "!regexp", "substr", "!substr" },
+                new String[] { "a", "ab", "b.*", "abc" },
+                new Object[] { "", "a", "ab", "abc", "b", "bc", "x" } );
+    }
+
+    @Test
+    public void booleanRules() {
+        compare( "boolean", new String[] { "eq", "!eq" }, new String[] { "true", "false" },
+                new Object[] { true, false } );
+    }
+
+    @Test
+    public void inArrayRules() {
+        compare( "int", new String[] { "in", "!in" }, new String[] { "1%%2", "3", "2%%5%%7", "5" },
+                new Object[] { 0, 1, 2, 3, 5, 7, 8 } );
+    }
+
+    /**
+     * Arguments of other types than values of rules, e.g. ints given to a double table
+     */
+    @Test
+    public void otherArgumentTypes() {
+        compare( "double", new String[] { "eq", "!eq" }, new String[] { "1.0", "2.0" },
+                new Object[] { 1.0, 2.0, 1, 2 } );
+    }
+
+    @Test
+    public void emptyTable() {
+        TableFieldList<InputTableField> inputs = createInputs( "int" );
+        List<Integer> noIds = Collections.emptyList();
+        List<Rule> noRules = Collections.emptyList();
+
+        TableQueryIndex index = new TableQueryIndex( inputs, noIds, noRules, noIds, noRules );
+        Assert.assertEquals( -1, index.findRow( new Object[] { 1, 2 } ) );
+        Assert.assertEquals( -1, index.findColumn( new Object[] { 1, 2 } ) );
+        Assert.assertEquals( -1, checkRules( inputs, noIds, noRules, new Object[] { 1, 2 } ) );
+
+        //rows without rules hold for any input
+        List<Integer> ids = Arrays.asList( 3, 1, 2 );
+        index = new TableQueryIndex( inputs, ids, noRules, ids, noRules );
+        Assert.assertEquals( 3, index.getRowId( index.findRow( new Object[] { 1, 2 } ) ) );
+        Assert.assertEquals( 3, index.getColumnId( index.findColumn( new Object[] { 1, 2 } ) ) );
+    }
+
+    @Test
+    public void boundaries() {
+        TableFieldList<InputTableField> inputs = createInputs( "int" );
+        InputTableField x = inputs.get( 0 );
+        List<Integer> ids = Arrays.asList( 1, 2, 3 );
+        List<Integer> columnIds = Arrays.asList( 1 );
+        List<Rule> noRules = Collections.emptyList();
+
+        //x < 0, 0 <= x <= 10, x > 10
+        List<Rule> rules = Arrays.asList( createRule( x, "less", "0", 1 ), createRule( x, "!less", "0", 2 ),
+                createRule( x, "leq", "10", 2 ), createRule( x, "!leq", "10", 3 ) );
+
+        TableQueryIndex index = new TableQueryIndex( inputs, ids, rules, columnIds, noRules );
+
+        int[] expected = { 1, 1, 2, 2, 2, 3 };
+        int[] values = { Integer.MIN_VALUE, -1, 0, 10, 10, 11 };
+        for ( int i = 0; i < values.length; i++ ) {
+            Object[] args = { values[i], 0 };
+            Assert.assertEquals( expected[i], index.getRowId( index.findRow( args ) ) );
+            Assert.assertEquals( expected[i], checkRules( inputs, ids, rules, args ) );
+        }
+    }
+
+    /**
+     * Creates random tables with the given conditions and values of rules
+     * and compares the index with the inference engine for all pairs of arguments
+     */
+    private void compare( String type, String[] conditions, String[] values, Object[] args ) {
+
+        for ( int n = 0; n < 200; n++ ) {
+            TableFieldList<InputTableField> inputs = createInputs( type );
+
+            List<Integer> rowIds = createIds( 1 + random.nextInt( 8 ) );
+            List<Integer> columnIds = createIds( 1 + random.nextInt( 4 ) );
+            List<Rule> hrules = createRules( inputs, rowIds, conditions, values );
+            List<Rule> vrules = createRules( inputs, columnIds, conditions, values );
+
+            TableQueryIndex index = new TableQueryIndex( inputs, rowIds, hrules, columnIds, vrules );
+
+            for ( Object x : args ) {
+                for ( Object y : args ) {
+                    Object[] query = { x, y };
+                    String message = type + " " + hrules + " " + vrules + " " + Arrays.toString( query );
+
+                    int row = index.findRow( query );
+                    if ( row != -2 ) {
+                        Assert.assertEquals( message, checkRules( inputs, rowIds, hrules, query ),
+                                row >= 0 ? index.getRowId( row ) : -1 );
+                    }
+
+                    int column = index.findColumn( query );
+                    if ( column != -2 ) {
+                        Assert.assertEquals( message, checkRules( inputs, columnIds, vrules, query ),
+                                column >= 0 ? index.getColumnId( column ) : -1 );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return id of the first row (column) whose rules hold or -1 if there is no such row (column)
+     */
+    private static int checkRules( TableFieldList<InputTableField> inputs, List<Integer> ids, List<Rule> rules,
+            Object[] args ) {
+        try {
+            return TableInferenceEngine.checkRules( inputs, ids, rules, args );
+        } catch ( TableException e ) {
+            return -1;
+        }
+    }
+
+    private static TableFieldList<InputTableField> createInputs( String type ) {
+        TableFieldList<InputTableField> inputs = new TableFieldList<InputTableField>();
+        inputs.add( new InputTableField( "x", type ) );
+        inputs.add( new InputTableField( "y", type ) );
+        return inputs;
+    }
+
+    /**
+     * @return ids in a shuffled order, the order of rows (columns) is not the order of ids
+     */
+    private List<Integer> createIds( int count ) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for ( int i = 1; i <= count; i++ ) {
+            ids.add( i );
+        }
+        Collections.shuffle( ids, random );
+        return ids;
+    }
+
+    private List<Rule> createRules( TableFieldList<InputTableField> inputs, List<Integer> ids, String[] conditions,
+            String[] values ) {
+
+        List<Rule> rules = new ArrayList<Rule>();
+        int count = random.nextInt( 10 );
+
+        for ( int i = 0; i < count; i++ ) {
+            Rule rule = Rule.createRule( inputs.get( random.nextInt( inputs.size() ) ),
+                    conditions[random.nextInt( conditions.length )], values[random.nextInt( values.length )] );
+            for ( Integer id : ids ) {
+                if ( random.nextInt( 3 ) == 0 ) {
+                    rule.addEntry( id );
+                }
+            }
+            //rules of other rows (columns) are ignored
+            if ( random.nextInt( 5 ) == 0 ) {
+                rule.addEntry( ids.size() + 1 );
+            }
+            rules.add( rule );
+        }
+        return rules;
+    }
+
+    private static Rule createRule( InputTableField field, String condition, String value, int entry ) {
+        Rule rule = Rule.createRule( field, condition, value );
+        rule.addEntry( entry );
+        return rule;
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * Cached results of queries must not outlive any change of the table or its rules
+ */
+public class TableResultCacheTests {
+
+    private static final Object[] ARGS = { 1 };
+
+    /**
+     * A change of a table or of its rules
+     */
+    private static abstract class Change {
+
+        private final String name;
+
+        Change( String name ) {
+            this.name = name;
+        }
+
+        abstract void apply( Table table );
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        Table table = createTable();
+        table.setResultCacheSize( 10 );
+
+        Assert.assertEquals( 10, table.queryTable( ARGS ) );
+        Assert.assertEquals( 10, table.queryTable( ARGS ) );
+        Assert.assertEquals( 20, table.queryTable( new Object[] { 7 } ) );
+        Assert.assertEquals( 1, table.getResultCacheHitCount() );
+        Assert.assertEquals( 2, table.getResultCacheMissCount() );
+
+        //mutable arguments are not cached
+        try {
+            table.queryTable( new Object[] { new StringBuilder( "1" ) }, false );
+        } catch ( RuntimeException e ) {
+            //rules of ints cannot be checked
+        }
+        Assert.assertEquals( 1, table.getResultCacheHitCount() );
+        Assert.assertEquals( 2, table.getResultCacheMissCount() );
+    }
+
+    @Test
+    public void disabled() {
+        Table table = createTable();
+
+        Assert.assertEquals( 10, table.queryTable( ARGS ) );
+        Assert.assertEquals( 10, table.queryTable( ARGS ) );
+        Assert.assertEquals( 0, table.getResultCacheHitCount() );
+        Assert.assertEquals( 0, table.getResultCacheMissCount() );
+    }
+
+    @Test
+    public void fullCache() {
+        Table table = createTable();
+        table.setResultCacheSize( 2 );
+
+        for ( int i = 0; i < 10; i++ ) {
+            Assert.assertEquals( i < 5 ? 10 : 20, table.queryTable( new Object[] { i } ) );
+        }
+        //the cache has been cleared on each third tuple
+        Assert.assertEquals( 20, table.queryTable( new Object[] { 9 } ) );
+        Assert.assertEquals( 10, table.queryTable( ARGS ) );
+        Assert.assertEquals( 1, table.getResultCacheHitCount() );
+        Assert.assertEquals( 11, table.getResultCacheMissCount() );
+    }
+
+    @Test
+    public void tableChanges() {
+        List<Change> changes = Arrays.asList(
+                new Change( "changePropertiesAndVerify" ) {
+                    @Override
+                    void apply( Table table ) {
+                        TableFieldList<InputTableField> inputs = new TableFieldList<InputTableField>();
+                        inputs.addAll( table.getInputFields() );
+                        TableFieldList<TableField> outputs = new TableFieldList<TableField>();
+                        outputs.addAll( table.getOutputFields() );
+                        table.changePropertiesAndVerify( table.getTableId(), inputs, outputs, null );
+                    }
+                },
+                new Change( "addInputFields" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addInputFields( Arrays.asList( new InputTableField( "z", "int" ) ) );
+                    }
+                },
+                new Change( "setOutputField" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.setOutputField( table.getOutputFields().get( 1 ), false );
+                    }
+                },
+                new Change( "addOutputFields" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addOutputFields( Arrays.asList( new TableField( "v", "int" ) ) );
+                    }
+                },
+                new Change( "addHRules" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addHRules( Arrays.asList( createRule( table, "eq", "3", 1 ) ) );
+                    }
+                },
+                new Change( "addHRule" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addHRule( 0, createRule( table, "eq", "3", 1 ) );
+                    }
+                },
+                new Change( "moveHRule" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.moveHRule( 0, 1 );
+                    }
+                },
+                new Change( "removeHRule" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.removeHRule( 1 );
+                    }
+                },
+                new Change( "addVRules" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addVRules( Arrays.asList( createRule( table, "eq", "3", 1 ) ) );
+                    }
+                },
+                new Change( "addVRule" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addVRule( 0, createRule( table, "eq", "3", 1 ) );
+                    }
+                },
+                new Change( "moveVRule" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.moveVRule( 0, 1 );
+                    }
+                },
+                new Change( "removeVRule" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.removeVRule( 1 );
+                    }
+                },
+                new Change( "addEmptyRow" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addEmptyRow( 2 );
+                    }
+                },
+                new Change( "addEmptyColumn" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addEmptyColumn( 2 );
+                    }
+                },
+                new Change( "moveDataRow" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.moveDataRow( 1, 0 );
+                    }
+                },
+                new Change( "removeDataRow" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.removeDataRow( 1 );
+                    }
+                },
+                new Change( "moveDataColumn" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.moveDataColumn( 1, 0 );
+                    }
+                },
+                new Change( "removeDataColumn" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.removeDataColumn( 1 );
+                    }
+                },
+                new Change( "addDataCell" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.addDataCell( 3, 1, Collections.singletonMap( "y", "30" ) );
+                    }
+                },
+                new Change( "setCellValueAt" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.setCellValueAt( 11, 0, 0 );
+                    }
+                },
+                new Change( "setAliasOutput" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.setAliasOutput( new TableField( "alias", "alias" ) );
+                    }
+                },
+                new Change( "setResultCacheSize" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.setResultCacheSize( 20 );
+                    }
+                } );
+
+        for ( Change change : changes ) {
+            assertInvalidated( change );
+        }
+    }
+
+    @Test
+    public void ruleChanges() {
+        List<Change> changes = Arrays.asList(
+                new Change( "addEntry" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.getHRules().get( 1 ).addEntry( 1 );
+                    }
+                },
+                new Change( "removeEntry" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.getHRules().get( 0 ).removeEntry( 1 );
+                    }
+                },
+                new Change( "setNegative" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.getHRules().get( 0 ).setNegative( true );
+                    }
+                },
+                new Change( "setCondition" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.getHRules().get( 0 ).setCondition( Condition.COND_LESS_OR_EQUAL );
+                    }
+                },
+                new Change( "setValueFromString" ) {
+                    @Override
+                    void apply( Table table ) {
+                        table.getHRules().get( 0 ).setValueFromString( "0" );
+                    }
+                } );
+
+        for ( Change change : changes ) {
+            assertInvalidated( change );
+        }
+    }
+
+    /**
+     * After a change, the first query has to miss the cache
+     * and the result has to be the one of a table without the cache
+     */
+    private static void assertInvalidated( Change change ) {
+        Table table = createTable();
+        table.setResultCacheSize( 10 );
+
+        table.queryTable( ARGS );
+        table.queryTable( ARGS );
+        Assert.assertEquals( change.name, 1, table.getResultCacheHitCount() );
+
+        change.apply( table );
+
+        Object cached = query( table );
+        Assert.assertEquals( change.name, 1, table.getResultCacheHitCount() );
+        Assert.assertEquals( change.name, 2, table.getResultCacheMissCount() );
+
+        table.setResultCacheSize( 0 );
+        assertResultEquals( change.name, query( table ), cached );
+    }
+
+    private static Object query( Table table ) {
+        try {
+            return table.queryTable( ARGS, false );
+        } catch ( RuntimeException e ) {
+            return e.getClass();
+        }
+    }
+
+    private static void assertResultEquals( String message, Object expected, Object actual ) {
+        if ( expected instanceof Object[] ) {
+            Assert.assertArrayEquals( message, (Object[]) expected, (Object[]) actual );
+        } else {
+            Assert.assertEquals( message, expected, actual );
+        }
+    }
+
+    private static Rule createRule( Table table, String condition, String value, int entry ) {
+        Rule rule = Rule.createRule( table.getInputFields().get( 0 ), condition, value );
+        rule.addEntry( entry );
+        return rule;
+    }
+
+    /**
+     * @return table with outputs y and w, rows "x < 5" and "x >= 5",
+     * columns without rules and "x < 100"
+     */
+    private static Table createTable() {
+        Table table = new Table( "t" );
+
+        InputTableField x = new InputTableField( "x", "int" );
+        table.addInputFields( Arrays.asList( x ) );
+        table.addOutputFields( Arrays.asList( new TableField( "y", "int" ), new TableField( "w", "int" ) ) );
+
+        for ( int row = 1; row <= 2; row++ ) {
+            for ( int column = 1; column <= 2; column++ ) {
+                Map<String, String> values = new HashMap<String, String>();
+                values.put( "y", Integer.toString( row * 10 + column - 1 ) );
+                values.put( "w", Integer.toString( -row ) );
+                table.addDataCell( row, column, values );
+            }
+        }
+
+        Rule less = Rule.createRule( x, "less", "5" );
+        less.addEntry( 1 );
+        Rule notLess = Rule.createRule( x, "!less", "5" );
+        notLess.addEntry( 2 );
+        table.addHRules( Arrays.asList( less, notLess ) );
+
+        Rule column = Rule.createRule( x, "less", "100" );
+        column.addEntry( 2 );
+        Rule other = Rule.createRule( x, "eq", "100" );
+        other.addEntry( 3 );
+        table.addVRules( Arrays.asList( column, other ) );
+
+        return table;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package ee.ioc.cs.vsle.table;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+import ee.ioc.cs.vsle.vclass.*;
+
+/**
+ * Changes of a table publish a new snapshot,
+ * readers of an old snapshot keep getting the old results
+ */
+public class TableSnapshotTests {
+
+    private static final Object[] ARGS = { 1 };
+
+    @Test
+    public void editorChanges() {
+        Table table = createTable( "t", 10 );
+
+        TableSnapshot first = table.getSnapshot();
+        Assert.assertSame( first, table.getSnapshot() );
+        Assert.assertEquals( 10, table.queryTable( ARGS ) );
+
+        //cell value
+        table.setCellValueAt( 11, 0, 0 );
+        TableSnapshot second = table.getSnapshot();
+        Assert.assertNotSame( first, second );
+        Assert.assertEquals( 10, first.query( ARGS, true ) );
+        Assert.assertEquals( 11, second.query( ARGS, true ) );
+        Assert.assertEquals( 11, table.queryTable( ARGS ) );
+
+        //rule values, 1 belongs to the second row now
+        table.getHRules().get( 0 ).setValueFromString( "0" );
+        table.getHRules().get( 1 ).setValueFromString( "0" );
+        TableSnapshot third = table.getSnapshot();
+        Assert.assertNotSame( second, third );
+        Assert.assertEquals( 11, second.query( ARGS, true ) );
+        Assert.assertEquals( 20, third.query( ARGS, true ) );
+
+        //order of rows
+        table.moveDataRow( 1, 0 );
+        Assert.assertNotSame( third, table.getSnapshot() );
+        Assert.assertEquals( 20, third.query( ARGS, true ) );
+        Assert.assertEquals( 20, table.queryTable( ARGS ) );
+    }
+
+    @Test
+    public void readerDuringChanges() throws Exception {
+        final Table table = createTable( "t", 10 );
+        final TableSnapshot snapshot = table.getSnapshot();
+        final Throwable[] failure = new Throwable[1];
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for ( int i = 0; i < 100000; i++ ) {
+                        Assert.assertEquals( 10, snapshot.query( ARGS, true ) );
+                        //a new snapshot gives either value, never an error
+                        Object value = table.queryTable( ARGS );
+                        Assert.assertTrue( value.equals( 10 ) || value.equals( 11 ) );
+                    }
+                } catch ( Throwable e ) {
+                    failure[0] = e;
+                }
+            }
+        };
+        reader.start();
+
+        for ( int i = 0; i < 1000; i++ ) {
+            table.setCellValueAt( i % 2 == 0 ? 11 : 10, 0, 0 );
+        }
+        reader.join();
+
+        if ( failure[0] != null ) {
+            throw new AssertionError( failure[0] );
+        }
+    }
+
+    @Test
+    public void reloadedTables() throws Exception {
+        File dir = createTempDir();
+        File file = new File( dir, "test.tbl" );
+
+        try {
+            new TableXmlProcessor( file ).save( createTable( "t", 10 ), false );
+
+            VPackage pack = new VPackage( new File( dir, "test.xml" ).getAbsolutePath() );
+            IStructuralExpertTable reader = TableManager.getTable( pack, "t" );
+            Assert.assertEquals( 10, reader.queryTable( ARGS ) );
+
+            new TableXmlProcessor( file ).save( createTable( "t", 11 ), false );
+            TableManager.updateTables( pack );
+
+            IStructuralExpertTable reloaded = TableManager.getTable( pack, "t" );
+            Assert.assertNotSame( reader, reloaded );
+            Assert.assertEquals( 11, reloaded.queryTable( ARGS ) );
+            Assert.assertEquals( 10, reader.queryTable( ARGS ) );
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * @return table with rows "x < 5" -> value and "x >= 5" -> 20
+     */
+    static Table createTable( String id, int value ) {
+        Table table = new Table( id );
+
+        InputTableField x = new InputTableField( "x", "int" );
+        table.addInputFields( Arrays.asList( x ) );
+        table.addOutputFields( Arrays.asList( new TableField( "y", "int" ) ) );
+
+        table.addDataCell( 0, 0, Collections.singletonMap( "y", Integer.toString( value ) ) );
+        table.addDataCell( 1, 0, Collections.singletonMap( "y", "20" ) );
+
+        Rule less = Rule.createRule( x, "less", "5" );
+        less.addEntry( 0 );
+        Rule notLess = Rule.createRule( x, "!less", "5" );
+        notLess.addEntry( 1 );
+        table.addHRules( Arrays.asList( less, notLess ) );
+
+        return table;
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile( "tables", "" );
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+}